@@ -4,12 +4,17 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Stack;
 
+import de.codesourcery.booleanalgebra.aig.AIG;
+import de.codesourcery.booleanalgebra.aig.AIGTransformations;
 import de.codesourcery.booleanalgebra.ast.ASTNode;
 import de.codesourcery.booleanalgebra.ast.BooleanExpression;
+import de.codesourcery.booleanalgebra.ast.CanonicalOrder;
 import de.codesourcery.booleanalgebra.ast.FalseNode;
 import de.codesourcery.booleanalgebra.ast.INodeMatcher;
 import de.codesourcery.booleanalgebra.ast.INodeVisitor;
@@ -19,10 +24,33 @@ import de.codesourcery.booleanalgebra.ast.OperatorNode;
 import de.codesourcery.booleanalgebra.ast.TermNode;
 import de.codesourcery.booleanalgebra.ast.TreeMatcher;
 import de.codesourcery.booleanalgebra.ast.TrueNode;
+import de.codesourcery.booleanalgebra.egraph.EGraphSimplifier;
+import de.codesourcery.booleanalgebra.eval.CompiledExpression;
+import de.codesourcery.booleanalgebra.eval.ConstantFolder;
+import de.codesourcery.booleanalgebra.hashcons.HashConsedNode;
+import de.codesourcery.booleanalgebra.hashcons.HashConsedTransformations;
+import de.codesourcery.booleanalgebra.hashcons.NodeFactory;
+import de.codesourcery.booleanalgebra.minimize.Espresso;
+import de.codesourcery.booleanalgebra.minimize.IMinimizer;
+import de.codesourcery.booleanalgebra.minimize.QuineMcCluskey;
+import de.codesourcery.booleanalgebra.rewrite.BooleanLaws;
+import de.codesourcery.booleanalgebra.rewrite.ChainBalancer;
+import de.codesourcery.booleanalgebra.rewrite.IRewriteListener;
+import de.codesourcery.booleanalgebra.rewrite.IRewriteRule;
+import de.codesourcery.booleanalgebra.rewrite.RewriteEngine;
+import de.codesourcery.booleanalgebra.sat.IncrementalEquivalenceChecker;
+import de.codesourcery.booleanalgebra.sat.SATChecker;
 
 public class ASTTransformations 
 {
+    private RewriteEngine rewriteEngine = new RewriteEngine( BooleanLaws.createDefaultRules() );
+
     private boolean debug = false;
+    private boolean paranoid = false;
+    private ChainBalancer chainBalancer = ChainBalancer.DEFAULT;
+
+    // programs used by eval() , by term
+    private final CompiledTermCache compiledTerms = new CompiledTermCache();
 
     protected interface IIterationContext 
     {
@@ -42,6 +70,7 @@ Assoziativgesetze 	  => (a and b) and c = a and (b and c)
 
 [OK] Distributivgesetze   => a and (b or c) = (a and b)  or (a  and c) 	
                            => a or (b and c) = (a or b)  and (a  or c)
+                           (only after setApplyDistributiveLaw(true) , see BooleanLaws)
 
 [OK] Neutralitätsgesetze   => a and 1 = a 	
                            => a or 0 = a
@@ -79,6 +108,64 @@ Assoziativgesetze 	  => (a and b) and c = a and (b and c)
 
         debugPrintln("Simplifying "+term.toString(true));
 
+        ASTNode result = term.createCopy( true );
+
+        final IncrementalEquivalenceChecker checker = paranoid ? new IncrementalEquivalenceChecker( term , context ) : null;
+
+        result = reduce( result , context );
+        // the default rules flatten all chains anyway , doing it up-front avoids rewriting long chains one node at a time
+        result = BooleanLaws.flattenAll( result );
+        result.sortChildrenAscending( CanonicalOrder.INSTANCE );
+        if ( paranoid ) {
+            assertEquivalent( checker , "reduce" , result );
+        }
+
+        rewriteEngine.setDebug( debug );
+        if ( paranoid ) 
+        {
+            rewriteEngine.setListener( new IRewriteListener() {
+
+                @Override
+                public void rewritten(IRewriteRule rule, ASTNode replacement, ASTNode root) {
+                    assertEquivalent( checker , rule.getName() , root );
+                }
+            });
+        }
+        try {
+            result = rewriteEngine.rewrite( result , context );
+        } finally {
+            rewriteEngine.setListener( null );
+        }
+        if ( chainBalancer != null ) 
+        {
+            result = chainBalancer.balance( result );
+            if ( paranoid ) {
+                assertEquivalent( checker , "balance" , result );
+            }
+        }
+        debugPrintln("Validated "+( checker != null ? checker.getQueryCount() : 0 )+" steps.");
+
+        // get rid of all variables we eliminated
+        context.retainOnly( gatherIdentifiers( result ));
+        return result;
+    }
+
+    /**
+     * Simplifies a term by applying all laws to the whole tree over and over again.
+     * 
+     * <p>This is how {@link #simplifyTerm(ASTNode, IExpressionContext)} used to work before it
+     * switched to the {@link RewriteEngine}, it is kept unchanged as a reference for tests and benchmarks.
+     * Together with the other laws , the distributive law keeps expanding some terms back and forth
+     * so this does not terminate for all inputs.</p>
+     * 
+     * @param term
+     * @param context
+     * @return
+     */
+    protected ASTNode simplifyTermFixedPoint(ASTNode term,final IExpressionContext context) {
+
+        debugPrintln("Simplifying "+term.toString(true));
+
         final Comparator<ASTNode> comp = new Comparator<ASTNode>() {
 
             @Override
@@ -153,6 +240,197 @@ Assoziativgesetze 	  => (a and b) and c = a and (b and c)
         return result;
     }
 
+    /**
+     * Simplifies a term or expression using the same laws as {@link #simplify(ASTNode, IExpressionContext)}
+     * but working on immutable, {@link NodeFactory hash-consed} nodes.
+     * 
+     * <p>The input term is converted once, all rewrites share unchanged subterms
+     * instead of copying the tree and the result is converted back to a new AST.</p>
+     * 
+     * @param term
+     * @param context
+     * @return
+     * @see HashConsedTransformations
+     */
+    public ASTNode simplifyShared(ASTNode term,final IExpressionContext context) 
+    {
+        final HashConsedTransformations transformations = new HashConsedTransformations( new NodeFactory() );
+        final ASTNode result;
+        if ( term instanceof BooleanExpression) 
+        {
+            final BooleanExpression expr = (BooleanExpression) term;
+            ASTNode left = simplifyShared( expr.getLHS() , context , transformations );
+            ASTNode right = simplifyShared( expr.getRHS() , context , transformations );
+            result = new BooleanExpression( left , right );
+        } else {
+            result = simplifyShared( term , context , transformations );
+        }
+
+        // get rid of all variables we eliminated
+        context.retainOnly( gatherIdentifiers( result ) );
+        return result;
+    }
+
+    private ASTNode simplifyShared(ASTNode term,IExpressionContext context,HashConsedTransformations transformations) 
+    {
+        final HashConsedNode input = transformations.getFactory().fromAST( term , context );
+        final HashConsedNode simplified = transformations.simplify( input );
+        debugPrintln("SIMPLIFY (shared): "+input+" -> "+simplified+" ("+transformations.getRewriteCount()+" rewrites)");
+        return NodeFactory.toAST( simplified );
+    }
+
+    /**
+     * Simplifies a term or expression by {@link EGraphSimplifier equality saturation} with the default budgets , picking
+     * the result with the least number of nodes.
+     * 
+     * <p>Unlike {@link #simplify(ASTNode, IExpressionContext)} this applies all laws (including commutativity , the
+     * distributive law and both directions of De Morgan's laws) without ever discarding a term , so laws
+     * that undo each other do not get in each other's way.</p>
+     * 
+     * @param term
+     * @param context
+     * @return
+     */
+    public ASTNode simplifySaturated(ASTNode term,final IExpressionContext context) {
+        return simplifySaturated( term , context , new EGraphSimplifier() );
+    }
+
+    /**
+     * Simplifies a term or expression by equality saturation.
+     * 
+     * @param term
+     * @param context
+     * @param simplifier simplifier to use , determines budgets and the cost function 
+     * @return
+     * @see #simplifySaturated(ASTNode, IExpressionContext)
+     */
+    public ASTNode simplifySaturated(ASTNode term,final IExpressionContext context,EGraphSimplifier simplifier) 
+    {
+        if ( simplifier == null ) {
+            throw new IllegalArgumentException("simplifier must not be NULL.");
+        }
+        final NodeFactory factory = new NodeFactory();
+        final ASTNode result;
+        if ( term instanceof BooleanExpression) 
+        {
+            final BooleanExpression expr = (BooleanExpression) term;
+            ASTNode left = simplifySaturated( expr.getLHS() , context , simplifier , factory );
+            ASTNode right = simplifySaturated( expr.getRHS() , context , simplifier , factory );
+            result = new BooleanExpression( left , right );
+        } else {
+            result = simplifySaturated( term , context , simplifier , factory );
+        }
+
+        // get rid of all variables we eliminated
+        context.retainOnly( gatherIdentifiers( result ) );
+        return result;
+    }
+
+    private ASTNode simplifySaturated(ASTNode term,IExpressionContext context,EGraphSimplifier simplifier,NodeFactory factory) 
+    {
+        final HashConsedNode input = factory.fromAST( term , context );
+        final HashConsedNode simplified = simplifier.simplify( input , factory );
+        debugPrintln("SIMPLIFY (saturated): "+input+" -> "+simplified+" ("+simplifier.getIterationCount()+
+                " iterations , "+simplifier.getGraphNodeCount()+" e-nodes , stopped: "+simplifier.getStopReason()+")");
+        return NodeFactory.toAST( simplified );
+    }
+
+    /**
+     * Simplifies a term or expression by converting it into an {@link AIG And-Inverter Graph} , applying
+     * {@link AIGTransformations#optimize(AIG) local rewriting and balancing} and converting the result back.
+     * 
+     * <p>This scales to much larger terms than the other simplifications , the result only uses
+     * <code>AND</code> , <code>OR</code> and <code>NOT</code> but is not necessarily minimal. Both sides of an expression
+     * are optimized in the same graph.</p>
+     * 
+     * @param term
+     * @param context
+     * @return
+     */
+    public ASTNode simplifyAIG(ASTNode term,final IExpressionContext context) 
+    {
+        final AIG aig = new AIG();
+        if ( term instanceof BooleanExpression) 
+        {
+            final BooleanExpression expr = (BooleanExpression) term;
+            aig.addOutput( aig.fromAST( expr.getLHS() , context ) );
+            aig.addOutput( aig.fromAST( expr.getRHS() , context ) );
+        } else {
+            aig.addOutput( aig.fromAST( term , context ) );
+        }
+
+        final AIGTransformations transformations = new AIGTransformations();
+        final AIG optimized = transformations.optimize( aig );
+        debugPrintln("SIMPLIFY (AIG): "+aig.getAndCount()+" ANDs , depth "+aig.getDepth()+" -> "+optimized.getAndCount()+
+                " ANDs , depth "+optimized.getDepth()+" ("+transformations.getRewriteCount()+" rewrites)");
+
+        final ASTNode result;
+        if ( term instanceof BooleanExpression) {
+            result = new BooleanExpression( optimized.toAST( optimized.getOutput( 0 ) ) , optimized.toAST( optimized.getOutput( 1 ) ) );
+        } else {
+            result = optimized.toAST( optimized.getOutput( 0 ) );
+        }
+
+        // get rid of all variables we eliminated
+        context.retainOnly( gatherIdentifiers( result ) );
+        return result;
+    }
+
+    /**
+     * Minimizes a term or expression to a sum of products with the least number of products , using
+     * the {@link QuineMcCluskey Quine-McCluskey} method.
+     * 
+     * <p>Variables bound to literal values are substituted first , the result only depends on
+     * the remaining variables.</p>
+     * 
+     * @param term
+     * @param context
+     * @return
+     */
+    public ASTNode minimize(ASTNode term,final IExpressionContext context) {
+        return minimize( term , context , new QuineMcCluskey() );
+    }
+
+    /**
+     * Minimizes a term or expression to a sum of products.
+     * 
+     * @param term
+     * @param context
+     * @param minimizer minimizer to use , {@link QuineMcCluskey} for an exact result or {@link Espresso} for terms with many variables
+     * @return
+     * @see #minimize(ASTNode, IExpressionContext)
+     */
+    public ASTNode minimize(ASTNode term,final IExpressionContext context,IMinimizer minimizer) 
+    {
+        if ( minimizer == null ) {
+            throw new IllegalArgumentException("minimizer must not be NULL.");
+        }
+        final NodeFactory factory = new NodeFactory();
+        final ASTNode result;
+        if ( term instanceof BooleanExpression) 
+        {
+            final BooleanExpression expr = (BooleanExpression) term;
+            ASTNode left = minimize( expr.getLHS() , context , minimizer , factory );
+            ASTNode right = minimize( expr.getRHS() , context , minimizer , factory );
+            result = new BooleanExpression( left , right );
+        } else {
+            result = minimize( term , context , minimizer , factory );
+        }
+
+        // get rid of all variables we eliminated
+        context.retainOnly( gatherIdentifiers( result ) );
+        return result;
+    }
+
+    private ASTNode minimize(ASTNode term,IExpressionContext context,IMinimizer minimizer,NodeFactory factory) 
+    {
+        final ASTNode input = NodeFactory.toAST( factory.fromAST( term , context ) );
+        final ASTNode minimized = minimizer.minimize( input );
+        debugPrintln("MINIMIZE: "+input+" -> "+minimized+" ("+minimizer.getProductCount()+" products , "+
+                minimizer.getLiteralCount()+" literals)");
+        return minimized;
+    }
+
     public void moveToTopLevel(ASTNode nodeToMove) {
 
         final List<ASTNode> pathFromRoot = nodeToMove.getPathFromRoot();
@@ -189,81 +467,98 @@ Assoziativgesetze 	  => (a and b) and c = a and (b and c)
          */
     }
 
+    /**
+     * Replaces terms that occur more than once with new variables.
+     * 
+     * <p>Terms are grouped by their {@link ASTNode#getFingerprint() fingerprints} and compared
+     * for equality so that hash collisions never substitute different terms. Only the outermost 
+     * occurrences of a repeated term are substituted , terms nested inside a substituted term are left alone.</p>
+     * 
+     * @param tree
+     * @param context context that receives the values of the new variables
+     * @return copy of the input tree with common terms replaced
+     */
     public ASTNode substituteCommonTerms(ASTNode tree,IExpressionContext context) {
 
-        ASTNode copy = tree.createCopy( true );
+        final ASTNode copy = tree.createCopy( true );
 
-        final Map<Integer,List<ASTNode>> result = new HashMap<>();
+        // terms with the same fingerprint are usually but not necessarily equal 
+        final Map<Long,List<CommonTerm>> termsByHash = new HashMap<>();
+        final Map<ASTNode,CommonTerm> termsByNode = new IdentityHashMap<>();
 
         final INodeVisitor visitor = new INodeVisitor() {
 
             @Override
             public boolean visit(ASTNode node, int currentDepth)
             {
-                final Integer hash = node.hashCode();
-                List<ASTNode> existing = result.get( hash );
-                if ( existing == null ) {
-                    existing = new ArrayList<>();
-                    result.put( hash , existing );
+                final Long hash = node.getFingerprint();
+                List<CommonTerm> candidates = termsByHash.get( hash );
+                if ( candidates == null ) {
+                    candidates = new ArrayList<>( 1 );
+                    termsByHash.put( hash , candidates );
+                }
+                CommonTerm term = null;
+                for ( CommonTerm candidate : candidates ) 
+                {
+                    if ( candidate.value.isEquals( node ) ) {
+                        term = candidate;
+                        break;
+                    }
+                }
+                if ( term == null ) {
+                    term = new CommonTerm( node );
+                    candidates.add( term );
                 }
-                existing.add( node );
+                term.count++;
+                termsByNode.put( node , term );
                 return true;
             }
         };
-        tree.visitInOrder( visitor );
+        copy.visitPreOrder( visitor );
 
-        outer:        
-            for ( Map.Entry<Integer,List<ASTNode>> entry : result.entrySet() ) 
+        final Stack<ASTNode> stack = new Stack<>();
+        stack.push( copy );
+        while ( ! stack.isEmpty() ) 
+        {
+            final ASTNode node = stack.pop();
+            final CommonTerm term = termsByNode.get( node );
+            if ( node.hasParent() && term.count > 1 && ! ( node instanceof IdentifierNode ) ) 
             {
-                final int hash = entry.getKey();
-
-                if ( entry.getValue().size() <= 1 )
-                {
-                    continue;
-                }
-
-                for ( ASTNode n : entry.getValue() ) 
-                {
-                    if ( n instanceof IdentifierNode) 
-                    {
-                        continue outer;
-                    }
+                if ( term.identifier == null ) {
+                    term.identifier = context.createIdentifier( term.value.createCopy( true ) );
+                    debugPrintln("SUBSTITUTE: "+term.value+" => "+term.identifier+" ( "+term.count+" times )");   
                 }
-
-                // create new variable
-                final ASTNode value = entry.getValue().get(0).createCopy(true);
-                final Identifier identifier = context.createIdentifier( value );
-
-                final boolean substituted = replaceMatchingTermsWithVariable(context, copy, hash, identifier);
-
-                if ( substituted ) {
-                    debugPrintln("SUBSTITUTE: "+value+" => "+identifier+" ( "+entry.getValue().size()+" times )");   
-                } else {
-                    context.remove( identifier );
-                } 
+                node.replaceWith( new IdentifierNode( term.identifier ) );
+                continue;
+            }
+            for ( ASTNode child : node.children() ) {
+                stack.push( child );
             }
+        }
         return copy;
     }
 
-    private boolean replaceMatchingTermsWithVariable(IExpressionContext context, ASTNode tree, final int hashToReplace, final Identifier identifier)
+    private static final class CommonTerm 
     {
-        final boolean[] substituted = { false };
-        final MutatingNodeVisitor substitutionVisitor = new MutatingNodeVisitor( context ) {
+        public final ASTNode value;
+        public int count;
+        public Identifier identifier;
 
-            @Override
-            protected void visit(ASTNode node, IExpressionContext context, IIterationContext it)
-            {
-                if ( node.hashCode() == hashToReplace && node.hasParent() ) {
-                    node.replaceWith( new IdentifierNode( identifier ) );
-                    it.astMutated();
-                    substituted[0] = true;
-                }
-            }
-        };
-        applyPreOrder( tree , substitutionVisitor );
-        return substituted[0];
+        public CommonTerm(ASTNode value) {
+            this.value = value;
+        }
     }
 
+    /**
+     * Checks whether both sides of an expression are equal.
+     *
+     * <p>If the sides do not evaluate to literal values , a SAT solver decides whether they are equal
+     * for all or for no assignment of the remaining variables.</p>
+     *
+     * @param expr
+     * @param context
+     * @return <code>null</code> if the result depends on the values of variables
+     */
     public Boolean isTrue(BooleanExpression expr,IExpressionContext context) {
 
         ASTNode lhs = expr.getLHS();
@@ -271,8 +566,17 @@ Assoziativgesetze 	  => (a and b) and c = a and (b and c)
 
         ASTNode value1 = lhs.evaluate( context );
         ASTNode value2= rhs.evaluate( context );
-        if ( value1 != null && value2 != null ) {
-            return value1.isEquivalent( value2 , context );
+        if ( value1 != null && value2 != null && value1.isLiteralValue() && value2.isLiteralValue() ) {
+            return value1.getLiteralValue( context ) == value2.getLiteralValue( context );
+        }
+
+        final ASTNode expanded = expand( expr , context , false );
+        final SATChecker checker = new SATChecker( context );
+        if ( checker.isTautology( expanded ) ) {
+            return Boolean.TRUE;
+        }
+        if ( checker.isContradiction( expanded ) ) {
+            return Boolean.FALSE;
         }
         return null;
     }
@@ -311,7 +615,7 @@ Assoziativgesetze 	  => (a and b) and c = a and (b and c)
             {
                 final ASTNode unwrapped = unwrap( node );
 
-                if ( unwrapped.hasParent()  ) 
+                if ( unwrapped.hasParent() && isBinaryAndOr( unwrapped ) && isBinaryAndOr( unwrap( unwrapped.leftChild() ) ) ) 
                 {
                     if ( unwrapped.isAND() ) 
                     {
@@ -368,6 +672,14 @@ Assoziativgesetze 	  => (a and b) and c = a and (b and c)
         return applyInOrder( result , visitor );
     }
 
+    /*
+     * The laws applied by simplifyTermFixedPoint() only handle AND / OR nodes with two children.
+     */
+    private static boolean isBinaryAndOr(ASTNode node) 
+    {
+        return ( node.isAND() || node.isOR() ) && node.getChildCount() == 2;
+    }
+
     private static boolean isNonTrivialTerm(ASTNode node) 
     {
         return node instanceof TermNode && ! node.child(0).isLeafNode();
@@ -390,10 +702,10 @@ Assoziativgesetze 	  => (a and b) and c = a and (b and c)
                     {
                         final ASTNode unwrapped = unwrap(matcher.parentMatch());
                         if ( unwrapped.isOR() ) {
-                            return n.isAND();
+                            return n.isAND() && isBinaryAndOr( n );
                         }  
                         if ( unwrapped.isAND() ) {
-                            return n.isOR();
+                            return n.isOR() && isBinaryAndOr( n );
                         }
                         throw new RuntimeException("Unreachable code reached");
                     }
@@ -520,7 +832,7 @@ Assoziativgesetze 	  => (a and b) and c = a and (b and c)
             public void visit(ASTNode node,IExpressionContext context,IIterationContext it) 
             {
                 final ASTNode unwrapped = unwrap( node );
-                if ( unwrapped.hasParent() && ( unwrapped.isAND() || unwrapped.isOR() ) ) 
+                if ( unwrapped.hasParent() && isBinaryAndOr( unwrapped ) ) 
                 {
                     final boolean isEquivalent = unwrap( unwrapped.leftChild() ).isEquivalent( 
                             unwrap( unwrapped.rightChild() ) , context );
@@ -574,7 +886,7 @@ Assoziativgesetze 	  => (a and b) and c = a and (b and c)
             public void visit(ASTNode node,IExpressionContext context,IIterationContext it) 
             {
                 final ASTNode unwrapped = unwrap( node );
-                if ( unwrapped.hasParent() && ( unwrapped.isOR() || unwrapped.isAND() ) ) 
+                if ( unwrapped.hasParent() && isBinaryAndOr( unwrapped ) ) 
                 {
                     final ASTNode leftChild = unwrap( unwrapped.child(0) );
                     final ASTNode rightChild = unwrap( unwrapped.child(1) );
@@ -613,7 +925,7 @@ Assoziativgesetze 	  => (a and b) and c = a and (b and c)
             public void visit(ASTNode node,IExpressionContext context,IIterationContext it) 
             {
                 final ASTNode unwrapped = unwrap( node );
-                if ( unwrapped.hasParent() && ( unwrapped.isOR() || unwrapped.isAND() ) ) 
+                if ( unwrapped.hasParent() && isBinaryAndOr( unwrapped ) ) 
                 {
                     final ASTNode leftChild = unwrap( unwrapped.child(0) );
                     final ASTNode rightChild = unwrap( unwrapped.child(1) );
@@ -652,7 +964,7 @@ Assoziativgesetze 	  => (a and b) and c = a and (b and c)
             public void visit(ASTNode node,IExpressionContext context,IIterationContext it) 
             {
                 final ASTNode unwrapped = unwrap( node );
-                if ( unwrapped.hasParent() && ( unwrapped.isOR() || unwrapped.isAND() ) ) 
+                if ( unwrapped.hasParent() && isBinaryAndOr( unwrapped ) ) 
                 {
                     final ASTNode leftChild = unwrap( unwrapped.child(0) );					
                     final ASTNode rightChild = unwrap( unwrapped.child(1) );
@@ -688,7 +1000,7 @@ Assoziativgesetze 	  => (a and b) and c = a and (b and c)
             public void visit(ASTNode node,IExpressionContext context,IIterationContext it) 
             {
                 final ASTNode unwrapped = unwrap( node );
-                if ( unwrapped.hasParent() && ( unwrapped.isOR() || unwrapped.isAND() ) ) 
+                if ( unwrapped.hasParent() && isBinaryAndOr( unwrapped ) ) 
                 {
                     final ASTNode leftChild = unwrap( unwrapped.child(0) );					
                     final ASTNode rightChild = unwrap( unwrapped.child(1) );
@@ -725,7 +1037,7 @@ Assoziativgesetze 	  => (a and b) and c = a and (b and c)
                 if ( unwrapped.isNOT() && unwrapped.hasParent()  )
                 {
                     final ASTNode child = unwrap( unwrapped.child(0) );
-                    if ( ( child.isAND() || child.isOR() ) ) 
+                    if ( isBinaryAndOr( child ) ) 
                     {
                         final ASTNode leftChild = unwrap( child.child(0) );					
                         final ASTNode rightChild = unwrap( child.child(1) );
@@ -760,7 +1072,7 @@ Assoziativgesetze 	  => (a and b) and c = a and (b and c)
             public void visit(ASTNode node,IExpressionContext context,IIterationContext it) 
             {
                 final ASTNode unwrapped = unwrap( node );
-                if ( unwrapped.hasParent() && ( unwrapped.isOR() || unwrapped.isAND() ) )
+                if ( unwrapped.hasParent() && isBinaryAndOr( unwrapped ) )
                 {
                     final ASTNode leftChild = unwrap( unwrapped.child(0) );					
                     final ASTNode rightChild = unwrap( unwrapped.child(1) );
@@ -802,55 +1114,17 @@ Assoziativgesetze 	  => (a and b) and c = a and (b and c)
     }
 
     /**
-     * Tries to reduce a term by replacing expressions that
-     * evaluate to a literal value (true or false) with the corresponding value.
+     * Tries to reduce a term by replacing variables bound to literal values with their values
+     * and folding literals.
      * 
      * @param term
      * @param context
      * @return
+     * @see ConstantFolder
      */
     public ASTNode reduce(ASTNode term,final IExpressionContext context) 
     {
-        if ( term instanceof BooleanExpression) 
-        {
-            final BooleanExpression expr = (BooleanExpression) term;
-            ASTNode left = internalReduce( expr.getLHS() , context );
-            ASTNode right = internalReduce( expr.getRHS() , context );
-            return new BooleanExpression( left , right );
-        } 
-        return internalReduce( term , context );        
-    }
-
-    protected ASTNode internalReduce(ASTNode term,final IExpressionContext context) 
-    {
-        final ASTNode result = term.createCopy( true );
-
-        final MutatingNodeVisitor visitor = new MutatingNodeVisitor( context ) {
-
-            @Override
-            public void visit(ASTNode node,IExpressionContext context,IIterationContext it) 
-            {
-                if ( node.hasParent() ) 
-                {
-                    if ( node instanceof IdentifierNode && ! node.hasLiteralValue( context ) ) {
-                        return;
-                    }
-
-                    final ASTNode reduced = node.evaluate( context );
-                    debugPrintln("REDUCE: "+node+" evaluates to "+reduced);                    
-                    if ( reduced != null && reduced != node && reduced != unwrap( node ) )
-                    {
-                        debugPrintln("REDUCE: Replacing "+node+" -> "+reduced);
-                        node.replaceWith( reduced );
-                        it.astMutated();
-                        it.stop();
-                    } 
-                }
-            }
-        };
-
-        applyPostOrder( result , visitor );
-        return result;
+        return ConstantFolder.fold( term , context );
     }
 
     public ASTNode expand(ASTNode term,IExpressionContext context,boolean deleteExpandedVars) 
@@ -896,8 +1170,65 @@ Assoziativgesetze 	  => (a and b) and c = a and (b and c)
 
     }
 
-    public ASTNode eval(ASTNode term,IExpressionContext context) {
-        return reduce( term , context);
+    /**
+     * Evaluates a term or expression.
+     * 
+     * <p>Terms whose variables are all bound to literal values are
+     * run through a {@link CompiledExpression}, everything else
+     * is {@link #reduce(ASTNode, IExpressionContext) reduced} as far as possible.
+     * Compiled programs are kept (and reused by later calls) as long as the term is
+     * not modified or garbage collected.</p>
+     * 
+     * @param term
+     * @param context
+     * @return
+     */
+    public ASTNode eval(ASTNode term,IExpressionContext context) 
+    {
+        if ( term instanceof BooleanExpression) 
+        {
+            final BooleanExpression expr = (BooleanExpression) term;
+            ASTNode left = internalEval( expr.getLHS() , context );
+            ASTNode right = internalEval( expr.getRHS() , context );
+            return new BooleanExpression( left , right );
+        } 
+        return internalEval( term , context );
+    }
+
+    protected ASTNode internalEval(ASTNode term,IExpressionContext context) 
+    {
+        final CompiledExpression program = getCompiledExpression( term );
+        if ( program != null )
+        {
+            final int value = program.tryEvaluate( context );
+            if ( value != ILiteralExpressionContext.NO_LITERAL ) 
+            {
+                return value == ILiteralExpressionContext.LITERAL_TRUE ? new TrueNode() : new FalseNode();
+            }
+        }
+        return ConstantFolder.fold( term , context );
+    }
+
+    /*
+     * Returns the program for a term , compiling it only if it was not compiled before or
+     * has been modified since (which invalidates its fingerprint). Returns NULL for
+     * terms that cannot be compiled (empty terms , incomplete operators , terms that need too deep a stack).
+     */
+    private CompiledExpression getCompiledExpression(ASTNode term)
+    {
+        final CompiledExpression cached = compiledTerms.get( term );
+        if ( cached != null ) {
+            return cached;
+        }
+        final CompiledExpression result;
+        try {
+            result = CompiledExpression.compile( term );
+        } 
+        catch(IllegalArgumentException e) {
+            return null;
+        }
+        compiledTerms.put( term , result );
+        return result;
     }
 
     protected static boolean applyInOrder(ASTNode term,MutatingNodeVisitor visitor) {
@@ -1005,7 +1336,53 @@ Assoziativgesetze 	  => (a and b) and c = a and (b and c)
         }
     }
 
+    private void assertEquivalent(IncrementalEquivalenceChecker checker,String step,ASTNode result) 
+    {
+        final ExpressionContext counterExample = checker.findCounterExample( result );
+        if ( counterExample != null ) {
+            throw new RuntimeException("Validation failed after "+step+": "+result.toString(false)+
+                    " is not equivalent to the input for\n"+counterExample);
+        }
+    }
+
     public void setDebug(boolean yesNo) {
         this.debug = yesNo;
     }
+
+    /**
+     * Enables or disables checking every single step of {@link #simplify(ASTNode, IExpressionContext)}.
+     * 
+     * <p>When enabled , the tree is checked for equivalence with the input after the initial reduction and after 
+     * each rewrite , using one {@link IncrementalEquivalenceChecker} per term. Steps that change the value of the term
+     * throw a <code>RuntimeException</code> holding a counter example.</p>
+     * 
+     * @param yesNo
+     */
+    public void setParanoid(boolean yesNo) {
+        this.paranoid = yesNo;
+    }
+
+    /**
+     * Enables or disables the distributive law in {@link #simplify(ASTNode, IExpressionContext)}.
+     * 
+     * <p>Disabled by default , see {@link BooleanLaws}.</p>
+     * 
+     * @param yesNo
+     */
+    public void setApplyDistributiveLaw(boolean yesNo) {
+        this.rewriteEngine = new RewriteEngine( BooleanLaws.createDefaultRules( yesNo ) );
+    }
+
+    /**
+     * Sets the balancer to apply to the results of {@link #simplify(ASTNode, IExpressionContext)}.
+     * 
+     * <p>The default rules flatten chains into n-ary nodes , so this mostly matters for 
+     * ordering operands by cost and for chains the rules did not touch. Defaults to {@link ChainBalancer#DEFAULT}.</p>
+     * 
+     * @param balancer balancer or <code>null</code> to disable balancing
+     * @see ChainBalancer
+     */
+    public void setChainBalancer(ChainBalancer balancer) {
+        this.chainBalancer = balancer;
+    }
 }
@@ -4,23 +4,70 @@ import org.apache.commons.lang.StringUtils;
 
 import de.codesourcery.booleanalgebra.ast.ASTNode;
 import de.codesourcery.booleanalgebra.ast.BooleanExpression;
+import de.codesourcery.booleanalgebra.ast.SymbolTable;
 import de.codesourcery.booleanalgebra.ast.TermNode;
 import de.codesourcery.booleanalgebra.exceptions.ParseException;
 import de.codesourcery.booleanalgebra.lexer.ILexer;
 import de.codesourcery.booleanalgebra.lexer.Lexer;
 import de.codesourcery.booleanalgebra.lexer.TokenType;
+import de.codesourcery.booleanalgebra.rewrite.ChainBalancer;
 
 public class BooleanExpressionParser
 {
+    private final SymbolTable symbolTable;
+    private boolean naryOperators = false;
+    private ChainBalancer chainBalancer;
+    
+    public BooleanExpressionParser() {
+        this( new SymbolTable() );
+    }
+    
+    /**
+     * Creates a parser that interns all identifiers using a given symbol table.
+     * 
+     * @param symbolTable
+     */
+    public BooleanExpressionParser(SymbolTable symbolTable) 
+    {
+        if (symbolTable == null) {
+            throw new IllegalArgumentException("symbolTable must not be NULL.");
+        }
+        this.symbolTable = symbolTable;
+    }
+    
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+    
+    /**
+     * Sets whether chains of the same operator should be parsed into a single (n-ary) AND / OR node.
+     * 
+     * @param yesNo
+     * @see TermNode#setNaryOperators(boolean)
+     */
+    public void setNaryOperators(boolean yesNo) {
+        this.naryOperators = yesNo;
+    }
+    
+    /**
+     * Sets the balancer to apply to parsed terms.
+     * 
+     * @param balancer balancer or <code>null</code> to keep chains of the same operator as they were parsed (the default)
+     * @see ChainBalancer
+     */
+    public void setChainBalancer(ChainBalancer balancer) {
+        this.chainBalancer = balancer;
+    }
+    
     public ASTNode parse(String expression,boolean wrapInTerm) {
         return internalParse( expression , wrapInTerm );
     }    
     
     private ASTNode internalParse(String expression,boolean wrapInTerm) 
     {
-        final ILexer lexer = new Lexer( new Scanner( expression ) );
+        final ILexer lexer = new Lexer( new Scanner( expression ) , symbolTable );
         
-        ASTNode lhs = unwrap( new TermNode().parse( lexer ) );
+        ASTNode lhs = unwrap( balance( new TermNode().setNaryOperators( naryOperators ).parse( lexer ) ) );
         
         if ( ! wrapInTerm && lhs instanceof TermNode) 
         {
@@ -39,7 +86,7 @@ public class BooleanExpressionParser
         
         lexer.read(TokenType.EQUALS );
         
-        ASTNode rhs = new TermNode().parse( lexer );
+        ASTNode rhs = balance( new TermNode().setNaryOperators( naryOperators ).parse( lexer ) );
 
         if ( wrapInTerm && !(rhs instanceof TermNode) ) {
             rhs = new TermNode( rhs );
@@ -51,6 +98,10 @@ public class BooleanExpressionParser
         return new BooleanExpression( unwrap(lhs) , unwrap( rhs ) );
     }
     
+    private ASTNode balance(ASTNode term) {
+        return chainBalancer != null ? chainBalancer.balance( term ) : term;
+    }
+    
     public ASTNode unwrap(ASTNode n) {
         
         ASTNode current = n;
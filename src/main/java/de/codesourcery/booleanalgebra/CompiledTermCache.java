@@ -0,0 +1,138 @@
+package de.codesourcery.booleanalgebra;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.eval.CompiledExpression;
+
+/**
+ * Weakly keeps the {@link CompiledExpression} of terms , keyed by node identity.
+ *
+ * <p>{@link ASTNode#hashCode()} and {@link ASTNode#equals(Object)} depend on the (mutable) structure of a term ,
+ * so terms can't be used as keys of a regular map. Entries remember the {@link ASTNode#getFingerprint() fingerprint}
+ * of the term when it got compiled and are ignored (and replaced) once the term has been modified.
+ * Entries of terms that got garbage collected are dropped on the next modification of the cache.</p>
+ *
+ * <p>Lookups do not allocate. Instances are not thread-safe.</p>
+ */
+final class CompiledTermCache
+{
+    private final ReferenceQueue<ASTNode> queue = new ReferenceQueue<>();
+
+    private Entry[] table = new Entry[16];
+    private int size;
+
+    private static final class Entry extends WeakReference<ASTNode>
+    {
+        public final int hash;
+        public long fingerprint;
+        public CompiledExpression program;
+        public Entry next;
+
+        public Entry(ASTNode term,int hash,ReferenceQueue<ASTNode> queue) {
+            super( term , queue );
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Returns the program of a term.
+     *
+     * @param term
+     * @return program or <code>null</code> if the term was not compiled before or has been modified since
+     */
+    public CompiledExpression get(ASTNode term)
+    {
+        final int hash = System.identityHashCode( term );
+        for ( Entry entry = table[ hash & ( table.length - 1 ) ] ; entry != null ; entry = entry.next )
+        {
+            if ( entry.get() == term ) {
+                return entry.fingerprint == term.getFingerprint() ? entry.program : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores the program of a term , replacing any previous one.
+     *
+     * @param term
+     * @param program
+     */
+    public void put(ASTNode term,CompiledExpression program)
+    {
+        expungeStaleEntries();
+        final int hash = System.identityHashCode( term );
+        final int index = hash & ( table.length - 1 );
+        for ( Entry entry = table[ index ] ; entry != null ; entry = entry.next )
+        {
+            if ( entry.get() == term )
+            {
+                entry.fingerprint = term.getFingerprint();
+                entry.program = program;
+                return;
+            }
+        }
+        final Entry entry = new Entry( term , hash , queue );
+        entry.fingerprint = term.getFingerprint();
+        entry.program = program;
+        entry.next = table[ index ];
+        table[ index ] = entry;
+        if ( ++size > table.length * 3 / 4 ) {
+            resize();
+        }
+    }
+
+    /**
+     * Returns the number of entries , including ones whose terms
+     * got garbage collected but were not dropped yet.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    private void expungeStaleEntries()
+    {
+        Object stale;
+        while ( ( stale = queue.poll() ) != null )
+        {
+            final Entry removed = (Entry) stale;
+            final int index = removed.hash & ( table.length - 1 );
+            Entry previous = null;
+            for ( Entry entry = table[ index ] ; entry != null ; previous = entry , entry = entry.next )
+            {
+                if ( entry == removed )
+                {
+                    if ( previous == null ) {
+                        table[ index ] = entry.next;
+                    } else {
+                        previous.next = entry.next;
+                    }
+                    removed.program = null;
+                    size--;
+                    break;
+                }
+            }
+        }
+    }
+
+    private void resize()
+    {
+        final Entry[] newTable = new Entry[ table.length * 2 ];
+        for ( Entry entry : table )
+        {
+            while ( entry != null )
+            {
+                final Entry next = entry.next;
+                final int index = entry.hash & ( newTable.length - 1 );
+                entry.next = newTable[ index ];
+                newTable[ index ] = entry;
+                entry = next;
+            }
+        }
+        table = newTable;
+    }
+}
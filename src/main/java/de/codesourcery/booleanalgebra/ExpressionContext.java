@@ -8,7 +8,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -17,10 +16,13 @@ import de.codesourcery.booleanalgebra.ast.FalseNode;
 import de.codesourcery.booleanalgebra.ast.Identifier;
 import de.codesourcery.booleanalgebra.ast.TrueNode;
 
-public class ExpressionContext implements IExpressionContext {
+public class ExpressionContext implements ILiteralExpressionContext {
 
     private final Map<Identifier,ASTNode> variables = new HashMap<Identifier,ASTNode>();
     
+    // suffix of the last identifier returned by createIdentifier()
+    private long lastTemporaryId = 1;
+    
     @Override
     public ASTNode lookup(Identifier identifier)
     {
@@ -190,6 +192,16 @@ public class ExpressionContext implements IExpressionContext {
         return variables.get(identifier);
     }
 
+    @Override
+    public int lookupLiteral(Identifier identifier)
+    {
+        final ASTNode value = tryLookup( identifier );
+        if ( value == null || ! value.isLiteralValue() ) {
+            return NO_LITERAL;
+        }
+        return value.getLiteralValue( this ) ? LITERAL_TRUE : LITERAL_FALSE;
+    }
+
 	@Override
 	public void set(Identifier name, ASTNode value) {
 		if ( name == null ) {
@@ -198,6 +210,7 @@ public class ExpressionContext implements IExpressionContext {
 		variables.put( name , value );
 	}   
 	
+	@Override
 	public void define(Identifier name, boolean value) {
 		set( name , value ? new TrueNode() : new FalseNode() );
 	}
@@ -250,10 +263,9 @@ public class ExpressionContext implements IExpressionContext {
     public Identifier createIdentifier(ASTNode value)
     {
         final String prefix = "_tmp_";
-        final AtomicLong ID = new AtomicLong(1);
         String name = "";
         do {
-            name = prefix + ID.incrementAndGet();
+            name = prefix + (++lastTemporaryId);
         } while ( tryLookup( new Identifier( name ) ) != null );
         
         final Identifier id = new Identifier( name );
@@ -0,0 +1,56 @@
+package de.codesourcery.booleanalgebra;
+
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+
+/**
+ * Literal value access for any {@link IExpressionContext}.
+ *
+ * <p>Contexts implementing {@link ILiteralExpressionContext} are accessed directly , all others
+ * through {@link IExpressionContext#tryLookup(Identifier)} and {@link IExpressionContext#set(Identifier, ASTNode)}.</p>
+ */
+public final class ExpressionContexts
+{
+    private ExpressionContexts() {
+    }
+
+    /**
+     * Looks up the literal value of a variable.
+     *
+     * @param context
+     * @param identifier
+     * @return {@link ILiteralExpressionContext#LITERAL_TRUE} , {@link ILiteralExpressionContext#LITERAL_FALSE} or
+     * {@link ILiteralExpressionContext#NO_LITERAL} if the variable is unknown or not bound to a literal value
+     * @see ILiteralExpressionContext#lookupLiteral(Identifier)
+     */
+    public static int lookupLiteral(IExpressionContext context,Identifier identifier)
+    {
+        if ( context instanceof ILiteralExpressionContext ) {
+            return ((ILiteralExpressionContext) context).lookupLiteral( identifier );
+        }
+        final ASTNode value = context.tryLookup( identifier );
+        if ( value == null || ! value.isLiteralValue() ) {
+            return ILiteralExpressionContext.NO_LITERAL;
+        }
+        return value.getLiteralValue( context ) ? ILiteralExpressionContext.LITERAL_TRUE : ILiteralExpressionContext.LITERAL_FALSE;
+    }
+
+    /**
+     * Binds a variable to a literal value.
+     *
+     * @param context
+     * @param name
+     * @param value
+     * @see ILiteralExpressionContext#define(Identifier, boolean)
+     */
+    public static void define(IExpressionContext context,Identifier name,boolean value)
+    {
+        if ( context instanceof ILiteralExpressionContext ) {
+            ((ILiteralExpressionContext) context).define( name , value );
+        } else {
+            context.set( name , value ? new TrueNode() : new FalseNode() );
+        }
+    }
+}
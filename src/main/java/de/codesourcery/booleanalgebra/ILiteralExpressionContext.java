@@ -0,0 +1,37 @@
+package de.codesourcery.booleanalgebra;
+
+import de.codesourcery.booleanalgebra.ast.Identifier;
+
+/**
+ * An expression context that can read and write literal values without going through {@link de.codesourcery.booleanalgebra.ast.ASTNode}s.
+ *
+ * <p>Use {@link ExpressionContexts} to access literal values of contexts that may not implement this interface.</p>
+ */
+public interface ILiteralExpressionContext extends IExpressionContext
+{
+    /**
+     * Returned by {@link #lookupLiteral(Identifier)} for variables that are not bound to a literal value.
+     */
+    public static final int NO_LITERAL = -1;
+
+    public static final int LITERAL_FALSE = 0;
+
+    public static final int LITERAL_TRUE = 1;
+
+    /**
+     * Looks up the literal value of a variable without creating any nodes.
+     *
+     * @param identifier
+     * @return {@link #LITERAL_TRUE} , {@link #LITERAL_FALSE} or {@link #NO_LITERAL} if the variable
+     * is unknown or not bound to a literal value
+     */
+    public int lookupLiteral(Identifier identifier);
+
+    /**
+     * Binds a variable to a literal value.
+     *
+     * @param name
+     * @param value
+     */
+    public void define(Identifier name,boolean value);
+}
@@ -2,10 +2,9 @@ package de.codesourcery.booleanalgebra;
 
 import java.io.BufferedReader;
 import java.io.Console;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import org.apache.commons.lang.ArrayUtils;
@@ -13,10 +12,14 @@ import org.apache.commons.lang.StringUtils;
 
 import de.codesourcery.booleanalgebra.ast.ASTNode;
 import de.codesourcery.booleanalgebra.ast.BooleanExpression;
-import de.codesourcery.booleanalgebra.ast.FalseNode;
 import de.codesourcery.booleanalgebra.ast.Identifier;
 import de.codesourcery.booleanalgebra.ast.TermNode;
-import de.codesourcery.booleanalgebra.ast.TrueNode;
+import de.codesourcery.booleanalgebra.bdd.BDDFactory;
+import de.codesourcery.booleanalgebra.bdd.VariableOrdering;
+import de.codesourcery.booleanalgebra.eval.TruthTable;
+import de.codesourcery.booleanalgebra.minimize.Espresso;
+import de.codesourcery.booleanalgebra.sat.DimacsExporter;
+import de.codesourcery.booleanalgebra.sat.SATChecker;
 
 public class Main
 {
@@ -125,7 +128,16 @@ public class Main
             unsetVariable( partsWithoutCommand );
         }   	    
         else if ( cmd.equalsIgnoreCase("simplify" ) ) {
-            simplify();
+            simplify( partsWithoutCommand );
+        }
+        else if ( cmd.equalsIgnoreCase("minimize" ) ) {
+            minimize( partsWithoutCommand );
+        }
+        else if ( cmd.equalsIgnoreCase("bdd" ) ) {
+            printBDD( partsWithoutCommand );
+        }
+        else if ( cmd.equalsIgnoreCase("dimacs" ) ) {
+            exportDimacs( partsWithoutCommand );
         }
         else if ( cmd.equalsIgnoreCase("truth" ) ) {
             printTruthTable();
@@ -168,42 +180,35 @@ public class Main
         
         transformer.setDebug( false );
         
-        final ASTNode copy = transformer.expand( term , context , false );        
-
-        final IValidator validator = new IValidator() {
-
-            private boolean firstRow = true;
-            @Override
-            public boolean validate(IExpressionContext ctx)
+        // variables bound to literal values do not need columns of their own
+        final ASTNode copy = transformer.reduce( transformer.expand( term , context , false ) , context );        
+
+        final List<Identifier> vars = TruthTable.gatherVariables( copy );
+        final TruthTable lhs;
+        final TruthTable rhs;
+        if ( copy instanceof BooleanExpression ) {
+            lhs = TruthTable.compute( ((BooleanExpression) copy).getLHS() , vars );
+            rhs = TruthTable.compute( ((BooleanExpression) copy).getRHS() , vars );
+        } else {
+            lhs = TruthTable.compute( copy , vars );
+            rhs = null;
+        }
+        
+        final ExpressionContext rowContext = (ExpressionContext) context.createCopy();
+        for ( long row = 0 ; row < lhs.getRowCount() ; row++ ) 
+        {
+            lhs.assignRow( row , rowContext );
+            
+            String value = Boolean.toString( lhs.getValue( row ) );
+            if ( rhs != null ) 
             {
-                ExpressionContext context = (ExpressionContext) ctx;
-                ASTNode evaluated = transformer.reduce( copy , ctx.createCopy() ); // note that reduce() will remove variables from the context so we need to pass in a copy here
-                boolean expressionIsFalse = false;
-                if ( evaluated instanceof BooleanExpression) 
-                {
-                    final ASTNode lhs = ((BooleanExpression) evaluated).getLHS();
-                    final ASTNode rhs = ((BooleanExpression) evaluated).getRHS();
-                    expressionIsFalse = ! lhs.isEquivalent( rhs  , ctx );
-                }
-                String value = evaluated.toString(true);
-                if ( expressionIsFalse ) {
+                value += " = "+rhs.getValue( row );
+                if ( lhs.getValue( row ) != rhs.getValue( row ) ) {
                     value += " (!!)";
                 }
-                if ( firstRow ) 
-                {
-                    System.out.println( context.toString(true , term.toString(true) , value  ) );    
-                    firstRow = false;
-                } else {
-                    System.out.println( context.toString(false , term.toString(true) , value  ) );    
-                }
-                return true;
             }
-        };
-        
-
-        final List<Identifier> vars = new ArrayList<Identifier>( transformer.gatherIdentifiers( copy ) );
-        Collections.sort( vars );
-        assertTermsAreEquivalent( context.createCopy() , validator , vars );
+            System.out.println( rowContext.toString( row == 0 , term.toString(true) , value  ) );    
+        }
         transformer.setDebug( true );
     }
 
@@ -226,7 +231,10 @@ public class Main
         System.out.println("resetVars                     - sets all variables to 'undefined'");
         System.out.println("set <identifier> <expression> - set a variable to a given value/expression");
         System.out.println("show                          - prints the current expression and variable definitions");
-        System.out.println("simplify                      - try to simplify the expression");
+        System.out.println("simplify [saturate|aig]       - try to simplify the expression ('saturate' uses equality saturation , 'aig' And-Inverter Graph rewriting)");
+        System.out.println("minimize [heuristic]          - minimize the expression to a sum of products ('heuristic' for many variables)");
+        System.out.println("bdd [dfs|force] [sift]        - print BDD size for a variable order ('sift' to improve it)");
+        System.out.println("dimacs <file> [pg]            - write CNF of the expression in DIMACS format ('pg' for Plaisted-Greenbaum)");
         System.out.println("truth                         - print truth table");
         System.out.println("quit                          - terminate application");
         System.out.println();
@@ -312,65 +320,120 @@ public class Main
         System.out.println("SET "+identifier+" = "+toString( parsedValue ) );
     }	
 
-    private void simplify()
+    private void simplify(String[] args)
     {
         if ( term == null ) {
             System.out.println("No term defined.");
             return;
         }
-        term = transformer.simplify( term , context );
+        if ( args.length > 0 && args[0].equalsIgnoreCase("saturate") ) {
+            term = transformer.simplifySaturated( term , context );
+        } else if ( args.length > 0 && args[0].equalsIgnoreCase("aig") ) {
+            term = transformer.simplifyAIG( term , context );
+        } else if ( args.length > 0 ) {
+            System.err.println("Unknown simplify mode '"+args[0]+"'");
+            return;
+        } else {
+            term = transformer.simplify( term , context );
+        }
         System.out.println("Simplified: "+toString( term ) );
     }
 
-    protected interface IValidator {
-        public boolean validate(IExpressionContext ctx);
+    private void minimize(String[] args)
+    {
+        if ( term == null ) {
+            System.out.println("No term defined.");
+            return;
+        }
+        if ( args.length > 0 && args[0].equalsIgnoreCase("heuristic") ) {
+            term = transformer.minimize( term , context , new Espresso() );
+        } else if ( args.length > 0 ) {
+            System.err.println("Unknown minimize mode '"+args[0]+"'");
+            return;
+        } else {
+            term = transformer.minimize( term , context );
+        }
+        System.out.println("Minimized: "+toString( term ) );
     }
 
-    public void assertTermsAreEquivalent(final ASTNode input , final ASTNode output) 
+    private void printBDD(String[] args)
     {
-        final IValidator v = new IValidator() {
+        if ( term == null ) {
+            System.err.println("No expression defined.");
+            return;
+        }
 
-            @Override
-            public boolean validate(IExpressionContext context) {
-                ASTNode val1 = input.evaluate( context );
-                ASTNode val2 = output.evaluate( context );
-                return val1.isEquivalent( val2 , context); 
+        final ASTNode copy = transformer.expand( term , context , false );
+        List<Identifier> order = VariableOrdering.firstOccurrence( copy );
+        boolean sift = false;
+        for ( String arg : args )
+        {
+            if ( arg.equalsIgnoreCase("force") ) {
+                order = VariableOrdering.force( copy );
+            } else if ( arg.equalsIgnoreCase("sift") ) {
+                sift = true;
+            } else if ( ! arg.equalsIgnoreCase("dfs") ) {
+                System.err.println("Unknown BDD option '"+arg+"'");
+                return;
             }
-        };
+        }
 
-        final List<Identifier> vars = new ArrayList<Identifier>( transformer.gatherIdentifiers( input ) );		
-        assertTermsAreEquivalent( context.createCopy() , v , vars );
+        final BDDFactory factory = new BDDFactory( order );
+        final int bdd = factory.ref( factory.fromAST( copy , context ) );
+        System.out.println("Order: "+factory.getVariables() );
+        System.out.println("Nodes: "+factory.getNodeCount( bdd )+" , satisfying assignments: "+factory.countModels( bdd ) );
+        if ( sift )
+        {
+            factory.reorder();
+            System.out.println("Sifted order: "+factory.getVariables() );
+            System.out.println("Nodes after sifting: "+factory.getNodeCount( bdd ) );
+        }
     }
 
-    public void assertTermsAreEquivalent(IExpressionContext context , IValidator validator,List<Identifier> vars) 
+    private void exportDimacs(String[] args)
     {
-        final List<Identifier> reversedVars = new ArrayList<Identifier>( vars );
-        Collections.reverse( reversedVars );
-        
-        // size = 1 => 1 << 1 => 2
-        // size = 2 => 1 << 2 => 4
-        long maxValue = vars.isEmpty() ? 0 : 1<< vars.size();
-        for ( long val = 0 ; val < maxValue ; val++ ) 
+        if ( term == null ) {
+            System.err.println("No expression defined.");
+            return;
+        }
+        if ( args.length == 0 || args.length > 2 || ( args.length == 2 && ! args[1].equalsIgnoreCase("pg") ) ) {
+            System.out.println("Syntax: DIMACS <file> [pg]");
+            return;
+        }
+
+        final DimacsExporter exporter = new DimacsExporter();
+        exporter.setPlaistedGreenbaum( args.length == 2 );
+        final ASTNode copy = transformer.expand( term , context , false );
+        try 
         {
-            int mask = 1;
-            for ( Identifier id : reversedVars ) 
-            {
-                final ASTNode value = context.tryLookup( id );
-                if ( value == null || value.isLiteralValue() ) {
-                    final ASTNode bitValue = ( val & mask) != 0 ? new TrueNode() : new FalseNode();
-                    context.set( id  , bitValue );
-                    mask = mask << 1;
-                }
+            final FileOutputStream out = new FileOutputStream( args[0] );
+            try {
+                exporter.export( copy , context , out.getChannel() );
+            } finally {
+                out.close();
             }
+        } 
+        catch (IOException e) {
+            System.err.println("Failed to write "+args[0]+": "+e.getMessage());
+            return;
+        }
+        System.out.println("Wrote "+exporter.getVariableCount()+" variables and "+exporter.getClauseCount()+" clauses to "+args[0]);
+    }
 
-            if ( ! validator.validate( context ) )
-            {
-                System.out.println("\n------------------------");
-                System.out.println( "\nVariables:\n\n"+context.toString() );
-                System.out.println("\n------------------------");
+    public void assertTermsAreEquivalent(final ASTNode input , final ASTNode output) 
+    {
+        final ASTNode expandedInput = transformer.expand( input , context , false );
+        final ASTNode expandedOutput = transformer.expand( output , context , false );
+        
+        final ExpressionContext rowContext = new SATChecker().findCounterExample( expandedInput , expandedOutput );
+        if ( rowContext != null ) 
+        {
+            
+            System.out.println("\n------------------------");
+            System.out.println( "\nVariables:\n\n"+rowContext.toString() );
+            System.out.println("\n------------------------");
 
-                throw new RuntimeException("validator failed.");
-            }
+            throw new RuntimeException("validator failed.");
         }
     }
 
@@ -391,7 +454,7 @@ public class Main
         final ExpressionContext ctx = new ExpressionContext();
         ASTNode term = parseTerm( expr );
 
-        ASTNode reduced = term.evaluate( ctx );
+        ASTNode reduced = transformer.reduce( term , ctx );
         System.out.println("REDUCED: "+term+" -> "+reduced.toString(true) );
     }    
 
@@ -416,7 +479,7 @@ public class Main
             System.out.print( " | "+padRight( " c= "+ctx.lookup( c ) , 10 ) );
             System.out.print(" | "+expr+" = "+term.evaluate( ctx ) );
 
-            ASTNode reduced = term.evaluate( ctx );
+            ASTNode reduced = transformer.reduce( term , ctx );
             System.out.print(" | reduced = "+reduced);
             System.out.println();
         }
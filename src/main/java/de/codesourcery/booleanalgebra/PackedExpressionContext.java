@@ -0,0 +1,354 @@
+package de.codesourcery.booleanalgebra;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.SymbolTable;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+
+/**
+ * An expression context that stores literal values as bits.
+ *
+ * <p>Variables are mapped to dense indices by a {@link SymbolTable}. For each index
+ * one bit tells whether the variable is bound to a literal value and a second bit
+ * holds that value. Only variables bound to non-literal terms are kept in a (sparse) map.</p>
+ *
+ * <p>{@link #createCopy()} clones the two bit arrays and shares the map of non-literal
+ * bindings until one of the contexts modifies it. Because of this sharing, non-literal
+ * values are copied when they are {@link #tryLookup(Identifier) looked up}, so callers
+ * can never modify a term stored in the context.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ */
+public class PackedExpressionContext implements ILiteralExpressionContext
+{
+    private final SymbolTable symbols;
+
+    private long[] known;
+    private long[] values;
+
+    private Map<Identifier,ASTNode> expressions;
+    private boolean expressionsShared;
+
+    // suffix of the last identifier returned by createIdentifier()
+    private long lastTemporaryId = 1;
+
+    public PackedExpressionContext() {
+        this( new SymbolTable() );
+    }
+
+    public PackedExpressionContext(SymbolTable symbols)
+    {
+        if (symbols == null) {
+            throw new IllegalArgumentException("symbols must not be NULL.");
+        }
+        this.symbols = symbols;
+        this.known = new long[ wordCount( symbols.size() ) ];
+        this.values = new long[ known.length ];
+        this.expressions = new HashMap<>();
+    }
+
+    private PackedExpressionContext(PackedExpressionContext other)
+    {
+        this.symbols = other.symbols;
+        this.known = other.known.clone();
+        this.values = other.values.clone();
+        this.expressions = other.expressions;
+        this.expressionsShared = true;
+        other.expressionsShared = true;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    @Override
+    public IExpressionContext createCopy() {
+        return new PackedExpressionContext( this );
+    }
+
+    /**
+     * Binds a variable to a literal value.
+     *
+     * @param identifier
+     * @param value
+     */
+    @Override
+    public void define(Identifier identifier,boolean value)
+    {
+        if (identifier == null) {
+            throw new IllegalArgumentException("identifier must not be NULL.");
+        }
+        defineInterned( symbols.intern( identifier ) , value );
+    }
+
+    private void defineInterned(Identifier interned,boolean value)
+    {
+        if ( ! expressions.isEmpty() && expressions.containsKey( interned ) ) {
+            modifiableExpressions().remove( interned );
+        }
+        define( interned.getIndex() , value );
+    }
+
+    /**
+     * Binds a variable to a literal value.
+     *
+     * <p>Note that unlike {@link #define(Identifier, boolean)} this method does not
+     * remove a non-literal value the variable might be bound to.</p>
+     *
+     * @param index the variable's index in this context's symbol table
+     * @param value
+     */
+    public void define(int index,boolean value)
+    {
+        checkIndex( index );
+        ensureCapacity( index );
+        final int word = index >>> 6;
+        final long mask = 1L << index;
+        known[word] |= mask;
+        if ( value ) {
+            values[word] |= mask;
+        } else {
+            values[word] &= ~mask;
+        }
+    }
+
+    /**
+     * Checks whether a variable is bound to a literal value.
+     *
+     * @param index the variable's index in this context's symbol table
+     * @return
+     */
+    public boolean hasLiteralValue(int index)
+    {
+        checkIndex( index );
+        final int word = index >>> 6;
+        return word < known.length && ( known[word] & ( 1L << index ) ) != 0;
+    }
+
+    public boolean hasLiteralValue(Identifier identifier)
+    {
+        final int index = symbols.indexOf( identifier );
+        return index != -1 && hasLiteralValue( index );
+    }
+
+    /**
+     * Returns the literal value of a variable.
+     *
+     * @param index the variable's index in this context's symbol table
+     * @return
+     * @throws IllegalArgumentException if the variable is not bound to a literal value
+     */
+    public boolean getLiteralValue(int index)
+    {
+        if ( ! hasLiteralValue( index ) ) {
+            throw new IllegalArgumentException("Variable '"+symbols.get( index )+"' has no literal value");
+        }
+        return ( values[ index >>> 6 ] & ( 1L << index ) ) != 0;
+    }
+
+    public boolean getLiteralValue(Identifier identifier)
+    {
+        final int index = symbols.indexOf( identifier );
+        if ( index == -1 ) {
+            throw new IllegalArgumentException("Variable '"+identifier+"' has no literal value");
+        }
+        return getLiteralValue( index );
+    }
+
+    @Override
+    public int lookupLiteral(Identifier identifier)
+    {
+        if (identifier == null) {
+            throw new IllegalArgumentException("identifier must not be NULL.");
+        }
+        final int index = symbols.indexOf( identifier );
+        if ( index == -1 || ! hasLiteralValue( index ) ) {
+            return NO_LITERAL;
+        }
+        return ( values[ index >>> 6 ] & ( 1L << index ) ) != 0 ? LITERAL_TRUE : LITERAL_FALSE;
+    }
+
+    @Override
+    public ASTNode lookup(Identifier identifier)
+    {
+        final ASTNode result = tryLookup( identifier );
+        if ( result == null ) {
+            throw new RuntimeException("Unknown variable '"+identifier+"'");
+        }
+        return result;
+    }
+
+    @Override
+    public ASTNode tryLookup(Identifier identifier)
+    {
+        if (identifier == null) {
+            throw new IllegalArgumentException("identifier must not be NULL.");
+        }
+        final int index = symbols.indexOf( identifier );
+        if ( index == -1 ) {
+            return null;
+        }
+        if ( hasLiteralValue( index ) ) {
+            return getLiteralValue( index ) ? new TrueNode() : new FalseNode();
+        }
+        final ASTNode value = expressions.get( identifier );
+        return value != null ? value.createCopy( true ) : null;
+    }
+
+    @Override
+    public void set(Identifier name, ASTNode value)
+    {
+        if ( name == null ) {
+            throw new IllegalArgumentException("name must not be null");
+        }
+        if ( value == null ) {
+            remove( name );
+            return;
+        }
+        final Identifier interned = symbols.intern( name );
+        if ( value.isLiteralValue() ) {
+            defineInterned( interned , value.getLiteralValue( this ) );
+            return;
+        }
+        clearBit( interned.getIndex() );
+        modifiableExpressions().put( interned , value );
+    }
+
+    @Override
+    public Set<Identifier> getAllIdentifiers()
+    {
+        final Set<Identifier> result = new HashSet<>( expressions.keySet() );
+        for ( int word = 0 ; word < known.length ; word++ )
+        {
+            long bits = known[word];
+            while ( bits != 0 )
+            {
+                result.add( symbols.get( word*64 + Long.numberOfTrailingZeros( bits ) ) );
+                bits &= bits - 1;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Identifier createIdentifier(ASTNode value)
+    {
+        final String prefix = "_tmp_";
+        Identifier candidate;
+        int index;
+        do {
+            candidate = new Identifier( prefix + (++lastTemporaryId) );
+            index = symbols.indexOf( candidate );
+        } while ( index != -1 && ( hasLiteralValue( index ) || expressions.containsKey( candidate ) ) );
+
+        // only the name that actually gets used is added to the symbol table
+        final Identifier result = symbols.intern( candidate );
+        set( result , value );
+        return result;
+    }
+
+    @Override
+    public void retainOnly(Set<Identifier> ids)
+    {
+        if (ids == null) {
+            throw new IllegalArgumentException("ids must not be null");
+        }
+        for ( Identifier id : getAllIdentifiers() )
+        {
+            if ( ! ids.contains( id ) ) {
+                remove( id );
+            }
+        }
+    }
+
+    @Override
+    public void remove(Identifier identifier)
+    {
+        if (identifier == null) {
+            throw new IllegalArgumentException("identifier must not be null");
+        }
+        final int index = symbols.indexOf( identifier );
+        if ( index != -1 )
+        {
+            clearBit( index );
+            if ( expressions.containsKey( identifier ) ) {
+                modifiableExpressions().remove( identifier );
+            }
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        Arrays.fill( known , 0 );
+        Arrays.fill( values , 0 );
+        expressions = new HashMap<>();
+        expressionsShared = false;
+    }
+
+    private void clearBit(int index)
+    {
+        final int word = index >>> 6;
+        if ( word < known.length ) {
+            known[word] &= ~( 1L << index );
+        }
+    }
+
+    private Map<Identifier,ASTNode> modifiableExpressions()
+    {
+        if ( expressionsShared ) {
+            expressions = new HashMap<>( expressions );
+            expressionsShared = false;
+        }
+        return expressions;
+    }
+
+    private void checkIndex(int index)
+    {
+        if ( index < 0 || index >= symbols.size() ) {
+            throw new IndexOutOfBoundsException("No variable with index "+index);
+        }
+    }
+
+    private void ensureCapacity(int index)
+    {
+        final int word = index >>> 6;
+        if ( word >= known.length )
+        {
+            final int newLength = Math.max( word + 1 , wordCount( symbols.size() ) );
+            known = Arrays.copyOf( known , newLength );
+            values = Arrays.copyOf( values , newLength );
+        }
+    }
+
+    private static int wordCount(int bitCount) {
+        return ( bitCount + 63 ) >>> 6;
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder buffer = new StringBuilder("{");
+        for ( Iterator<Identifier> it = symbols.getIdentifiers().iterator() ; it.hasNext() ; )
+        {
+            final Identifier id = it.next();
+            final ASTNode value = tryLookup( id );
+            if ( value != null )
+            {
+                if ( buffer.length() > 1 ) {
+                    buffer.append(", ");
+                }
+                buffer.append( id ).append("=").append( value.toString( false ) );
+            }
+        }
+        return buffer.append("}").toString();
+    }
+}
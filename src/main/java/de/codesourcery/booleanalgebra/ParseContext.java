@@ -6,7 +6,7 @@ import de.codesourcery.booleanalgebra.ast.ASTNode;
 import de.codesourcery.booleanalgebra.ast.Identifier;
 import de.codesourcery.booleanalgebra.lexer.Lexer;
 
-public class ParseContext extends Lexer implements IParseContext {
+public class ParseContext extends Lexer implements IParseContext , ILiteralExpressionContext {
 
 	private final IExpressionContext ctx;
 	
@@ -28,11 +28,21 @@ public class ParseContext extends Lexer implements IParseContext {
 		return ctx.tryLookup(identifier);
 	}
 
+	@Override
+	public int lookupLiteral(Identifier identifier) {
+		return ExpressionContexts.lookupLiteral( ctx , identifier );
+	}
+
 	@Override
 	public void set(Identifier name, ASTNode value) {
 		ctx.set( name , value );
 	}
 
+	@Override
+	public void define(Identifier name, boolean value) {
+		ExpressionContexts.define( ctx , name , value );
+	}
+
 	@Override
 	public Set<Identifier> getAllIdentifiers() {
 		return ctx.getAllIdentifiers();
@@ -0,0 +1,576 @@
+package de.codesourcery.booleanalgebra.aig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.codesourcery.booleanalgebra.IExpressionContext;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.BooleanExpression;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.TermNode;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+
+/**
+ * An And-Inverter Graph: a directed acyclic graph of two-input <code>AND</code> nodes with optionally
+ * complemented edges.
+ *
+ * <p>Nodes are numbered from 0 and stored in primitive arrays. Node 0 is the constant <code>false</code>,
+ * other nodes are either inputs (identifiers) or <code>AND</code>s of two literals. A literal is a node number
+ * shifted left by one , the lowest bit set means the node is complemented. {@link #FALSE} and {@link #TRUE}
+ * are the literals of the constant node.</p>
+ *
+ * <p>{@link #and(int, int)} folds constants and trivial cases and hashes the remaining <code>AND</code>s
+ * structurally (with inputs in a canonical order) , so a graph never contains two nodes with the same inputs.
+ * The inputs of a node always have smaller numbers than the node itself , so iterating over the node numbers
+ * visits the graph in topological order.</p>
+ *
+ * <p>Graphs may have outputs , the literals of the functions the graph was built for. The passes of
+ * {@link AIGTransformations} create new graphs with the same inputs and equivalent outputs.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class AIG
+{
+    public static final int FALSE = 0;
+    public static final int TRUE = 1;
+
+    // fanins of inputs and the constant node
+    private static final int NONE = -1;
+
+    private int[] fanin0 = new int[ 64 ];
+    private int[] fanin1 = new int[ 64 ];
+    private int[] levels = new int[ 64 ];
+    private int nodeCount = 1;
+    private int andCount;
+
+    // open addressing , AND nodes or 0
+    private int[] table = new int[ 64 ];
+
+    private final List<Identifier> inputs = new ArrayList<>();
+    private final Map<Identifier,Integer> inputNodes = new HashMap<>();
+    // input number by node
+    private int[] inputIndex = new int[ 64 ];
+
+    private int[] outputs = new int[ 4 ];
+    private int outputCount;
+
+    public AIG() {
+        fanin0[0] = fanin1[0] = NONE;
+    }
+
+    public static int not(int literal) {
+        return literal ^ 1;
+    }
+
+    public static int node(int literal) {
+        return literal >>> 1;
+    }
+
+    public static boolean isComplemented(int literal) {
+        return ( literal & 1 ) != 0;
+    }
+
+    public static int literal(int node,boolean complemented) {
+        return ( node << 1 ) | ( complemented ? 1 : 0 );
+    }
+
+    /**
+     * Returns the number of nodes , including the constant node , inputs and unused <code>AND</code>s.
+     *
+     * @return
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public boolean isAnd(int node) {
+        return node > 0 && fanin0[node] != NONE;
+    }
+
+    public boolean isInput(int node) {
+        return node > 0 && fanin0[node] == NONE;
+    }
+
+    public int getFanin0(int node) {
+        return fanin0[node];
+    }
+
+    public int getFanin1(int node) {
+        return fanin1[node];
+    }
+
+    /**
+     * Returns the length of the longest path from a node to an input or constant.
+     *
+     * @param node
+     * @return
+     */
+    public int getLevel(int node) {
+        return levels[node];
+    }
+
+    public List<Identifier> getInputs() {
+        return Collections.unmodifiableList( inputs );
+    }
+
+    /**
+     * Returns the identifier of an input node.
+     *
+     * @param node
+     * @return
+     */
+    public Identifier getInput(int node)
+    {
+        if ( ! isInput( node ) ) {
+            throw new IllegalArgumentException("Not an input: "+node);
+        }
+        return inputs.get( inputIndex[node] );
+    }
+
+    /**
+     * Returns the literal of an identifier , creating an input node if needed.
+     *
+     * @param identifier
+     * @return
+     */
+    public int input(Identifier identifier)
+    {
+        if (identifier == null) {
+            throw new IllegalArgumentException("identifier must not be NULL.");
+        }
+        Integer node = inputNodes.get( identifier );
+        if ( node == null )
+        {
+            node = newNode( NONE , NONE , 0 );
+            inputIndex[node] = inputs.size();
+            inputs.add( identifier );
+            inputNodes.put( identifier , node );
+        }
+        return literal( node , false );
+    }
+
+    public int or(int a,int b) {
+        return not( and( not( a ) , not( b ) ) );
+    }
+
+    /**
+     * Returns a literal that is <code>true</code> if and only if two literals have the same value.
+     *
+     * @param a
+     * @param b
+     * @return
+     */
+    public int equiv(int a,int b) {
+        return or( and( a , b ) , and( not( a ) , not( b ) ) );
+    }
+
+    /**
+     * Returns the literal of the <code>AND</code> of two literals , creating a node if needed.
+     *
+     * @param a
+     * @param b
+     * @return
+     */
+    public int and(int a,int b)
+    {
+        if ( a == FALSE || b == FALSE || a == not( b ) ) {
+            return FALSE;
+        }
+        if ( a == TRUE || a == b ) {
+            return b;
+        }
+        if ( b == TRUE ) {
+            return a;
+        }
+        if ( a > b )
+        {
+            final int tmp = a;
+            a = b;
+            b = tmp;
+        }
+
+        final int mask = table.length - 1;
+        int index = hash( a , b ) & mask;
+        for ( int node = table[index] ; node != 0 ; node = table[index] )
+        {
+            if ( fanin0[node] == a && fanin1[node] == b ) {
+                return literal( node , false );
+            }
+            index = ( index + 1 ) & mask;
+        }
+
+        final int node = newNode( a , b , 1 + Math.max( levels[ node( a ) ] , levels[ node( b ) ] ) );
+        table[index] = node;
+        if ( ++andCount * 2 > table.length ) {
+            rehash();
+        }
+        return literal( node , false );
+    }
+
+    /**
+     * Returns an existing <code>AND</code> node without creating one.
+     *
+     * @param a
+     * @param b
+     * @return literal of the node or -1 if there is none
+     */
+    public int findAnd(int a,int b)
+    {
+        final int mask = table.length - 1;
+        int index = hash( Math.min( a , b ) , Math.max( a , b ) ) & mask;
+        for ( int node = table[index] ; node != 0 ; node = table[index] )
+        {
+            if ( fanin0[node] == Math.min( a , b ) && fanin1[node] == Math.max( a , b ) ) {
+                return literal( node , false );
+            }
+            index = ( index + 1 ) & mask;
+        }
+        return -1;
+    }
+
+    private static int hash(int a,int b)
+    {
+        final int h = a * 0x9E3779B1 + b * 0x85EBCA6B;
+        return h ^ ( h >>> 16 );
+    }
+
+    private int newNode(int a,int b,int level)
+    {
+        if ( nodeCount == fanin0.length )
+        {
+            final int capacity = nodeCount * 2;
+            fanin0 = Arrays.copyOf( fanin0 , capacity );
+            fanin1 = Arrays.copyOf( fanin1 , capacity );
+            levels = Arrays.copyOf( levels , capacity );
+            inputIndex = Arrays.copyOf( inputIndex , capacity );
+        }
+        final int node = nodeCount++;
+        fanin0[node] = a;
+        fanin1[node] = b;
+        levels[node] = level;
+        return node;
+    }
+
+    private void rehash()
+    {
+        table = new int[ table.length * 2 ];
+        final int mask = table.length - 1;
+        for ( int node = 1 ; node < nodeCount ; node++ )
+        {
+            if ( isAnd( node ) )
+            {
+                int index = hash( fanin0[node] , fanin1[node] ) & mask;
+                while ( table[index] != 0 ) {
+                    index = ( index + 1 ) & mask;
+                }
+                table[index] = node;
+            }
+        }
+    }
+
+    /**
+     * Adds an output.
+     *
+     * @param literal
+     * @return index of the output
+     */
+    public int addOutput(int literal)
+    {
+        if ( node( literal ) >= nodeCount ) {
+            throw new IllegalArgumentException("Unknown literal: "+literal);
+        }
+        if ( outputCount == outputs.length ) {
+            outputs = Arrays.copyOf( outputs , outputCount * 2 );
+        }
+        outputs[ outputCount ] = literal;
+        return outputCount++;
+    }
+
+    public int getOutput(int index)
+    {
+        if ( index < 0 || index >= outputCount ) {
+            throw new IndexOutOfBoundsException("No output #"+index);
+        }
+        return outputs[index];
+    }
+
+    public int getOutputCount() {
+        return outputCount;
+    }
+
+    /**
+     * Returns which nodes the outputs depend on.
+     *
+     * @return flags by node
+     */
+    public boolean[] getReachableNodes()
+    {
+        final boolean[] result = new boolean[ nodeCount ];
+        for ( int i = 0 ; i < outputCount ; i++ ) {
+            result[ node( outputs[i] ) ] = true;
+        }
+        for ( int node = nodeCount - 1 ; node > 0 ; node-- )
+        {
+            if ( result[node] && isAnd( node ) )
+            {
+                result[ node( fanin0[node] ) ] = true;
+                result[ node( fanin1[node] ) ] = true;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of <code>AND</code> nodes the outputs depend on.
+     *
+     * @return
+     */
+    public int getAndCount()
+    {
+        final boolean[] reachable = getReachableNodes();
+        int result = 0;
+        for ( int node = 1 ; node < nodeCount ; node++ ) {
+            if ( reachable[node] && isAnd( node ) ) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the max. level of all outputs.
+     *
+     * @return
+     */
+    public int getDepth()
+    {
+        int result = 0;
+        for ( int i = 0 ; i < outputCount ; i++ ) {
+            result = Math.max( result , levels[ node( outputs[i] ) ] );
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates all nodes for 64 assignments at once.
+     *
+     * @param inputPatterns values of the inputs (in the order of {@link #getInputs()}) , bit <code>i</code> is
+     * the value in assignment <code>i</code>
+     * @return values of all nodes , use {@link #getValue(long[], int)} to get the value of a literal
+     */
+    public long[] simulate(long[] inputPatterns)
+    {
+        if ( inputPatterns.length != inputs.size() ) {
+            throw new IllegalArgumentException("Expected "+inputs.size()+" input patterns");
+        }
+        final long[] result = new long[ nodeCount ];
+        for ( int node = 1 ; node < nodeCount ; node++ )
+        {
+            if ( isAnd( node ) ) {
+                result[node] = getValue( result , fanin0[node] ) & getValue( result , fanin1[node] );
+            } else {
+                result[node] = inputPatterns[ inputIndex[node] ];
+            }
+        }
+        return result;
+    }
+
+    public static long getValue(long[] nodeValues,int literal) {
+        return isComplemented( literal ) ? ~nodeValues[ node( literal ) ] : nodeValues[ node( literal ) ];
+    }
+
+    public int fromAST(ASTNode term) {
+        return fromAST( term , null );
+    }
+
+    /**
+     * Adds the nodes of a term or expression , a {@link BooleanExpression} is <code>true</code> if both sides have the same value.
+     *
+     * <p>The term is traversed without recursion.</p>
+     *
+     * @param term
+     * @param context context used to look up variable values, may be <code>null</code>
+     * @return literal of the term
+     */
+    public int fromAST(ASTNode term,IExpressionContext context)
+    {
+        if (term == null) {
+            throw new IllegalArgumentException("term must not be NULL.");
+        }
+        ASTNode[] stack = new ASTNode[ 64 ];
+        int[] visitedChildren = new int[ 64 ];
+        int[] literals = new int[ 64 ];
+        int stackSize = 0;
+        int literalCount = 0;
+
+        stack[ stackSize++ ] = term;
+        while ( stackSize > 0 )
+        {
+            final ASTNode node = stack[ stackSize - 1 ];
+            if ( node instanceof TermNode )
+            {
+                if ( ! node.hasChildren() ) {
+                    throw new IllegalArgumentException("Empty term node");
+                }
+                stack[ stackSize - 1 ] = node.child(0);
+                continue;
+            }
+
+            final int visited = visitedChildren[ stackSize - 1 ];
+            if ( visited < node.getChildCount() )
+            {
+                visitedChildren[ stackSize - 1 ]++;
+                if ( stackSize == stack.length )
+                {
+                    stack = Arrays.copyOf( stack , stackSize * 2 );
+                    visitedChildren = Arrays.copyOf( visitedChildren , stackSize * 2 );
+                }
+                stack[ stackSize ] = node.child( visited );
+                visitedChildren[ stackSize++ ] = 0;
+                continue;
+            }
+
+            stackSize--;
+            final int result;
+            if ( node instanceof IdentifierNode ) {
+                result = identifier( ((IdentifierNode) node).getIdentifier() , context );
+            } else if ( node instanceof TrueNode ) {
+                result = TRUE;
+            } else if ( node instanceof FalseNode ) {
+                result = FALSE;
+            }
+            else if ( node instanceof BooleanExpression )
+            {
+                final int b = literals[ --literalCount ];
+                final int a = literals[ --literalCount ];
+                result = equiv( a , b );
+            }
+            else if ( node instanceof OperatorNode )
+            {
+                switch( ((OperatorNode) node).getType() )
+                {
+                    case NOT:
+                        result = not( literals[ --literalCount ] );
+                        break;
+                    case AND:
+                    {
+                        literalCount -= node.getChildCount();
+                        int value = literals[ literalCount ];
+                        for ( int i = 1 ; i < node.getChildCount() ; i++ ) {
+                            value = and( value , literals[ literalCount + i ] );
+                        }
+                        result = value;
+                        break;
+                    }
+                    case OR:
+                    {
+                        literalCount -= node.getChildCount();
+                        int value = literals[ literalCount ];
+                        for ( int i = 1 ; i < node.getChildCount() ; i++ ) {
+                            value = or( value , literals[ literalCount + i ] );
+                        }
+                        result = value;
+                        break;
+                    }
+                    default:
+                        throw new RuntimeException("Unreachable code reached");
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported node type: "+node);
+            }
+
+            if ( literalCount == literals.length ) {
+                literals = Arrays.copyOf( literals , literalCount * 2 );
+            }
+            literals[ literalCount++ ] = result;
+        }
+        return literals[0];
+    }
+
+    private int identifier(Identifier identifier,IExpressionContext context)
+    {
+        if ( context != null )
+        {
+            final ASTNode value = context.tryLookup( identifier );
+            if ( value != null && value.isLiteralValue() ) {
+                return value.getLiteralValue( context ) ? TRUE : FALSE;
+            }
+        }
+        return input( identifier );
+    }
+
+    /**
+     * Converts a literal into a (newly allocated) AST.
+     *
+     * <p>A complemented <code>AND</code> of two complemented literals becomes an <code>OR</code>. Shared nodes are
+     * copied for every occurrence. The graph is traversed without recursion.</p>
+     *
+     * @param literal
+     * @return
+     */
+    public ASTNode toAST(int literal)
+    {
+        if ( node( literal ) >= nodeCount ) {
+            throw new IllegalArgumentException("Unknown literal: "+literal);
+        }
+        // by literal
+        final ASTNode[] results = new ASTNode[ 2 * nodeCount ];
+        int[] stack = new int[ 64 ];
+        int stackSize = 0;
+        stack[ stackSize++ ] = literal;
+        while ( stackSize > 0 )
+        {
+            final int current = stack[ stackSize - 1 ];
+            if ( results[ current ] != null ) {
+                stackSize--;
+                continue;
+            }
+            final int node = node( current );
+            if ( ! isAnd( node ) )
+            {
+                if ( node == 0 ) {
+                    results[ current ] = current == TRUE ? new TrueNode() : new FalseNode();
+                } else {
+                    final ASTNode input = new IdentifierNode( getInput( node ) );
+                    results[ current ] = isComplemented( current ) ? OperatorNode.not( input ) : input;
+                }
+                stackSize--;
+                continue;
+            }
+
+            final boolean isOr = isComplemented( current ) && isComplemented( fanin0[node] ) && isComplemented( fanin1[node] );
+            final int child0 = isOr ? not( fanin0[node] ) : fanin0[node];
+            final int child1 = isOr ? not( fanin1[node] ) : fanin1[node];
+            if ( results[ child0 ] == null || results[ child1 ] == null )
+            {
+                if ( stackSize + 2 > stack.length ) {
+                    stack = Arrays.copyOf( stack , stack.length * 2 );
+                }
+                stack[ stackSize++ ] = child1;
+                stack[ stackSize++ ] = child0;
+                continue;
+            }
+            stackSize--;
+            final ASTNode left = use( results[ child0 ] );
+            final ASTNode right = use( results[ child1 ] );
+            if ( isOr ) {
+                results[ current ] = OperatorNode.or( left , right );
+            } else {
+                final ASTNode and = OperatorNode.and( left , right );
+                results[ current ] = isComplemented( current ) ? OperatorNode.not( and ) : and;
+            }
+        }
+        return results[ literal ];
+    }
+
+    private static ASTNode use(ASTNode node) {
+        return node.hasParent() ? node.createCopy( true ) : node;
+    }
+}
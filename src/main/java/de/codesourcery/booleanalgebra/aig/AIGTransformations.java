@@ -0,0 +1,403 @@
+package de.codesourcery.booleanalgebra.aig;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Optimization passes for {@link AIG}s.
+ *
+ * <p>Each pass copies the nodes the outputs depend on into a new graph in topological order , replacing
+ * them on the way. The new graph has the same inputs (in the same order) and equivalent outputs , nodes
+ * no output depends on are dropped.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class AIGTransformations
+{
+    public static final int DEFAULT_MAX_ITERATIONS = 10;
+
+    private int rewriteCount;
+
+    /**
+     * Returns the number of two-level rules applied by the last call to {@link #rewrite(AIG)}
+     * or {@link #optimize(AIG)}.
+     *
+     * @return
+     */
+    public int getRewriteCount() {
+        return rewriteCount;
+    }
+
+    /**
+     * Copies the nodes the outputs depend on into a new graph.
+     *
+     * @param aig
+     * @return
+     */
+    public AIG cleanup(AIG aig)
+    {
+        final AIG result = createEmptyCopy( aig );
+        final int[] map = createMap( aig , result );
+        final boolean[] reachable = aig.getReachableNodes();
+        for ( int node = 1 ; node < aig.getNodeCount() ; node++ )
+        {
+            if ( reachable[node] && aig.isAnd( node ) ) {
+                map[node] = result.and( map( map , aig.getFanin0( node ) ) , map( map , aig.getFanin1( node ) ) );
+            }
+        }
+        return copyOutputs( aig , result , map );
+    }
+
+    /**
+     * Rewrites and balances a graph until the number of <code>AND</code> nodes no longer shrinks.
+     *
+     * @param aig
+     * @return
+     */
+    public AIG optimize(AIG aig)
+    {
+        AIG result = cleanup( aig );
+        int rewrites = 0;
+        for ( int i = 0 ; i < DEFAULT_MAX_ITERATIONS ; i++ )
+        {
+            final AIG rewritten = rewrite( result );
+            final AIG balanced = balance( rewritten );
+            final int previous = result.getAndCount();
+            final int current = balanced.getAndCount();
+            if ( current > previous || ( current == previous && balanced.getDepth() >= result.getDepth() ) ) {
+                break;
+            }
+            rewrites += rewriteCount;
+            result = balanced;
+        }
+        rewriteCount = rewrites;
+        return result;
+    }
+
+    /**
+     * Rebuilds a graph , simplifying each <code>AND</code> by the two-level rules of Brummayer and Biere.
+     *
+     * <p>The rules look at the inputs of an <code>AND</code> and their inputs:</p>
+     * <ul>
+     *   <li>contradiction: <code>(a &amp; b) &amp; !a = 0</code></li>
+     *   <li>idempotence: <code>(a &amp; b) &amp; a = a &amp; b</code></li>
+     *   <li>subsumption: <code>!(a &amp; b) &amp; !a = !a</code></li>
+     *   <li>substitution: <code>!(a &amp; b) &amp; a = !b &amp; a</code></li>
+     *   <li>resolution: <code>!(a &amp; b) &amp; !(a &amp; !b) = !a</code></li>
+     * </ul>
+     * <p>None of them ever adds nodes , so the result is never larger than the input.</p>
+     *
+     * @param aig
+     * @return
+     */
+    public AIG rewrite(AIG aig)
+    {
+        rewriteCount = 0;
+        final AIG result = createEmptyCopy( aig );
+        final int[] map = createMap( aig , result );
+        final boolean[] reachable = aig.getReachableNodes();
+        for ( int node = 1 ; node < aig.getNodeCount() ; node++ )
+        {
+            if ( reachable[node] && aig.isAnd( node ) ) {
+                map[node] = rewriteAnd( result , map( map , aig.getFanin0( node ) ) , map( map , aig.getFanin1( node ) ) );
+            }
+        }
+        // rules may have orphaned nodes
+        return cleanup( copyOutputs( aig , result , map ) );
+    }
+
+    private int rewriteAnd(AIG aig,int a,int b)
+    {
+        int result = rewriteAsymmetric( aig , a , b );
+        if ( result == -1 ) {
+            result = rewriteAsymmetric( aig , b , a );
+        }
+        if ( result == -1 && aig.isAnd( AIG.node( a ) ) && aig.isAnd( AIG.node( b ) ) ) {
+            result = rewriteSymmetric( aig , a , b );
+        }
+        if ( result != -1 ) {
+            rewriteCount++;
+            return result;
+        }
+        return aig.and( a , b );
+    }
+
+    /*
+     * Rules for a = AND(x,y) or !AND(x,y) and any b , returns -1 if none applies.
+     */
+    private int rewriteAsymmetric(AIG aig,int a,int b)
+    {
+        final int node = AIG.node( a );
+        if ( ! aig.isAnd( node ) ) {
+            return -1;
+        }
+        final int x = aig.getFanin0( node );
+        final int y = aig.getFanin1( node );
+        if ( ! AIG.isComplemented( a ) )
+        {
+            if ( b == AIG.not( x ) || b == AIG.not( y ) ) {
+                return AIG.FALSE; // contradiction
+            }
+            if ( b == x || b == y ) {
+                return a; // idempotence
+            }
+            return -1;
+        }
+        if ( b == AIG.not( x ) || b == AIG.not( y ) ) {
+            return b; // subsumption
+        }
+        if ( b == x ) {
+            return rewriteAnd( aig , AIG.not( y ) , b ); // substitution
+        }
+        if ( b == y ) {
+            return rewriteAnd( aig , AIG.not( x ) , b );
+        }
+        return -1;
+    }
+
+    /*
+     * Rules for two AND nodes , returns -1 if none applies.
+     */
+    private int rewriteSymmetric(AIG aig,int a,int b)
+    {
+        final int x = aig.getFanin0( AIG.node( a ) );
+        final int y = aig.getFanin1( AIG.node( a ) );
+        final int u = aig.getFanin0( AIG.node( b ) );
+        final int v = aig.getFanin1( AIG.node( b ) );
+        final boolean negatedA = AIG.isComplemented( a );
+        final boolean negatedB = AIG.isComplemented( b );
+        if ( ! negatedA && ! negatedB )
+        {
+            // contradiction
+            if ( x == AIG.not( u ) || x == AIG.not( v ) || y == AIG.not( u ) || y == AIG.not( v ) ) {
+                return AIG.FALSE;
+            }
+            return -1;
+        }
+        if ( negatedA && negatedB )
+        {
+            // resolution
+            if ( ( x == u && y == AIG.not( v ) ) || ( x == v && y == AIG.not( u ) ) ) {
+                return AIG.not( x );
+            }
+            if ( ( y == u && x == AIG.not( v ) ) || ( y == v && x == AIG.not( u ) ) ) {
+                return AIG.not( y );
+            }
+            return -1;
+        }
+        // one positive , one negated
+        final int positive = negatedA ? b : a;
+        final int negated = negatedA ? a : b;
+        final int p0 = aig.getFanin0( AIG.node( positive ) );
+        final int p1 = aig.getFanin1( AIG.node( positive ) );
+        final int n0 = aig.getFanin0( AIG.node( negated ) );
+        final int n1 = aig.getFanin1( AIG.node( negated ) );
+        // subsumption: the positive node implies the negated one
+        if ( n0 == AIG.not( p0 ) || n0 == AIG.not( p1 ) || n1 == AIG.not( p0 ) || n1 == AIG.not( p1 ) ) {
+            return positive;
+        }
+        // substitution
+        if ( n0 == p0 || n0 == p1 ) {
+            return rewriteAnd( aig , positive , AIG.not( n1 ) );
+        }
+        if ( n1 == p0 || n1 == p1 ) {
+            return rewriteAnd( aig , positive , AIG.not( n0 ) );
+        }
+        return -1;
+    }
+
+    /**
+     * Rebuilds a graph , reducing its depth.
+     *
+     * <p>Chains of <code>AND</code> nodes (connected by edges that are not complemented and through nodes
+     * with a single fanout) are collected into multi-input <code>AND</code>s , duplicate inputs are dropped and the
+     * inputs are then combined lowest level first , preferring pairs that already exist. This also finds
+     * contradictions and duplicates spread across a chain.</p>
+     *
+     * @param aig
+     * @return
+     */
+    public AIG balance(AIG aig)
+    {
+        final AIG result = createEmptyCopy( aig );
+        final int[] map = createMap( aig , result );
+        final boolean[] reachable = aig.getReachableNodes();
+        final int[] fanouts = countFanouts( aig , reachable );
+
+        // nodes that only feed one other AND through a non-complemented edge become part of its supergate
+        final boolean[] interior = new boolean[ aig.getNodeCount() ];
+        for ( int node = 1 ; node < aig.getNodeCount() ; node++ )
+        {
+            if ( reachable[node] && aig.isAnd( node ) ) {
+                markInterior( aig , aig.getFanin0( node ) , fanouts , interior );
+                markInterior( aig , aig.getFanin1( node ) , fanouts , interior );
+            }
+        }
+        for ( int i = 0 ; i < aig.getOutputCount() ; i++ ) {
+            interior[ AIG.node( aig.getOutput(i) ) ] = false;
+        }
+
+        int[] leaves = new int[ 16 ];
+        int[] stack = new int[ 16 ];
+        for ( int node = 1 ; node < aig.getNodeCount() ; node++ )
+        {
+            if ( ! reachable[node] || ! aig.isAnd( node ) || interior[node] ) {
+                continue;
+            }
+            // collect the supergate
+            int leafCount = 0;
+            int stackSize = 0;
+            stack[ stackSize++ ] = AIG.literal( node , false );
+            while ( stackSize > 0 )
+            {
+                final int literal = stack[ --stackSize ];
+                final int current = AIG.node( literal );
+                if ( literal != AIG.literal( node , false ) && ( AIG.isComplemented( literal ) || ! interior[ current ] ) )
+                {
+                    if ( leafCount == leaves.length ) {
+                        leaves = Arrays.copyOf( leaves , leafCount * 2 );
+                    }
+                    leaves[ leafCount++ ] = map( map , literal );
+                    continue;
+                }
+                if ( stackSize + 2 > stack.length ) {
+                    stack = Arrays.copyOf( stack , stack.length * 2 );
+                }
+                stack[ stackSize++ ] = aig.getFanin0( current );
+                stack[ stackSize++ ] = aig.getFanin1( current );
+            }
+            map[node] = buildBalanced( result , Arrays.copyOf( leaves , leafCount ) );
+        }
+        return copyOutputs( aig , result , map );
+    }
+
+    private static void markInterior(AIG aig,int literal,int[] fanouts,boolean[] interior)
+    {
+        final int node = AIG.node( literal );
+        if ( ! AIG.isComplemented( literal ) && aig.isAnd( node ) && fanouts[node] == 1 ) {
+            interior[node] = true;
+        }
+    }
+
+    private static int[] countFanouts(AIG aig,boolean[] reachable)
+    {
+        final int[] result = new int[ aig.getNodeCount() ];
+        for ( int node = 1 ; node < aig.getNodeCount() ; node++ )
+        {
+            if ( reachable[node] && aig.isAnd( node ) )
+            {
+                result[ AIG.node( aig.getFanin0( node ) ) ]++;
+                result[ AIG.node( aig.getFanin1( node ) ) ]++;
+            }
+        }
+        for ( int i = 0 ; i < aig.getOutputCount() ; i++ ) {
+            result[ AIG.node( aig.getOutput(i) ) ]++;
+        }
+        return result;
+    }
+
+    /*
+     * Combines literals (of the new graph) into a tree of minimal depth.
+     */
+    private static int buildBalanced(final AIG aig,int[] literals)
+    {
+        // sort by literal to find duplicates and complementary pairs
+        Arrays.sort( literals );
+        int count = 0;
+        for ( int i = 0 ; i < literals.length ; i++ )
+        {
+            final int literal = literals[i];
+            if ( literal == AIG.FALSE || ( i > 0 && literals[i-1] == AIG.not( literal ) && AIG.isComplemented( literal ) ) ) {
+                return AIG.FALSE;
+            }
+            if ( literal != AIG.TRUE && ( count == 0 || literals[ count - 1 ] != literal ) ) {
+                literals[ count++ ] = literal;
+            }
+        }
+        if ( count == 0 ) {
+            return AIG.TRUE;
+        }
+
+        // repeatedly combine the two literals of the lowest levels , kept sorted by descending level
+        final Integer[] sorted = new Integer[ count ];
+        for ( int i = 0 ; i < count ; i++ ) {
+            sorted[i] = literals[i];
+        }
+        Arrays.sort( sorted , new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Integer.compare( aig.getLevel( AIG.node( o2 ) ) , aig.getLevel( AIG.node( o1 ) ) );
+            }
+        });
+        final int[] queue = new int[ count ];
+        for ( int i = 0 ; i < count ; i++ ) {
+            queue[i] = sorted[i];
+        }
+        int size = count;
+        while ( size > 1 )
+        {
+            // among the literals sharing the lowest level of the second-to-last one , prefer an existing pair
+            final int last = queue[ size - 1 ];
+            final int level = aig.getLevel( AIG.node( queue[ size - 2 ] ) );
+            for ( int i = size - 2 ; i >= 0 && aig.getLevel( AIG.node( queue[i] ) ) == level ; i-- )
+            {
+                if ( aig.findAnd( last , queue[i] ) != -1 )
+                {
+                    final int tmp = queue[ size - 2 ];
+                    queue[ size - 2 ] = queue[i];
+                    queue[i] = tmp;
+                    break;
+                }
+            }
+            final int combined = aig.and( queue[ size - 2 ] , last );
+            size -= 2;
+
+            // insert keeping the order
+            int index = size;
+            final int combinedLevel = aig.getLevel( AIG.node( combined ) );
+            while ( index > 0 && aig.getLevel( AIG.node( queue[ index - 1 ] ) ) < combinedLevel ) {
+                queue[ index ] = queue[ index - 1 ];
+                index--;
+            }
+            queue[ index ] = combined;
+            size++;
+        }
+        return queue[0];
+    }
+
+    private static AIG createEmptyCopy(AIG aig)
+    {
+        final AIG result = new AIG();
+        for ( int i = 0 ; i < aig.getInputs().size() ; i++ ) {
+            result.input( aig.getInputs().get( i ) );
+        }
+        return result;
+    }
+
+    /*
+     * Maps the constant and the input nodes.
+     */
+    private static int[] createMap(AIG aig,AIG copy)
+    {
+        final int[] result = new int[ aig.getNodeCount() ];
+        for ( int node = 1 ; node < aig.getNodeCount() ; node++ ) {
+            if ( aig.isInput( node ) ) {
+                result[node] = copy.input( aig.getInput( node ) );
+            }
+        }
+        return result;
+    }
+
+    private static int map(int[] map,int literal) {
+        return map[ AIG.node( literal ) ] ^ ( literal & 1 );
+    }
+
+    private static AIG copyOutputs(AIG aig,AIG copy,int[] map)
+    {
+        for ( int i = 0 ; i < aig.getOutputCount() ; i++ ) {
+            copy.addOutput( map( map , aig.getOutput(i) ) );
+        }
+        return copy;
+    }
+}
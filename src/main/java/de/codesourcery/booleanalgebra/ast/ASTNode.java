@@ -3,6 +3,7 @@ package de.codesourcery.booleanalgebra.ast;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -23,6 +24,18 @@ public abstract class ASTNode
 	private ASTNode parent;
 	private final List<ASTNode> children = new ArrayList<ASTNode>();
 
+	// cached hash , see getCanonicalHash()
+	private int canonicalHash;
+	private boolean canonicalHashValid;
+	private long fingerprint;
+	private boolean fingerprintValid;
+
+	/*
+	 * Traversals recurse up to this depth (plain recursion is fastest on the small terms that make up
+	 * most of the work) and continue with an explicit stack below it , so arbitrarily deep terms can be processed.
+	 */
+	static final int MAX_RECURSION_DEPTH = 512;
+
 	public ASTNode() {
 	}
 
@@ -50,28 +63,111 @@ public abstract class ASTNode
 
 	public void toDOT(PrintWriter writer) {
 
-		if ( getParent() != null ) 
+		final Stack<ASTNode> stack = new Stack<ASTNode>();
+		stack.push( this );
+		while ( ! stack.isEmpty() )
 		{
-			writer.println( ""+getParent().nodeId+" -> "+nodeId+";");
+			final ASTNode node = stack.pop();
+			if ( node.getParent() != null )
+			{
+				writer.println( ""+node.getParent().nodeId+" -> "+node.nodeId+";");
+			}
+
+			String label;
+			if ( node.isBooleanOperator() ) {
+				label = ((OperatorNode) node).getType().toString();
+			} else if ( node instanceof IdentifierNode) {
+				label = ((IdentifierNode) node).getIdentifier().toString();
+			} else {
+				label = node.toString();
+			}
+
+			writer.println( ""+node.nodeId+" [label=\" ("+node.nodeId+") "+node.getClass().getSimpleName()+" => "+label+"\"];" );
+			for ( int i = node.children.size() - 1 ; i >= 0 ; i-- ) {
+				stack.push( node.children.get( i ) );
+			}
 		}
+	}
 
-		String label;
-		if ( isBooleanOperator() ) {
-			label = ((OperatorNode) this).getType().toString();
-		} else if ( this instanceof IdentifierNode) {
-			label = ((IdentifierNode) this).getIdentifier().toString();
-		} else {
-			label = toString();
+	/**
+	 * Returns whether this term is structurally equal to another term.
+	 *
+	 * <p>Compares both trees node by node using {@link #thisEquals(ASTNode)} ,
+	 * arbitrarily deep terms can be compared.</p>
+	 *
+	 * @param other
+	 * @return
+	 */
+	public final boolean isEquals(ASTNode other)
+	{
+		return isEquals( this , other , 0 );
+	}
+
+	private static boolean isEquals(ASTNode node1,ASTNode node2,int depth)
+	{
+		if ( ! shallowEquals( node1 , node2 ) ) {
+			return false;
+		}
+		if ( node1.children.isEmpty() || node1 == node2 ) {
+			return true;
 		}
+		if ( depth == MAX_RECURSION_DEPTH ) {
+			return childrenEqual( node1 , node2 );
+		}
+		for ( int i = 0 ; i < node1.children.size() ; i++ )
+		{
+			if ( ! isEquals( node1.children.get( i ) , node2.children.get( i ) , depth + 1 ) ) {
+				return false;
+			}
+		}
+		return true;
+	}
 
-		writer.println( ""+nodeId+" [label=\" ("+nodeId+") "+getClass().getSimpleName()+" => "+label+"\"];" );
-		for ( ASTNode child : children ) 
+	/*
+	 * Compares the children of two nodes that are equal themselves , using an explicit stack.
+	 */
+	private static boolean childrenEqual(ASTNode root1,ASTNode root2)
+	{
+		// pairs of nodes whose children still need to be compared
+		final List<ASTNode> stack = new ArrayList<ASTNode>();
+		ASTNode node1 = root1;
+		ASTNode node2 = root2;
+		while ( true )
 		{
-			child.toDOT( writer );
+			for ( int i = 0 ; i < node1.children.size() ; i++ )
+			{
+				final ASTNode child1 = node1.children.get( i );
+				final ASTNode child2 = node2.children.get( i );
+				if ( child1 == child2 ) {
+					continue;
+				}
+				if ( ! shallowEquals( child1 , child2 ) ) {
+					return false;
+				}
+				if ( ! child1.children.isEmpty() ) {
+					stack.add( child1 );
+					stack.add( child2 );
+				}
+			}
+			if ( stack.isEmpty() ) {
+				return true;
+			}
+			node2 = stack.remove( stack.size() - 1 );
+			node1 = stack.remove( stack.size() - 1 );
 		}
 	}
 
-	public abstract boolean isEquals(ASTNode other);
+	private static boolean shallowEquals(ASTNode node1,ASTNode node2) {
+		return node1 == node2 || ( node2 != null && node1.thisEquals( node2 ) && node1.children.size() == node2.children.size() );
+	}
+
+	/**
+	 * Returns whether this node is equal to another node , not including their children.
+	 *
+	 * @param other node to compare with , never <code>null</code>
+	 * @return
+	 */
+	protected abstract boolean thisEquals(ASTNode other);
 
 	private static final List<ASTNode> reverse(List<ASTNode> list) {
 		final List<ASTNode> copy = new ArrayList<ASTNode>( list );
@@ -139,45 +235,82 @@ public abstract class ASTNode
 		return false;
 	}
 
-	public boolean sortChildrenAscending(Comparator<ASTNode> comp) 
+	/**
+	 * Sorts the children of all nodes in this subtree.
+	 * 
+	 * <p>Each child list is sorted with a stable O(k log k) sort , lists that are already sorted are not touched.</p>
+	 * 
+	 * @param comp
+	 * @return <code>true</code> if the order of any children changed
+	 * @see CanonicalOrder
+	 */
+	public boolean sortChildrenAscending(Comparator<ASTNode> comp)
 	{
+		return sortChildrenAscending( this , comp , 0 );
+	}
+
+	private static boolean sortChildrenAscending(ASTNode node,Comparator<ASTNode> comp,int depth)
+	{
+		if ( depth == MAX_RECURSION_DEPTH ) {
+			return node.sortAllChildrenAscending( comp );
+		}
+		// children need to be sorted before their parent , their order changes their hash
 		boolean changed = false;
-		for ( ASTNode child : children ) {
-			changed |= child.sortChildrenAscending( comp );
+		for ( ASTNode child : node.children ) {
+			changed |= sortChildrenAscending( child , comp , depth + 1 );
+		}
+		if ( ! isSorted( node.children , comp ) )
+		{
+			Collections.sort( node.children , comp );
+			node.invalidateHashes();
+			changed = true;
 		}
-		changed |= sortAscending( this.children , comp );
 		return changed;
 	}
-	
-	protected static final boolean sortAscending(List<ASTNode> nodes , Comparator<ASTNode> comp) {
-		
+
+	private boolean sortAllChildrenAscending(Comparator<ASTNode> comp)
+	{
+		final List<ASTNode> nodes = getNodesInPreOrder();
 		boolean changed = false;
-		final int len = nodes.size()-1;
-		for ( int index = 0 ; index < len ; index++ ) 
+		for ( int i = nodes.size() - 1 ; i >= 0 ; i-- )
 		{
-			final ASTNode left = nodes.get(index);
-			final ASTNode right = nodes.get(index+1);
-            
-			final boolean leftIsLeaf =  left.isLeafNode() || ( left instanceof TermNode && left.getChildCount() == 1);
-            final boolean rightIsLeaf =  right.isLeafNode() || ( right instanceof TermNode && right.getChildCount() == 1);
-            
-            boolean swap;
-            if ( leftIsLeaf && rightIsLeaf ) {
-                swap = comp.compare( left , right ) < 0 ;
-			} else if ( rightIsLeaf && ! leftIsLeaf ) {
-			    swap = true;
-			} else {
-			    swap = false;
+			final ASTNode node = nodes.get( i );
+			if ( ! isSorted( node.children , comp ) )
+			{
+				Collections.sort( node.children , comp );
+				node.invalidateHashes();
+				changed = true;
 			}
-            
-            if ( swap ) {
-                nodes.set( index , right );
-                nodes.set( index+1 , left );
-                changed = true;                
-            }
 		}
 		return changed;
 	}
+
+	private List<ASTNode> getNodesInPreOrder()
+	{
+		final List<ASTNode> result = new ArrayList<ASTNode>();
+		final Stack<ASTNode> stack = new Stack<ASTNode>();
+		stack.push( this );
+		while ( ! stack.isEmpty() )
+		{
+			final ASTNode node = stack.pop();
+			result.add( node );
+			for ( int i = node.children.size() - 1 ; i >= 0 ; i-- ) {
+				stack.push( node.children.get( i ) );
+			}
+		}
+		return result;
+	}
+	
+	private static boolean isSorted(List<ASTNode> nodes , Comparator<ASTNode> comp) 
+	{
+		for ( int i = 1 ; i < nodes.size() ; i++ ) 
+		{
+			if ( comp.compare( nodes.get( i - 1 ) , nodes.get( i ) ) > 0 ) {
+				return false;
+			}
+		}
+		return true;
+	}
 	
 	public boolean hasLeftChild() {
 	    return getChildCount() > 0;
@@ -196,13 +329,11 @@ public abstract class ASTNode
 	}
 	
 	public boolean isSimpleTerm() {
-		if ( getChildCount() == 0 ) {
-			return true;
+		ASTNode current = this;
+		while ( current.getChildCount() == 1 ) {
+			current = current.child(0);
 		}
-		if ( getChildCount() == 1 ) {
-			return child(0).isSimpleTerm();
-		}
-		return false;
+		return current.getChildCount() == 0;
 	}
 
 	public boolean isLiteralValue() {
@@ -214,15 +345,73 @@ public abstract class ASTNode
 	}
 
 	public final ASTNode createCopy(boolean copyChildren) {
-		ASTNode result = copyThisNode();
-		if ( copyChildren ) {
-			for ( ASTNode child : children() ) {
-				result.addChild( child.createCopy( true ) );
-			}
+		if ( ! copyChildren ) {
+			return copyThisNode();
+		}
+		return createCopy( this , 0 );
+	}
+
+	private static ASTNode createCopy(ASTNode node,int depth)
+	{
+		if ( depth == MAX_RECURSION_DEPTH ) {
+			return node.copySubtree();
+		}
+		final ASTNode result = node.copyThisNode();
+		for ( ASTNode child : node.children ) {
+			result.addChild( createCopy( child , depth + 1 ) );
 		}
 		return result;
 	}
 
+	private ASTNode copySubtree()
+	{
+		if ( children.isEmpty() ) {
+			return copyThisNode();
+		}
+		// post-order , copies of finished subtrees wait on a value stack until their parent gets copied
+		final TraversalStack stack = new TraversalStack();
+		ASTNode[] copies = new ASTNode[8];
+		int copyCount = 0;
+		ASTNode node = this;
+		int index = 0;
+		while ( true )
+		{
+			if ( index < node.children.size() )
+			{
+				final ASTNode child = node.children.get( index++ );
+				if ( ! child.children.isEmpty() )
+				{
+					stack.push( node , index );
+					node = child;
+					index = 0;
+					continue;
+				}
+				if ( copyCount == copies.length ) {
+					copies = Arrays.copyOf( copies , copyCount * 2 );
+				}
+				copies[ copyCount++ ] = child.copyThisNode();
+				continue;
+			}
+			final ASTNode copy = node.copyThisNode();
+			final int firstChild = copyCount - node.children.size();
+			for ( int i = firstChild ; i < copyCount ; i++ )
+			{
+				copy.addChild( copies[i] );
+				copies[i] = null;
+			}
+			copyCount = firstChild;
+			if ( stack.isEmpty() ) {
+				return copy;
+			}
+			if ( copyCount == copies.length ) {
+				copies = Arrays.copyOf( copies , copyCount * 2 );
+			}
+			copies[ copyCount++ ] = copy;
+			index = stack.peekNextChild();
+			node = stack.pop();
+		}
+	}
+
 	protected abstract ASTNode copyThisNode();
 
 	public abstract ASTNode evaluate(IExpressionContext context);
@@ -236,14 +425,42 @@ public abstract class ASTNode
 	}
 	
 	public final int getNodeCount() {
-	    
+	    return getNodeCount( this , 0 );
+	}
+
+	private static int getNodeCount(ASTNode node,int depth)
+	{
+	    if ( depth == MAX_RECURSION_DEPTH ) {
+	        return node.countSubtree();
+	    }
 	    int result = 1;
-	    for ( ASTNode n : children ) {
-	        result+= n.getNodeCount();
+	    for ( ASTNode child : node.children ) {
+	        result += getNodeCount( child , depth + 1 );
 	    }
 	    return result;
 	}
 
+	private int countSubtree() {
+
+	    int result = 1;
+	    final List<ASTNode> stack = new ArrayList<ASTNode>();
+	    ASTNode node = this;
+	    while ( true )
+	    {
+	        for ( ASTNode child : node.children )
+	        {
+	            result++;
+	            if ( ! child.children.isEmpty() ) {
+	                stack.add( child );
+	            }
+	        }
+	        if ( stack.isEmpty() ) {
+	            return result;
+	        }
+	        node = stack.remove( stack.size() - 1 );
+	    }
+	}
+
 	public boolean hasChildren() {
 		return ! children.isEmpty();
 	}
@@ -257,39 +474,173 @@ public abstract class ASTNode
 		return parent;
 	}
 
-	public boolean visitInOrder(INodeVisitor visitor) 
+	/*
+	 * Explicit stack for the traversals , holds the ancestors of the current node 
+	 * and for each of them the index of the next child to descend into.
+	 * 
+	 * Children are looked up by index when they are descended into (and not copied up-front) , 
+	 * so visitors that modify the tree see the same nodes they would see with a recursive traversal.
+	 */
+	private static final class TraversalStack 
 	{
-		return visitInOrder(visitor,0);
+		private ASTNode[] nodes;
+		private int[] nextChild;
+		private int size;
+
+		public void push(ASTNode node,int nextChildIndex) 
+		{
+			if ( nodes == null ) 
+			{
+				nodes = new ASTNode[8];
+				nextChild = new int[8];
+			} 
+			else if ( size == nodes.length ) 
+			{
+				nodes = Arrays.copyOf( nodes , size * 2 );
+				nextChild = Arrays.copyOf( nextChild , size * 2 );
+			}
+			nodes[size] = node;
+			nextChild[size] = nextChildIndex;
+			size++;
+		}
+
+		/**
+		 * Returns the index of the next child of the node on top of the stack.
+		 */
+		public int peekNextChild() {
+			return nextChild[ size - 1 ];
+		}
+
+		public ASTNode pop() {
+			final ASTNode result = nodes[--size];
+			nodes[size] = null;
+			return result;
+		}
+
+		public boolean isEmpty() {
+			return size == 0;
+		}
+
+		/**
+		 * Depth of the current node (which is not on the stack) , the root has depth 0.
+		 */
+		public int depth() {
+			return size;
+		}
 	}
 
-	protected boolean visitInOrder(INodeVisitor visitor,int currentDepth) 
+	public boolean visitInOrder(INodeVisitor visitor)
+	{
+		return visitInOrder( this , visitor , 0 );
+	}
+
+	private static boolean visitInOrder(ASTNode node,INodeVisitor visitor,int depth)
 	{
 		// 1. Traverse the left subtree.
 		// 2. Visit the root.
 		// 3. Traverse the right subtree.
-		switch( getChildCount() ) {
-			case 0:
-				return visitor.visit( this, currentDepth );
-			case 1:
-				if ( ! children.get(0).visitInOrder( visitor , currentDepth+1) ) {
+		// n-ary nodes are visited after their first child
+		if ( depth == MAX_RECURSION_DEPTH ) {
+			return visitSubtreeInOrder( node , visitor , depth );
+		}
+		final List<ASTNode> children = node.children;
+		if ( children.isEmpty() ) {
+			return visitor.visit( node , depth );
+		}
+		if ( ! visitInOrder( children.get( 0 ) , visitor , depth + 1 ) ) {
+			return false;
+		}
+		if ( ! visitor.visit( node , depth ) ) {
+			return false;
+		}
+		for ( int i = 1 ; i < children.size() ; i++ )
+		{
+			if ( ! visitInOrder( children.get( i ) , visitor , depth + 1 ) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean visitSubtreeInOrder(ASTNode root,INodeVisitor visitor,int rootDepth)
+	{
+		final TraversalStack stack = new TraversalStack();
+		ASTNode node = root;
+		int index = 0;
+		while ( true )
+		{
+			if ( index < node.children.size() )
+			{
+				if ( index == 1 && ! visitor.visit( node , rootDepth + stack.depth() ) ) {
 					return false;
 				}
-				return visitor.visit( this, currentDepth );
-			case 2:
-				if ( ! children.get(0).visitInOrder( visitor , currentDepth+1) ) {
-					return false;
-				}			
-				if ( ! visitor.visit( this, currentDepth ) ) {
+				final ASTNode child = node.children.get( index++ );
+				if ( ! child.children.isEmpty() )
+				{
+					stack.push( node , index );
+					node = child;
+					index = 0;
+				}
+				else if ( ! visitor.visit( child , rootDepth + stack.depth() + 1 ) ) {
 					return false;
-				}			
-				return children.get(1).visitInOrder( visitor , currentDepth + 1);
-			default:
-				throw new RuntimeException("Internal error, node with more than 2 children ?");
+				}
+				continue;
+			}
+			// nodes with two or more children have been visited before their second child
+			if ( index < 2 && ! visitor.visit( node , rootDepth + stack.depth() ) ) {
+				return false;
+			}
+			if ( stack.isEmpty() ) {
+				return true;
+			}
+			index = stack.peekNextChild();
+			node = stack.pop();
 		}
 	}    
 
-	public int getTreeDepth() {
-		return getTreeDepth(0);
+	public int getTreeDepth()
+	{
+		return getTreeDepth( this , 0 );
+	}
+
+	private static int getTreeDepth(ASTNode node,int depth)
+	{
+		if ( depth == MAX_RECURSION_DEPTH ) {
+			return depth + node.getSubtreeDepth();
+		}
+		int result = depth;
+		for ( ASTNode child : node.children ) {
+			result = Math.max( result , getTreeDepth( child , depth + 1 ) );
+		}
+		return result;
+	}
+
+	private int getSubtreeDepth()
+	{
+		int result = 0;
+		final TraversalStack stack = new TraversalStack();
+		ASTNode node = this;
+		int index = 0;
+		while ( true ) 
+		{
+			if ( index < node.children.size() ) 
+			{
+				final ASTNode child = node.children.get( index++ );
+				result = Math.max( result , stack.depth() + 1 );
+				if ( ! child.children.isEmpty() ) 
+				{
+					stack.push( node , index );
+					node = child;
+					index = 0;
+				}
+				continue;
+			}
+			if ( stack.isEmpty() ) {
+				return result;
+			}
+			index = stack.peekNextChild();
+			node = stack.pop();
+		}
 	}
 	
 	public List<ASTNode> getPathFromRoot() {
@@ -306,84 +657,116 @@ public abstract class ASTNode
 	    return path;
 	}
 
-	protected int getTreeDepth(int current) 
+	public boolean visitPreOrder(INodeVisitor visitor)
 	{
-		int result = current;
-		for ( ASTNode child : children) {
-			int tmp = child.getTreeDepth(current+1);
-			if ( tmp > result ) {
-				result = tmp;
-			}
-		}
-		return result;
+		return visitPreOrder( this , visitor , 0 );
 	}
 
-	public boolean visitPreOrder(INodeVisitor visitor) 
-	{
-		return visitPreOrder(visitor,0);
-	}
-
-	protected boolean visitPreOrder(INodeVisitor visitor,int currentDepth) 
+	private static boolean visitPreOrder(ASTNode node,INodeVisitor visitor,int depth)
 	{
 		// 1. Visit the root.
 		// 2. Traverse the left subtree.
 		// 3. Traverse the right subtree.
-
-		if ( ! visitor.visit( this, currentDepth ) ) {
+		if ( ! visitor.visit( node , depth ) ) {
 			return false;
 		}
+		if ( depth == MAX_RECURSION_DEPTH ) {
+			return visitChildrenPreOrder( node , visitor , depth );
+		}
+		final List<ASTNode> children = node.children;
+		for ( int i = 0 ; i < children.size() ; i++ )
+		{
+			if ( ! visitPreOrder( children.get( i ) , visitor , depth + 1 ) ) {
+				return false;
+			}
+		}
+		return true;
+	}
 
-		switch( getChildCount() ) {
-			case 0:
-				return true;
-			case 1:
-				if ( ! children.get(0).visitPreOrder( visitor ,currentDepth+1) ) {
+	private static boolean visitChildrenPreOrder(ASTNode root,INodeVisitor visitor,int rootDepth)
+	{
+		final TraversalStack stack = new TraversalStack();
+		ASTNode node = root;
+		int index = 0;
+		while ( true )
+		{
+			if ( index < node.children.size() )
+			{
+				final ASTNode child = node.children.get( index++ );
+				if ( ! visitor.visit( child , rootDepth + stack.depth() + 1 ) ) {
 					return false;
 				}
+				if ( ! child.children.isEmpty() ) 
+				{
+					stack.push( node , index );
+					node = child;
+					index = 0;
+				}
+				continue;
+			}
+			if ( stack.isEmpty() ) {
 				return true;
-			case 2:
-				if ( ! children.get(0).visitPreOrder( visitor ,currentDepth+1) ) {
-					return false;
-				}			
-				return children.get(1).visitPreOrder( visitor , currentDepth+1 );
-			default:
-				throw new RuntimeException("Internal error, node with more than 2 children ?");
+			}
+			index = stack.peekNextChild();
+			node = stack.pop();
 		}
 	}
 
-	public boolean visitPostOrder(INodeVisitor visitor) 
+	public boolean visitPostOrder(INodeVisitor visitor)
 	{
-		return visitPostOrder(visitor,0);
+		return visitPostOrder( this , visitor , 0 );
 	}
 
-	protected boolean visitPostOrder(INodeVisitor visitor,int currentDepth) 
+	private static boolean visitPostOrder(ASTNode node,INodeVisitor visitor,int depth)
 	{
 		// Traverse the left subtree.
 		// Traverse the right subtree.
 		// Visit the root.
-		switch( getChildCount() ) 
+		if ( depth == MAX_RECURSION_DEPTH ) {
+			return visitSubtreePostOrder( node , visitor , depth );
+		}
+		final List<ASTNode> children = node.children;
+		for ( int i = 0 ; i < children.size() ; i++ )
 		{
-			case 0:
-				return visitor.visit( this, currentDepth );
-			case 1:
-				if ( ! children.get(0).visitPostOrder( visitor , currentDepth +1 ) ) {
-					return false;
+			if ( ! visitPostOrder( children.get( i ) , visitor , depth + 1 ) ) {
+				return false;
+			}
+		}
+		return visitor.visit( node , depth );
+	}
+
+	private static boolean visitSubtreePostOrder(ASTNode root,INodeVisitor visitor,int rootDepth)
+	{
+		final TraversalStack stack = new TraversalStack();
+		ASTNode node = root;
+		int index = 0;
+		while ( true )
+		{
+			if ( index < node.children.size() )
+			{
+				final ASTNode child = node.children.get( index++ );
+				if ( ! child.children.isEmpty() )
+				{
+					stack.push( node , index );
+					node = child;
+					index = 0;
 				}
-				return visitor.visit( this, currentDepth );
-			case 2:
-				if ( ! children.get(0).visitPostOrder( visitor , currentDepth +1 ) ) {
-					return false;
-				}			
-				if ( children.get(1).visitPostOrder( visitor , currentDepth +1 ) ) {
+				else if ( ! visitor.visit( child , rootDepth + stack.depth() + 1 ) ) {
 					return false;
 				}
-				return visitor.visit( this, currentDepth );
-			default:
-				throw new RuntimeException("Internal error, node with more than 2 children ?");
+				continue;
+			}
+			if ( ! visitor.visit( node , rootDepth + stack.depth() ) ) {
+				return false;
+			}
+			if ( stack.isEmpty() ) {
+				return true;
+			}
+			index = stack.peekNextChild();
+			node = stack.pop();
 		}
 	}
 
-
 	public void replaceWith(ASTNode other) {
 		getParent().replaceChild( this , other );
 	}
@@ -413,6 +796,7 @@ public abstract class ASTNode
 		childToReplace.setParent(null);
 		children.add( index , newChild );
 		newChild.setParent( this );
+		invalidateHashes();
 	}
 
 	public final void print(final  PrintWriter writer) {
@@ -450,6 +834,7 @@ public abstract class ASTNode
 		}
 		children.add( child );
 		child.setParent( this );
+		invalidateHashes();
 		return child;
 	}
 
@@ -486,15 +871,86 @@ public abstract class ASTNode
 		return toString(false);
 	}
 
-	protected final String childToString(int index,boolean prettyPrint) 
+	/**
+	 * Returns the textual representation of this term.
+	 * 
+	 * <p>Nodes only describe themselves as a sequence of strings and child nodes , see {@link #appendTo(List, boolean)}.
+	 * Arbitrarily deep terms can be printed.</p>
+	 *
+	 * @param prettyPrint
+	 * @return
+	 */
+	public final String toString(boolean prettyPrint)
 	{
-		if ( index < 0 || index >= getChildCount() ) {
-			return "<no child>";
+		// sized for small terms , growing the buffers shows up when printing many of them
+		final StringBuilder result = new StringBuilder( 128 );
+		appendTo( this , result , new ArrayList<Object>( 32 ) , prettyPrint , 0 );
+		return result.toString();
+	}
+
+	/*
+	 * Prints a node , the parts of all nodes get appended to the same list (and are not removed again)
+	 * so only one list needs to be allocated.
+	 */
+	private static void appendTo(ASTNode node,StringBuilder result,List<Object> parts,boolean prettyPrint,int depth)
+	{
+		if ( depth == MAX_RECURSION_DEPTH ) {
+			node.appendSubtree( result , prettyPrint );
+			return;
 		}
-		return child(index).toString(prettyPrint);
-	}    
+		final int start = parts.size();
+		node.appendTo( parts , prettyPrint );
+		final int end = parts.size();
+		for ( int i = start ; i < end ; i++ )
+		{
+			final Object part = parts.get( i );
+			if ( part instanceof ASTNode ) {
+				appendTo( (ASTNode) part , result , parts , prettyPrint , depth + 1 );
+			} else {
+				result.append( (String) part );
+			}
+		}
+	}
 
-	public abstract String toString(boolean prettyPrint);
+	private void appendSubtree(StringBuilder result,boolean prettyPrint)
+	{
+		// parts that still need to be printed , in reverse order
+		final List<Object> stack = new ArrayList<Object>();
+		stack.add( this );
+		while ( ! stack.isEmpty() ) 
+		{
+			final Object part = stack.remove( stack.size() - 1 );
+			if ( part instanceof ASTNode ) 
+			{
+				final int start = stack.size();
+				((ASTNode) part).appendTo( stack , prettyPrint );
+				for ( int i = start , j = stack.size() - 1 ; i < j ; i++ , j-- ) {
+					stack.set( i , stack.set( j , stack.get( i ) ) );
+				}
+			} else {
+				result.append( (String) part );
+			}
+		}
+	}
+
+	/**
+	 * Appends the textual representation of this node to a list.
+	 * 
+	 * @param parts list to append <code>String</code>s and child nodes to , child nodes 
+	 * get replaced by their own textual representation
+	 * @param prettyPrint
+	 * @see #appendChild(List, int)
+	 */
+	protected abstract void appendTo(List<Object> parts,boolean prettyPrint);
+
+	protected final void appendChild(List<Object> parts,int index) 
+	{
+		if ( index < 0 || index >= getChildCount() ) {
+			parts.add( "<no child>" );
+		} else {
+			parts.add( child( index ) );
+		}
+	}
 
     public ASTNode getRoot()
     {
@@ -510,29 +966,227 @@ public abstract class ASTNode
         for ( Iterator<ASTNode> it = children.iterator() ; it.hasNext() ; ) {
             if ( child == it.next() ) {
                 it.remove();
+                invalidateHashes();
                 return;
             }
         }
         throw new RuntimeException("Failed to remove node "+child);
     }
     
+    /**
+     * Returns a hash derived from this term's {@link #getFingerprint() fingerprint}.
+     */
     public final int hashCode() {
-        int hash = 1;
-        hash = hash * 17 + thisHashCode();
-        for ( ASTNode child : children ) {
-            hash = hash * 17 + child.hashCode();
-        }
-        return hash;
+        final long hash = getFingerprint();
+        return (int) ( hash ^ ( hash >>> 32 ) );
     }
     
     protected abstract int thisHashCode();
 
-    public int countNodes() {
-        
-        int result = 1;
+    /**
+     * Returns a 64-bit hash of this node , not including its children.
+     * 
+     * <p>Subclasses whose {@link #thisHashCode()} is too weak to tell apart nodes 
+     * that are not {@link #isEquals(ASTNode) equal} should override this method.</p>
+     * 
+     * @return
+     */
+    protected long thisFingerprint() {
+        return thisHashCode();
+    }
+
+    /**
+     * Returns a 64-bit structural hash of this term.
+     * 
+     * <p>Terms that are {@link #isEquals(ASTNode) equal} have the same fingerprint , 
+     * terms with the same fingerprint are only very likely to be equal so callers
+     * that rewrite terms based on their fingerprints need to check for equality as well.</p>
+     * 
+     * <p>Like the {@link #getCanonicalHash() canonical hash} , the fingerprint is cached and
+     * discarded whenever the structure of the subtree changes.</p>
+     * 
+     * @return
+     */
+    public final long getFingerprint() 
+    {
+        if ( ! fingerprintValid ) {
+            updateFingerprints( this , 0 );
+        }
+        return fingerprint;
+    }
+
+    private static void updateFingerprints(ASTNode node,int depth)
+    {
+        if ( depth == MAX_RECURSION_DEPTH ) {
+            node.updateSubtreeFingerprints();
+            return;
+        }
+        // children first , subtrees that already have a fingerprint are skipped
+        for ( ASTNode child : node.children )
+        {
+            if ( ! child.fingerprintValid ) {
+                updateFingerprints( child , depth + 1 );
+            }
+        }
+        node.computeFingerprint();
+    }
+
+    private void updateSubtreeFingerprints()
+    {
+        final TraversalStack stack = new TraversalStack();
+        ASTNode node = this;
+        int index = 0;
+        while ( true ) 
+        {
+            if ( index < node.children.size() ) 
+            {
+                final ASTNode child = node.children.get( index++ );
+                if ( child.fingerprintValid ) {
+                    continue;
+                }
+                if ( child.children.isEmpty() ) {
+                    child.computeFingerprint();
+                } else {
+                    stack.push( node , index );
+                    node = child;
+                    index = 0;
+                }
+                continue;
+            }
+            node.computeFingerprint();
+            if ( stack.isEmpty() ) {
+                return;
+            }
+            index = stack.peekNextChild();
+            node = stack.pop();
+        }
+    }
+
+    private void computeFingerprint()
+    {
+        long hash = mix( getClass().getName().hashCode() * 0x9e3779b97f4a7c15L + thisFingerprint() );
         for ( ASTNode child : children ) {
-            result += child.countNodes();
+            hash = mix( hash * 0x9e3779b97f4a7c15L + child.fingerprint );
         }
-        return result;
+        fingerprint = mix( hash + children.size() );
+        fingerprintValid = true;
+    }
+
+    /**
+     * Finalizer from the SplitMix64 generator , every input bit affects every output bit.
+     */
+    protected static long mix(long value) 
+    {
+        long z = value;
+        z = ( z ^ ( z >>> 30 ) ) * 0xbf58476d1ce4e5b9L;
+        z = ( z ^ ( z >>> 27 ) ) * 0x94d049bb133111ebL;
+        return z ^ ( z >>> 31 );
+    }
+
+    /**
+     * Returns a hash of this term that ignores {@link TermNode}s (parentheses) , 
+     * terms that compare equal in {@link CanonicalOrder} have the same hash.
+     * 
+     * <p>The hash is cached , adding , removing or replacing a child or sorting the 
+     * children of a node discards the cached hashes of the node and all its ancestors.</p>
+     * 
+     * @return
+     */
+    public final int getCanonicalHash() 
+    {
+        if ( ! canonicalHashValid ) {
+            updateCanonicalHashes( this , 0 );
+        }
+        return canonicalHash;
+    }
+
+    private static void updateCanonicalHashes(ASTNode node,int depth)
+    {
+        if ( depth == MAX_RECURSION_DEPTH ) {
+            node.updateSubtreeCanonicalHashes();
+            return;
+        }
+        // children first , so computeCanonicalHash() only needs to look up their cached hashes
+        for ( ASTNode child : node.children )
+        {
+            if ( ! child.canonicalHashValid ) {
+                updateCanonicalHashes( child , depth + 1 );
+            }
+        }
+        node.updateCanonicalHash();
+    }
+
+    private void updateSubtreeCanonicalHashes()
+    {
+        final TraversalStack stack = new TraversalStack();
+        ASTNode node = this;
+        int index = 0;
+        while ( true ) 
+        {
+            if ( index < node.children.size() ) 
+            {
+                final ASTNode child = node.children.get( index++ );
+                if ( child.canonicalHashValid ) {
+                    continue;
+                }
+                if ( child.children.isEmpty() ) {
+                    child.updateCanonicalHash();
+                } else {
+                    stack.push( node , index );
+                    node = child;
+                    index = 0;
+                }
+                continue;
+            }
+            node.updateCanonicalHash();
+            if ( stack.isEmpty() ) {
+                return;
+            }
+            index = stack.peekNextChild();
+            node = stack.pop();
+        }
+    }
+
+    private void updateCanonicalHash() 
+    {
+        canonicalHash = computeCanonicalHash();
+        canonicalHashValid = true;
+    }
+
+    /**
+     * Computes the canonical hash of this node , only invoked after the hashes 
+     * of all children have been computed.
+     * 
+     * @return
+     */
+    protected int computeCanonicalHash() 
+    {
+        int hash = thisHashCode();
+        for ( ASTNode child : children ) {
+            hash = hash * 31 + child.getCanonicalHash();
+        }
+        return hash;
+    }
+
+    /**
+     * Discards the cached hashes of this node and all its ancestors.
+     * 
+     * <p>Must be called whenever the structure of this subtree changes. Computing a
+     * node's hash also computes the hashes of all its children , so the walk up the tree 
+     * stops at the first node that has no cached hashes.</p>
+     */
+    protected final void invalidateHashes() 
+    {
+        ASTNode current = this;
+        while ( current != null && ( current.canonicalHashValid || current.fingerprintValid ) ) 
+        {
+            current.canonicalHashValid = false;
+            current.fingerprintValid = false;
+            current = current.parent;
+        }
+    }
+
+    public int countNodes() {
+        return getNodeCount();
     }
 }
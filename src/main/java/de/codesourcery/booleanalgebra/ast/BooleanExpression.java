@@ -1,5 +1,7 @@
 package de.codesourcery.booleanalgebra.ast;
 
+import java.util.List;
+
 import de.codesourcery.booleanalgebra.IExpressionContext;
 import de.codesourcery.booleanalgebra.exceptions.ParseException;
 import de.codesourcery.booleanalgebra.lexer.ILexer;
@@ -54,9 +56,11 @@ public class BooleanExpression extends ASTNode
 	}    
 
 	@Override
-	public String toString(boolean prettyPrint)
+	protected void appendTo(List<Object> parts,boolean prettyPrint)
 	{
-		return childToString(0,prettyPrint)+" = "+childToString(1,prettyPrint);
+		appendChild( parts , 0 );
+		parts.add( " = " );
+		appendChild( parts , 1 );
 	}
 
 	@Override
@@ -76,14 +80,9 @@ public class BooleanExpression extends ASTNode
 	}
 
 	@Override
-	public boolean isEquals(ASTNode other) 
+	protected boolean thisEquals(ASTNode other) 
 	{
-		if ( other instanceof BooleanExpression ) {
-			BooleanExpression otherExpr = (BooleanExpression ) other;
-			return getLHS().isEquals( otherExpr.getLHS() ) &&
-					getRHS().isEquals( otherExpr.getRHS() );
-		}
-		return false;
+		return other instanceof BooleanExpression;
 	}
 
 	@Override
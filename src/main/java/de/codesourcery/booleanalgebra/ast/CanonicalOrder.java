@@ -0,0 +1,224 @@
+package de.codesourcery.booleanalgebra.ast;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * A total order on terms , used to keep the children of (n-ary) AND / OR nodes sorted.
+ *
+ * <p>Terms are compared structurally , {@link TermNode}s (parentheses) are ignored. Negations are only
+ * used to break ties , so a term and its negations (<code>a , not a , not not a</code>) always end
+ * up next to each other. Among the sorted children of a node , duplicates and complements can
+ * therefore be found by looking at neighbours only.</p>
+ *
+ * <p>Without negations , terms are ordered by type (<code>false &lt; true &lt; variables &lt; AND &lt; OR &lt; expressions</code>)
+ * and then by their {@link ASTNode#getCanonicalHash() cached hash}. Only terms with the same type and hash are compared
+ * structurally: variables by name , compound terms by their number of children and then by their children ,
+ * from left to right. Comparing two terms therefore neither allocates (unless they are very deep) nor , unless they are equal
+ * or their hashes collide , walks their subtrees.</p>
+ *
+ * <p>Two terms compare equal if and only if they are structurally equal after removing all parentheses , so
+ * sorting the children of commutative operators brings equivalent terms into the same form.</p>
+ */
+public final class CanonicalOrder implements Comparator<ASTNode>
+{
+    public static final CanonicalOrder INSTANCE = new CanonicalOrder();
+
+    private CanonicalOrder() {
+    }
+
+    @Override
+    public int compare(ASTNode o1, ASTNode o2)
+    {
+        final ASTNode base1 = stripNegations( o1 );
+        final ASTNode base2 = stripNegations( o2 );
+        final int result = compareBases( base1 , base2 );
+        if ( result != 0 ) {
+            return result;
+        }
+        return Integer.compare( getNegationCount( o1 ) , getNegationCount( o2 ) );
+    }
+
+    /**
+     * Returns whether one term is the negation of another.
+     *
+     * @param node1
+     * @param node2
+     * @return <code>true</code> if both terms only differ in an odd number of negations
+     */
+    public static boolean isComplement(ASTNode node1,ASTNode node2)
+    {
+        return ( ( getNegationCount( node1 ) ^ getNegationCount( node2 ) ) & 1 ) != 0 &&
+               compareBases( stripNegations( node1 ) , stripNegations( node2 ) ) == 0;
+    }
+
+    /**
+     * Returns whether a list of terms is sorted in canonical order.
+     *
+     * @param nodes
+     * @return
+     */
+    public static boolean isSorted(List<ASTNode> nodes)
+    {
+        for ( int i = 1 ; i < nodes.size() ; i++ )
+        {
+            if ( INSTANCE.compare( nodes.get( i - 1 ) , nodes.get( i ) ) > 0 ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int compareBases(ASTNode node1,ASTNode node2)
+    {
+        return compareBases( node1 , node2 , 0 );
+    }
+
+    private static int compareBases(ASTNode node1,ASTNode node2,int depth)
+    {
+        final int result = compareNodes( node1 , node2 );
+        if ( result != 0 || node1 == node2 || ! node1.hasChildren() ) {
+            return result;
+        }
+        if ( depth == ASTNode.MAX_RECURSION_DEPTH ) {
+            return compareChildren( node1 , node2 );
+        }
+        for ( int i = 0 ; i < node1.getChildCount() ; i++ )
+        {
+            final ASTNode child1 = node1.child(i);
+            final ASTNode child2 = node2.child(i);
+            final int childResult = compareBases( stripNegations( child1 ) , stripNegations( child2 ) , depth + 1 );
+            if ( childResult != 0 ) {
+                return childResult;
+            }
+            final int negations = Integer.compare( getNegationCount( child1 ) , getNegationCount( child2 ) );
+            if ( negations != 0 ) {
+                return negations;
+            }
+        }
+        return 0;
+    }
+
+    private static int compareChildren(ASTNode node1,ASTNode node2)
+    {
+        // compare children from left to right , using an explicit stack so arbitrarily deep terms can be compared.
+        // Entries are either pairs of terms or (after the children of a pair) the result of comparing the pair's negations.
+        final Stack<Object> stack = new Stack<>();
+        pushChildren( node1 , node2 , stack );
+        while ( ! stack.isEmpty() )
+        {
+            final Object entry = stack.pop();
+            if ( entry instanceof Integer )
+            {
+                if ( (Integer) entry != 0 ) {
+                    return (Integer) entry;
+                }
+                continue;
+            }
+            final ASTNode[] pair = (ASTNode[]) entry;
+            final ASTNode base1 = stripNegations( pair[0] );
+            final ASTNode base2 = stripNegations( pair[1] );
+            final int baseResult = compareNodes( base1 , base2 );
+            if ( baseResult != 0 ) {
+                return baseResult;
+            }
+            stack.push( Integer.compare( getNegationCount( pair[0] ) , getNegationCount( pair[1] ) ) );
+            if ( base1 != base2 ) {
+                pushChildren( base1 , base2 , stack );
+            }
+        }
+        return 0;
+    }
+
+    private static void pushChildren(ASTNode node1,ASTNode node2,Stack<Object> stack)
+    {
+        for ( int i = node1.getChildCount() - 1 ; i >= 0 ; i-- ) {
+            stack.push( new ASTNode[] { node1.child(i) , node2.child(i) } );
+        }
+    }
+
+    /*
+     * Compares two terms without looking at their children.
+     */
+    private static int compareNodes(ASTNode node1,ASTNode node2)
+    {
+        if ( node1 == node2 ) {
+            return 0;
+        }
+        final int rank1 = rank( node1 );
+        final int rank2 = rank( node2 );
+        if ( rank1 != rank2 ) {
+            return rank1 < rank2 ? -1 : 1;
+        }
+        final int hash1 = node1.getCanonicalHash();
+        final int hash2 = node2.getCanonicalHash();
+        if ( hash1 != hash2 ) {
+            return hash1 < hash2 ? -1 : 1;
+        }
+        // variables are compared by name , using their index would not be consistent with Identifier#equals()
+        // for identifiers from different symbol tables
+        if ( node1 instanceof IdentifierNode ) {
+            return ((IdentifierNode) node1).getIdentifier().compareTo( ((IdentifierNode) node2).getIdentifier() );
+        }
+        final int count1 = node1.getChildCount();
+        final int count2 = node2.getChildCount();
+        if ( count1 != count2 ) {
+            return count1 < count2 ? -1 : 1;
+        }
+        return 0;
+    }
+
+    private static int rank(ASTNode node)
+    {
+        if ( node instanceof FalseNode ) {
+            return 0;
+        }
+        if ( node instanceof TrueNode ) {
+            return 1;
+        }
+        if ( node instanceof IdentifierNode ) {
+            return 2;
+        }
+        if ( node.isAND() ) {
+            return 3;
+        }
+        if ( node.isOR() ) {
+            return 4;
+        }
+        if ( node instanceof BooleanExpression ) {
+            return 5;
+        }
+        throw new IllegalArgumentException("Unsupported node type: "+node);
+    }
+
+    private static int getNegationCount(ASTNode node)
+    {
+        int count = 0;
+        ASTNode current = unwrap( node );
+        while ( current.isNOT() )
+        {
+            count++;
+            current = unwrap( current.child(0) );
+        }
+        return count;
+    }
+
+    private static ASTNode stripNegations(ASTNode node)
+    {
+        ASTNode current = unwrap( node );
+        while ( current.isNOT() ) {
+            current = unwrap( current.child(0) );
+        }
+        return current;
+    }
+
+    private static ASTNode unwrap(ASTNode node)
+    {
+        ASTNode result = node;
+        while ( result instanceof TermNode && result.hasChildren() ) {
+            result = result.child(0);
+        }
+        return result;
+    }
+}
@@ -1,5 +1,7 @@
 package de.codesourcery.booleanalgebra.ast;
 
+import java.util.List;
+
 import de.codesourcery.booleanalgebra.IExpressionContext;
 import de.codesourcery.booleanalgebra.exceptions.ParseException;
 import de.codesourcery.booleanalgebra.lexer.ILexer;
@@ -26,9 +28,9 @@ public class FalseNode extends ASTNode
     }
     
     @Override
-    public String toString(boolean prettyPrint)
+    protected void appendTo(List<Object> parts,boolean prettyPrint)
     {
-        return "false";
+        parts.add( "false" );
     }
     
     @Override
@@ -62,7 +64,7 @@ public class FalseNode extends ASTNode
     }
 
 	@Override
-	public boolean isEquals(ASTNode other) {
+	protected boolean thisEquals(ASTNode other) {
 		return other instanceof FalseNode;
 	}
 
@@ -10,6 +10,7 @@ public final class Identifier implements Comparable<Identifier>
     private static final Pattern PATTERN = Pattern.compile("^[_\\-0-9a-zA-Z]+$");
     
     private final String s;
+    private final int index;
     
     public Identifier(String s) 
     {
@@ -20,6 +21,18 @@ public final class Identifier implements Comparable<Identifier>
             throw new IllegalArgumentException( "'"+s+"' is not a valid identifier");
         }
         this.s = s ;
+        this.index = -1;
+    }
+    
+    /**
+     * INTERNAL USE ONLY.
+     * 
+     * @param s already validated name
+     * @param index index assigned by the {@link SymbolTable} that created this identifier
+     */
+    Identifier(String s,int index) {
+        this.s = s;
+        this.index = index;
     }
     
     public static Identifier id(String s) {
@@ -42,6 +55,17 @@ public final class Identifier implements Comparable<Identifier>
         return s;
     }
     
+    /**
+     * Returns the index assigned to this identifier by the {@link SymbolTable}
+     * that created it.
+     * 
+     * @return index or -1 if this identifier was not created by a symbol table
+     * @see SymbolTable#indexOf(Identifier)
+     */
+    public int getIndex() {
+        return index;
+    }
+    
     @Override
     public String toString()
     {
@@ -1,10 +1,13 @@
 package de.codesourcery.booleanalgebra.ast;
 
+import java.util.List;
+
 import org.apache.commons.lang.ObjectUtils;
 
 import de.codesourcery.booleanalgebra.IExpressionContext;
 import de.codesourcery.booleanalgebra.exceptions.ParseException;
 import de.codesourcery.booleanalgebra.lexer.ILexer;
+import de.codesourcery.booleanalgebra.lexer.ISymbolTableLexer;
 import de.codesourcery.booleanalgebra.lexer.TokenType;
 
 public class IdentifierNode extends ASTNode
@@ -32,10 +35,12 @@ public class IdentifierNode extends ASTNode
     {
         final int start = lexer.currentParseOffset();
         final String tmp = lexer.read(TokenType.IDENTIFIER).getContents();
-        if ( ! Identifier.isValidIdentifier( tmp ) ) {
+        final SymbolTable symbols = lexer instanceof ISymbolTableLexer ? ((ISymbolTableLexer) lexer).getSymbolTable() : null;
+        if ( ( symbols == null || ! symbols.contains( tmp ) ) && ! Identifier.isValidIdentifier( tmp ) ) {
             throw new ParseException( "Not a valid identifier: '"+tmp+"'" , start );
         }
-        identifier = new Identifier( tmp );
+        identifier = symbols != null ? symbols.intern( tmp ) : new Identifier( tmp );
+        invalidateHashes();
         return this;
     }
 
@@ -45,9 +50,9 @@ public class IdentifierNode extends ASTNode
     }
     
     @Override
-    public String toString(boolean prettyPrint)
+    protected void appendTo(List<Object> parts,boolean prettyPrint)
     {
-        return identifier.toString();
+        parts.add( identifier.toString() );
     }
     
     @Override
@@ -89,7 +94,7 @@ public class IdentifierNode extends ASTNode
     }
 
 	@Override
-	public boolean isEquals(ASTNode other) 
+	protected boolean thisEquals(ASTNode other) 
 	{
 		if ( other instanceof IdentifierNode) 
 		{
@@ -103,5 +108,17 @@ public class IdentifierNode extends ASTNode
     {
         return identifier.getValue().hashCode();
     }
+
+    @Override
+    protected long thisFingerprint()
+    {
+        // String#hashCode() has too many collisions (e.g. "Aa" and "BB") 
+        final String name = identifier.getValue();
+        long hash = 0xcbf29ce484222325L;
+        for ( int i = 0 ; i < name.length() ; i++ ) {
+            hash = ( hash ^ name.charAt( i ) ) * 0x100000001b3L;
+        }
+        return hash;
+    }
     
 }
@@ -1,5 +1,8 @@
 package de.codesourcery.booleanalgebra.ast;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.apache.commons.lang.ObjectUtils;
 
 import de.codesourcery.booleanalgebra.IExpressionContext;
@@ -30,10 +33,31 @@ public class OperatorNode extends ASTNode
         this.type = type;
     }    
     
+    /**
+     * Creates an AND / OR node with an arbitrary number of children.
+     * 
+     * @param type
+     * @param children at least two children
+     */
+    public OperatorNode(OperatorType type,List<? extends ASTNode> children) 
+    {
+        if ( type != OperatorType.AND && type != OperatorType.OR ) {
+            throw new IllegalArgumentException("Only AND / OR support more than two children: "+type);
+        }
+        if ( children == null || children.size() < 2 ) {
+            throw new IllegalArgumentException("children must not be NULL and hold at least two nodes.");
+        }
+        this.type = type;
+        for ( ASTNode child : children ) {
+            addChild( child );
+        }
+    }
+    
     @Override
     protected int getMaxSupportedChildCount()
     {
-        return 2;
+        // AND / OR are n-ary
+        return type == OperatorType.AND || type == OperatorType.OR ? -1 : 2;
     }
     
     public OperatorType getType()
@@ -71,6 +95,7 @@ public class OperatorNode extends ASTNode
                     throw new ParseException("Expected AND,OR or NOT , got "+tok,tok.getParseOffset() );
         }
         lexer.read();
+        invalidateHashes();
         return this;
     }
     
@@ -89,32 +114,49 @@ public class OperatorNode extends ASTNode
     }
 
     @Override
-    public String toString(boolean prettyPrint)
+    protected void appendTo(List<Object> parts,boolean prettyPrint)
     {
         if ( type == null ) {
-            return "<operator node without type?>";
+            parts.add( "<operator node without type?>" );
+            return;
         }
-        final boolean leftChildRequiresParens = hasLeftChild() && ! ( leftChild() instanceof TermNode ) && ! leftChild().isLeafNode();
-        final boolean rightChildRequiresParens = hasRightChild() && ! ( rightChild() instanceof TermNode ) && ! rightChild().isLeafNode();
-        
-        final String leftChild = leftChildRequiresParens ? "(" + childToString(0,prettyPrint) + ")" : childToString(0,prettyPrint);
-        final String rightChild;
-        if ( hasRightChild() ) {
-            rightChild = rightChildRequiresParens  ?  "(" + childToString(1,prettyPrint) + ")" : childToString(1,prettyPrint);
-        } else {
-            rightChild = "";
+        if ( getType() == OperatorType.NOT ) {
+            parts.add( "NOT " );
+            appendOperand( parts , 0 );
+            return;
         }
-        
+        final String operator;
         switch( getType() ) {
             case AND:
-                return leftChild+" AND "+rightChild;
-            case NOT:
-                return "NOT "+leftChild;
+                operator = " AND ";
+                break;
             case OR:
-                return leftChild+" OR "+rightChild;
+                operator = " OR ";
+                break;
             default:
                 throw new RuntimeException("Unhandled type "+getType() );
         }
+        appendOperand( parts , 0 );
+        parts.add( operator );
+        if ( hasRightChild() ) {
+            appendOperand( parts , 1 );
+        }
+        for ( int i = 2 ; i < getChildCount() ; i++ ) {
+            parts.add( operator );
+            appendOperand( parts , i );
+        }
+    }
+    
+    private void appendOperand(List<Object> parts,int index) 
+    {
+        final boolean requiresParens = hasChild( index ) && ! ( child( index ) instanceof TermNode ) && ! child( index ).isLeafNode();
+        if ( requiresParens ) {
+            parts.add( "(" );
+            appendChild( parts , index );
+            parts.add( ")" );
+        } else {
+            appendChild( parts , index );
+        }
     }
     
 	@Override
@@ -131,40 +173,139 @@ public class OperatorNode extends ASTNode
 		return new FalseNode();
 	}
     
+    // results of evaluating nested operators and terms
+    private static final int FALSE = 0;
+    private static final int TRUE = 1;
+    private static final int NO_VALUE = -1;
+
+    /**
+     * Evaluates this term.
+     * 
+     * <p>Arbitrarily deep terms can be evaluated , nested operators and terms below 
+     * a certain depth are evaluated using an explicit stack.</p>
+     * 
+     * @return a literal value or this node if any of the operands has no literal value
+     */
     @Override
 	public ASTNode evaluate(IExpressionContext context)
     {
-        switch( getType() ) {
-            case OR: 
-            	// $FALL-THROUGH$
-            case AND:
-            	ASTNode leftChild = child(0).evaluate(context);
-            	ASTNode rightChild = child(1).evaluate(context);
-            	if ( leftChild != null && rightChild != null &&
-            		 leftChild.hasLiteralValue(context) && rightChild.hasLiteralValue(context) ) 
-            	{
-                    switch( getType() ) {
-                    	case OR:
-                    		return toNode( leftChild.getLiteralValue( context ) | 
-                    				       rightChild.getLiteralValue( context ) );
-                        case AND:
-                    	    return toNode( leftChild.getLiteralValue( context ) & 
-                    	    		       rightChild.getLiteralValue( context ) );                    	
-                    	default:
-                            throw new RuntimeException("Unhandled type "+getType() );                     		
+        final int result = evaluate( this , context , 0 );
+        return result == NO_VALUE ? this : toNode( result == TRUE );
+    }
+
+    private static boolean isNested(ASTNode node) {
+        return node instanceof OperatorNode || ( node instanceof TermNode && node.hasChildren() );
+    }
+
+    private static int evaluate(ASTNode node,IExpressionContext context,int depth)
+    {
+        if ( depth == MAX_RECURSION_DEPTH ) {
+            return evaluateSubtree( node , context );
+        }
+        boolean result = initialValue( node );
+        for ( int i = 0 ; i < node.getChildCount() ; i++ )
+        {
+            final ASTNode child = node.child( i );
+            final boolean value;
+            if ( isNested( child ) ) 
+            {
+                final int childValue = evaluate( child , context , depth + 1 );
+                if ( childValue == NO_VALUE ) {
+                    return NO_VALUE;
+                }
+                value = childValue == TRUE;
+            } 
+            else 
+            {
+                final ASTNode literal = child.evaluate( context );
+                if ( literal == null || ! literal.isLiteralValue() ) {
+                    return NO_VALUE;
+                }
+                value = literal.getLiteralValue( context );
+            }
+            result = combine( node , result , value );
+        }
+        return result ? TRUE : FALSE;
+    }
+
+    private static int evaluateSubtree(ASTNode root,IExpressionContext context)
+    {
+        // operators and terms on the path from the root to the current operand , 
+        // with the index of their next operand and their value so far
+        ASTNode[] nodes = new ASTNode[16];
+        int[] nextChild = new int[16];
+        boolean[] values = new boolean[16];
+        nodes[0] = root;
+        values[0] = initialValue( root );
+        int size = 1;
+        while ( true ) 
+        {
+            final ASTNode node = nodes[ size - 1 ];
+            boolean value;
+            if ( nextChild[ size - 1 ] < node.getChildCount() ) 
+            {
+                final ASTNode child = node.child( nextChild[ size - 1 ]++ );
+                if ( isNested( child ) ) 
+                {
+                    if ( size == nodes.length ) 
+                    {
+                        nodes = Arrays.copyOf( nodes , size * 2 );
+                        nextChild = Arrays.copyOf( nextChild , size * 2 );
+                        values = Arrays.copyOf( values , size * 2 );
                     }
-            	}
-                break;
-            case NOT:
-            	ASTNode value = child(0).evaluate( context );
-            	if ( value != null && value.isLiteralValue() ) {
-            		return value.getLiteralValue(context) ? new FalseNode() : new TrueNode(); 
-            	}
-            	break;
-            default:
-                throw new RuntimeException("Unhandled type "+getType() );                
-        }        
-        return this;
+                    nodes[ size ] = child;
+                    nextChild[ size ] = 0;
+                    values[ size ] = initialValue( child );
+                    size++;
+                    continue;
+                }
+                final ASTNode result = child.evaluate( context );
+                if ( result == null || ! result.isLiteralValue() ) {
+                    return NO_VALUE;
+                }
+                value = result.getLiteralValue( context );
+            } 
+            else 
+            {
+                if ( --size == 0 ) {
+                    return values[0] ? TRUE : FALSE;
+                }
+                nodes[ size ] = null;
+                value = values[ size ];
+            }
+            values[ size - 1 ] = combine( nodes[ size - 1 ] , values[ size - 1 ] , value );
+        }
+    }
+    
+    private static boolean initialValue(ASTNode node) 
+    {
+        if ( node instanceof OperatorNode ) 
+        {
+            switch( ((OperatorNode) node).getType() ) {
+                case AND:
+                    return true;
+                case OR:
+                case NOT:
+                    return false;
+                default:
+                    throw new RuntimeException("Unhandled type "+((OperatorNode) node).getType() );
+            }
+        }
+        return false;
+    }
+    
+    private static boolean combine(ASTNode node,boolean current,boolean operand) 
+    {
+        if ( node.isAND() ) {
+            return current & operand;
+        }
+        if ( node.isOR() ) {
+            return current | operand;
+        }
+        if ( node.isNOT() ) {
+            return ! operand;
+        }
+        return operand; // term
     }
 
 	@Override
@@ -176,25 +317,9 @@ public class OperatorNode extends ASTNode
 	}
 
 	@Override
-	public boolean isEquals(ASTNode other) 
+	protected boolean thisEquals(ASTNode other) 
 	{
-		if ( other instanceof OperatorNode) 
-		{
-			if ( ! ObjectUtils.equals( this.type , ((OperatorNode) other).type ) ) {
-				return false;
-			}
-			final int len = getChildCount();
-			if ( len != other.getChildCount() ) {
-				return false;
-			}
-			for ( int i = 0 ; i < len ; i++ ) {
-				if ( ! child(i).isEquals( other.child(i) ) ) {
-					return false;
-				}
-			}
-			return true;
-		}
-		return false;
+		return other instanceof OperatorNode && ObjectUtils.equals( this.type , ((OperatorNode) other).type );
 	}
 
     @Override
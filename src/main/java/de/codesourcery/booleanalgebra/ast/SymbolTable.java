@@ -0,0 +1,130 @@
+package de.codesourcery.booleanalgebra.ast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns identifiers and assigns them dense indices (0,1,2,...) in order of
+ * their first appearance.
+ *
+ * <p>A name is only validated the first time it is interned, all later lookups
+ * are a single hash map access and return the very same {@link Identifier} instance.
+ * Since identifiers still compare by name, interned and non-interned identifiers
+ * may be mixed freely.</p>
+ *
+ * <p>Indices are never reused, a symbol table only grows. Symbol tables are not thread-safe.</p>
+ */
+public final class SymbolTable
+{
+    private final Map<String,Identifier> symbolsByName = new HashMap<>();
+    private Identifier[] symbols = new Identifier[16];
+    private int size;
+
+    /**
+     * Returns the identifier for a name , creating it if necessary.
+     *
+     * @param name
+     * @return
+     * @throws IllegalArgumentException if the name is not a valid identifier
+     */
+    public Identifier intern(String name)
+    {
+        final Identifier existing = symbolsByName.get( name );
+        if ( existing != null ) {
+            return existing;
+        }
+        if ( ! Identifier.isValidIdentifier( name ) ) {
+            throw new IllegalArgumentException( "'"+name+"' is not a valid identifier");
+        }
+        return register( name );
+    }
+
+    /**
+     * Returns this table's instance of an identifier , creating it if necessary.
+     *
+     * @param identifier
+     * @return
+     */
+    public Identifier intern(Identifier identifier)
+    {
+        if (identifier == null) {
+            throw new IllegalArgumentException("identifier must not be NULL.");
+        }
+        if ( isOwnIdentifier( identifier ) ) {
+            return identifier;
+        }
+        final Identifier existing = symbolsByName.get( identifier.getValue() );
+        return existing != null ? existing : register( identifier.getValue() );
+    }
+
+    /**
+     * Returns the index of an identifier.
+     *
+     * @param identifier
+     * @return index or -1 if this table contains no identifier with this name
+     */
+    public int indexOf(Identifier identifier)
+    {
+        if ( isOwnIdentifier( identifier ) ) {
+            return identifier.getIndex();
+        }
+        final Identifier existing = symbolsByName.get( identifier.getValue() );
+        return existing != null ? existing.getIndex() : -1;
+    }
+
+    public boolean contains(String name) {
+        return symbolsByName.containsKey( name );
+    }
+
+    /**
+     * Returns the identifier with a given index.
+     *
+     * @param index
+     * @return
+     */
+    public Identifier get(int index)
+    {
+        if ( index < 0 || index >= size ) {
+            throw new IndexOutOfBoundsException("No identifier with index "+index);
+        }
+        return symbols[index];
+    }
+
+    /**
+     * Returns the number of identifiers in this table.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    public List<Identifier> getIdentifiers() {
+        return new ArrayList<>( Arrays.asList( symbols ).subList( 0 , size ) );
+    }
+
+    private boolean isOwnIdentifier(Identifier identifier)
+    {
+        final int index = identifier.getIndex();
+        return index >= 0 && index < size && symbols[index] == identifier;
+    }
+
+    private Identifier register(String name)
+    {
+        if ( size == symbols.length ) {
+            symbols = Arrays.copyOf( symbols , size * 2 );
+        }
+        final Identifier result = new Identifier( name , size );
+        symbols[ size++ ] = result;
+        symbolsByName.put( name , result );
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return getIdentifiers().toString();
+    }
+}
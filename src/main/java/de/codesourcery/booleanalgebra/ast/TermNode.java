@@ -1,5 +1,7 @@
 package de.codesourcery.booleanalgebra.ast;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
 
 import de.codesourcery.booleanalgebra.IExpressionContext;
@@ -11,6 +13,7 @@ import de.codesourcery.booleanalgebra.lexer.TokenType;
 public class TermNode extends ASTNode
 {
     private boolean artificial = false;
+    private boolean naryOperators = false;
     
     @Override
     protected int getMaxSupportedChildCount()
@@ -32,6 +35,21 @@ public class TermNode extends ASTNode
         this.artificial=artificial;
     }    
     
+    /**
+     * Sets whether the parser should merge chains of the same operator into a single
+     * (n-ary) AND / OR node.
+     * 
+     * <p>By default , <code>a or b or c</code> is parsed into <code>(a OR b) OR c</code> , with n-ary operators
+     * enabled it becomes a single OR node with three children. Parenthesized sub-terms are never merged.</p>
+     * 
+     * @param yesNo
+     * @return this instance (for chaining)
+     */
+    public TermNode setNaryOperators(boolean yesNo) {
+        this.naryOperators = yesNo;
+        return this;
+    }
+    
     private void markAsArtifical() {
         this.artificial = true;
     }
@@ -146,68 +164,97 @@ public class TermNode extends ASTNode
          *  EXPRESSION = TERM EQUALS TERM 
          */
         
-        final int startOffset = lexer.currentParseOffset();
-        ASTNode lastAddedNode = null;
-        final Stack<OperatorNode> operatorStack = new Stack<OperatorNode>();
-        final Stack<ASTNode> valueStack = new Stack<ASTNode>();   
-        
-        // System.out.println(" ---------- start: parse term ---------- ");
-        do {
-            final Token tok = lexer.peek();
-            
-            if ( tok.hasType( TokenType.IDENTIFIER ) ) 
-            {
-                lastAddedNode = pushToStack( operatorStack , valueStack , new IdentifierNode().parse(lexer ) , lastAddedNode  );
-            } 
-            else if ( tok.hasType( TokenType.TRUE ) ) 
-            {
-                lastAddedNode = pushToStack( operatorStack , valueStack , new TrueNode().parse(lexer ) , lastAddedNode  );
-            } 
-            else if ( tok.hasType( TokenType.FALSE ) ) 
-            {
-                lastAddedNode = pushToStack( operatorStack , valueStack , new FalseNode().parse(lexer ) , lastAddedNode );
-            } 
-            else if ( tok.hasType( TokenType.AND ) || tok.hasType( TokenType.NOT ) || tok.hasType( TokenType.OR)) 
-            {
-                lastAddedNode = pushToStack( operatorStack ,valueStack ,  new OperatorNode().parse(lexer ) , lastAddedNode );
-            } 
-            else if ( tok.hasType( TokenType.PARENS_OPEN ) ) 
+        // nested parentheses are parsed using an explicit stack of the enclosing terms (instead of recursion) ,
+        // so that arbitrarily deep terms can be parsed
+        final Stack<Frame> enclosingTerms = new Stack<Frame>();
+        Frame current = new Frame( this , lexer.currentParseOffset() );
+        boolean startOfTerm = true;
+        while ( true ) 
+        {
+            boolean termOpened = false;
+            // a term always consumes at least one token
+            while ( startOfTerm || ! lexer.eof() ) 
             {
-                lexer.read( TokenType.PARENS_OPEN );
-                ASTNode parsed = new TermNode().internalParse(lexer);
-                lastAddedNode = pushToStack( operatorStack ,valueStack , parsed , lastAddedNode  );
-                lexer.read( TokenType.PARENS_CLOSE);                
+                startOfTerm = false;
+                final Token tok = lexer.peek();
+                
+                if ( tok.hasType( TokenType.IDENTIFIER ) ) 
+                {
+                    current.push( new IdentifierNode().parse(lexer ) );
+                } 
+                else if ( tok.hasType( TokenType.TRUE ) ) 
+                {
+                    current.push( new TrueNode().parse(lexer ) );
+                } 
+                else if ( tok.hasType( TokenType.FALSE ) ) 
+                {
+                    current.push( new FalseNode().parse(lexer ) );
+                } 
+                else if ( tok.hasType( TokenType.AND ) || tok.hasType( TokenType.NOT ) || tok.hasType( TokenType.OR)) 
+                {
+                    current.push( new OperatorNode().parse(lexer ) );
+                } 
+                else if ( tok.hasType( TokenType.PARENS_OPEN ) ) 
+                {
+                    lexer.read( TokenType.PARENS_OPEN );
+                    enclosingTerms.push( current );
+                    current = new Frame( new TermNode().setNaryOperators( naryOperators ) , lexer.currentParseOffset() );
+                    startOfTerm = true;
+                    termOpened = true;
+                    break;
+                }
+                else {
+                    break;
+                }
             }
-            else {
-                break;
+            
+            if ( termOpened ) {
+                continue;
             }
             
-        } while ( ! lexer.eof() );
-
-        clearStacks( operatorStack , valueStack , lastAddedNode );
-
-        if ( ! operatorStack.isEmpty() ) {
-            throw new ParseException("Term stack not empty: "+operatorStack, startOffset );
+            current.finish();
+            if ( enclosingTerms.isEmpty() ) {
+                return this;
+            }
+            final TermNode parsed = current.term;
+            current = enclosingTerms.pop();
+            current.push( parsed );
+            lexer.read( TokenType.PARENS_CLOSE);                
         }
-        // System.out.println(" ---------- finish: parse term : "+this+" ---------- ");
-        
-        assertNoEmptyTerms( startOffset );
-        return this;
     }
     
-    private void assertNoEmptyTerms(final int offset) {
-        final INodeVisitor visitor = new INodeVisitor() {
-            
-            @Override
-            public boolean visit(ASTNode node, int currentDepth)
-            {
-                if ( node instanceof TermNode && ! node.hasChildren() ) {
-                    throw new ParseException("Term must not be empty",offset);                    
-                }
-                return true;
+    /*
+     * State of a term that is being parsed.
+     */
+    private static final class Frame 
+    {
+        public final TermNode term;
+        public final int startOffset;
+        public final Stack<OperatorNode> operatorStack = new Stack<OperatorNode>();
+        public final Stack<ASTNode> valueStack = new Stack<ASTNode>();
+        public ASTNode lastAddedNode;
+        
+        public Frame(TermNode term,int startOffset) {
+            this.term = term;
+            this.startOffset = startOffset;
+        }
+        
+        public void push(ASTNode node) {
+            lastAddedNode = term.pushToStack( operatorStack , valueStack , node , lastAddedNode );
+        }
+        
+        public void finish() 
+        {
+            term.clearStacks( operatorStack , valueStack , lastAddedNode );
+
+            if ( ! operatorStack.isEmpty() ) {
+                throw new ParseException("Term stack not empty: "+operatorStack, startOffset );
             }
-        };
-        visitInOrder( visitor );
+            // nested terms have already been checked when they were finished
+            if ( ! term.hasChildren() ) {
+                throw new ParseException("Term must not be empty",startOffset);                    
+            }
+        }
     }
 
     private void clearStacks(Stack<OperatorNode> operatorStack, Stack<ASTNode> valueStack, ASTNode lastAddedNode)
@@ -330,7 +377,9 @@ public class TermNode extends ASTNode
             }            
             final ASTNode leftValue = valueStack.pop();
             // System.out.println("VALUE: POP "+leftValue);
-            if ( op.isAND() ) {
+            if ( naryOperators ) {
+                newNode = mergeOperands( op.getType() , leftValue , rightValue );
+            } else if ( op.isAND() ) {
                 newNode = OperatorNode.and( leftValue, rightValue);
             } else if ( op.isOR() ) {
                 newNode = OperatorNode.or( leftValue, rightValue);
@@ -356,6 +405,37 @@ public class TermNode extends ASTNode
         return newNode;
     }
 
+    /*
+     * Combines two operands into one n-ary node , operands that were built for the same
+     * operator (and are not enclosed in parens) are merged into the result.
+     * 
+     * Operators are left-associative , so the left operand of a chain a op b op c is usually the node
+     * built for a op b , which is extended in place to keep parsing long chains linear.
+     */
+    private static ASTNode mergeOperands(OperatorType type,ASTNode leftValue,ASTNode rightValue) 
+    {
+        final ASTNode result;
+        if ( isOperator( leftValue , type ) ) {
+            result = leftValue;
+        } else {
+            result = new OperatorNode( type );
+            result.addChild( leftValue );
+        }
+        if ( isOperator( rightValue , type ) ) 
+        {
+            for ( ASTNode child : new ArrayList<ASTNode>( rightValue.children() ) ) {
+                result.addChild( child );
+            }
+        } else {
+            result.addChild( rightValue );
+        }
+        return result;
+    }
+    
+    private static boolean isOperator(ASTNode node,OperatorType type) {
+        return node instanceof OperatorNode && ((OperatorNode) node).getType() == type;
+    }
+
     private boolean isLeftAssociative(OperatorNode node) {
         return node.isAND() || node.isOR();
     }
@@ -374,19 +454,34 @@ public class TermNode extends ASTNode
     }
     
     @Override
-    public String toString(boolean prettyPrint)
+    protected void appendTo(List<Object> parts,boolean prettyPrint)
     {
         if ( prettyPrint) {
             if ( ! hasParent() || getParent() instanceof BooleanExpression) { 
-                return childToString(0 , prettyPrint );
+                appendChild( parts , 0 );
+                return;
             }
         }
-      	return "("+childToString(0 , prettyPrint )+")";
+        parts.add( "(" );
+        appendChild( parts , 0 );
+        parts.add( ")" );
     }
     
     @Override
     public boolean hasLiteralValue(IExpressionContext context) {
-    	return child(0).hasLiteralValue( context );
+    	return unwrapChild().hasLiteralValue( context );
+    }
+    
+    /*
+     * Nested parentheses are skipped in a loop , deeply nested terms would overflow the call stack.
+     */
+    private ASTNode unwrapChild() 
+    {
+        ASTNode result = child(0);
+        while ( result instanceof TermNode && result.hasChildren() ) {
+            result = result.child(0);
+        }
+        return result;
     }
     
 	@Override
@@ -398,24 +493,12 @@ public class TermNode extends ASTNode
     @Override
 	public ASTNode evaluate(IExpressionContext context)
     {
-        return child(0).evaluate( context );
+        return unwrapChild().evaluate( context );
     }
 
 	@Override
-	public boolean isEquals(ASTNode other) {
-		if ( other instanceof TermNode ) {
-			final int len = getChildCount();
-			if ( len != other.getChildCount() ) {
-				return false;
-			}
-			for ( int i = 0 ; i < len ; i++ ) {
-				if ( ! child(i).isEquals( other.child(i) ) ) {
-					return false;
-				}
-			}
-			return true;
-		}
-		return false;
+	protected boolean thisEquals(ASTNode other) {
+		return other instanceof TermNode;
 	}
 
     @Override
@@ -423,4 +506,11 @@ public class TermNode extends ASTNode
     {
         return 0x8610231f;
     }
+    
+    @Override
+    protected int computeCanonicalHash()
+    {
+        // parentheses do not matter
+        return hasChildren() ? child(0).getCanonicalHash() : thisHashCode();
+    }
 }
\ No newline at end of file
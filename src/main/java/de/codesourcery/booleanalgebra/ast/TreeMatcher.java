@@ -229,6 +229,11 @@ public class TreeMatcher implements INodeMatcher
     
     private boolean hasMatchingChildren(ASTNode parent) {
         
+        if ( parent.getChildCount() > 2 ) {
+            // patterns only describe binary nodes
+            return false;
+        }
+        
         boolean matches = matchesChildren(  
                 unwrap( leftChild( parent ) , unwrapLeftChild ),
                 unwrap( rightChild( parent ) , unwrapRightChild ) 
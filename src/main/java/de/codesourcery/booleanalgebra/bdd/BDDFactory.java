@@ -0,0 +1,1399 @@
+package de.codesourcery.booleanalgebra.bdd;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.IExpressionContext;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.BooleanExpression;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.TermNode;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+
+/**
+ * Creates reduced ordered binary decision diagrams (ROBDDs).
+ *
+ * <p>A BDD is referenced by an <code>int</code> edge: the upper bits hold the index of a node , the
+ * lowest bit is set if the edge is complemented (negated). Node 0 is the constant <code>true</code>, so
+ * {@link #ONE} is <code>0</code> and {@link #ZERO} its complement. Negation only flips a bit and
+ * the <i>high</i> edge of a node is never complemented , which keeps the representation canonical: two
+ * BDDs created by the same factory are equivalent if and only if their edges are equal.</p>
+ *
+ * <p>Nodes are kept in plain <code>int</code> arrays and looked up in an open-addressing unique table. Results
+ * of operations are remembered in a direct-mapped computed table that simply overwrites
+ * colliding entries.</p>
+ *
+ * <p>Variables are ordered by the time they were first seen unless an order is passed to the constructor (see
+ * {@link VariableOrdering}). {@link #reorder()} improves the order by sifting , moving each variable to the
+ * level where the diagrams get smallest. Nodes keep their function while being moved , so edges stay valid
+ * but only nodes reachable from edges protected by {@link #ref(int)} survive: everything else is garbage collected
+ * before sifting. Reordering also runs automatically once the number of nodes exceeds a threshold if
+ * enabled by {@link #setAutoReorder(boolean)}, at the start of an operation , so operands
+ * of the current call are safe as well.</p>
+ *
+ * <p>Factories are not thread-safe.</p>
+ */
+public final class BDDFactory
+{
+    public static final int ONE = 0;
+    public static final int ZERO = 1;
+
+    public static final int DEFAULT_REORDER_THRESHOLD = 4096;
+
+    // sifting a variable stops moving in a direction once the diagrams grew by this factor
+    private static final double MAX_GROWTH = 1.2;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int INITIAL_CACHE_SIZE = 1 << 12;
+    private static final int MAX_CACHE_SIZE = 1 << 20;
+
+    // largest node index that still fits into an edge
+    private static final int MAX_NODES = 1 << 30;
+
+    // operation tags stored in place of the third operand of the computed table
+    private static final int OP_AND = -1;
+    private static final int OP_XOR = -2;
+    private static final int OP_RESTRICT = -3;
+
+    // not cached , only used when converting terms
+    private static final int OP_OR = -4;
+
+    private static final int TERMINAL_LEVEL = Integer.MAX_VALUE;
+
+    // values of var[] for the terminal node and for unused nodes
+    private static final int TERMINAL = -1;
+    private static final int FREE = -2;
+
+    private int[] var = new int[ INITIAL_CAPACITY ];
+    private int[] low = new int[ INITIAL_CAPACITY ];
+    private int[] high = new int[ INITIAL_CAPACITY ];
+    private int[] refs = new int[ INITIAL_CAPACITY ];
+
+    // doubly linked list of the nodes of each variable , next[] also links the free list
+    private int[] next = new int[ INITIAL_CAPACITY ];
+    private int[] prev = new int[ INITIAL_CAPACITY ];
+
+    private int size;
+    private int nodeCount;
+    private int freeList;
+
+    // open addressing , holds node indices or 0 for empty slots (the terminal node is never stored)
+    private int[] table = new int[ INITIAL_CAPACITY * 2 ];
+
+    // 4 ints per entry: operands , operand or operation tag , result
+    private int[] cache;
+    private int cacheSize;
+    private long cacheHits;
+    private long cacheLookups;
+
+    private final Map<Identifier,Integer> variableIndices = new HashMap<>();
+    private final List<Identifier> variables = new ArrayList<>();
+
+    private int[] varHead = new int[ 16 ];
+    private int[] varNodeCount = new int[ 16 ];
+    private int[] varToLevel = new int[ 16 ];
+    private int[] levelToVar = new int[ 16 ];
+
+    private boolean autoReorder;
+    private int reorderThreshold = DEFAULT_REORDER_THRESHOLD;
+    private int nextReorder = DEFAULT_REORDER_THRESHOLD;
+    private int reorderCount;
+
+    private boolean debug;
+
+    public BDDFactory()
+    {
+        var[0] = TERMINAL;
+        size = 1;
+        nodeCount = 1;
+        allocateCache( INITIAL_CACHE_SIZE );
+    }
+
+    /**
+     * Creates a factory with some variables in a given order , top-most first.
+     *
+     * @param variableOrder
+     * @see VariableOrdering
+     */
+    public BDDFactory(List<Identifier> variableOrder)
+    {
+        this();
+        if (variableOrder == null) {
+            throw new IllegalArgumentException("variableOrder must not be NULL.");
+        }
+        for ( Identifier identifier : variableOrder ) {
+            getVariableIndex( identifier );
+        }
+    }
+
+    private void allocateCache(int size)
+    {
+        cacheSize = size;
+        cache = new int[ size * 4 ];
+        clearCache();
+    }
+
+    private void clearCache()
+    {
+        for ( int i = 0 ; i < cache.length ; i += 4 ) {
+            cache[i] = -1;
+        }
+    }
+
+    public void setDebug(boolean yesNo) {
+        this.debug = yesNo;
+    }
+
+    private void debugPrintln(String s)
+    {
+        if ( debug ) {
+            System.out.println( s );
+        }
+    }
+
+    public int literal(boolean value) {
+        return value ? ONE : ZERO;
+    }
+
+    /**
+     * Returns the BDD of a variable , adding it below all existing variables if it is new.
+     *
+     * @param identifier
+     * @return
+     */
+    public int variable(Identifier identifier) {
+        return mk( getVariableIndex( identifier ) , ZERO , ONE );
+    }
+
+    /**
+     * Returns the index of a variable , adding it below all existing variables if it is new.
+     *
+     * <p>The index of a variable never changes , its level does when reordering.</p>
+     *
+     * @param identifier
+     * @return
+     */
+    public int getVariableIndex(Identifier identifier)
+    {
+        if (identifier == null) {
+            throw new IllegalArgumentException("identifier must not be NULL.");
+        }
+        Integer result = variableIndices.get( identifier );
+        if ( result == null )
+        {
+            result = variables.size();
+            variables.add( identifier );
+            variableIndices.put( identifier , result );
+            if ( result == varHead.length )
+            {
+                varHead = Arrays.copyOf( varHead , result * 2 );
+                varNodeCount = Arrays.copyOf( varNodeCount , result * 2 );
+                varToLevel = Arrays.copyOf( varToLevel , result * 2 );
+                levelToVar = Arrays.copyOf( levelToVar , result * 2 );
+            }
+            varToLevel[ result ] = result;
+            levelToVar[ result ] = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns all variables in their current order in the diagrams , top-most first.
+     *
+     * @return
+     */
+    public List<Identifier> getVariables()
+    {
+        final List<Identifier> result = new ArrayList<>( variables.size() );
+        for ( int level = 0 ; level < variables.size() ; level++ ) {
+            result.add( variables.get( levelToVar[ level ] ) );
+        }
+        return result;
+    }
+
+    public int getVariableCount() {
+        return variables.size();
+    }
+
+    /**
+     * Returns the number of nodes currently allocated , including the terminal node and
+     * unreferenced nodes that have not been garbage collected yet.
+     *
+     * @return
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the number of nodes reachable from a BDD , including the terminal node.
+     *
+     * @param f
+     * @return
+     */
+    public int getNodeCount(int f)
+    {
+        checkEdge( f );
+        final BitSet visited = new BitSet( size );
+        final int[] stack = new int[ 2 * variables.size() + 2 ];
+        int top = 0;
+        stack[ top++ ] = f >>> 1;
+        int count = 0;
+        while ( top > 0 )
+        {
+            final int node = stack[ --top ];
+            if ( visited.get( node ) ) {
+                continue;
+            }
+            visited.set( node );
+            count++;
+            if ( node != 0 )
+            {
+                stack[ top++ ] = low[node] >>> 1;
+                stack[ top++ ] = high[node] >>> 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the ratio of computed-table lookups that found a result.
+     *
+     * @return
+     */
+    public double getCacheHitRatio() {
+        return cacheLookups == 0 ? 0 : cacheHits / (double) cacheLookups;
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // node management
+    // ------------------------------------------------------------------------------------------------
+
+    /**
+     * Protects a BDD from garbage collection.
+     *
+     * @param f
+     * @return <code>f</code>
+     */
+    public int ref(int f)
+    {
+        checkEdge( f );
+        return refNode( f );
+    }
+
+    /**
+     * Releases a BDD protected by {@link #ref(int)}.
+     *
+     * <p>The nodes are not freed before the next garbage collection.</p>
+     *
+     * @param f
+     * @return <code>f</code>
+     */
+    public int deref(int f)
+    {
+        checkEdge( f );
+        if ( f > ZERO && refs[ f >>> 1 ] == 0 ) {
+            throw new IllegalStateException("BDD is not referenced: "+f);
+        }
+        return releaseNode( f );
+    }
+
+    private int refNode(int edge)
+    {
+        if ( edge > ZERO ) {
+            refs[ edge >>> 1 ]++;
+        }
+        return edge;
+    }
+
+    // decrements the reference count without freeing the node
+    private int releaseNode(int edge)
+    {
+        if ( edge > ZERO ) {
+            refs[ edge >>> 1 ]--;
+        }
+        return edge;
+    }
+
+    // decrements the reference count and frees the node if it is no longer used
+    private void derefNode(int edge)
+    {
+        final int node = edge >>> 1;
+        if ( node != 0 && --refs[node] == 0 ) {
+            freeNode( node );
+        }
+    }
+
+    private void freeNode(int node)
+    {
+        tableRemove( node );
+        unlink( node );
+        final int lo = low[node];
+        final int hi = high[node];
+        var[node] = FREE;
+        next[node] = freeList;
+        freeList = node;
+        nodeCount--;
+        derefNode( lo );
+        derefNode( hi );
+    }
+
+    /**
+     * Frees all nodes that are not reachable from a BDD protected by {@link #ref(int)}.
+     *
+     * @return number of nodes freed
+     */
+    public int collectGarbage()
+    {
+        final int before = nodeCount;
+        for ( int node = 1 ; node < size ; node++ )
+        {
+            if ( var[node] >= 0 && refs[node] == 0 ) {
+                freeNode( node );
+            }
+        }
+        if ( nodeCount != before ) {
+            clearCache();
+        }
+        return before - nodeCount;
+    }
+
+    private static int hash(int a,int b,int c)
+    {
+        int h = a * 0x9E3779B1 + b * 0x85EBCA6B + c * 0xC2B2AE35;
+        return h ^ ( h >>> 15 );
+    }
+
+    /*
+     * Returns the edge to the node (variable ? high : low), creating the node if needed.
+     */
+    private int mk(int variable,int lo,int hi)
+    {
+        if ( lo == hi ) {
+            return lo;
+        }
+
+        // only the low edge may be complemented , push the negation to the incoming edge instead
+        int complement = 0;
+        if ( ( hi & 1 ) != 0 )
+        {
+            lo ^= 1;
+            hi ^= 1;
+            complement = 1;
+        }
+
+        final int mask = table.length - 1;
+        int index = hash( variable , lo , hi ) & mask;
+        while ( true )
+        {
+            final int node = table[index];
+            if ( node == 0 ) {
+                break;
+            }
+            if ( var[node] == variable && low[node] == lo && high[node] == hi ) {
+                return ( node << 1 ) | complement;
+            }
+            index = ( index + 1 ) & mask;
+        }
+
+        final int node;
+        if ( freeList != 0 )
+        {
+            node = freeList;
+            freeList = next[node];
+        }
+        else
+        {
+            if ( size == var.length ) {
+                growNodes();
+            }
+            node = size++;
+        }
+        var[node] = variable;
+        low[node] = lo;
+        high[node] = hi;
+        refs[node] = 0;
+        refNode( lo );
+        refNode( hi );
+        link( variable , node );
+        table[index] = node;
+        nodeCount++;
+        if ( nodeCount * 2 > table.length ) {
+            rehash();
+        }
+        return ( node << 1 ) | complement;
+    }
+
+    private void growNodes()
+    {
+        if ( var.length >= MAX_NODES ) {
+            throw new IllegalStateException("Too many BDD nodes");
+        }
+        final int newSize = Math.min( MAX_NODES , var.length * 2 );
+        var = Arrays.copyOf( var , newSize );
+        low = Arrays.copyOf( low , newSize );
+        high = Arrays.copyOf( high , newSize );
+        refs = Arrays.copyOf( refs , newSize );
+        next = Arrays.copyOf( next , newSize );
+        prev = Arrays.copyOf( prev , newSize );
+        if ( cacheSize < MAX_CACHE_SIZE && cacheSize < newSize ) {
+            allocateCache( Math.min( MAX_CACHE_SIZE , Integer.highestOneBit( newSize ) ) );
+        }
+    }
+
+    private void rehash()
+    {
+        table = new int[ table.length * 2 ];
+        for ( int node = 1 ; node < size ; node++ )
+        {
+            if ( var[node] >= 0 ) {
+                tableInsert( node );
+            }
+        }
+    }
+
+    private void tableInsert(int node)
+    {
+        final int mask = table.length - 1;
+        int index = hash( var[node] , low[node] , high[node] ) & mask;
+        while ( table[index] != 0 ) {
+            index = ( index + 1 ) & mask;
+        }
+        table[index] = node;
+    }
+
+    private void tableRemove(int node)
+    {
+        final int mask = table.length - 1;
+        int index = hash( var[node] , low[node] , high[node] ) & mask;
+        while ( table[index] != node ) {
+            index = ( index + 1 ) & mask;
+        }
+
+        // move following entries back so lookups do not stop at the gap
+        int current = ( index + 1 ) & mask;
+        while ( table[current] != 0 )
+        {
+            final int other = table[current];
+            final int home = hash( var[other] , low[other] , high[other] ) & mask;
+            final boolean canMove = index <= current ? ( home <= index || home > current ) : ( home <= index && home > current );
+            if ( canMove )
+            {
+                table[index] = other;
+                index = current;
+            }
+            current = ( current + 1 ) & mask;
+        }
+        table[index] = 0;
+    }
+
+    private void link(int variable,int node)
+    {
+        final int head = varHead[variable];
+        next[node] = head;
+        prev[node] = 0;
+        if ( head != 0 ) {
+            prev[head] = node;
+        }
+        varHead[variable] = node;
+        varNodeCount[variable]++;
+    }
+
+    private void unlink(int node)
+    {
+        final int variable = var[node];
+        if ( prev[node] != 0 ) {
+            next[ prev[node] ] = next[node];
+        } else {
+            varHead[variable] = next[node];
+        }
+        if ( next[node] != 0 ) {
+            prev[ next[node] ] = prev[node];
+        }
+        varNodeCount[variable]--;
+    }
+
+    private int cacheLookup(int a,int b,int c)
+    {
+        cacheLookups++;
+        final int index = ( hash( a , b , c ) & ( cacheSize - 1 ) ) << 2;
+        if ( cache[index] == a && cache[index+1] == b && cache[index+2] == c )
+        {
+            cacheHits++;
+            return cache[index+3];
+        }
+        return -1;
+    }
+
+    private void cacheStore(int a,int b,int c,int result)
+    {
+        final int index = ( hash( a , b , c ) & ( cacheSize - 1 ) ) << 2;
+        cache[index] = a;
+        cache[index+1] = b;
+        cache[index+2] = c;
+        cache[index+3] = result;
+    }
+
+    private int level(int edge)
+    {
+        final int node = edge >>> 1;
+        return node == 0 ? TERMINAL_LEVEL : varToLevel[ var[node] ];
+    }
+
+    private int lowCofactor(int edge,int level) {
+        return level( edge ) == level ? low[ edge >>> 1 ] ^ ( edge & 1 ) : edge;
+    }
+
+    private int highCofactor(int edge,int level) {
+        return level( edge ) == level ? high[ edge >>> 1 ] ^ ( edge & 1 ) : edge;
+    }
+
+    private void checkEdge(int edge)
+    {
+        if ( edge < 0 || ( edge >>> 1 ) >= size || var[ edge >>> 1 ] == FREE ) {
+            throw new IllegalArgumentException("Not a BDD of this factory: "+edge);
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // reordering
+    // ------------------------------------------------------------------------------------------------
+
+    /**
+     * Enables automatic reordering once the number of nodes exceeds the reorder threshold.
+     *
+     * <p>After each reordering , the threshold is raised to twice the number of remaining nodes.</p>
+     *
+     * @param yesNo
+     * @see #setReorderThreshold(int)
+     */
+    public void setAutoReorder(boolean yesNo) {
+        this.autoReorder = yesNo;
+    }
+
+    public void setReorderThreshold(int nodes)
+    {
+        if ( nodes < 1 ) {
+            throw new IllegalArgumentException("Threshold must be positive");
+        }
+        this.reorderThreshold = nodes;
+        this.nextReorder = nodes;
+    }
+
+    /**
+     * Returns how often the variables have been reordered.
+     *
+     * @return
+     */
+    public int getReorderCount() {
+        return reorderCount;
+    }
+
+    /*
+     * Called at the start of operations , the arguments are the operands of the operation.
+     */
+    private void maybeReorder(int f,int g,int h)
+    {
+        if ( autoReorder && nodeCount > nextReorder )
+        {
+            refNode( f );
+            refNode( g );
+            refNode( h );
+            reorder();
+            releaseNode( f );
+            releaseNode( g );
+            releaseNode( h );
+            nextReorder = Math.max( reorderThreshold , 2 * nodeCount );
+        }
+    }
+
+    /**
+     * Garbage collects and then improves the variable order by Rudell's sifting algorithm.
+     *
+     * <p>Variables are sifted one at a time , starting with the one having most nodes: each is moved through
+     * all levels by swapping it with its neighbours and left where the total number of nodes was smallest.</p>
+     *
+     * @return number of nodes after reordering
+     */
+    public int reorder()
+    {
+        final long start = System.currentTimeMillis();
+        final int allocated = nodeCount;
+        collectGarbage();
+        final int before = nodeCount;
+
+        final Integer[] order = new Integer[ variables.size() ];
+        for ( int i = 0 ; i < order.length ; i++ ) {
+            order[i] = i;
+        }
+        Arrays.sort( order , new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Integer.compare( varNodeCount[o2] , varNodeCount[o1] );
+            }
+        });
+        for ( Integer variable : order ) {
+            sift( variable );
+        }
+
+        clearCache();
+        reorderCount++;
+        debugPrintln("SIFTING: "+allocated+" allocated , "+before+" live -> "+nodeCount+" nodes ("+
+                ( System.currentTimeMillis() - start )+" ms)");
+        return nodeCount;
+    }
+
+    private void sift(int variable)
+    {
+        final int levels = variables.size();
+        final int limit = (int) Math.min( Integer.MAX_VALUE , (long) ( nodeCount * MAX_GROWTH ) );
+
+        int best = nodeCount;
+        int bestLevel = varToLevel[variable];
+
+        // visit the closer end first
+        final boolean downFirst = varToLevel[variable] >= levels / 2;
+        for ( int pass = 0 ; pass < 2 ; pass++ )
+        {
+            if ( downFirst == ( pass == 0 ) )
+            {
+                while ( varToLevel[variable] < levels - 1 && nodeCount <= limit )
+                {
+                    swap( varToLevel[variable] );
+                    if ( nodeCount < best ) {
+                        best = nodeCount;
+                        bestLevel = varToLevel[variable];
+                    }
+                }
+            }
+            else
+            {
+                while ( varToLevel[variable] > 0 && nodeCount <= limit )
+                {
+                    swap( varToLevel[variable] - 1 );
+                    if ( nodeCount < best ) {
+                        best = nodeCount;
+                        bestLevel = varToLevel[variable];
+                    }
+                }
+            }
+        }
+
+        while ( varToLevel[variable] < bestLevel ) {
+            swap( varToLevel[variable] );
+        }
+        while ( varToLevel[variable] > bestLevel ) {
+            swap( varToLevel[variable] - 1 );
+        }
+    }
+
+    /*
+     * Swaps the variables at a level and the level below , keeping the function of every node.
+     *
+     * Nodes of the upper variable that depend on the lower one are rewritten in place as nodes of the lower variable with
+     * new children of the upper variable, nodes that do not just move down. Nodes of the lower variable that lose their
+     * last parent are freed , so this must only be called when all nodes in use are referenced.
+     */
+    private void swap(int level)
+    {
+        final int x = levelToVar[level];
+        final int y = levelToVar[level+1];
+
+        int node = varHead[x];
+        varHead[x] = 0;
+        varNodeCount[x] = 0;
+        while ( node != 0 )
+        {
+            final int following = next[node];
+            final int f0 = low[node];
+            final int f1 = high[node];
+            final boolean dependsOnY0 = f0 > ZERO && var[ f0 >>> 1 ] == y;
+            final boolean dependsOnY1 = f1 > ZERO && var[ f1 >>> 1 ] == y;
+            if ( ! dependsOnY0 && ! dependsOnY1 ) {
+                link( x , node );
+            }
+            else
+            {
+                final int f00 = dependsOnY0 ? low[ f0 >>> 1 ] ^ ( f0 & 1 ) : f0;
+                final int f01 = dependsOnY0 ? high[ f0 >>> 1 ] ^ ( f0 & 1 ) : f0;
+                final int f10 = dependsOnY1 ? low[ f1 >>> 1 ] : f1;
+                final int f11 = dependsOnY1 ? high[ f1 >>> 1 ] : f1;
+
+                // f1 is a regular edge , so is f11 and thus g1
+                final int g0 = refNode( mk( x , f00 , f10 ) );
+                final int g1 = refNode( mk( x , f01 , f11 ) );
+
+                tableRemove( node );
+                var[node] = y;
+                low[node] = g0;
+                high[node] = g1;
+                tableInsert( node );
+                link( y , node );
+
+                derefNode( f0 );
+                derefNode( f1 );
+            }
+            node = following;
+        }
+
+        levelToVar[level] = y;
+        levelToVar[level+1] = x;
+        varToLevel[x] = level + 1;
+        varToLevel[y] = level;
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // operations
+    // ------------------------------------------------------------------------------------------------
+
+    public int not(int f)
+    {
+        checkEdge( f );
+        return f ^ 1;
+    }
+
+    public int and(int f,int g)
+    {
+        checkEdge( f );
+        checkEdge( g );
+        maybeReorder( f , g , ONE );
+        return andRec( f , g );
+    }
+
+    public int or(int f,int g)
+    {
+        checkEdge( f );
+        checkEdge( g );
+        maybeReorder( f , g , ONE );
+        return andRec( f ^ 1 , g ^ 1 ) ^ 1;
+    }
+
+    public int xor(int f,int g)
+    {
+        checkEdge( f );
+        checkEdge( g );
+        maybeReorder( f , g , ONE );
+        return xorRec( f , g );
+    }
+
+    public int equiv(int f,int g) {
+        return xor( f , g ) ^ 1;
+    }
+
+    /**
+     * If-then-else , returns <code>(f AND g) OR (NOT f AND h)</code>.
+     *
+     * @param f
+     * @param g
+     * @param h
+     * @return
+     */
+    public int ite(int f,int g,int h)
+    {
+        checkEdge( f );
+        checkEdge( g );
+        checkEdge( h );
+        maybeReorder( f , g , h );
+        return iteRec( f , g , h );
+    }
+
+    private int andRec(int f,int g)
+    {
+        if ( f == ZERO || g == ZERO || f == ( g ^ 1 ) ) {
+            return ZERO;
+        }
+        if ( f == ONE || f == g ) {
+            return g;
+        }
+        if ( g == ONE ) {
+            return f;
+        }
+        if ( f > g )
+        {
+            final int tmp = f;
+            f = g;
+            g = tmp;
+        }
+
+        final int cached = cacheLookup( f , g , OP_AND );
+        if ( cached != -1 ) {
+            return cached;
+        }
+        final int top = Math.min( level( f ) , level( g ) );
+        final int result = mk( levelToVar[top] , andRec( lowCofactor( f , top ) , lowCofactor( g , top ) ) ,
+                                                 andRec( highCofactor( f , top ) , highCofactor( g , top ) ) );
+        cacheStore( f , g , OP_AND , result );
+        return result;
+    }
+
+    private int xorRec(int f,int g)
+    {
+        if ( f == g ) {
+            return ZERO;
+        }
+        if ( f == ( g ^ 1 ) ) {
+            return ONE;
+        }
+        if ( f == ZERO ) {
+            return g;
+        }
+        if ( g == ZERO ) {
+            return f;
+        }
+        if ( f == ONE ) {
+            return g ^ 1;
+        }
+        if ( g == ONE ) {
+            return f ^ 1;
+        }
+
+        // NOT f XOR g == NOT ( f XOR g ) , so only regular edges need to be cached
+        final int complement = ( f ^ g ) & 1;
+        f &= ~1;
+        g &= ~1;
+        if ( f > g )
+        {
+            final int tmp = f;
+            f = g;
+            g = tmp;
+        }
+
+        int result = cacheLookup( f , g , OP_XOR );
+        if ( result == -1 )
+        {
+            final int top = Math.min( level( f ) , level( g ) );
+            result = mk( levelToVar[top] , xorRec( lowCofactor( f , top ) , lowCofactor( g , top ) ) ,
+                                           xorRec( highCofactor( f , top ) , highCofactor( g , top ) ) );
+            cacheStore( f , g , OP_XOR , result );
+        }
+        return result ^ complement;
+    }
+
+    private int iteRec(int f,int g,int h)
+    {
+        if ( f == ONE ) {
+            return g;
+        }
+        if ( f == ZERO ) {
+            return h;
+        }
+        if ( g == f ) {
+            g = ONE;
+        } else if ( g == ( f ^ 1 ) ) {
+            g = ZERO;
+        }
+        if ( h == f ) {
+            h = ZERO;
+        } else if ( h == ( f ^ 1 ) ) {
+            h = ONE;
+        }
+
+        if ( g == h ) {
+            return g;
+        }
+        if ( g == ONE ) {
+            return h == ZERO ? f : andRec( f ^ 1 , h ^ 1 ) ^ 1;
+        }
+        if ( g == ZERO ) {
+            return h == ONE ? f ^ 1 : andRec( f ^ 1 , h );
+        }
+        if ( h == ZERO ) {
+            return andRec( f , g );
+        }
+        if ( h == ONE ) {
+            return andRec( f , g ^ 1 ) ^ 1;
+        }
+        if ( g == ( h ^ 1 ) ) {
+            return xorRec( f , h );
+        }
+
+        // make f and g regular so equivalent calls share one computed-table entry
+        if ( ( f & 1 ) != 0 )
+        {
+            f ^= 1;
+            final int tmp = g;
+            g = h;
+            h = tmp;
+        }
+        int complement = 0;
+        if ( ( g & 1 ) != 0 )
+        {
+            g ^= 1;
+            h ^= 1;
+            complement = 1;
+        }
+
+        int result = cacheLookup( f , g , h );
+        if ( result == -1 )
+        {
+            final int top = Math.min( level( f ) , Math.min( level( g ) , level( h ) ) );
+            result = mk( levelToVar[top] , iteRec( lowCofactor( f , top ) , lowCofactor( g , top ) , lowCofactor( h , top ) ) ,
+                                           iteRec( highCofactor( f , top ) , highCofactor( g , top ) , highCofactor( h , top ) ) );
+            cacheStore( f , g , h , result );
+        }
+        return result ^ complement;
+    }
+
+    /**
+     * Returns the cofactor of a BDD with respect to a variable , that is the BDD with the
+     * variable replaced by a constant.
+     *
+     * @param f
+     * @param identifier
+     * @param value
+     * @return
+     */
+    public int restrict(int f,Identifier identifier,boolean value)
+    {
+        checkEdge( f );
+        final Integer index = variableIndices.get( identifier );
+        if ( index == null ) {
+            return f;
+        }
+        maybeReorder( f , ONE , ONE );
+        return restrictRec( f , varToLevel[index] , OP_RESTRICT - ( 2 * index + ( value ? 1 : 0 ) ) , value );
+    }
+
+    private int restrictRec(int f,int variableLevel,int tag,boolean value)
+    {
+        final int level = level( f );
+        if ( level > variableLevel ) {
+            return f;
+        }
+        if ( level == variableLevel ) {
+            return value ? highCofactor( f , level ) : lowCofactor( f , level );
+        }
+
+        final int complement = f & 1;
+        f ^= complement;
+        int result = cacheLookup( f , variableLevel , tag );
+        if ( result == -1 )
+        {
+            result = mk( var[ f >>> 1 ] , restrictRec( low[ f >>> 1 ] , variableLevel , tag , value ) ,
+                                          restrictRec( high[ f >>> 1 ] , variableLevel , tag , value ) );
+            cacheStore( f , variableLevel , tag , result );
+        }
+        return result ^ complement;
+    }
+
+    /**
+     * Existential quantification , returns <code>f[x:=false] OR f[x:=true]</code>.
+     *
+     * @param f
+     * @param identifier
+     * @return
+     */
+    public int exists(int f,Identifier identifier)
+    {
+        refNode( f );
+        final int negative = refNode( restrict( f , identifier , false ) );
+        final int result = or( negative , restrict( f , identifier , true ) );
+        releaseNode( negative );
+        releaseNode( f );
+        return result;
+    }
+
+    /**
+     * Universal quantification , returns <code>f[x:=false] AND f[x:=true]</code>.
+     *
+     * @param f
+     * @param identifier
+     * @return
+     */
+    public int forAll(int f,Identifier identifier)
+    {
+        refNode( f );
+        final int negative = refNode( restrict( f , identifier , false ) );
+        final int result = and( negative , restrict( f , identifier , true ) );
+        releaseNode( negative );
+        releaseNode( f );
+        return result;
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // queries
+    // ------------------------------------------------------------------------------------------------
+
+    public boolean isSatisfiable(int f)
+    {
+        checkEdge( f );
+        return f != ZERO;
+    }
+
+    public boolean isTautology(int f)
+    {
+        checkEdge( f );
+        return f == ONE;
+    }
+
+    /**
+     * Returns whether two terms are equivalent.
+     *
+     * @param term1 term , must not be a {@link BooleanExpression}
+     * @param term2 term , must not be a {@link BooleanExpression}
+     * @return
+     */
+    public boolean isEquivalent(ASTNode term1,ASTNode term2)
+    {
+        final int f = refNode( fromAST( term1 ) );
+        final int g = fromAST( term2 );
+        releaseNode( f );
+        return f == g;
+    }
+
+    /**
+     * Returns an assignment for all variables of this factory that makes a BDD <code>true</code>.
+     *
+     * <p>Variables the BDD does not depend on are set to <code>false</code>.</p>
+     *
+     * @param f
+     * @return context with {@link TrueNode}s and {@link FalseNode}s or <code>null</code> if the BDD is not satisfiable
+     */
+    public IExpressionContext getSatisfyingAssignment(int f)
+    {
+        checkEdge( f );
+        if ( f == ZERO ) {
+            return null;
+        }
+        final boolean[] values = new boolean[ variables.size() ];
+        int current = f;
+        while ( current != ONE )
+        {
+            final int level = level( current );
+            final int lo = lowCofactor( current , level );
+            // both children are different , so at most one of them is false
+            if ( lo != ZERO ) {
+                current = lo;
+            } else {
+                values[ levelToVar[ level ] ] = true;
+                current = highCofactor( current , level );
+            }
+        }
+
+        final ExpressionContext result = new ExpressionContext();
+        for ( int i = 0 ; i < values.length ; i++ ) {
+            result.set( variables.get(i) , values[i] ? new TrueNode() : new FalseNode() );
+        }
+        return result;
+    }
+
+    /**
+     * Counts the assignments of all variables of this factory that make a BDD <code>true</code>.
+     *
+     * @param f
+     * @return
+     */
+    public BigInteger countModels(int f)
+    {
+        checkEdge( f );
+        // counts of all nodes reachable from f , children before their parents.
+        // Uses an explicit stack , a BDD over many variables may be too deep to be walked recursively.
+        final Map<Integer,BigInteger> counts = new HashMap<>();
+        final Stack<Integer> stack = new Stack<>();
+        stack.push( f >>> 1 );
+        while ( ! stack.isEmpty() )
+        {
+            final int node = stack.peek();
+            if ( node == 0 || counts.containsKey( node ) )
+            {
+                stack.pop();
+                continue;
+            }
+            final int lo = low[node] >>> 1;
+            final int hi = high[node] >>> 1;
+            final boolean loCounted = lo == 0 || counts.containsKey( lo );
+            final boolean hiCounted = hi == 0 || counts.containsKey( hi );
+            if ( loCounted && hiCounted )
+            {
+                stack.pop();
+                final int level = varToLevel[ var[node] ];
+                counts.put( node , countModels( low[node] , level + 1 , counts ).add( countModels( high[node] , level + 1 , counts ) ) );
+                continue;
+            }
+            if ( ! hiCounted ) {
+                stack.push( hi );
+            }
+            if ( ! loCounted ) {
+                stack.push( lo );
+            }
+        }
+        return countModels( f , 0 , counts );
+    }
+
+    /*
+     * Counts the satisfying assignments of the variables from the given level downwards ,
+     * the count of the edge's node must have been computed already.
+     */
+    private BigInteger countModels(int f,int fromLevel,Map<Integer,BigInteger> counts)
+    {
+        final int node = f >>> 1;
+        final int level = node == 0 ? variables.size() : varToLevel[ var[node] ];
+
+        BigInteger count = node == 0 ? BigInteger.ONE : counts.get( node );
+        count = count.shiftLeft( level - fromLevel );
+        if ( ( f & 1 ) != 0 ) {
+            return BigInteger.ONE.shiftLeft( variables.size() - fromLevel ).subtract( count );
+        }
+        return count;
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // conversion
+    // ------------------------------------------------------------------------------------------------
+
+    /**
+     * Converts a term or expression.
+     *
+     * <p>A {@link BooleanExpression} is converted to the BDD that is <code>true</code> whenever both
+     * sides have the same value.</p>
+     *
+     * @param term
+     * @return
+     */
+    public int fromAST(ASTNode term) {
+        return fromAST( term , null );
+    }
+
+    /**
+     * Converts a term or expression , replacing all variables that are bound to literal values.
+     *
+     * @param term
+     * @param context context used to look up variable values, may be <code>null</code>
+     * @return
+     */
+    public int fromAST(ASTNode term,IExpressionContext context)
+    {
+        if ( term == null ) {
+            throw new IllegalArgumentException("term must not be NULL.");
+        }
+        // operators and expressions on the path from the root to the current node. 
+        // Uses an explicit stack , so arbitrarily deep terms can be converted.
+        final Stack<Frame> stack = new Stack<>();
+        ASTNode node = term;
+        while ( true )
+        {
+            // descend to the leftmost leaf , skipping parentheses
+            while ( ! isLeaf( node ) )
+            {
+                if ( node instanceof TermNode )
+                {
+                    if ( ! node.hasChildren() ) {
+                        throw new IllegalArgumentException("Empty term node");
+                    }
+                } else {
+                    stack.push( new Frame( node ) );
+                }
+                node = node.child(0);
+            }
+            int value = leafFromAST( node , context );
+
+            // combine with the results of the siblings , until there is a sibling that still needs to be converted
+            while ( true )
+            {
+                if ( stack.isEmpty() ) {
+                    return value;
+                }
+                final Frame frame = stack.peek();
+                if ( frame.hasResult ) {
+                    value = apply( frame.operation , frame.result , value );
+                }
+                if ( frame.nextChild < frame.node.getChildCount() )
+                {
+                    // keep the result of the previous children alive while converting the next one
+                    frame.result = refNode( value );
+                    frame.hasResult = true;
+                    node = frame.node.child( frame.nextChild++ );
+                    break;
+                }
+                stack.pop();
+                if ( frame.negate ) {
+                    value ^= 1;
+                }
+            }
+        }
+    }
+
+    /*
+     * An operator or expression whose children are being converted.
+     */
+    private static final class Frame
+    {
+        public final ASTNode node;
+        public final int operation;
+        // whether the combined value of the children gets negated
+        public final boolean negate;
+        public int nextChild = 1;
+        // combined value of the children converted so far , referenced
+        public int result;
+        public boolean hasResult;
+
+        public Frame(ASTNode node)
+        {
+            this.node = node;
+            if ( node instanceof BooleanExpression )
+            {
+                operation = OP_XOR;
+                negate = true;
+                return;
+            }
+            switch( ((OperatorNode) node).getType() )
+            {
+                case NOT:
+                    operation = 0;
+                    negate = true;
+                    break;
+                case AND:
+                    operation = OP_AND;
+                    negate = false;
+                    break;
+                case OR:
+                    operation = OP_OR;
+                    negate = false;
+                    break;
+                default:
+                    throw new RuntimeException("Unreachable code reached");
+            }
+        }
+    }
+
+    private static boolean isLeaf(ASTNode term) {
+        return ! ( term instanceof TermNode || term instanceof OperatorNode || term instanceof BooleanExpression );
+    }
+
+    private int leafFromAST(ASTNode term,IExpressionContext context)
+    {
+        if ( term instanceof IdentifierNode )
+        {
+            final Identifier identifier = ((IdentifierNode) term).getIdentifier();
+            if ( context != null )
+            {
+                final ASTNode value = context.tryLookup( identifier );
+                if ( value != null && value.isLiteralValue() ) {
+                    return literal( value.getLiteralValue( context ) );
+                }
+            }
+            return variable( identifier );
+        }
+        if ( term instanceof TrueNode ) {
+            return ONE;
+        }
+        if ( term instanceof FalseNode ) {
+            return ZERO;
+        }
+        throw new IllegalArgumentException("Unsupported node type: "+term);
+    }
+
+    /*
+     * Combines a referenced BDD with another one , releasing the reference.
+     */
+    private int apply(int operation,int left,int right)
+    {
+        final int f = left;
+        final int g = refNode( right );
+        maybeReorder( f , g , ONE );
+        final int result;
+        switch( operation )
+        {
+            case OP_AND:
+                result = andRec( f , g );
+                break;
+            case OP_OR:
+                result = andRec( f ^ 1 , g ^ 1 ) ^ 1;
+                break;
+            default:
+                result = xorRec( f , g );
+        }
+        releaseNode( f );
+        releaseNode( g );
+        return result;
+    }
+
+    /**
+     * Converts a BDD into a (newly allocated) term by Shannon expansion.
+     *
+     * <p>Shared nodes are expanded for every path that reaches them, so the term may be
+     * much larger than the BDD.</p>
+     *
+     * @param f
+     * @return
+     */
+    public ASTNode toAST(int f)
+    {
+        checkEdge( f );
+        if ( f == ONE ) {
+            return new TrueNode();
+        }
+        if ( f == ZERO ) {
+            return new FalseNode();
+        }
+        // post-order using an explicit stack , a BDD over many variables may be too deep to be expanded recursively
+        final Stack<Integer> stack = new Stack<>();
+        final Stack<Boolean> expanded = new Stack<>();
+        final Stack<ASTNode> results = new Stack<>();
+        stack.push( f );
+        expanded.push( Boolean.FALSE );
+        while ( ! stack.isEmpty() )
+        {
+            final int edge = stack.pop();
+            final boolean childrenExpanded = expanded.pop();
+
+            final int level = level( edge );
+            final int lo = lowCofactor( edge , level );
+            final int hi = highCofactor( edge , level );
+            final Identifier identifier = variables.get( levelToVar[ level ] );
+
+            if ( hi == ONE && lo == ZERO ) {
+                results.push( new IdentifierNode( identifier ) );
+                continue;
+            }
+            if ( hi == ZERO && lo == ONE ) {
+                results.push( OperatorNode.not( new IdentifierNode( identifier ) ) );
+                continue;
+            }
+            if ( ! childrenExpanded )
+            {
+                stack.push( edge );
+                expanded.push( Boolean.TRUE );
+                // the low cofactor is expanded last , so its term ends up on top of the results
+                if ( hi != ONE && hi != ZERO && lo != ONE && lo != ZERO )
+                {
+                    stack.push( lo );
+                    expanded.push( Boolean.FALSE );
+                }
+                stack.push( hi == ONE || hi == ZERO ? lo : hi );
+                expanded.push( Boolean.FALSE );
+                continue;
+            }
+            if ( hi == ONE ) {
+                results.push( OperatorNode.or( new IdentifierNode( identifier ) , results.pop() ) );
+            } else if ( hi == ZERO ) {
+                results.push( OperatorNode.and( OperatorNode.not( new IdentifierNode( identifier ) ) , results.pop() ) );
+            } else if ( lo == ONE ) {
+                results.push( OperatorNode.or( OperatorNode.not( new IdentifierNode( identifier ) ) , results.pop() ) );
+            } else if ( lo == ZERO ) {
+                results.push( OperatorNode.and( new IdentifierNode( identifier ) , results.pop() ) );
+            }
+            else
+            {
+                final ASTNode loTerm = results.pop();
+                final ASTNode hiTerm = results.pop();
+                results.push( OperatorNode.or( OperatorNode.and( new IdentifierNode( identifier ) , hiTerm ) ,
+                                               OperatorNode.and( OperatorNode.not( new IdentifierNode( identifier ) ) , loTerm ) ) );
+            }
+        }
+        return results.pop();
+    }
+}
@@ -0,0 +1,239 @@
+package de.codesourcery.booleanalgebra.bdd;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.INodeVisitor;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+
+/**
+ * Static heuristics to find a good initial variable order for {@link BDDFactory}.
+ *
+ * <p>Variables that interact should be close to each other in the order , otherwise the BDD has to remember
+ * the values of the upper ones across many levels.</p>
+ */
+public final class VariableOrdering
+{
+    public static final int DEFAULT_FORCE_ITERATIONS = 20;
+
+    private VariableOrdering() {
+    }
+
+    /**
+     * Orders variables by their first occurrence in a depth-first , left-to-right traversal.
+     *
+     * @param terms
+     * @return
+     */
+    public static List<Identifier> firstOccurrence(ASTNode... terms)
+    {
+        final Set<Identifier> result = new LinkedHashSet<>();
+        final Deque<ASTNode> stack = new ArrayDeque<>();
+        for ( ASTNode term : terms )
+        {
+            if ( term == null ) {
+                throw new IllegalArgumentException("term must not be NULL.");
+            }
+            stack.push( term );
+            while ( ! stack.isEmpty() )
+            {
+                final ASTNode node = stack.pop();
+                if ( node instanceof IdentifierNode ) {
+                    result.add( ((IdentifierNode) node).getIdentifier() );
+                }
+                for ( int i = node.getChildCount() - 1 ; i >= 0 ; i-- ) {
+                    stack.push( node.child(i) );
+                }
+            }
+        }
+        return new ArrayList<>( result );
+    }
+
+    /**
+     * Orders variables by the FORCE heuristic.
+     *
+     * @param terms
+     * @return
+     * @see #force(int, ASTNode...)
+     */
+    public static List<Identifier> force(ASTNode... terms) {
+        return force( DEFAULT_FORCE_ITERATIONS , terms );
+    }
+
+    /**
+     * Orders variables by the FORCE heuristic (Aloul , Markov , Sakallah).
+     *
+     * <p>Every subterm connects the variables it depends on. Starting with {@link #firstOccurrence(ASTNode...)},
+     * each iteration computes the center of gravity of each subterm's variables , moves every variable to the
+     * average center of the subterms it occurs in and sorts by the new positions. Iteration stops
+     * when the total span of all subterms no longer shrinks.</p>
+     *
+     * @param maxIterations
+     * @param terms
+     * @return
+     */
+    public static List<Identifier> force(int maxIterations,ASTNode... terms)
+    {
+        final List<Identifier> initial = firstOccurrence( terms );
+        final int count = initial.size();
+        if ( count < 3 ) {
+            return initial;
+        }
+        final Map<Identifier,Integer> indices = new HashMap<>();
+        for ( int i = 0 ; i < count ; i++ ) {
+            indices.put( initial.get(i) , i );
+        }
+
+        final Set<BitSet> edgeSet = new LinkedHashSet<>();
+        for ( ASTNode term : terms ) {
+            gatherEdges( term , indices , edgeSet );
+        }
+        final List<int[]> edges = new ArrayList<>();
+        for ( BitSet edge : edgeSet )
+        {
+            // subterms depending on all variables do not tell anything
+            if ( edge.cardinality() < count )
+            {
+                final int[] members = new int[ edge.cardinality() ];
+                for ( int i = edge.nextSetBit( 0 ) , j = 0 ; i >= 0 ; i = edge.nextSetBit( i + 1 ) ) {
+                    members[ j++ ] = i;
+                }
+                edges.add( members );
+            }
+        }
+
+        // position of each variable (by index into 'initial')
+        final double[] position = new double[ count ];
+        for ( int i = 0 ; i < count ; i++ ) {
+            position[i] = i;
+        }
+        int[] bestOrder = new int[ count ];
+        for ( int i = 0 ; i < count ; i++ ) {
+            bestOrder[i] = i;
+        }
+        long bestSpan = span( edges , bestOrder );
+
+        final double[] sum = new double[ count ];
+        final int[] degree = new int[ count ];
+        for ( int iteration = 0 ; iteration < maxIterations ; iteration++ )
+        {
+            Arrays.fill( sum , 0 );
+            Arrays.fill( degree , 0 );
+            for ( int[] edge : edges )
+            {
+                double center = 0;
+                for ( int v : edge ) {
+                    center += position[v];
+                }
+                center /= edge.length;
+                for ( int v : edge )
+                {
+                    sum[v] += center;
+                    degree[v]++;
+                }
+            }
+
+            final Integer[] sorted = new Integer[ count ];
+            final double[] target = new double[ count ];
+            for ( int i = 0 ; i < count ; i++ )
+            {
+                sorted[i] = i;
+                target[i] = degree[i] == 0 ? position[i] : sum[i] / degree[i];
+            }
+            Arrays.sort( sorted , new Comparator<Integer>() {
+
+                @Override
+                public int compare(Integer o1, Integer o2)
+                {
+                    final int result = Double.compare( target[o1] , target[o2] );
+                    return result != 0 ? result : Double.compare( position[o1] , position[o2] );
+                }
+            });
+
+            final int[] order = new int[ count ];
+            for ( int i = 0 ; i < count ; i++ )
+            {
+                order[ sorted[i] ] = i;
+                position[ sorted[i] ] = i;
+            }
+            final long span = span( edges , order );
+            if ( span >= bestSpan ) {
+                break;
+            }
+            bestSpan = span;
+            bestOrder = order;
+        }
+
+        final Identifier[] result = new Identifier[ count ];
+        for ( int i = 0 ; i < count ; i++ ) {
+            result[ bestOrder[i] ] = initial.get(i);
+        }
+        return Arrays.asList( result );
+    }
+
+    /*
+     * Sum over all edges of the distance between their outermost variables.
+     */
+    private static long span(List<int[]> edges,int[] order)
+    {
+        long result = 0;
+        for ( int[] edge : edges )
+        {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for ( int v : edge )
+            {
+                min = Math.min( min , order[v] );
+                max = Math.max( max , order[v] );
+            }
+            result += max - min;
+        }
+        return result;
+    }
+
+    /*
+     * Records the variables each subterm depends on as an edge if there are at least two.
+     */
+    private static void gatherEdges(ASTNode term,final Map<Identifier,Integer> indices,final Set<BitSet> edges)
+    {
+        // variables of the subterms visited so far whose parents have not been visited yet
+        final Deque<BitSet> stack = new ArrayDeque<>();
+        term.visitPostOrder( new INodeVisitor() {
+
+            @Override
+            public boolean visit(ASTNode node, int currentDepth)
+            {
+                if ( node instanceof IdentifierNode )
+                {
+                    final BitSet result = new BitSet();
+                    result.set( indices.get( ((IdentifierNode) node).getIdentifier() ) );
+                    stack.push( result );
+                    return true;
+                }
+                if ( node.getChildCount() == 1 ) {
+                    return true; // same variables as its child
+                }
+                final BitSet result = new BitSet();
+                for ( int i = 0 ; i < node.getChildCount() ; i++ ) {
+                    result.or( stack.pop() );
+                }
+                if ( result.cardinality() > 1 ) {
+                    edges.add( result );
+                }
+                stack.push( result );
+                return true;
+            }
+        });
+    }
+}
@@ -0,0 +1,445 @@
+package de.codesourcery.booleanalgebra.egraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.hashcons.HashConsedNode;
+import de.codesourcery.booleanalgebra.hashcons.HashConsedNode.Type;
+import de.codesourcery.booleanalgebra.hashcons.NodeFactory;
+
+/**
+ * An e-graph , a compact representation of many equivalent terms at once.
+ *
+ * <p>Nodes (e-nodes) are grouped into equivalence classes (e-classes) , the children of
+ * an e-node are e-classes instead of nodes. Adding a term never removes anything , two e-classes
+ * are only ever merged when they are known to be equivalent. Merging two e-classes may make
+ * parent nodes equal (congruent) , these are merged by {@link #rebuild()} which must be called
+ * after a batch of {@link #union(int, int)} calls and before the graph is searched again.</p>
+ *
+ * <p>E-class IDs are only stable as long as the class is not merged , use {@link #find(int)} to
+ * get the current ID of an e-class.</p>
+ */
+public final class EGraph
+{
+    private int[] unionFind = new int[64];
+    private final List<EClass> classes = new ArrayList<>();
+
+    // canonical e-node -> e-class
+    private final Map<ENode,Integer> memo = new HashMap<>();
+
+    // e-classes whose parents need to be re-canonicalized
+    private final List<Integer> dirty = new ArrayList<>();
+
+    private static final class EClass
+    {
+        public List<ENode> nodes = new ArrayList<>(2);
+        public List<ENode> parentNodes = new ArrayList<>(2);
+        public List<Integer> parentClasses = new ArrayList<>(2);
+
+        public void addParent(ENode node,int classId) {
+            parentNodes.add( node );
+            parentClasses.add( classId );
+        }
+    }
+
+    /**
+     * Adds a term.
+     *
+     * @param term
+     * @return ID of the e-class holding the term
+     */
+    public int add(HashConsedNode term)
+    {
+        if (term == null) {
+            throw new IllegalArgumentException("term must not be NULL.");
+        }
+        // children always have smaller IDs than their parents , so visiting nodes in ID order is a post-order traversal
+        final Map<Integer,Integer> classByNodeId = new HashMap<>();
+        final List<HashConsedNode> nodes = new ArrayList<>();
+        final Set<Integer> seen = new HashSet<>();
+        final List<HashConsedNode> stack = new ArrayList<>();
+        stack.add( term );
+        while ( ! stack.isEmpty() )
+        {
+            final HashConsedNode node = stack.remove( stack.size() - 1 );
+            if ( seen.add( node.getId() ) )
+            {
+                nodes.add( node );
+                if ( node.leftChild() != null ) {
+                    stack.add( node.leftChild() );
+                }
+                if ( node.rightChild() != null ) {
+                    stack.add( node.rightChild() );
+                }
+            }
+        }
+        final HashConsedNode[] sorted = nodes.toArray( new HashConsedNode[ nodes.size() ] );
+        Arrays.sort( sorted , new Comparator<HashConsedNode>() {
+
+            @Override
+            public int compare(HashConsedNode o1, HashConsedNode o2) {
+                return Integer.compare( o1.getId() , o2.getId() );
+            }
+        });
+
+        int result = -1;
+        for ( HashConsedNode node : sorted )
+        {
+            final int left = node.leftChild() == null ? -1 : classByNodeId.get( node.leftChild().getId() );
+            final int right = node.rightChild() == null ? -1 : classByNodeId.get( node.rightChild().getId() );
+            result = add( node.getType() , left , right , node.getIdentifier() );
+            classByNodeId.put( node.getId() , result );
+        }
+        return result;
+    }
+
+    /**
+     * Adds a single node.
+     *
+     * @param type
+     * @param left e-class of left (or only) child , -1 for leaf nodes
+     * @param right e-class of right child , -1 for leaf nodes and <code>NOT</code>
+     * @param identifier identifier for <code>VARIABLE</code> nodes , otherwise <code>null</code>
+     * @return ID of the e-class holding the node
+     */
+    public int add(Type type,int left,int right,Identifier identifier)
+    {
+        final ENode node = canonicalize( new ENode( type , left , right , identifier ) );
+        final Integer existing = memo.get( node );
+        if ( existing != null ) {
+            return find( existing );
+        }
+
+        final int id = classes.size();
+        if ( id == unionFind.length ) {
+            unionFind = Arrays.copyOf( unionFind , unionFind.length * 2 );
+        }
+        unionFind[id] = id;
+        final EClass eClass = new EClass();
+        eClass.nodes.add( node );
+        classes.add( eClass );
+
+        if ( node.left != -1 ) {
+            classes.get( node.left ).addParent( node , id );
+        }
+        if ( node.right != -1 && node.right != node.left ) {
+            classes.get( node.right ).addParent( node , id );
+        }
+        memo.put( node , id );
+        return id;
+    }
+
+    /**
+     * Returns the current ID of an e-class.
+     *
+     * @param classId
+     * @return
+     */
+    public int find(int classId)
+    {
+        int current = classId;
+        while ( unionFind[current] != current )
+        {
+            unionFind[current] = unionFind[ unionFind[current] ];
+            current = unionFind[current];
+        }
+        return current;
+    }
+
+    /**
+     * Merges two e-classes.
+     *
+     * <p>{@link #rebuild()} must be called before the graph is searched again.</p>
+     *
+     * @param class1
+     * @param class2
+     * @return <code>true</code> if the classes were different
+     */
+    public boolean union(int class1,int class2)
+    {
+        int root = find( class1 );
+        int other = find( class2 );
+        if ( root == other ) {
+            return false;
+        }
+        if ( classes.get( root ).parentNodes.size() < classes.get( other ).parentNodes.size() )
+        {
+            final int tmp = root;
+            root = other;
+            other = tmp;
+        }
+        final EClass rootClass = classes.get( root );
+        final EClass otherClass = classes.get( other );
+        unionFind[ other ] = root;
+        rootClass.nodes.addAll( otherClass.nodes );
+        rootClass.parentNodes.addAll( otherClass.parentNodes );
+        rootClass.parentClasses.addAll( otherClass.parentClasses );
+        classes.set( other , null );
+        dirty.add( root );
+        return true;
+    }
+
+    /**
+     * Restores the invariants of this graph after e-classes have been merged.
+     *
+     * <p>Nodes that have become equal are removed and the classes they belonged to are merged.</p>
+     */
+    public void rebuild()
+    {
+        if ( dirty.isEmpty() ) {
+            return;
+        }
+        while ( ! dirty.isEmpty() )
+        {
+            final Set<Integer> todo = new LinkedHashSet<>();
+            for ( int id : dirty ) {
+                todo.add( find( id ) );
+            }
+            dirty.clear();
+            for ( int id : todo ) {
+                repair( find( id ) );
+            }
+        }
+
+        for ( EClass eClass : classes )
+        {
+            if ( eClass != null )
+            {
+                final Set<ENode> nodes = new LinkedHashSet<>();
+                for ( ENode node : eClass.nodes ) {
+                    nodes.add( canonicalize( node ) );
+                }
+                eClass.nodes = new ArrayList<>( nodes );
+            }
+        }
+    }
+
+    private void repair(int classId)
+    {
+        final EClass eClass = classes.get( classId );
+        final List<ENode> parentNodes = new ArrayList<>( eClass.parentNodes );
+        final List<Integer> parentClasses = new ArrayList<>( eClass.parentClasses );
+
+        for ( int i = 0 ; i < parentNodes.size() ; i++ )
+        {
+            memo.remove( parentNodes.get(i) );
+            memo.put( canonicalize( parentNodes.get(i) ) , find( parentClasses.get(i) ) );
+        }
+
+        final Map<ENode,Integer> newParents = new LinkedHashMap<>();
+        for ( int i = 0 ; i < parentNodes.size() ; i++ )
+        {
+            final ENode node = canonicalize( parentNodes.get(i) );
+            final Integer existing = newParents.get( node );
+            if ( existing != null ) {
+                union( existing , parentClasses.get(i) );
+            }
+            newParents.put( node , find( parentClasses.get(i) ) );
+        }
+
+        // if this class got merged while repairing , the class it was merged into is dirty now and will be repaired as well
+        if ( find( classId ) == classId )
+        {
+            eClass.parentNodes = new ArrayList<>( newParents.keySet() );
+            eClass.parentClasses = new ArrayList<>( newParents.values() );
+        }
+    }
+
+    private ENode canonicalize(ENode node)
+    {
+        if ( node.isLeafNode() ) {
+            return node;
+        }
+        final int left = find( node.left );
+        final int right = node.right == -1 ? -1 : find( node.right );
+        if ( left == node.left && right == node.right ) {
+            return node;
+        }
+        return new ENode( node.type , left , right , node.identifier );
+    }
+
+    /**
+     * Returns the nodes of an e-class.
+     *
+     * @param classId
+     * @return
+     */
+    List<ENode> getNodes(int classId) {
+        return classes.get( find( classId ) ).nodes;
+    }
+
+    /**
+     * Returns whether an ID is the current ID of an e-class.
+     *
+     * @param classId
+     * @return
+     */
+    public boolean isCanonical(int classId) {
+        return classId >= 0 && classId < classes.size() && classes.get( classId ) != null;
+    }
+
+    /**
+     * Returns the number of e-class IDs assigned so far , valid IDs are 0...n-1.
+     *
+     * @return
+     */
+    public int getClassIdLimit() {
+        return classes.size();
+    }
+
+    /**
+     * Returns the number of e-classes.
+     *
+     * @return
+     */
+    public int getClassCount()
+    {
+        int result = 0;
+        for ( EClass eClass : classes ) {
+            if ( eClass != null ) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of distinct e-nodes.
+     *
+     * @return
+     */
+    public int getNodeCount() {
+        return memo.size();
+    }
+
+    /**
+     * Returns the cheapest term of an e-class.
+     *
+     * @param classId
+     * @param costFunction
+     * @param factory factory used to create the term
+     * @return
+     */
+    public HashConsedNode extract(int classId,ICostFunction costFunction,NodeFactory factory)
+    {
+        if ( costFunction == null ) {
+            throw new IllegalArgumentException("costFunction must not be NULL.");
+        }
+        if ( factory == null ) {
+            throw new IllegalArgumentException("factory must not be NULL.");
+        }
+
+        final long[] costs = new long[ classes.size() ];
+        final ENode[] best = new ENode[ classes.size() ];
+        Arrays.fill( costs , Long.MAX_VALUE );
+
+        boolean changed;
+        do {
+            changed = false;
+            for ( int id = 0 ; id < classes.size() ; id++ )
+            {
+                final EClass eClass = classes.get( id );
+                if ( eClass == null ) {
+                    continue;
+                }
+                for ( ENode node : eClass.nodes )
+                {
+                    final long leftCost = node.left == -1 ? 0 : costs[ find( node.left ) ];
+                    final long rightCost = node.right == -1 ? 0 : costs[ find( node.right ) ];
+                    if ( leftCost == Long.MAX_VALUE || rightCost == Long.MAX_VALUE ) {
+                        continue;
+                    }
+                    final long cost = costFunction.getCost( node.type , leftCost , rightCost );
+                    if ( cost < costs[id] )
+                    {
+                        costs[id] = cost;
+                        best[id] = node;
+                        changed = true;
+                    }
+                }
+            }
+        } while ( changed );
+
+        return toTerm( find( classId ) , best , factory );
+    }
+
+    /*
+     * Builds the term of the cheapest nodes , children before their parents. Uses an explicit stack
+     * instead of recursion , the extracted term may be too deep to be built recursively.
+     */
+    private HashConsedNode toTerm(int rootClassId,ENode[] best,NodeFactory factory)
+    {
+        final HashConsedNode[] terms = new HashConsedNode[ classes.size() ];
+        final boolean[] inProgress = new boolean[ classes.size() ];
+        final List<Integer> stack = new ArrayList<>();
+        stack.add( rootClassId );
+        while ( ! stack.isEmpty() )
+        {
+            final int classId = stack.get( stack.size() - 1 );
+            if ( terms[classId] != null )
+            {
+                stack.remove( stack.size() - 1 );
+                continue;
+            }
+            final ENode node = best[classId];
+            final int left = node.left == -1 ? -1 : find( node.left );
+            final int right = node.right == -1 ? -1 : find( node.right );
+            if ( ! inProgress[classId] && ! node.isLeafNode() )
+            {
+                // a class whose term is still being built can only be reached again through a cycle
+                inProgress[classId] = true;
+                if ( right != -1 ) {
+                    pushTerm( right , terms , inProgress , stack );
+                }
+                pushTerm( left , terms , inProgress , stack );
+                continue;
+            }
+            stack.remove( stack.size() - 1 );
+
+            final HashConsedNode result;
+            switch( node.type )
+            {
+                case TRUE:
+                    result = factory.getTrue();
+                    break;
+                case FALSE:
+                    result = factory.getFalse();
+                    break;
+                case VARIABLE:
+                    result = factory.variable( node.identifier );
+                    break;
+                case NOT:
+                    result = factory.not( terms[left] );
+                    break;
+                case AND:
+                case OR:
+                    result = factory.operator( node.type , terms[left] , terms[right] );
+                    break;
+                default:
+                    throw new RuntimeException("Unreachable code reached");
+            }
+            terms[classId] = result;
+        }
+        return terms[rootClassId];
+    }
+
+    private static void pushTerm(int classId,HashConsedNode[] terms,boolean[] inProgress,List<Integer> stack)
+    {
+        if ( terms[classId] != null ) {
+            return;
+        }
+        if ( inProgress[classId] ) {
+            throw new IllegalStateException("Cost function is not monotonic");
+        }
+        stack.add( classId );
+    }
+}
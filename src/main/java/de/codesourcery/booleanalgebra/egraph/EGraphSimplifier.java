@@ -0,0 +1,533 @@
+package de.codesourcery.booleanalgebra.egraph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.codesourcery.booleanalgebra.hashcons.HashConsedNode;
+import de.codesourcery.booleanalgebra.hashcons.HashConsedNode.Type;
+import de.codesourcery.booleanalgebra.hashcons.NodeFactory;
+
+/**
+ * Simplifies terms by equality saturation.
+ *
+ * <p>The term is added to an {@link EGraph} and all laws of boolean algebra are applied
+ * as non-destructive rewrites: a rewrite only adds the equivalent term and merges its e-class
+ * with the e-class of the matched term. Since nothing is ever removed , the order in which
+ * the laws are applied does not matter and laws that undo each other (like the distributive law and
+ * factoring , or De Morgan in both directions) can be used together.</p>
+ *
+ * <p>Rewriting stops once no law adds anything new (the graph is saturated) or one of
+ * the budgets (nodes , iterations , time) is exhausted. Finally the cheapest term according to the
+ * {@link #setCostFunction(ICostFunction) cost function} is extracted from the graph.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class EGraphSimplifier
+{
+    public static final int DEFAULT_MAX_NODE_COUNT = 10000;
+    public static final int DEFAULT_MAX_ITERATIONS = 30;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 1000;
+
+    public enum StopReason {
+        /**
+         * No law added anything new , the result is the best term
+         * reachable with these laws.
+         */
+        SATURATED,
+        NODE_LIMIT,
+        ITERATION_LIMIT,
+        TIME_LIMIT;
+    }
+
+    private int maxNodeCount = DEFAULT_MAX_NODE_COUNT;
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+    private long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+    private ICostFunction costFunction = ICostFunction.NODE_COUNT;
+
+    private StopReason stopReason;
+    private int iterationCount;
+    private int graphNodeCount;
+
+    /*
+     * Laws that never add operator nodes , these are applied to all e-classes before
+     * the others so that running out of nodes does not prevent them.
+     */
+    private final List<Rule> shrinkingRules = new ArrayList<>();
+    private final List<Rule> growingRules = new ArrayList<>();
+
+    private static abstract class Rule
+    {
+        public final String name;
+
+        protected Rule(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Applies this rule to a node , new terms may be added to the graph right away
+         * but merges need to be deferred until all rules have been applied.
+         */
+        public abstract void apply(Context context,int classId,ENode node);
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final class Context
+    {
+        public final EGraph graph;
+        public final int trueClass;
+        public final int falseClass;
+        public final List<int[]> merges = new ArrayList<>();
+
+        public Context(EGraph graph) {
+            this.graph = graph;
+            this.trueClass = graph.add( Type.TRUE , -1 , -1 , null );
+            this.falseClass = graph.add( Type.FALSE , -1 , -1 , null );
+        }
+
+        public void merge(int class1,int class2) {
+            merges.add( new int[] { class1 , class2 } );
+        }
+
+        public boolean isTrue(int classId) {
+            return graph.find( classId ) == graph.find( trueClass );
+        }
+
+        public boolean isFalse(int classId) {
+            return graph.find( classId ) == graph.find( falseClass );
+        }
+
+        public boolean same(int class1,int class2) {
+            return graph.find( class1 ) == graph.find( class2 );
+        }
+
+        public int literal(boolean value) {
+            return value ? trueClass : falseClass;
+        }
+
+        public int not(int child) {
+            return graph.add( Type.NOT , child , -1 , null );
+        }
+
+        public int operator(Type type,int left,int right) {
+            return graph.add( type , left , right , null );
+        }
+    }
+
+    public EGraphSimplifier()
+    {
+        // idempotency: a and a = a
+        shrinkingRules.add( new Rule("IDEMPOTENCY") {
+
+            @Override
+            public void apply(Context context,int classId,ENode node)
+            {
+                if ( isBinary( node ) && context.same( node.left , node.right ) ) {
+                    context.merge( classId , node.left );
+                }
+            }
+        });
+
+        // double negation: not( not a ) = a
+        shrinkingRules.add( new Rule("DOUBLE NEGATION") {
+
+            @Override
+            public void apply(Context context,int classId,ENode node)
+            {
+                if ( node.type == Type.NOT ) {
+                    for ( ENode child : context.graph.getNodes( node.left ) ) {
+                        if ( child.type == Type.NOT ) {
+                            context.merge( classId , child.left );
+                        }
+                    }
+                }
+            }
+        });
+
+        // duality: not true = false , not false = true
+        shrinkingRules.add( new Rule("DUALITY") {
+
+            @Override
+            public void apply(Context context,int classId,ENode node)
+            {
+                if ( node.type == Type.NOT ) {
+                    if ( context.isTrue( node.left ) ) {
+                        context.merge( classId , context.falseClass );
+                    } else if ( context.isFalse( node.left ) ) {
+                        context.merge( classId , context.trueClass );
+                    }
+                }
+            }
+        });
+
+        // identity: a and true = a , a or false = a
+        // extrema: a and false = false , a or true = true
+        shrinkingRules.add( new Rule("IDENTITY / EXTREMA") {
+
+            @Override
+            public void apply(Context context,int classId,ENode node)
+            {
+                if ( ! isBinary( node ) ) {
+                    return;
+                }
+                final boolean neutral = node.type == Type.AND;
+                if ( context.same( node.right , context.literal( neutral ) ) ) {
+                    context.merge( classId , node.left );
+                } else if ( context.same( node.left , context.literal( neutral ) ) ) {
+                    context.merge( classId , node.right );
+                } else if ( context.same( node.left , context.literal( ! neutral ) ) || context.same( node.right , context.literal( ! neutral ) ) ) {
+                    context.merge( classId , context.literal( ! neutral ) );
+                }
+            }
+        });
+
+        // complements: a and not a = false , a or not a = true
+        shrinkingRules.add( new Rule("COMPLEMENTS") {
+
+            @Override
+            public void apply(Context context,int classId,ENode node)
+            {
+                if ( isBinary( node ) && ( isNegationOf( context , node.right , node.left ) || isNegationOf( context , node.left , node.right ) ) ) {
+                    context.merge( classId , context.literal( node.type == Type.OR ) );
+                }
+            }
+        });
+
+        // absorption: a and (a or b) = a , a or (a and b) = a
+        shrinkingRules.add( new Rule("ABSORPTION") {
+
+            @Override
+            public void apply(Context context,int classId,ENode node)
+            {
+                if ( ! isBinary( node ) ) {
+                    return;
+                }
+                final Type opposite = opposite( node.type );
+                for ( ENode child : context.graph.getNodes( node.right ) )
+                {
+                    if ( child.type == opposite && ( context.same( child.left , node.left ) || context.same( child.right , node.left ) ) ) {
+                        context.merge( classId , node.left );
+                        return;
+                    }
+                }
+            }
+        });
+
+        // commutativity: a and b = b and a , a or b = b or a
+        growingRules.add( new Rule("COMMUTATIVITY") {
+
+            @Override
+            public void apply(Context context,int classId,ENode node)
+            {
+                if ( isBinary( node ) ) {
+                    context.merge( classId , context.operator( node.type , node.right , node.left ) );
+                }
+            }
+        });
+
+        // associativity: (a and b) and c = a and (b and c) , the other direction follows from commutativity
+        growingRules.add( new Rule("ASSOCIATIVITY") {
+
+            @Override
+            public void apply(Context context,int classId,ENode node)
+            {
+                if ( ! isBinary( node ) ) {
+                    return;
+                }
+                for ( ENode child : new ArrayList<>( context.graph.getNodes( node.left ) ) )
+                {
+                    if ( child.type == node.type ) {
+                        final int inner = context.operator( node.type , child.right , node.right );
+                        context.merge( classId , context.operator( node.type , child.left , inner ) );
+                    }
+                }
+            }
+        });
+
+        // De Morgan: not(a and b) = not a or not b , not(a or b) = not a and not b
+        growingRules.add( new Rule("DE MORGAN") {
+
+            @Override
+            public void apply(Context context,int classId,ENode node)
+            {
+                if ( node.type != Type.NOT ) {
+                    return;
+                }
+                for ( ENode child : new ArrayList<>( context.graph.getNodes( node.left ) ) )
+                {
+                    if ( isBinary( child ) ) {
+                        final int left = context.not( child.left );
+                        final int right = context.not( child.right );
+                        context.merge( classId , context.operator( opposite( child.type ) , left , right ) );
+                    }
+                }
+            }
+        });
+
+        // inverse De Morgan: not a or not b = not(a and b) , not a and not b = not(a or b)
+        growingRules.add( new Rule("INVERSE DE MORGAN") {
+
+            @Override
+            public void apply(Context context,int classId,ENode node)
+            {
+                if ( ! isBinary( node ) ) {
+                    return;
+                }
+                for ( ENode left : new ArrayList<>( context.graph.getNodes( node.left ) ) )
+                {
+                    if ( left.type != Type.NOT ) {
+                        continue;
+                    }
+                    for ( ENode right : new ArrayList<>( context.graph.getNodes( node.right ) ) )
+                    {
+                        if ( right.type == Type.NOT ) {
+                            final int inner = context.operator( opposite( node.type ) , left.left , right.left );
+                            context.merge( classId , context.not( inner ) );
+                        }
+                    }
+                }
+            }
+        });
+
+        // factoring: (a and b) or (a and c) = a and (b or c) , (a or b) and (a or c) = a or (b and c)
+        growingRules.add( new Rule("FACTORING") {
+
+            @Override
+            public void apply(Context context,int classId,ENode node)
+            {
+                if ( ! isBinary( node ) ) {
+                    return;
+                }
+                final Type opposite = opposite( node.type );
+                for ( ENode left : new ArrayList<>( context.graph.getNodes( node.left ) ) )
+                {
+                    if ( left.type != opposite ) {
+                        continue;
+                    }
+                    for ( ENode right : new ArrayList<>( context.graph.getNodes( node.right ) ) )
+                    {
+                        if ( right.type == opposite && context.same( left.left , right.left ) ) {
+                            final int inner = context.operator( node.type , left.right , right.right );
+                            context.merge( classId , context.operator( opposite , left.left , inner ) );
+                        }
+                    }
+                }
+            }
+        });
+
+        // distributivity: a and (b or c) = (a and b) or (a and c) , a or (b and c) = (a or b) and (a or c)
+        growingRules.add( new Rule("DISTRIBUTIVITY") {
+
+            @Override
+            public void apply(Context context,int classId,ENode node)
+            {
+                if ( ! isBinary( node ) ) {
+                    return;
+                }
+                final Type opposite = opposite( node.type );
+                for ( ENode right : new ArrayList<>( context.graph.getNodes( node.right ) ) )
+                {
+                    if ( right.type == opposite ) {
+                        final int left = context.operator( node.type , node.left , right.left );
+                        final int right2 = context.operator( node.type , node.left , right.right );
+                        context.merge( classId , context.operator( opposite , left , right2 ) );
+                    }
+                }
+            }
+        });
+    }
+
+    private static boolean isBinary(ENode node) {
+        return node.type == Type.AND || node.type == Type.OR;
+    }
+
+    private static Type opposite(Type type) {
+        return type == Type.AND ? Type.OR : Type.AND;
+    }
+
+    private static boolean isNegationOf(Context context,int negated,int term)
+    {
+        for ( ENode node : context.graph.getNodes( negated ) ) {
+            if ( node.type == Type.NOT && context.same( node.left , term ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Simplifies a term.
+     *
+     * @param term
+     * @param factory factory used to create the result , must be the factory that created <code>term</code>
+     * @return simplified term
+     */
+    public HashConsedNode simplify(HashConsedNode term,NodeFactory factory)
+    {
+        if ( term == null ) {
+            throw new IllegalArgumentException("term must not be NULL.");
+        }
+        if ( factory == null ) {
+            throw new IllegalArgumentException("factory must not be NULL.");
+        }
+
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        final EGraph graph = new EGraph();
+        final int root = graph.add( term );
+        final Context context = new Context( graph );
+
+        stopReason = null;
+        iterationCount = 0;
+        while ( stopReason == null )
+        {
+            if ( iterationCount >= maxIterations ) {
+                stopReason = StopReason.ITERATION_LIMIT;
+                break;
+            }
+            iterationCount++;
+
+            applyRules( context , shrinkingRules , deadline );
+            if ( stopReason == null ) {
+                applyRules( context , growingRules , deadline );
+            }
+
+            boolean changed = false;
+            for ( int[] merge : context.merges ) {
+                changed |= graph.union( merge[0] , merge[1] );
+            }
+            context.merges.clear();
+            graph.rebuild();
+
+            if ( ! changed && stopReason == null ) {
+                stopReason = StopReason.SATURATED;
+            }
+        }
+        graphNodeCount = graph.getNodeCount();
+        return graph.extract( root , costFunction , factory );
+    }
+
+    private void applyRules(Context context,List<Rule> rules,long deadline)
+    {
+        final EGraph graph = context.graph;
+        final int classIdLimit = graph.getClassIdLimit();
+        for ( int classId = 0 ; classId < classIdLimit ; classId++ )
+        {
+            if ( ! graph.isCanonical( classId ) ) {
+                continue;
+            }
+            if ( graph.getNodeCount() >= maxNodeCount ) {
+                stopReason = StopReason.NODE_LIMIT;
+                return;
+            }
+            if ( ( classId & 63 ) == 0 && System.currentTimeMillis() >= deadline ) {
+                stopReason = StopReason.TIME_LIMIT;
+                return;
+            }
+            for ( ENode node : new ArrayList<>( graph.getNodes( classId ) ) ) {
+                for ( Rule rule : rules ) {
+                    rule.apply( context , classId , node );
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the max. number of e-nodes , rewriting stops once the graph has grown this large.
+     *
+     * @param maxNodeCount
+     */
+    public void setMaxNodeCount(int maxNodeCount)
+    {
+        if ( maxNodeCount < 1 ) {
+            throw new IllegalArgumentException("maxNodeCount must be > 0");
+        }
+        this.maxNodeCount = maxNodeCount;
+    }
+
+    public int getMaxNodeCount() {
+        return maxNodeCount;
+    }
+
+    /**
+     * Sets the max. number of iterations , each iteration applies all laws to all e-classes once.
+     *
+     * @param maxIterations
+     */
+    public void setMaxIterations(int maxIterations)
+    {
+        if ( maxIterations < 0 ) {
+            throw new IllegalArgumentException("maxIterations must be >= 0");
+        }
+        this.maxIterations = maxIterations;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Sets the max. time spent rewriting , extracting the result is not included.
+     *
+     * @param timeoutMillis
+     */
+    public void setTimeoutMillis(long timeoutMillis)
+    {
+        if ( timeoutMillis < 0 ) {
+            throw new IllegalArgumentException("timeoutMillis must be >= 0");
+        }
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Sets the cost function used to pick the result.
+     *
+     * @param costFunction
+     * @see ICostFunction#NODE_COUNT
+     * @see ICostFunction#DEPTH
+     */
+    public void setCostFunction(ICostFunction costFunction)
+    {
+        if (costFunction == null) {
+            throw new IllegalArgumentException("costFunction must not be NULL.");
+        }
+        this.costFunction = costFunction;
+    }
+
+    public ICostFunction getCostFunction() {
+        return costFunction;
+    }
+
+    /**
+     * Returns why rewriting stopped during the last call to {@link #simplify(HashConsedNode, NodeFactory)}.
+     *
+     * @return
+     */
+    public StopReason getStopReason() {
+        return stopReason;
+    }
+
+    /**
+     * Returns the number of iterations performed by the last call to {@link #simplify(HashConsedNode, NodeFactory)}.
+     *
+     * @return
+     */
+    public int getIterationCount() {
+        return iterationCount;
+    }
+
+    /**
+     * Returns the number of e-nodes the graph had at the end of the last call to {@link #simplify(HashConsedNode, NodeFactory)}.
+     *
+     * @return
+     */
+    public int getGraphNodeCount() {
+        return graphNodeCount;
+    }
+}
@@ -0,0 +1,69 @@
+package de.codesourcery.booleanalgebra.egraph;
+
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.hashcons.HashConsedNode.Type;
+
+/**
+ * A node in an {@link EGraph} , its children are e-class IDs.
+ */
+final class ENode
+{
+    public final Type type;
+    public final int left;
+    public final int right;
+    public final Identifier identifier;
+
+    private final int hash;
+
+    public ENode(Type type,int left,int right,Identifier identifier)
+    {
+        this.type = type;
+        this.left = left;
+        this.right = right;
+        this.identifier = identifier;
+        int h = type.ordinal();
+        h = 31 * h + left;
+        h = 31 * h + right;
+        h = 31 * h + ( identifier != null ? identifier.hashCode() : 0 );
+        this.hash = h;
+    }
+
+    public boolean isLeafNode() {
+        return left == -1;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if ( this == obj ) {
+            return true;
+        }
+        if ( ! ( obj instanceof ENode ) ) {
+            return false;
+        }
+        final ENode other = (ENode) obj;
+        return hash == other.hash && type == other.type && left == other.left && right == other.right &&
+               ( identifier == null ? other.identifier == null : identifier.equals( other.identifier ) );
+    }
+
+    @Override
+    public String toString()
+    {
+        switch( type ) {
+            case VARIABLE:
+                return identifier.toString();
+            case NOT:
+                return "NOT #"+left;
+            case AND:
+            case OR:
+                return "#"+left+" "+type+" #"+right;
+            default:
+                return type.toString().toLowerCase();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package de.codesourcery.booleanalgebra.egraph;
+
+import de.codesourcery.booleanalgebra.hashcons.HashConsedNode.Type;
+
+/**
+ * Assigns costs to terms , used to pick the best term from an {@link EGraph}.
+ *
+ * <p>The cost of a term is computed bottom-up from the costs of its children.</p>
+ */
+public interface ICostFunction
+{
+    /**
+     * Max. cost a term may have.
+     */
+    public static final long MAX_COST = Long.MAX_VALUE / 2;
+
+    /**
+     * Cost is the number of nodes the term has as a tree.
+     */
+    public static final ICostFunction NODE_COUNT = new ICostFunction() {
+
+        @Override
+        public long getCost(Type type, long leftCost, long rightCost) {
+            // terms may be exponentially large as trees
+            return Math.min( MAX_COST , 1 + leftCost + rightCost );
+        }
+
+        @Override
+        public String toString() {
+            return "node count";
+        }
+    };
+
+    /**
+     * Cost is the depth of the term.
+     */
+    public static final ICostFunction DEPTH = new ICostFunction() {
+
+        @Override
+        public long getCost(Type type, long leftCost, long rightCost) {
+            return 1 + Math.max( leftCost , rightCost );
+        }
+
+        @Override
+        public String toString() {
+            return "depth";
+        }
+    };
+
+    /**
+     * Returns the cost of a node.
+     *
+     * @param type
+     * @param leftCost cost of the left (or only) child , 0 for leaf nodes
+     * @param rightCost cost of the right child , 0 for leaf nodes and <code>NOT</code>
+     * @return cost , must be larger than both <code>leftCost</code> and <code>rightCost</code>
+     * and not larger than {@link #MAX_COST}
+     */
+    public long getCost(Type type,long leftCost,long rightCost);
+}
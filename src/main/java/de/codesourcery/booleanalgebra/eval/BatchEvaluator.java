@@ -0,0 +1,223 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+
+/**
+ * Evaluates an expression against whole columns of variable values.
+ *
+ * <p>Rows are processed in blocks of {@link #getBlockWords()} words (64 rows each). For every block the
+ * expression's postfix program runs exactly once, with each instruction applying a bitwise operation
+ * to all words of the block. The block size is chosen so that the operand stack ({@link CompiledExpression#getMaxStackDepth()}
+ * blocks) stays in the L1/L2 cache while the tight per-instruction loops give the JIT
+ * something to vectorize.</p>
+ *
+ * <p>Columns are processed chunk by chunk (see {@link BitColumn}), so the number of
+ * rows is not limited by the max. size of a single array.</p>
+ *
+ * <p>Instances are not thread-safe, since they hold the operand stack. Use one evaluator per thread.</p>
+ */
+public final class BatchEvaluator
+{
+    /**
+     * Default block size in words , 512 words = 4 KB per stack entry.
+     */
+    public static final int DEFAULT_BLOCK_WORDS = 512;
+
+    private final CompiledExpression expression;
+    private final int[] program;
+    private final int blockWords;
+    private final long[][] stack;
+
+    public BatchEvaluator(CompiledExpression expression) {
+        this( expression , DEFAULT_BLOCK_WORDS );
+    }
+
+    public BatchEvaluator(CompiledExpression expression,int blockWords)
+    {
+        if (expression == null) {
+            throw new IllegalArgumentException("expression must not be NULL.");
+        }
+        if ( blockWords < 1 ) {
+            throw new IllegalArgumentException("blockWords must be >= 1");
+        }
+        this.expression = expression;
+        this.program = expression.getProgram();
+        this.blockWords = blockWords;
+        this.stack = new long[ Math.max( 1 , expression.getMaxStackDepth() ) ][ blockWords ];
+    }
+
+    public static BatchEvaluator create(ASTNode term) {
+        return new BatchEvaluator( CompiledExpression.compile( term ) );
+    }
+
+    public CompiledExpression getExpression() {
+        return expression;
+    }
+
+    public int getBlockWords() {
+        return blockWords;
+    }
+
+    /**
+     * Evaluates the expression for every row.
+     *
+     * @param columns columns by variable , may contain columns for variables the expression does not use
+     * @param rowCount number of rows , every column needs to have exactly this many rows
+     * @return result column
+     * @throws IllegalArgumentException if a column is missing or has a different number of rows
+     */
+    public BitColumn evaluate(Map<Identifier,BitColumn> columns,long rowCount)
+    {
+        if (columns == null) {
+            throw new IllegalArgumentException("columns must not be NULL.");
+        }
+        final BitColumn[] columnsBySlot = new BitColumn[ expression.getSlotCount() ];
+        for ( int slot = 0 ; slot < columnsBySlot.length ; slot++ )
+        {
+            columnsBySlot[slot] = columns.get( expression.getIdentifier( slot ) );
+            if ( columnsBySlot[slot] == null ) {
+                throw new IllegalArgumentException("No column for variable '"+expression.getIdentifier( slot )+"'");
+            }
+        }
+        return evaluate( columnsBySlot , rowCount );
+    }
+
+    /**
+     * Evaluates the expression for every row.
+     *
+     * @param columnsBySlot columns by slot index
+     * @param rowCount number of rows , every column needs to have exactly this many rows
+     * @return result column
+     * @throws IllegalArgumentException if a column is missing or has a different number of rows
+     */
+    public BitColumn evaluate(BitColumn[] columnsBySlot,long rowCount)
+    {
+        if ( columnsBySlot == null || columnsBySlot.length < expression.getSlotCount() ) {
+            throw new IllegalArgumentException("Need one column for each of the "+expression.getSlotCount()+" slots");
+        }
+        final BitColumn layout = expression.getSlotCount() > 0 ? columnsBySlot[0] : null;
+        for ( int slot = 0 ; slot < expression.getSlotCount() ; slot++ )
+        {
+            final BitColumn column = columnsBySlot[slot];
+            if ( column == null ) {
+                throw new IllegalArgumentException("No column for slot "+slot);
+            }
+            if ( column.getRowCount() != rowCount ) {
+                throw new IllegalArgumentException("Column for variable '"+expression.getIdentifier( slot )+"' has "+column.getRowCount()+" rows, expected "+rowCount);
+            }
+            if ( ! column.hasSameLayout( layout ) ) {
+                throw new IllegalArgumentException("Column for variable '"+expression.getIdentifier( slot )+"' has a different chunk size");
+            }
+        }
+
+        final BitColumn result = layout != null ? new BitColumn( rowCount , layout.getChunkWords() ) : new BitColumn( rowCount );
+        final long[][] inputs = new long[ expression.getSlotCount() ][];
+        for ( int chunk = 0 ; chunk < result.getChunkCount() ; chunk++ )
+        {
+            for ( int slot = 0 ; slot < inputs.length ; slot++ ) {
+                inputs[slot] = columnsBySlot[slot].getChunk( chunk );
+            }
+            final long[] output = result.getChunk( chunk );
+            evaluate( inputs , output , 0 , output.length );
+        }
+        result.clearUnusedBits();
+        return result;
+    }
+
+    /**
+     * Evaluates a range of words.
+     *
+     * @param inputs variable values by slot index
+     * @param output array to store results in
+     * @param fromWord first word to evaluate (inclusive)
+     * @param toWord last word to evaluate (exclusive)
+     */
+    public void evaluate(long[][] inputs,long[] output,int fromWord,int toWord)
+    {
+        for ( int start = fromWord ; start < toWord ; start += blockWords ) {
+            evaluateBlock( inputs , output , start , Math.min( blockWords , toWord - start ) );
+        }
+    }
+
+    private void evaluateBlock(long[][] inputs,long[] output,int start,int len)
+    {
+        final int[] program = this.program;
+        final long[][] stack = this.stack;
+
+        int sp = -1;
+        for ( int pc = 0 ; pc < program.length ; pc++ )
+        {
+            final int insn = program[pc];
+            switch( insn & CompiledExpression.OPCODE_MASK )
+            {
+                case CompiledExpression.OP_FALSE:
+                    Arrays.fill( stack[++sp] , 0 , len , 0L );
+                    break;
+                case CompiledExpression.OP_TRUE:
+                    Arrays.fill( stack[++sp] , 0 , len , ~0L );
+                    break;
+                case CompiledExpression.OP_LOAD:
+                    final long[] input = inputs[ insn >>> CompiledExpression.OPCODE_BITS ];
+                    // fuse with a following binary operator , saves copying the input into the stack
+                    if ( pc + 1 < program.length && isBinaryOperator( program[pc+1] ) && sp >= 0 ) {
+                        apply( program[++pc] & CompiledExpression.OPCODE_MASK , stack[sp] , input , start , len );
+                    } else {
+                        System.arraycopy( input , start , stack[++sp] , 0 , len );
+                    }
+                    break;
+                case CompiledExpression.OP_NOT:
+                    final long[] value = stack[sp];
+                    for ( int i = 0 ; i < len ; i++ ) {
+                        value[i] = ~value[i];
+                    }
+                    break;
+                case CompiledExpression.OP_AND:
+                case CompiledExpression.OP_OR:
+                case CompiledExpression.OP_EQUALS:
+                    apply( insn & CompiledExpression.OPCODE_MASK , stack[sp-1] , stack[sp] , 0 , len );
+                    sp--;
+                    break;
+                default:
+                    throw new RuntimeException("Unreachable code reached");
+            }
+        }
+        System.arraycopy( stack[0] , 0 , output , start , len );
+    }
+
+    private static boolean isBinaryOperator(int insn)
+    {
+        final int opcode = insn & CompiledExpression.OPCODE_MASK;
+        return opcode == CompiledExpression.OP_AND || opcode == CompiledExpression.OP_OR || opcode == CompiledExpression.OP_EQUALS;
+    }
+
+    /**
+     * Computes <code>target[i] = target[i] op source[offset+i]</code>.
+     */
+    private static void apply(int opcode,long[] target,long[] source,int offset,int len)
+    {
+        switch( opcode )
+        {
+            case CompiledExpression.OP_AND:
+                for ( int i = 0 ; i < len ; i++ ) {
+                    target[i] &= source[offset+i];
+                }
+                break;
+            case CompiledExpression.OP_OR:
+                for ( int i = 0 ; i < len ; i++ ) {
+                    target[i] |= source[offset+i];
+                }
+                break;
+            case CompiledExpression.OP_EQUALS:
+                for ( int i = 0 ; i < len ; i++ ) {
+                    target[i] = ~( target[i] ^ source[offset+i] );
+                }
+                break;
+            default:
+                throw new RuntimeException("Unreachable code reached");
+        }
+    }
+}
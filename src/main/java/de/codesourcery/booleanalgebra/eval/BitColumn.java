@@ -0,0 +1,184 @@
+package de.codesourcery.booleanalgebra.eval;
+
+/**
+ * A column of boolean values , stored as bits.
+ *
+ * <p>Bit <code>n</code> of word <code>w</code> holds the value of row <code>w*64+n</code>.
+ * Words are split into chunks of a fixed size, so a column may have more rows
+ * than a single <code>long[]</code> could hold. Bits past the last row are always zero.</p>
+ *
+ * <p>Columns are not thread-safe.</p>
+ */
+public final class BitColumn
+{
+    /**
+     * Default chunk size (in words) , 2^24 words = 2^30 rows = 128 MB.
+     */
+    public static final int DEFAULT_CHUNK_WORDS = 1 << 24;
+
+    private final long rowCount;
+    private final int chunkWords;
+    private final long[][] chunks;
+
+    public BitColumn(long rowCount) {
+        this( rowCount , DEFAULT_CHUNK_WORDS );
+    }
+
+    /**
+     *
+     * @param rowCount
+     * @param chunkWords number of words per chunk
+     */
+    public BitColumn(long rowCount,int chunkWords)
+    {
+        if ( rowCount < 0 ) {
+            throw new IllegalArgumentException("rowCount must be >= 0");
+        }
+        if ( chunkWords < 1 ) {
+            throw new IllegalArgumentException("chunkWords must be >= 1");
+        }
+        final long wordCount = wordCount( rowCount );
+        final long chunkCount = ( wordCount + chunkWords - 1 ) / chunkWords;
+        if ( chunkCount > Integer.MAX_VALUE ) {
+            throw new IllegalArgumentException("Too many rows: "+rowCount);
+        }
+        this.rowCount = rowCount;
+        this.chunkWords = chunkWords;
+        this.chunks = new long[ (int) chunkCount ][];
+        for ( int i = 0 ; i < chunks.length ; i++ )
+        {
+            final long remaining = wordCount - (long) i * chunkWords;
+            chunks[i] = new long[ (int) Math.min( chunkWords , remaining ) ];
+        }
+    }
+
+    private BitColumn(long rowCount,long[] words)
+    {
+        this.rowCount = rowCount;
+        this.chunkWords = Math.max( 1 , words.length );
+        this.chunks = words.length == 0 ? new long[0][] : new long[][] { words };
+    }
+
+    /**
+     * Creates a single-chunk column backed by an existing array.
+     *
+     * <p>Changes to the array are visible through the column and vice versa.</p>
+     *
+     * @param words
+     * @param rowCount
+     * @return
+     */
+    public static BitColumn wrap(long[] words,long rowCount)
+    {
+        if (words == null) {
+            throw new IllegalArgumentException("words must not be NULL.");
+        }
+        if ( rowCount < 0 || wordCount( rowCount ) != words.length ) {
+            throw new IllegalArgumentException("Need exactly "+wordCount( Math.max( 0 , rowCount ) )+" words for "+rowCount+" rows, got "+words.length);
+        }
+        final BitColumn result = new BitColumn( rowCount , words );
+        result.clearUnusedBits();
+        return result;
+    }
+
+    public static long wordCount(long rowCount) {
+        return ( rowCount + 63 ) >>> 6;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public long getWordCount() {
+        return wordCount( rowCount );
+    }
+
+    public int getChunkWords() {
+        return chunkWords;
+    }
+
+    public int getChunkCount() {
+        return chunks.length;
+    }
+
+    /**
+     * Returns a chunk (not a copy).
+     *
+     * @param index
+     * @return
+     */
+    public long[] getChunk(int index) {
+        return chunks[index];
+    }
+
+    /**
+     * Checks whether this column has the same number of rows and chunk size as another.
+     *
+     * @param other
+     * @return
+     */
+    public boolean hasSameLayout(BitColumn other) {
+        return rowCount == other.rowCount && ( chunkWords == other.chunkWords || chunks.length <= 1 && other.chunks.length <= 1 );
+    }
+
+    public boolean get(long row)
+    {
+        checkRow( row );
+        final long word = row >>> 6;
+        return ( chunks[ (int) ( word / chunkWords ) ][ (int) ( word % chunkWords ) ] & ( 1L << row ) ) != 0;
+    }
+
+    public void set(long row,boolean value)
+    {
+        checkRow( row );
+        final long word = row >>> 6;
+        final long[] chunk = chunks[ (int) ( word / chunkWords ) ];
+        final int index = (int) ( word % chunkWords );
+        if ( value ) {
+            chunk[index] |= 1L << row;
+        } else {
+            chunk[index] &= ~( 1L << row );
+        }
+    }
+
+    /**
+     * Returns the number of rows that are <code>true</code>.
+     *
+     * @return
+     */
+    public long getTrueRowCount()
+    {
+        long result = 0;
+        for ( long[] chunk : chunks ) {
+            for ( long word : chunk ) {
+                result += Long.bitCount( word );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Clears all bits past the last row.
+     */
+    void clearUnusedBits()
+    {
+        final int usedBits = (int) ( rowCount & 63 );
+        if ( usedBits != 0 )
+        {
+            final long[] lastChunk = chunks[ chunks.length - 1 ];
+            lastChunk[ lastChunk.length - 1 ] &= ( 1L << usedBits ) - 1;
+        }
+    }
+
+    private void checkRow(long row)
+    {
+        if ( row < 0 || row >= rowCount ) {
+            throw new IndexOutOfBoundsException("Row "+row+" out of range, column has "+rowCount+" rows");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BitColumn[ rows="+rowCount+", chunks="+chunks.length+" ]";
+    }
+}
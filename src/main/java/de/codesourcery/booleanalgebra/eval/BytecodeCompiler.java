@@ -0,0 +1,398 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Translates {@link CompiledExpression}s into JVM classes implementing {@link IBooleanFunction}.
+ *
+ * <p>The generated methods are straight-line code (<code>ILOAD/IAND/IOR/IXOR</code> on 0/1 ints)
+ * without any branches, which keeps them small enough to be inlined by the JIT and
+ * avoids having to emit stack map frames.</p>
+ *
+ * <p>Each class is defined through its own class loader so that it can be
+ * unloaded once it has been evicted from the cache and is no longer referenced.
+ * Generated classes are cached by program, so structurally identical expressions
+ * (same shape, same slot layout) share a single class.</p>
+ */
+public class BytecodeCompiler
+{
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    /**
+     * Max. size (in bytes) of a generated method, larger methods
+     * would not get JIT-compiled by HotSpot anyway.
+     */
+    public static final int MAX_METHOD_SIZE = 8000;
+
+    private static final BytecodeCompiler DEFAULT_INSTANCE = new BytecodeCompiler( DEFAULT_CACHE_SIZE );
+
+    private static final AtomicLong CLASS_COUNTER = new AtomicLong(0);
+
+    private static final String PACKAGE = "de/codesourcery/booleanalgebra/eval/generated/";
+    private static final String INTERFACE_NAME = IBooleanFunction.class.getName().replace('.' , '/' );
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    // opcodes
+    private static final int ICONST_0 = 0x03;
+    private static final int ICONST_1 = 0x04;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LLOAD_1 = 0x1f;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int BALOAD = 0x33;
+    private static final int IAND = 0x7e;
+    private static final int IOR = 0x80;
+    private static final int IXOR = 0x82;
+    private static final int LUSHR = 0x7d;
+    private static final int L2I = 0x88;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+
+    // constant pool layout of every generated class
+    private static final int CP_THIS_CLASS = 2;
+    private static final int CP_OBJECT_CLASS = 4;
+    private static final int CP_INTERFACE_CLASS = 6;
+    private static final int CP_INIT_NAME = 7;
+    private static final int CP_VOID_DESCRIPTOR = 8;
+    private static final int CP_OBJECT_INIT = 10;
+    private static final int CP_CODE = 11;
+    private static final int CP_TEST_NAME = 12;
+    private static final int CP_TEST_LONG_DESCRIPTOR = 13;
+    private static final int CP_TEST_ARRAY_DESCRIPTOR = 14;
+    private static final int CP_COUNT = 15;
+
+    private final int cacheSize;
+    private final Map<ProgramKey,IBooleanFunction> cache;
+
+    private long cacheHits;
+    private long cacheMisses;
+
+    public BytecodeCompiler(int cacheSize)
+    {
+        if ( cacheSize < 1 ) {
+            throw new IllegalArgumentException("cache size must be >= 1");
+        }
+        this.cacheSize = cacheSize;
+        this.cache = new LinkedHashMap<ProgramKey,IBooleanFunction>(16,0.75f,true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ProgramKey,IBooleanFunction> eldest) {
+                return size() > BytecodeCompiler.this.cacheSize;
+            }
+        };
+    }
+
+    public static BytecodeCompiler getDefault() {
+        return DEFAULT_INSTANCE;
+    }
+
+    /**
+     * Checks whether an expression is small enough to be translated.
+     *
+     * <p>Expressions with more than {@link CompiledExpression#MAX_LONG_SLOTS} variables cannot be
+     * translated , the generated {@link IBooleanFunction#test(long)} would alias slot <code>n</code>
+     * and slot <code>n % 64</code>.</p>
+     *
+     * @param expression
+     * @return
+     */
+    public boolean canCompile(CompiledExpression expression)
+    {
+        return expression.getSlotCount() <= CompiledExpression.MAX_LONG_SLOTS &&
+               estimateMethodSize( expression ) <= MAX_METHOD_SIZE;
+    }
+
+    /**
+     * Returns a class implementing an expression, generating it if necessary.
+     *
+     * <p>Note that {@link IBooleanFunction#test(boolean[])} of the returned object
+     * expects an array with at least one element per slot.</p>
+     *
+     * @param expression
+     * @return
+     * @throws IllegalArgumentException if the expression is too large or uses more than {@link CompiledExpression#MAX_LONG_SLOTS} variables
+     * @see #canCompile(CompiledExpression)
+     */
+    public synchronized IBooleanFunction compile(CompiledExpression expression)
+    {
+        if ( expression.getSlotCount() > CompiledExpression.MAX_LONG_SLOTS ) {
+            throw new IllegalArgumentException("Expression uses "+expression.getSlotCount()+" variables, at most "+CompiledExpression.MAX_LONG_SLOTS+" can be compiled");
+        }
+        if ( ! canCompile( expression ) ) {
+            throw new IllegalArgumentException("Expression too large to be compiled: "+expression.getProgramLength()+" instructions");
+        }
+
+        final ProgramKey key = new ProgramKey( expression.getProgram() );
+        IBooleanFunction result = cache.get( key );
+        if ( result != null ) {
+            cacheHits++;
+            return result;
+        }
+        cacheMisses++;
+        result = defineClass( key.program , expression.getMaxStackDepth() );
+        cache.put( key , result );
+        return result;
+    }
+
+    public synchronized int getCachedClassCount() {
+        return cache.size();
+    }
+
+    public synchronized long getCacheHits() {
+        return cacheHits;
+    }
+
+    public synchronized long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    public synchronized void clearCache() {
+        cache.clear();
+    }
+
+    private static int estimateMethodSize(CompiledExpression expression)
+    {
+        // size of test(long) , which is always larger than test(boolean[])
+        int size = 1; // IRETURN
+        for ( final int insn : expression.getProgram() )
+        {
+            switch( insn & CompiledExpression.OPCODE_MASK )
+            {
+                case CompiledExpression.OP_LOAD:
+                    final int slot = insn >>> CompiledExpression.OPCODE_BITS;
+                    size += slot == 0 ? 4 : 5 + pushIntSize( slot );
+                    break;
+                case CompiledExpression.OP_NOT:
+                    size += 2;
+                    break;
+                case CompiledExpression.OP_EQUALS:
+                    size += 3;
+                    break;
+                default:
+                    size += 1;
+            }
+        }
+        return size;
+    }
+
+    private static IBooleanFunction defineClass(int[] program,int maxStackDepth)
+    {
+        final String className = PACKAGE + "BooleanFunction" + CLASS_COUNTER.incrementAndGet();
+        final byte[] classFile;
+        try {
+            classFile = generateClassFile( className , program , maxStackDepth );
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Unreachable code reached",e);
+        }
+
+        final GeneratedClassLoader loader = new GeneratedClassLoader( IBooleanFunction.class.getClassLoader() );
+        final Class<?> clazz = loader.define( className.replace('/','.') , classFile );
+        try {
+            return (IBooleanFunction) clazz.newInstance();
+        }
+        catch (InstantiationException | IllegalAccessException e) {
+            throw new RuntimeException("Failed to instantiate generated class "+className,e);
+        }
+    }
+
+    private static byte[] generateClassFile(String className,int[] program,int maxStackDepth) throws IOException
+    {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream( buffer );
+
+        out.writeInt( 0xcafebabe );
+        out.writeShort( 0 ); // minor version
+        out.writeShort( 51 ); // major version (Java 7)
+
+        // constant pool
+        out.writeShort( CP_COUNT );
+        writeUtf8( out , className ); // #1
+        writeClass( out , 1 ); // #2
+        writeUtf8( out , "java/lang/Object" ); // #3
+        writeClass( out , 3 ); // #4
+        writeUtf8( out , INTERFACE_NAME ); // #5
+        writeClass( out , 5 ); // #6
+        writeUtf8( out , "<init>" ); // #7
+        writeUtf8( out , "()V" ); // #8
+        out.writeByte( 12 ); // #9 NameAndType
+        out.writeShort( CP_INIT_NAME );
+        out.writeShort( CP_VOID_DESCRIPTOR );
+        out.writeByte( 10 ); // #10 Methodref
+        out.writeShort( CP_OBJECT_CLASS );
+        out.writeShort( 9 );
+        writeUtf8( out , "Code" ); // #11
+        writeUtf8( out , "test" ); // #12
+        writeUtf8( out , "(J)Z" ); // #13
+        writeUtf8( out , "([Z)Z" ); // #14
+
+        out.writeShort( ACC_PUBLIC | ACC_FINAL | ACC_SUPER );
+        out.writeShort( CP_THIS_CLASS );
+        out.writeShort( CP_OBJECT_CLASS );
+        out.writeShort( 1 ); // interfaces
+        out.writeShort( CP_INTERFACE_CLASS );
+        out.writeShort( 0 ); // fields
+
+        out.writeShort( 3 ); // methods
+
+        // constructor
+        final byte[] init = { (byte) ALOAD_0 , (byte) INVOKESPECIAL , 0 , (byte) CP_OBJECT_INIT , (byte) RETURN };
+        writeMethod( out , ACC_PUBLIC , CP_INIT_NAME , CP_VOID_DESCRIPTOR , 1 , 1 , init );
+
+        // boolean test(long)
+        writeMethod( out , ACC_PUBLIC | ACC_FINAL , CP_TEST_NAME , CP_TEST_LONG_DESCRIPTOR , maxStackDepth + 3 , 3 , generateCode( program , true ) );
+
+        // boolean test(boolean[])
+        writeMethod( out , ACC_PUBLIC | ACC_FINAL , CP_TEST_NAME , CP_TEST_ARRAY_DESCRIPTOR , maxStackDepth + 2 , 2 , generateCode( program , false ) );
+
+        out.writeShort( 0 ); // attributes
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    private static byte[] generateCode(int[] program,boolean longArgument)
+    {
+        final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        for ( final int insn : program )
+        {
+            switch( insn & CompiledExpression.OPCODE_MASK )
+            {
+                case CompiledExpression.OP_FALSE:
+                    code.write( ICONST_0 );
+                    break;
+                case CompiledExpression.OP_TRUE:
+                    code.write( ICONST_1 );
+                    break;
+                case CompiledExpression.OP_LOAD:
+                    final int slot = insn >>> CompiledExpression.OPCODE_BITS;
+                    if ( longArgument )
+                    {
+                        // (int) ( assignment >>> slot ) & 1
+                        code.write( LLOAD_1 );
+                        if ( slot != 0 ) {
+                            pushInt( code , slot );
+                            code.write( LUSHR );
+                        }
+                        code.write( L2I );
+                        code.write( ICONST_1 );
+                        code.write( IAND );
+                    }
+                    else
+                    {
+                        // values[slot]
+                        code.write( ALOAD_1 );
+                        pushInt( code , slot );
+                        code.write( BALOAD );
+                    }
+                    break;
+                case CompiledExpression.OP_NOT:
+                    code.write( ICONST_1 );
+                    code.write( IXOR );
+                    break;
+                case CompiledExpression.OP_AND:
+                    code.write( IAND );
+                    break;
+                case CompiledExpression.OP_OR:
+                    code.write( IOR );
+                    break;
+                case CompiledExpression.OP_EQUALS:
+                    code.write( IXOR );
+                    code.write( ICONST_1 );
+                    code.write( IXOR );
+                    break;
+                default:
+                    throw new RuntimeException("Unreachable code reached");
+            }
+        }
+        code.write( IRETURN );
+        return code.toByteArray();
+    }
+
+    private static int pushIntSize(int value) {
+        return value <= 5 ? 1 : ( value <= Byte.MAX_VALUE ? 2 : 3 );
+    }
+
+    private static void pushInt(ByteArrayOutputStream code,int value)
+    {
+        if ( value <= 5 ) {
+            code.write( ICONST_0 + value );
+        } else if ( value <= Byte.MAX_VALUE ) {
+            code.write( BIPUSH );
+            code.write( value );
+        } else {
+            code.write( SIPUSH );
+            code.write( value >>> 8 );
+            code.write( value & 0xff );
+        }
+    }
+
+    private static void writeMethod(DataOutputStream out,int accessFlags,int nameIndex,int descriptorIndex,int maxStack,int maxLocals,byte[] code) throws IOException
+    {
+        out.writeShort( accessFlags );
+        out.writeShort( nameIndex );
+        out.writeShort( descriptorIndex );
+        out.writeShort( 1 ); // attributes
+
+        out.writeShort( CP_CODE );
+        out.writeInt( 12 + code.length );
+        out.writeShort( maxStack );
+        out.writeShort( maxLocals );
+        out.writeInt( code.length );
+        out.write( code );
+        out.writeShort( 0 ); // exception table
+        out.writeShort( 0 ); // attributes
+    }
+
+    private static void writeUtf8(DataOutputStream out,String s) throws IOException {
+        out.writeByte( 1 );
+        out.writeUTF( s );
+    }
+
+    private static void writeClass(DataOutputStream out,int nameIndex) throws IOException {
+        out.writeByte( 7 );
+        out.writeShort( nameIndex );
+    }
+
+    private static final class GeneratedClassLoader extends ClassLoader
+    {
+        public GeneratedClassLoader(ClassLoader parent) {
+            super( parent );
+        }
+
+        public Class<?> define(String name,byte[] classFile) {
+            return defineClass( name , classFile , 0 , classFile.length );
+        }
+    }
+
+    private static final class ProgramKey
+    {
+        private final int[] program;
+        private final int hashCode;
+
+        public ProgramKey(int[] program) {
+            this.program = program;
+            this.hashCode = Arrays.hashCode( program );
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ProgramKey && Arrays.equals( program , ((ProgramKey) obj).program );
+        }
+    }
+}
@@ -0,0 +1,611 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+import de.codesourcery.booleanalgebra.ExpressionContexts;
+import de.codesourcery.booleanalgebra.IExpressionContext;
+import de.codesourcery.booleanalgebra.ILiteralExpressionContext;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.BooleanExpression;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.OperatorType;
+import de.codesourcery.booleanalgebra.ast.TermNode;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+
+/**
+ * A term (or expression) lowered into a flat postfix program.
+ *
+ * <p>Each instruction is a single <code>int</code> holding the opcode in the lowest
+ * {@link #OPCODE_BITS} bits and (for {@link #OP_LOAD}) the variable's slot index in the
+ * remaining bits. Variables are resolved to slot indices at compile time, so evaluation
+ * never touches the {@link IExpressionContext} maps or creates any AST nodes.</p>
+ *
+ * <p>Operands of commutative operators are emitted in Sethi-Ullman order (the operand
+ * that needs the deeper stack goes first), which bounds the operand stack to
+ * log2(number of leaves)+1 entries. This is what allows the evaluators to keep the whole
+ * stack inside a single <code>long</code> and run without any allocation.</p>
+ *
+ * <p>Compiled expressions are immutable and may be shared between threads.</p>
+ */
+public final class CompiledExpression
+{
+    public static final int OP_FALSE = 0;
+    public static final int OP_TRUE = 1;
+    public static final int OP_LOAD = 2;
+    public static final int OP_NOT = 3;
+    public static final int OP_AND = 4;
+    public static final int OP_OR = 5;
+    public static final int OP_EQUALS = 6;
+
+    public static final int OPCODE_BITS = 3;
+    public static final int OPCODE_MASK = (1 << OPCODE_BITS ) -1;
+
+    /**
+     * Max. number of slots supported by {@link #evaluate(long)}.
+     */
+    public static final int MAX_LONG_SLOTS = 64;
+
+    private static final int MAX_STACK_DEPTH = 64;
+
+    private final int[] program;
+    private final Identifier[] slots;
+    private final Map<Identifier,Integer> slotsByIdentifier;
+    private final int maxStackDepth;
+
+    private CompiledExpression(int[] program,Identifier[] slots,int maxStackDepth)
+    {
+        this.program = program;
+        this.slots = slots;
+        this.maxStackDepth = maxStackDepth;
+        this.slotsByIdentifier = new HashMap<>();
+        for ( int i = 0 ; i < slots.length ; i++ ) {
+            slotsByIdentifier.put( slots[i] , i );
+        }
+    }
+
+    /**
+     * Compiles a term or expression, assigning slots to variables
+     * in order of their first (left-to-right) occurrence.
+     *
+     * @param node
+     * @return
+     */
+    public static CompiledExpression compile(ASTNode node) {
+        return new Compiler( node , null ).compile();
+    }
+
+    /**
+     * Compiles a term or expression using a fixed slot assignment.
+     *
+     * <p>Use this when several expressions need to be evaluated against
+     * the same assignment vector.</p>
+     *
+     * @param node
+     * @param slots variables by slot index, must contain every variable used by <code>node</code>
+     * @return
+     * @throws IllegalArgumentException if <code>node</code> uses a variable that is not in <code>slots</code>
+     */
+    public static CompiledExpression compile(ASTNode node,List<Identifier> slots)
+    {
+        if (slots == null) {
+            throw new IllegalArgumentException("slots must not be NULL.");
+        }
+        return new Compiler( node , slots ).compile();
+    }
+
+    public int getSlotCount() {
+        return slots.length;
+    }
+
+    public Identifier getIdentifier(int slot) {
+        return slots[slot];
+    }
+
+    public List<Identifier> getIdentifiers() {
+        return Collections.unmodifiableList( Arrays.asList( slots ) );
+    }
+
+    /**
+     *
+     * @param identifier
+     * @return slot index or -1 if this expression does not use the variable
+     */
+    public int getSlot(Identifier identifier) {
+        final Integer result = slotsByIdentifier.get( identifier );
+        return result != null ? result.intValue() : -1;
+    }
+
+    /**
+     * Returns a copy of the program.
+     *
+     * @return
+     */
+    public int[] getProgram() {
+        return program.clone();
+    }
+
+    public int getProgramLength() {
+        return program.length;
+    }
+
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    /**
+     * Evaluates this expression.
+     *
+     * @param assignment variable values, bit <code>n</code> holds the value of slot <code>n</code>
+     * @return
+     * @throws IllegalStateException if this expression uses more than {@link #MAX_LONG_SLOTS} variables
+     */
+    public boolean evaluate(long assignment)
+    {
+        if ( slots.length > MAX_LONG_SLOTS ) {
+            throw new IllegalStateException("Expression uses "+slots.length+" variables, cannot evaluate against a long");
+        }
+
+        long stack = 0;
+        for ( final int insn : program )
+        {
+            switch( insn & OPCODE_MASK )
+            {
+                case OP_FALSE:  stack <<= 1; break;
+                case OP_TRUE:   stack = (stack << 1) | 1; break;
+                case OP_LOAD:   stack = (stack << 1) | ( (assignment >>> (insn >>> OPCODE_BITS) ) & 1 ); break;
+                case OP_NOT:    stack ^= 1; break;
+                case OP_AND:    stack = (stack >>> 1) & ( stack | ~1L ); break;
+                case OP_OR:     stack = (stack >>> 1) | ( stack & 1 ); break;
+                case OP_EQUALS: stack = (stack >>> 1) ^ ( ~stack & 1 ); break;
+                default:
+                    throw new RuntimeException("Unreachable code reached");
+            }
+        }
+        return (stack & 1) != 0;
+    }
+
+    /**
+     * Evaluates this expression.
+     *
+     * @param values variable values by slot index
+     * @return
+     */
+    public boolean evaluate(boolean[] values)
+    {
+        if ( values.length < slots.length ) {
+            throw new IllegalArgumentException("Need values for "+slots.length+" slots but got only "+values.length);
+        }
+
+        long stack = 0;
+        for ( final int insn : program )
+        {
+            switch( insn & OPCODE_MASK )
+            {
+                case OP_FALSE:  stack <<= 1; break;
+                case OP_TRUE:   stack = (stack << 1) | 1; break;
+                case OP_LOAD:   stack = (stack << 1) | ( values[ insn >>> OPCODE_BITS ] ? 1 : 0 ); break;
+                case OP_NOT:    stack ^= 1; break;
+                case OP_AND:    stack = (stack >>> 1) & ( stack | ~1L ); break;
+                case OP_OR:     stack = (stack >>> 1) | ( stack & 1 ); break;
+                case OP_EQUALS: stack = (stack >>> 1) ^ ( ~stack & 1 ); break;
+                default:
+                    throw new RuntimeException("Unreachable code reached");
+            }
+        }
+        return (stack & 1) != 0;
+    }
+
+    /**
+     * Evaluates this expression, looking up variable values in a context.
+     *
+     * @param context
+     * @return
+     * @throws IllegalArgumentException if a variable has no literal value in the context
+     * @see #hasLiteralValues(IExpressionContext)
+     */
+    public boolean evaluate(IExpressionContext context)
+    {
+        long stack = 0;
+        for ( final int insn : program )
+        {
+            switch( insn & OPCODE_MASK )
+            {
+                case OP_FALSE:  stack <<= 1; break;
+                case OP_TRUE:   stack = (stack << 1) | 1; break;
+                case OP_LOAD:   stack = (stack << 1) | ( getLiteralValue( insn >>> OPCODE_BITS , context ) ? 1 : 0 ); break;
+                case OP_NOT:    stack ^= 1; break;
+                case OP_AND:    stack = (stack >>> 1) & ( stack | ~1L ); break;
+                case OP_OR:     stack = (stack >>> 1) | ( stack & 1 ); break;
+                case OP_EQUALS: stack = (stack >>> 1) ^ ( ~stack & 1 ); break;
+                default:
+                    throw new RuntimeException("Unreachable code reached");
+            }
+        }
+        return (stack & 1) != 0;
+    }
+
+    /**
+     * Evaluates this expression if all of its variables are bound to literal values in a context.
+     *
+     * <p>Unlike checking {@link #hasLiteralValues(IExpressionContext)} before {@link #evaluate(IExpressionContext)} ,
+     * this looks up each variable only once.</p>
+     *
+     * @param context
+     * @return {@link ILiteralExpressionContext#LITERAL_TRUE} , {@link ILiteralExpressionContext#LITERAL_FALSE} or
+     * {@link ILiteralExpressionContext#NO_LITERAL} if a variable is not bound to a literal value
+     */
+    public int tryEvaluate(IExpressionContext context)
+    {
+        long stack = 0;
+        for ( final int insn : program )
+        {
+            switch( insn & OPCODE_MASK )
+            {
+                case OP_FALSE:  stack <<= 1; break;
+                case OP_TRUE:   stack = (stack << 1) | 1; break;
+                case OP_LOAD:
+                    final int value = ExpressionContexts.lookupLiteral( context , slots[ insn >>> OPCODE_BITS ] );
+                    if ( value == ILiteralExpressionContext.NO_LITERAL ) {
+                        return ILiteralExpressionContext.NO_LITERAL;
+                    }
+                    stack = (stack << 1) | ( value == ILiteralExpressionContext.LITERAL_TRUE ? 1 : 0 );
+                    break;
+                case OP_NOT:    stack ^= 1; break;
+                case OP_AND:    stack = (stack >>> 1) & ( stack | ~1L ); break;
+                case OP_OR:     stack = (stack >>> 1) | ( stack & 1 ); break;
+                case OP_EQUALS: stack = (stack >>> 1) ^ ( ~stack & 1 ); break;
+                default:
+                    throw new RuntimeException("Unreachable code reached");
+            }
+        }
+        return (stack & 1) != 0 ? ILiteralExpressionContext.LITERAL_TRUE : ILiteralExpressionContext.LITERAL_FALSE;
+    }
+
+    /**
+     * Evaluates this expression for 64 assignments at once.
+     *
+     * <p>Bit <code>n</code> of <code>slotMasks[slot]</code> holds the value of
+     * variable <code>slot</code> in the <code>n</code>-th assignment, bit <code>n</code>
+     * of the result holds the value of the expression for that assignment.</p>
+     *
+     * @param slotMasks bit-sliced variable values by slot index
+     * @param stack scratch space, must hold at least {@link #getMaxStackDepth()} elements
+     * @return
+     */
+    public long evaluateBitSliced(long[] slotMasks,long[] stack)
+    {
+        int sp = -1;
+        for ( final int insn : program )
+        {
+            switch( insn & OPCODE_MASK )
+            {
+                case OP_FALSE:  stack[++sp] = 0; break;
+                case OP_TRUE:   stack[++sp] = ~0L; break;
+                case OP_LOAD:   stack[++sp] = slotMasks[ insn >>> OPCODE_BITS ]; break;
+                case OP_NOT:    stack[sp] = ~stack[sp]; break;
+                case OP_AND:    stack[sp-1] &= stack[sp]; sp--; break;
+                case OP_OR:     stack[sp-1] |= stack[sp]; sp--; break;
+                case OP_EQUALS: stack[sp-1] = ~( stack[sp-1] ^ stack[sp] ); sp--; break;
+                default:
+                    throw new RuntimeException("Unreachable code reached");
+            }
+        }
+        return stack[0];
+    }
+
+    private boolean getLiteralValue(int slot,IExpressionContext context)
+    {
+        final int value = ExpressionContexts.lookupLiteral( context , slots[slot] );
+        if ( value == ILiteralExpressionContext.NO_LITERAL ) {
+            throw new IllegalArgumentException("Variable '"+slots[slot]+"' has no literal value");
+        }
+        return value == ILiteralExpressionContext.LITERAL_TRUE;
+    }
+
+    /**
+     * Checks whether all variables used by this expression
+     * are bound to literal values in a context.
+     *
+     * @param context
+     * @return
+     */
+    public boolean hasLiteralValues(IExpressionContext context)
+    {
+        for ( Identifier id : slots )
+        {
+            if ( ExpressionContexts.lookupLiteral( context , id ) == ILiteralExpressionContext.NO_LITERAL ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder result = new StringBuilder();
+        for ( final int insn : program )
+        {
+            if ( result.length() > 0 ) {
+                result.append(" ");
+            }
+            switch( insn & OPCODE_MASK )
+            {
+                case OP_FALSE:  result.append("false"); break;
+                case OP_TRUE:   result.append("true"); break;
+                case OP_LOAD:   result.append( slots[ insn >>> OPCODE_BITS ] ); break;
+                case OP_NOT:    result.append("NOT"); break;
+                case OP_AND:    result.append("AND"); break;
+                case OP_OR:     result.append("OR"); break;
+                case OP_EQUALS: result.append("="); break;
+                default:
+                    throw new RuntimeException("Unreachable code reached");
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Translates an AST into postfix form.
+     *
+     * Both passes are iterative , any tree whose evaluation fits into {@link #MAX_STACK_DEPTH}
+     * operand stack slots can be compiled , no matter how deep it is.
+     */
+    private static final class Compiler
+    {
+        private final ASTNode root;
+        private final List<Identifier> fixedSlots;
+
+        private final List<Identifier> slots = new ArrayList<>();
+        private final Map<Identifier,Integer> slotsByIdentifier = new HashMap<>();
+
+        // number of stack entries needed to evaluate a given node
+        private final Map<ASTNode,Integer> need = new IdentityHashMap<>();
+
+        private int[] program = new int[16];
+        private int programLength = 0;
+
+        public Compiler(ASTNode root,List<Identifier> fixedSlots)
+        {
+            if (root == null) {
+                throw new IllegalArgumentException("root must not be NULL.");
+            }
+            this.root = root;
+            this.fixedSlots = fixedSlots;
+            if ( fixedSlots != null )
+            {
+                for ( Identifier id : fixedSlots ) {
+                    slotFor( id );
+                }
+            }
+        }
+
+        public CompiledExpression compile()
+        {
+            computeStackRequirements();
+
+            final int maxStackDepth = need.get( unwrap( root ) );
+            if ( maxStackDepth > MAX_STACK_DEPTH ) {
+                throw new IllegalArgumentException("Expression too complex, requires a stack depth of "+maxStackDepth);
+            }
+
+            emit();
+            return new CompiledExpression( Arrays.copyOf( program , programLength ) ,
+                    slots.toArray( new Identifier[ slots.size() ] ) , maxStackDepth );
+        }
+
+        private static ASTNode unwrap(ASTNode node)
+        {
+            ASTNode result = node;
+            while ( result instanceof TermNode )
+            {
+                if ( ! result.hasChildren() ) {
+                    throw new IllegalArgumentException("Cannot compile empty term");
+                }
+                result = result.child(0);
+            }
+            return result;
+        }
+
+        private static ASTNode[] operands(ASTNode node)
+        {
+            if ( node instanceof OperatorNode )
+            {
+                final OperatorNode op = (OperatorNode) node;
+                if ( op.getType() == null ) {
+                    throw new IllegalArgumentException("Cannot compile operator without type");
+                }
+                final int minChildCount = op.getType() == OperatorType.NOT ? 1 : 2;
+                if ( op.getChildCount() < minChildCount ) {
+                    throw new IllegalArgumentException("Cannot compile incomplete operator "+op.getType());
+                }
+                switch( op.getType() ) {
+                    case NOT:
+                        return new ASTNode[] { unwrap( op.child(0) ) };
+                    case AND:
+                        // $FALL-THROUGH$
+                    case OR:
+                        final ASTNode[] result = new ASTNode[ op.getChildCount() ];
+                        for ( int i = 0 ; i < result.length ; i++ ) {
+                            result[i] = unwrap( op.child(i) );
+                        }
+                        return result;
+                    default:
+                        throw new RuntimeException("Unhandled operator type: "+op.getType());
+                }
+            }
+            if ( node instanceof BooleanExpression )
+            {
+                final BooleanExpression expr = (BooleanExpression) node;
+                if ( expr.getChildCount() < 2 ) {
+                    throw new IllegalArgumentException("Cannot compile incomplete expression");
+                }
+                return new ASTNode[] { unwrap( expr.getLHS() ) , unwrap( expr.getRHS() ) };
+            }
+            if ( node instanceof IdentifierNode || node instanceof TrueNode || node instanceof FalseNode ) {
+                return new ASTNode[0];
+            }
+            throw new IllegalArgumentException("Don't know how to compile "+node.getClass().getName());
+        }
+
+        private int slotFor(Identifier identifier)
+        {
+            Integer slot = slotsByIdentifier.get( identifier );
+            if ( slot == null )
+            {
+                if ( fixedSlots != null && slotsByIdentifier.size() == fixedSlots.size() ) {
+                    throw new IllegalArgumentException("No slot for variable '"+identifier+"'");
+                }
+                slot = slots.size();
+                slots.add( identifier );
+                slotsByIdentifier.put( identifier , slot );
+            }
+            return slot;
+        }
+
+        /*
+         * Pass 1: assign slots in pre-order and compute Sethi-Ullman numbers in post-order.
+         */
+        private void computeStackRequirements()
+        {
+            final Stack<ASTNode> stack = new Stack<>();
+            stack.push( unwrap( root ) );
+            while ( ! stack.isEmpty() )
+            {
+                final ASTNode node = stack.peek();
+                final ASTNode[] operands = operands( node );
+
+                if ( ! need.containsKey( node ) )
+                {
+                    // first visit
+                    need.put( node , null );
+                    if ( node instanceof IdentifierNode ) {
+                        slotFor( ((IdentifierNode) node).getIdentifier() );
+                    }
+                    for ( int i = operands.length -1 ; i >= 0 ; i-- )
+                    {
+                        if ( ! need.containsKey( operands[i] ) ) {
+                            stack.push( operands[i] );
+                        }
+                    }
+                    continue;
+                }
+
+                stack.pop();
+                if ( operands.length == 0 ) {
+                    need.put( node , 1 );
+                    continue;
+                }
+                // while evaluating any but the first operand, the result of the previous ones occupies one more entry
+                final ASTNode[] sorted = sortByNeed( operands );
+                int result = need.get( sorted[0] );
+                for ( int i = 1 ; i < sorted.length ; i++ ) {
+                    result = Math.max( result , need.get( sorted[i] ) + 1 );
+                }
+                need.put( node , result );
+            }
+        }
+
+        /*
+         * Returns operands in descending order of their stack requirements , operands
+         * with the same requirements keep their order.
+         */
+        private ASTNode[] sortByNeed(ASTNode[] operands)
+        {
+            if ( operands.length < 2 ) {
+                return operands;
+            }
+            final ASTNode[] result = operands.clone();
+            Arrays.sort( result , new Comparator<ASTNode>() {
+
+                @Override
+                public int compare(ASTNode o1, ASTNode o2) {
+                    return Integer.compare( need.get( o2 ) , need.get( o1 ) );
+                }
+            });
+            return result;
+        }
+
+        /*
+         * Pass 2: emit postfix code, evaluating the operand with
+         * the higher stack requirement first.
+         */
+        private void emit()
+        {
+            final Stack<ASTNode> stack = new Stack<>();
+            final Stack<Boolean> expanded = new Stack<>();
+
+            stack.push( unwrap( root ) );
+            expanded.push( Boolean.FALSE );
+            while ( ! stack.isEmpty() )
+            {
+                final ASTNode node = stack.pop();
+                final boolean childrenEmitted = expanded.pop();
+                final ASTNode[] operands = operands( node );
+
+                if ( childrenEmitted || operands.length == 0 ) {
+                    emit( node );
+                    continue;
+                }
+
+                // all operators with more than one operand are commutative, emit the more expensive operands first
+                // and apply the operator after each but the first one : a b OP c OP ...
+                final ASTNode[] sorted = sortByNeed( operands );
+                for ( int i = sorted.length - 1 ; i > 0 ; i-- )
+                {
+                    stack.push( node );
+                    expanded.push( Boolean.TRUE );
+                    stack.push( sorted[i] );
+                    expanded.push( Boolean.FALSE );
+                }
+                if ( sorted.length == 1 )
+                {
+                    stack.push( node );
+                    expanded.push( Boolean.TRUE );
+                }
+                stack.push( sorted[0] );
+                expanded.push( Boolean.FALSE );
+            }
+        }
+
+        private void emit(ASTNode node)
+        {
+            if ( node instanceof TrueNode ) {
+                append( OP_TRUE );
+            } else if ( node instanceof FalseNode ) {
+                append( OP_FALSE );
+            } else if ( node instanceof IdentifierNode ) {
+                append( OP_LOAD | ( slotFor( ((IdentifierNode) node).getIdentifier() ) << OPCODE_BITS ) );
+            } else if ( node instanceof BooleanExpression ) {
+                append( OP_EQUALS );
+            } else if ( node.isNOT() ) {
+                append( OP_NOT );
+            } else if ( node.isAND() ) {
+                append( OP_AND );
+            } else if ( node.isOR() ) {
+                append( OP_OR );
+            } else {
+                throw new IllegalArgumentException("Don't know how to compile "+node.getClass().getName());
+            }
+        }
+
+        private void append(int insn)
+        {
+            if ( programLength == program.length ) {
+                program = Arrays.copyOf( program , program.length * 2 );
+            }
+            program[ programLength++ ] = insn;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+
+import de.codesourcery.booleanalgebra.IExpressionContext;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.BooleanExpression;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.TermNode;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+
+/**
+ * Partially evaluates a term in a single bottom-up pass.
+ *
+ * <p>Variables bound to literal values are replaced by their values and literals are folded
+ * into their parents:</p>
+ * <ul>
+ *   <li><code>NOT true = false</code> , <code>NOT false = true</code></li>
+ *   <li><code>x AND false = false</code> , <code>x OR true = true</code></li>
+ *   <li><code>x AND true = x</code> , <code>x OR false = x</code></li>
+ *   <li>parentheses around literals and around terms that were folded into a single variable are removed</li>
+ * </ul>
+ *
+ * <p>Every node is visited exactly once. Nodes whose subtrees did not change are reused
+ * and copied only once when their parent had to be rebuilt , so the cost is linear in the
+ * size of the term no matter how many subterms get folded. The input term is never modified.</p>
+ */
+public final class ConstantFolder
+{
+    private final IExpressionContext context;
+
+    private ConstantFolder(IExpressionContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Folds a term or expression.
+     *
+     * @param term
+     * @param context context providing the values of variables
+     * @return folded copy of the input term
+     */
+    public static ASTNode fold(ASTNode term,IExpressionContext context)
+    {
+        if ( context == null ) {
+            throw new IllegalArgumentException("context must not be null");
+        }
+        final ASTNode result = new ConstantFolder( context ).foldNode( term );
+        return result == term ? term.createCopy( true ) : result;
+    }
+
+    /**
+     * Folds all nodes of a term , children before their parents.
+     * 
+     * <p>Uses an explicit stack instead of recursion , so arbitrarily deep terms can be folded.</p>
+     * 
+     * @return either the input node itself if nothing in its subtree could be folded ,
+     * or a new node without a parent
+     */
+    private ASTNode foldNode(ASTNode root)
+    {
+        if ( ! isCompound( root ) ) {
+            return foldLeaf( root );
+        }
+        final Stack<Frame> stack = new Stack<>();
+        stack.push( new Frame( root ) );
+        while ( true )
+        {
+            final Frame frame = stack.peek();
+            if ( frame.hasNextChild() )
+            {
+                final ASTNode child = frame.nextChild();
+                if ( isCompound( child ) ) {
+                    stack.push( new Frame( child ) );
+                } else {
+                    frame.add( foldLeaf( child ) );
+                }
+                continue;
+            }
+            stack.pop();
+            final ASTNode result = fold( frame );
+            if ( stack.isEmpty() ) {
+                return result;
+            }
+            stack.peek().add( result );
+        }
+    }
+
+    private static boolean isCompound(ASTNode node)
+    {
+        return ( node instanceof TermNode && node.hasChildren() ) || node.isNOT() || node.isAND() || node.isOR() ||
+               node instanceof BooleanExpression;
+    }
+
+    private ASTNode foldLeaf(ASTNode node)
+    {
+        if ( node instanceof IdentifierNode )
+        {
+            final ASTNode value = context.tryLookup( ((IdentifierNode) node).getIdentifier() );
+            if ( value != null && value.isLiteralValue() ) {
+                return toNode( value.getLiteralValue( context ) );
+            }
+        }
+        return node;
+    }
+
+    /*
+     * A node whose children have been folded.
+     */
+    private final class Frame
+    {
+        public final ASTNode node;
+        public final List<ASTNode> folded;
+        private int nextChild;
+        // x AND false , x OR true
+        public boolean annihilated;
+
+        public Frame(ASTNode node)
+        {
+            this.node = node;
+            this.folded = new ArrayList<>( node.getChildCount() );
+        }
+
+        public boolean hasNextChild() {
+            return ! annihilated && nextChild < node.getChildCount();
+        }
+
+        public ASTNode nextChild() {
+            return node.child( nextChild++ );
+        }
+
+        public void add(ASTNode result)
+        {
+            folded.add( result );
+            if ( ( node.isAND() || node.isOR() ) && result.isLiteralValue() && result.getLiteralValue( context ) == node.isOR() ) {
+                annihilated = true;
+            }
+        }
+    }
+
+    private ASTNode fold(Frame frame)
+    {
+        final ASTNode node = frame.node;
+        if ( node instanceof TermNode )
+        {
+            final ASTNode child = frame.folded.get(0);
+            if ( child.isLiteralValue() ) {
+                return detach( child );
+            }
+            if ( child == node.child(0) ) {
+                return node;
+            }
+            // a term that got folded into a variable or into another term does not need parentheses
+            return child.isLeafNode() || child instanceof TermNode ? child : rebuild( node , child );
+        }
+        if ( node.isNOT() )
+        {
+            final ASTNode child = frame.folded.get(0);
+            if ( child.isLiteralValue() ) {
+                return toNode( ! child.getLiteralValue( context ) );
+            }
+            return child == node.child(0) ? node : rebuild( node , child );
+        }
+        if ( node.isAND() || node.isOR() ) {
+            return foldAndOr( frame );
+        }
+        final BooleanExpression expr = (BooleanExpression) node;
+        final ASTNode lhs = frame.folded.get(0);
+        final ASTNode rhs = frame.folded.get(1);
+        if ( lhs == expr.getLHS() && rhs == expr.getRHS() ) {
+            return node;
+        }
+        return new BooleanExpression( detach( lhs ) , detach( rhs ) );
+    }
+
+    private ASTNode foldAndOr(Frame frame)
+    {
+        final ASTNode node = frame.node;
+        // x AND false = false , x OR true = true
+        final boolean annihilator = node.isOR();
+        if ( frame.annihilated ) {
+            return toNode( annihilator );
+        }
+
+        final List<ASTNode> operands = new ArrayList<>( node.getChildCount() );
+        boolean changed = false;
+        for ( int i = 0 ; i < frame.folded.size() ; i++ )
+        {
+            final ASTNode folded = frame.folded.get( i );
+            if ( folded.isLiteralValue() ) {
+                changed = true;
+            } else {
+                changed |= folded != node.child( i );
+                operands.add( folded );
+            }
+        }
+        if ( ! changed ) {
+            return node;
+        }
+        switch( operands.size() )
+        {
+            case 0:
+                return toNode( ! annihilator );
+            case 1:
+                return detach( operands.get(0) );
+            default:
+                return rebuild( node , operands );
+        }
+    }
+
+    private static ASTNode rebuild(ASTNode node,ASTNode child)
+    {
+        final ASTNode result = node.createCopy( false );
+        result.addChild( detach( child ) );
+        return result;
+    }
+
+    private static ASTNode rebuild(ASTNode node,List<ASTNode> children)
+    {
+        final ASTNode result = node.createCopy( false );
+        for ( ASTNode child : children ) {
+            result.addChild( detach( child ) );
+        }
+        return result;
+    }
+
+    /*
+     * Nodes of the input term still have their parent
+     * and need to be copied before they can be used in the result.
+     */
+    private static ASTNode detach(ASTNode node) {
+        return node.hasParent() ? node.createCopy( true ) : node;
+    }
+
+    private static ASTNode toNode(boolean value) {
+        return value ? new TrueNode() : new FalseNode();
+    }
+}
@@ -0,0 +1,313 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.BooleanExpression;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.SymbolTable;
+import de.codesourcery.booleanalgebra.ast.TermNode;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+
+/**
+ * Merges terms into a DAG of hash-consed nodes.
+ *
+ * <p>Nodes are identified by small, dense integers and stored in parallel arrays. Each node
+ * is unique on (operator, operands) , with the operands of the commutative operators <code>AND</code>,
+ * <code>OR</code> and <code>=</code> in canonical order. N-ary <code>AND</code> / <code>OR</code> nodes
+ * are folded into binary ones from left to right.</p>
+ *
+ * <p>Users keep additional per-node state in arrays of their own and get notified
+ * when the node arrays grow and when a node is created.</p>
+ */
+class DagBuilder
+{
+    static final int NO_NODE = -1;
+
+    private final SymbolTable symbols;
+
+    // nodes by ID , op is one of the CompiledExpression.OP_* constants. LOAD nodes store the variable index as left operand
+    int[] ops = new int[64];
+    int[] lefts = new int[64];
+    int[] rights = new int[64];
+    int nodeCount;
+
+    // open addressing , holds (node ID+1) or 0 for empty slots
+    private int[] table = new int[128];
+
+    DagBuilder(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * Invoked after the node arrays grew.
+     *
+     * @param capacity new length of the node arrays
+     */
+    protected void capacityChanged(int capacity) {
+    }
+
+    /**
+     * Invoked after a node was created.
+     *
+     * @param node
+     */
+    protected void nodeCreated(int node) {
+    }
+
+    final int getCapacity() {
+        return ops.length;
+    }
+
+    /**
+     * Converts a term into (possibly shared) DAG nodes.
+     *
+     * <p>Uses an explicit stack instead of recursion , so arbitrarily deep terms can be converted.</p>
+     *
+     * @param term
+     * @return ID of the root node
+     */
+    final int intern(ASTNode term)
+    {
+        final Map<ASTNode,Integer> ids = new IdentityHashMap<>();
+        final Stack<ASTNode> stack = new Stack<>();
+        stack.push( unwrap( term ) );
+        while ( ! stack.isEmpty() )
+        {
+            final ASTNode node = stack.peek();
+            if ( ids.containsKey( node ) ) {
+                stack.pop();
+                continue;
+            }
+            final List<ASTNode> operands = operands( node );
+            boolean ready = true;
+            for ( int i = operands.size() - 1 ; i >= 0 ; i-- )
+            {
+                if ( ! ids.containsKey( operands.get(i) ) ) {
+                    stack.push( operands.get(i) );
+                    ready = false;
+                }
+            }
+            if ( ! ready ) {
+                continue;
+            }
+            stack.pop();
+
+            final int id;
+            if ( node instanceof TrueNode ) {
+                id = node( CompiledExpression.OP_TRUE , NO_NODE , NO_NODE );
+            } else if ( node instanceof FalseNode ) {
+                id = node( CompiledExpression.OP_FALSE , NO_NODE , NO_NODE );
+            } else if ( node instanceof IdentifierNode ) {
+                id = node( CompiledExpression.OP_LOAD , symbols.intern( ((IdentifierNode) node).getIdentifier() ).getIndex() , NO_NODE );
+            } else if ( node instanceof BooleanExpression ) {
+                id = node( CompiledExpression.OP_EQUALS , ids.get( operands.get(0) ) , ids.get( operands.get(1) ) );
+            } else {
+                switch( ((OperatorNode) node).getType() )
+                {
+                    case NOT:
+                        id = node( CompiledExpression.OP_NOT , ids.get( operands.get(0) ) , NO_NODE );
+                        break;
+                    case AND:
+                        id = fold( CompiledExpression.OP_AND , operands , ids );
+                        break;
+                    case OR:
+                        id = fold( CompiledExpression.OP_OR , operands , ids );
+                        break;
+                    default:
+                        throw new RuntimeException("Unreachable code reached");
+                }
+            }
+            ids.put( node , id );
+        }
+        return ids.get( unwrap( term ) );
+    }
+
+    private static ASTNode unwrap(ASTNode node)
+    {
+        ASTNode result = node;
+        while ( result instanceof TermNode )
+        {
+            if ( ! result.hasChildren() ) {
+                throw new IllegalArgumentException("Empty term node");
+            }
+            result = result.child(0);
+        }
+        return result;
+    }
+
+    /*
+     * Combines the operands of an n-ary AND / OR from left to right.
+     */
+    private int fold(int op,List<ASTNode> operands,Map<ASTNode,Integer> ids)
+    {
+        int result = ids.get( operands.get(0) );
+        for ( int i = 1 ; i < operands.size() ; i++ ) {
+            result = node( op , result , ids.get( operands.get(i) ) );
+        }
+        return result;
+    }
+
+    private static List<ASTNode> operands(ASTNode node)
+    {
+        final List<ASTNode> result = new ArrayList<>(2);
+        if ( node instanceof OperatorNode )
+        {
+            final OperatorNode op = (OperatorNode) node;
+            if ( op.getType() == null ) {
+                throw new IllegalArgumentException("Operator without type: "+node);
+            }
+            for ( ASTNode child : op.children() ) {
+                result.add( unwrap( child ) );
+            }
+        }
+        else if ( node instanceof BooleanExpression )
+        {
+            result.add( unwrap( ((BooleanExpression) node).getLHS() ) );
+            result.add( unwrap( ((BooleanExpression) node).getRHS() ) );
+        }
+        else if ( ! ( node instanceof IdentifierNode || node instanceof TrueNode || node instanceof FalseNode ) ) {
+            throw new IllegalArgumentException("Unsupported node type: "+node);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ID of the node (op,left,right) , creating it if necessary.
+     *
+     * @param op
+     * @param left
+     * @param right
+     * @return
+     */
+    final int node(int op,int left,int right)
+    {
+        if ( op != CompiledExpression.OP_NOT && op != CompiledExpression.OP_LOAD && left > right ) {
+            // commutative operator , use canonical operand order
+            final int tmp = left;
+            left = right;
+            right = tmp;
+        }
+
+        int index = hash( op , left , right ) & ( table.length - 1 );
+        while ( true )
+        {
+            final int entry = table[index];
+            if ( entry == 0 ) {
+                break;
+            }
+            final int existing = entry - 1;
+            if ( ops[existing] == op && lefts[existing] == left && rights[existing] == right ) {
+                return existing;
+            }
+            index = ( index + 1 ) & ( table.length - 1 );
+        }
+
+        if ( nodeCount == ops.length ) {
+            final int newLength = ops.length * 2;
+            ops = Arrays.copyOf( ops , newLength );
+            lefts = Arrays.copyOf( lefts , newLength );
+            rights = Arrays.copyOf( rights , newLength );
+            capacityChanged( newLength );
+        }
+        final int id = nodeCount++;
+        ops[id] = op;
+        lefts[id] = left;
+        rights[id] = right;
+        table[index] = id + 1;
+        if ( nodeCount*2 > table.length ) {
+            rehash( table.length * 2 );
+        }
+        nodeCreated( id );
+        return id;
+    }
+
+    /**
+     * Drops all nodes but the given ones and renumbers them in the given order.
+     *
+     * <p>The nodes must be in topological order (operands before their users). Does not
+     * invoke {@link #capacityChanged(int)} , users need to rebuild their per-node state
+     * using the returned mapping.</p>
+     *
+     * @param nodes
+     * @param count number of entries in <code>nodes</code> to use
+     * @return new node IDs by old node ID , {@link #NO_NODE} for dropped nodes
+     */
+    final int[] retain(int[] nodes,int count)
+    {
+        final int[] newIds = new int[ nodeCount ];
+        Arrays.fill( newIds , NO_NODE );
+        final int[] oldOps = ops;
+        final int[] oldLefts = lefts;
+        final int[] oldRights = rights;
+
+        final int capacity = Math.max( 64 , Integer.highestOneBit( count ) * 2 );
+        ops = new int[ capacity ];
+        lefts = new int[ capacity ];
+        rights = new int[ capacity ];
+        nodeCount = 0;
+
+        for ( int i = 0 ; i < count ; i++ )
+        {
+            final int node = nodes[i];
+            final int id = nodeCount++;
+            newIds[node] = id;
+            ops[id] = oldOps[node];
+            switch( ops[id] )
+            {
+                case CompiledExpression.OP_LOAD:
+                    lefts[id] = oldLefts[node];
+                    rights[id] = NO_NODE;
+                    break;
+                case CompiledExpression.OP_NOT:
+                    lefts[id] = newIds[ oldLefts[node] ];
+                    rights[id] = NO_NODE;
+                    break;
+                case CompiledExpression.OP_AND:
+                case CompiledExpression.OP_OR:
+                case CompiledExpression.OP_EQUALS:
+                    lefts[id] = Math.min( newIds[ oldLefts[node] ] , newIds[ oldRights[node] ] );
+                    rights[id] = Math.max( newIds[ oldLefts[node] ] , newIds[ oldRights[node] ] );
+                    break;
+                default:
+                    lefts[id] = NO_NODE;
+                    rights[id] = NO_NODE;
+            }
+        }
+        rehash( Math.max( 128 , capacity * 2 ) );
+        return newIds;
+    }
+
+    private void rehash(int newLength)
+    {
+        final int[] newTable = new int[ newLength ];
+        final int mask = newLength - 1;
+        for ( int id = 0 ; id < nodeCount ; id++ )
+        {
+            int index = hash( ops[id] , lefts[id] , rights[id] ) & mask;
+            while ( newTable[index] != 0 ) {
+                index = ( index + 1 ) & mask;
+            }
+            newTable[index] = id + 1;
+        }
+        table = newTable;
+    }
+
+    private static int hash(int op,int left,int right)
+    {
+        int h = op * 0x9e3779b9;
+        h ^= left * 0x85ebca6b;
+        h ^= right * 0xc2b2ae35;
+        h ^= h >>> 16;
+        h *= 0x7feb352d;
+        h ^= h >>> 15;
+        return h;
+    }
+}
@@ -0,0 +1,23 @@
+package de.codesourcery.booleanalgebra.eval;
+
+/**
+ * A boolean function over variables identified by slot index.
+ *
+ * @see CompiledExpression#getSlot(de.codesourcery.booleanalgebra.ast.Identifier)
+ */
+public interface IBooleanFunction
+{
+    /**
+     *
+     * @param assignment variable values, bit <code>n</code> holds the value of slot <code>n</code>
+     * @return
+     */
+    public boolean test(long assignment);
+
+    /**
+     *
+     * @param values variable values by slot index
+     * @return
+     */
+    public boolean test(boolean[] values);
+}
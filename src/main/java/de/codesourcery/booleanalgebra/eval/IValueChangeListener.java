@@ -0,0 +1,17 @@
+package de.codesourcery.booleanalgebra.eval;
+
+/**
+ * Gets notified when the value of an expression changes.
+ *
+ * @see IncrementalEvaluator#addListener(int, IValueChangeListener)
+ */
+public interface IValueChangeListener
+{
+    /**
+     * Invoked after a change has been propagated through all expressions.
+     *
+     * @param expressionId ID of the expression whose value changed
+     * @param newValue
+     */
+    public void valueChanged(int expressionId,boolean newValue);
+}
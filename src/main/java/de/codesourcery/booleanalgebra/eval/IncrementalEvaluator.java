@@ -0,0 +1,412 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.SymbolTable;
+
+/**
+ * Keeps the values of a number of expressions up-to-date while variables change.
+ *
+ * <p>Expressions are merged into a DAG of hash-consed nodes (see {@link RuleSet}), each
+ * node caches its current value and knows the nodes that read it. When a variable changes,
+ * only the nodes depending on it are recomputed, level by level (a node's level is the
+ * length of the longest path to a leaf) so that every node is recomputed at most once per update.
+ * Propagation stops at nodes whose value did not change.</p>
+ *
+ * <p>All variables are <code>false</code> until they are {@link #set(Identifier, boolean) set}.
+ * Listeners are notified after a change has been propagated through all expressions.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class IncrementalEvaluator
+{
+    private static final int NO_NODE = DagBuilder.NO_NODE;
+
+    private final SymbolTable symbols;
+
+    private final DagBuilder dag;
+
+    // per-node state , indexed by node ID
+    private int[] levels = new int[64];
+    private boolean[] values = new boolean[64];
+    private int[][] parents = new int[64][];
+    private int[] parentCounts = new int[64];
+    // first expression with this node as root , or -1
+    private int[] expressionHeads = new int[64];
+
+    // LOAD node by variable index
+    private int[] variableNodes = new int[16];
+
+    private int[] expressionRoots = new int[16];
+    // next expression with the same root , or -1
+    private int[] nextExpression = new int[16];
+    private boolean[] expressionValues = new boolean[16];
+    private ASTNode[] expressions = new ASTNode[16];
+    private List<List<IValueChangeListener>> listeners = new ArrayList<>();
+    private int expressionCount;
+
+    // nodes that need to be recomputed , by level
+    private int[][] queue = new int[8][];
+    private int[] queueSizes = new int[8];
+    private boolean[] queued = new boolean[64];
+    private int minQueuedLevel = Integer.MAX_VALUE;
+    private int maxQueuedLevel = -1;
+
+    // expression roots that might have changed
+    private int[] changedRoots = new int[16];
+    private int changedRootCount;
+
+    private int recomputedNodeCount;
+
+    public IncrementalEvaluator() {
+        this( new SymbolTable() );
+    }
+
+    public IncrementalEvaluator(SymbolTable symbols)
+    {
+        if (symbols == null) {
+            throw new IllegalArgumentException("symbols must not be NULL.");
+        }
+        this.symbols = symbols;
+        Arrays.fill( variableNodes , NO_NODE );
+        this.dag = new DagBuilder( symbols )
+        {
+            @Override
+            protected void capacityChanged(int capacity)
+            {
+                levels = Arrays.copyOf( levels , capacity );
+                values = Arrays.copyOf( values , capacity );
+                parents = Arrays.copyOf( parents , capacity );
+                parentCounts = Arrays.copyOf( parentCounts , capacity );
+                expressionHeads = Arrays.copyOf( expressionHeads , capacity );
+                queued = Arrays.copyOf( queued , capacity );
+            }
+
+            @Override
+            protected void nodeCreated(int node) {
+                initNode( node );
+            }
+        };
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * Adds an expression.
+     *
+     * @param expression
+     * @return expression ID
+     */
+    public int addExpression(ASTNode expression)
+    {
+        if (expression == null) {
+            throw new IllegalArgumentException("expression must not be NULL.");
+        }
+        final int root = dag.intern( expression );
+
+        final int id = expressionCount++;
+        if ( id == expressionRoots.length )
+        {
+            final int newLength = expressionRoots.length * 2;
+            expressionRoots = Arrays.copyOf( expressionRoots , newLength );
+            nextExpression = Arrays.copyOf( nextExpression , newLength );
+            expressionValues = Arrays.copyOf( expressionValues , newLength );
+            expressions = Arrays.copyOf( expressions , newLength );
+        }
+        expressionRoots[id] = root;
+        expressions[id] = expression;
+        expressionValues[id] = values[root];
+        nextExpression[id] = expressionHeads[root];
+        expressionHeads[root] = id;
+        listeners.add( new ArrayList<IValueChangeListener>() );
+        return id;
+    }
+
+    public int getExpressionCount() {
+        return expressionCount;
+    }
+
+    public ASTNode getExpression(int expressionId)
+    {
+        checkExpressionId( expressionId );
+        return expressions[expressionId];
+    }
+
+    /**
+     * Returns the current value of an expression.
+     *
+     * @param expressionId
+     * @return
+     */
+    public boolean getValue(int expressionId)
+    {
+        checkExpressionId( expressionId );
+        return expressionValues[expressionId];
+    }
+
+    /**
+     * Returns the current value of a variable.
+     *
+     * @param identifier
+     * @return
+     */
+    public boolean getValue(Identifier identifier)
+    {
+        if (identifier == null) {
+            throw new IllegalArgumentException("identifier must not be NULL.");
+        }
+        final int index = symbols.indexOf( identifier );
+        return index != -1 && index < variableNodes.length && variableNodes[index] != NO_NODE && values[ variableNodes[index] ];
+    }
+
+    public void addListener(int expressionId,IValueChangeListener listener)
+    {
+        checkExpressionId( expressionId );
+        if (listener == null) {
+            throw new IllegalArgumentException("listener must not be NULL.");
+        }
+        listeners.get( expressionId ).add( listener );
+    }
+
+    public void removeListener(int expressionId,IValueChangeListener listener)
+    {
+        checkExpressionId( expressionId );
+        listeners.get( expressionId ).remove( listener );
+    }
+
+    /**
+     * Changes the value of a variable.
+     *
+     * @param identifier
+     * @param value
+     */
+    public void set(Identifier identifier,boolean value)
+    {
+        if (identifier == null) {
+            throw new IllegalArgumentException("identifier must not be NULL.");
+        }
+        recomputedNodeCount = 0;
+        setVariable( identifier , value );
+        update();
+    }
+
+    /**
+     * Changes the values of several variables at once.
+     *
+     * <p>Each affected node is recomputed only once and listeners
+     * only see the final state.</p>
+     *
+     * @param newValues
+     */
+    public void set(Map<Identifier,Boolean> newValues)
+    {
+        if (newValues == null) {
+            throw new IllegalArgumentException("newValues must not be NULL.");
+        }
+        recomputedNodeCount = 0;
+        for ( Map.Entry<Identifier,Boolean> entry : newValues.entrySet() )
+        {
+            if ( entry.getKey() == null || entry.getValue() == null ) {
+                throw new IllegalArgumentException("Map must not contain NULL keys or values");
+            }
+            setVariable( entry.getKey() , entry.getValue() );
+        }
+        update();
+    }
+
+    /**
+     * Returns the number of nodes that got recomputed by the last update.
+     *
+     * @return
+     */
+    public int getRecomputedNodeCount() {
+        return recomputedNodeCount;
+    }
+
+    /**
+     * Returns the number of distinct nodes in all expressions.
+     *
+     * @return
+     */
+    public int getNodeCount() {
+        return dag.nodeCount;
+    }
+
+    private void setVariable(Identifier identifier,boolean value)
+    {
+        final int node = variableNode( symbols.intern( identifier ).getIndex() );
+        if ( values[node] != value )
+        {
+            values[node] = value;
+            nodeChanged( node );
+        }
+    }
+
+    private void nodeChanged(int node)
+    {
+        if ( expressionHeads[node] != NO_NODE ) {
+            if ( changedRootCount == changedRoots.length ) {
+                changedRoots = Arrays.copyOf( changedRoots , changedRoots.length * 2 );
+            }
+            changedRoots[ changedRootCount++ ] = node;
+        }
+        final int[] nodeParents = parents[node];
+        for ( int i = 0 , len = parentCounts[node] ; i < len ; i++ ) {
+            enqueue( nodeParents[i] );
+        }
+    }
+
+    private void enqueue(int node)
+    {
+        if ( queued[node] ) {
+            return;
+        }
+        queued[node] = true;
+        final int level = levels[node];
+        if ( level >= queue.length ) {
+            final int newLength = Math.max( level + 1 , queue.length * 2 );
+            queue = Arrays.copyOf( queue , newLength );
+            queueSizes = Arrays.copyOf( queueSizes , newLength );
+        }
+        if ( queue[level] == null ) {
+            queue[level] = new int[16];
+        } else if ( queueSizes[level] == queue[level].length ) {
+            queue[level] = Arrays.copyOf( queue[level] , queue[level].length * 2 );
+        }
+        queue[level][ queueSizes[level]++ ] = node;
+        minQueuedLevel = Math.min( minQueuedLevel , level );
+        maxQueuedLevel = Math.max( maxQueuedLevel , level );
+    }
+
+    /*
+     * Recomputes all queued nodes in order of ascending level (all operands of a node have lower levels
+     * than the node itself , so they are final by the time the node is recomputed) and notifies listeners.
+     */
+    private void update()
+    {
+        // maxQueuedLevel may grow while processing
+        for ( int level = minQueuedLevel ; level <= maxQueuedLevel ; level++ )
+        {
+            final int[] nodes = queue[level];
+            for ( int i = 0 , len = queueSizes[level] ; i < len ; i++ )
+            {
+                final int node = nodes[i];
+                queued[node] = false;
+                recomputedNodeCount++;
+                final boolean newValue = compute( node );
+                if ( newValue != values[node] )
+                {
+                    values[node] = newValue;
+                    nodeChanged( node );
+                }
+            }
+            queueSizes[level] = 0;
+        }
+        minQueuedLevel = Integer.MAX_VALUE;
+        maxQueuedLevel = -1;
+
+        final int count = changedRootCount;
+        changedRootCount = 0;
+        for ( int i = 0 ; i < count ; i++ )
+        {
+            final int root = changedRoots[i];
+            for ( int expr = expressionHeads[root] ; expr != NO_NODE ; expr = nextExpression[expr] )
+            {
+                // a variable that is changed twice in a row might be back to its old value
+                if ( expressionValues[expr] != values[root] )
+                {
+                    expressionValues[expr] = values[root];
+                    for ( IValueChangeListener l : new ArrayList<>( listeners.get( expr ) ) ) {
+                        l.valueChanged( expr , values[root] );
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean compute(int node)
+    {
+        final int[] lefts = dag.lefts;
+        final int[] rights = dag.rights;
+        switch( dag.ops[node] )
+        {
+            case CompiledExpression.OP_FALSE:  return false;
+            case CompiledExpression.OP_TRUE:   return true;
+            case CompiledExpression.OP_LOAD:   return values[node];
+            case CompiledExpression.OP_NOT:    return ! values[ lefts[node] ];
+            case CompiledExpression.OP_AND:    return values[ lefts[node] ] & values[ rights[node] ];
+            case CompiledExpression.OP_OR:     return values[ lefts[node] ] | values[ rights[node] ];
+            case CompiledExpression.OP_EQUALS: return values[ lefts[node] ] == values[ rights[node] ];
+            default:
+                throw new RuntimeException("Unreachable code reached");
+        }
+    }
+
+    private int variableNode(int index)
+    {
+        if ( index < variableNodes.length && variableNodes[index] != NO_NODE ) {
+            return variableNodes[index];
+        }
+        return dag.node( CompiledExpression.OP_LOAD , index , NO_NODE );
+    }
+
+    private void initNode(int id)
+    {
+        final int op = dag.ops[id];
+        final int left = dag.lefts[id];
+        final int right = dag.rights[id];
+        expressionHeads[id] = NO_NODE;
+        if ( op == CompiledExpression.OP_LOAD )
+        {
+            if ( left >= variableNodes.length )
+            {
+                final int oldLength = variableNodes.length;
+                variableNodes = Arrays.copyOf( variableNodes , Math.max( left + 1 , oldLength * 2 ) );
+                Arrays.fill( variableNodes , oldLength , variableNodes.length , NO_NODE );
+            }
+            variableNodes[left] = id;
+        }
+        else if ( left != NO_NODE )
+        {
+            addParent( left , id );
+            levels[id] = levels[left] + 1;
+            if ( right != NO_NODE )
+            {
+                if ( right != left ) {
+                    addParent( right , id );
+                }
+                levels[id] = Math.max( levels[id] , levels[right] + 1 );
+            }
+        }
+        values[id] = compute( id );
+    }
+
+    private void addParent(int node,int parent)
+    {
+        if ( parents[node] == null ) {
+            parents[node] = new int[2];
+        } else if ( parentCounts[node] == parents[node].length ) {
+            parents[node] = Arrays.copyOf( parents[node] , parents[node].length * 2 );
+        }
+        parents[node][ parentCounts[node]++ ] = parent;
+    }
+
+    private void checkExpressionId(int expressionId)
+    {
+        if ( expressionId < 0 || expressionId >= expressionCount ) {
+            throw new IllegalArgumentException("No expression with ID "+expressionId);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IncrementalEvaluator[ expressions="+expressionCount+", nodes="+dag.nodeCount+" ]";
+    }
+}
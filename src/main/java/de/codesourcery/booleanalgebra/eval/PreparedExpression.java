@@ -0,0 +1,210 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.codesourcery.booleanalgebra.ExpressionContexts;
+import de.codesourcery.booleanalgebra.IExpressionContext;
+import de.codesourcery.booleanalgebra.ILiteralExpressionContext;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+
+/**
+ * A term that gets specialized for the values of some of its variables.
+ *
+ * <p>{@link #specialize(IExpressionContext)} {@link ConstantFolder folds} all variables that are bound
+ * to literal values in a context (variables bound to other terms are treated as free , just like
+ * {@link de.codesourcery.booleanalgebra.ASTTransformations#reduce(ASTNode, IExpressionContext)} does) and compiles
+ * the residual term. Specializations are cached by the values of the bound variables , so contexts that
+ * only differ in the values of the free variables share a single specialization. The cache evicts the
+ * least recently used specialization once it is full.</p>
+ *
+ * <p>Looking up a cached specialization takes one context lookup per variable of the term and
+ * does not touch the term itself.</p>
+ *
+ * <p>Instances are thread-safe.</p>
+ */
+public final class PreparedExpression
+{
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    private final ASTNode term;
+    private final Identifier[] variables;
+
+    private final BytecodeCompiler compiler;
+    private final int threshold;
+
+    private final int cacheSize;
+    private final Map<Key,SpecializedExpression> cache;
+
+    private long cacheHits;
+    private long cacheMisses;
+    private long evictions;
+
+    public PreparedExpression(ASTNode term) {
+        this( term , DEFAULT_CACHE_SIZE , BytecodeCompiler.getDefault() , TieredExpression.DEFAULT_THRESHOLD );
+    }
+
+    /**
+     *
+     * @param term
+     * @param cacheSize max. number of specializations to keep
+     * @param compiler used to generate bytecode for hot specializations
+     * @param threshold number of invocations after which a specialization gets translated to bytecode
+     * @see TieredExpression
+     */
+    public PreparedExpression(ASTNode term,int cacheSize,BytecodeCompiler compiler,int threshold)
+    {
+        if (term == null) {
+            throw new IllegalArgumentException("term must not be NULL.");
+        }
+        if ( cacheSize < 1 ) {
+            throw new IllegalArgumentException("cache size must be >= 1");
+        }
+        if (compiler == null) {
+            throw new IllegalArgumentException("compiler must not be NULL.");
+        }
+        if ( threshold < 0 ) {
+            throw new IllegalArgumentException("threshold must be >= 0");
+        }
+        this.term = term.createCopy( true );
+        final List<Identifier> vars = TruthTable.gatherVariables( this.term );
+        this.variables = vars.toArray( new Identifier[ vars.size() ] );
+        this.compiler = compiler;
+        this.threshold = threshold;
+        this.cacheSize = cacheSize;
+        this.cache = new LinkedHashMap<Key,SpecializedExpression>(16,0.75f,true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key,SpecializedExpression> eldest)
+            {
+                if ( size() > PreparedExpression.this.cacheSize ) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the variables of the prepared term.
+     *
+     * @return variables sorted by name
+     */
+    public List<Identifier> getVariables() {
+        return Collections.unmodifiableList( Arrays.asList( variables ) );
+    }
+
+    /**
+     * Returns the specialization for the variables that are bound to literal values in a context.
+     *
+     * @param context
+     * @return
+     */
+    public synchronized SpecializedExpression specialize(IExpressionContext context)
+    {
+        if (context == null) {
+            throw new IllegalArgumentException("context must not be NULL.");
+        }
+        final Key key = createKey( context );
+        SpecializedExpression result = cache.get( key );
+        if ( result != null ) {
+            cacheHits++;
+            return result;
+        }
+        cacheMisses++;
+        result = new SpecializedExpression( ConstantFolder.fold( term , context ) , compiler , threshold );
+        cache.put( key , result );
+        return result;
+    }
+
+    /**
+     * Evaluates the prepared term.
+     *
+     * <p>Shorthand for <code>specialize( bound ).evaluate( free )</code>.</p>
+     *
+     * @param bound context providing the values of the variables to specialize for
+     * @param free context providing the values of all other variables
+     * @return
+     */
+    public boolean evaluate(IExpressionContext bound,IExpressionContext free) {
+        return specialize( bound ).evaluate( free );
+    }
+
+    private Key createKey(IExpressionContext context)
+    {
+        final int words = ( variables.length + 63 ) >>> 6;
+        final long[] known = new long[ words ];
+        final long[] values = new long[ words ];
+        for ( int i = 0 ; i < variables.length ; i++ )
+        {
+            final int value = ExpressionContexts.lookupLiteral( context , variables[i] );
+            if ( value != ILiteralExpressionContext.NO_LITERAL )
+            {
+                known[ i >>> 6 ] |= 1L << i;
+                if ( value == ILiteralExpressionContext.LITERAL_TRUE ) {
+                    values[ i >>> 6 ] |= 1L << i;
+                }
+            }
+        }
+        return new Key( known , values );
+    }
+
+    public synchronized int getCachedSpecializationCount() {
+        return cache.size();
+    }
+
+    public synchronized long getCacheHits() {
+        return cacheHits;
+    }
+
+    public synchronized long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    public synchronized void clearCache() {
+        cache.clear();
+    }
+
+    @Override
+    public String toString() {
+        return term.toString( false );
+    }
+
+    private static final class Key
+    {
+        private final long[] known;
+        private final long[] values;
+        private final int hashCode;
+
+        public Key(long[] known,long[] values)
+        {
+            this.known = known;
+            this.values = values;
+            this.hashCode = 31 * Arrays.hashCode( known ) + Arrays.hashCode( values );
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if ( obj instanceof Key ) {
+                final Key other = (Key) obj;
+                return Arrays.equals( known , other.known ) && Arrays.equals( values , other.values );
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Stack;
+
+import de.codesourcery.booleanalgebra.IExpressionContext;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.SymbolTable;
+
+/**
+ * A set of rules (terms) that are evaluated together.
+ *
+ * <p>All rules are merged into a single DAG. Nodes are hash-consed on (operator, operands),
+ * with the operands of the commutative operators <code>AND</code>, <code>OR</code> and
+ * <code>=</code> in canonical order, so a subterm like <code>(a and b)</code> is evaluated only
+ * once per assignment no matter how many rules contain it (or <code>(b and a)</code>).</p>
+ *
+ * <p>Live nodes are kept in a schedule in topological order (children before parents).
+ * Adding a rule only appends the nodes that were not already live, removing a rule only
+ * releases nodes no other rule uses; neither recompiles the rest of the set.
+ * Released nodes are dropped from the schedule lazily and their storage is reclaimed
+ * once they outnumber the live nodes.</p>
+ *
+ * <p>Rules are identified by small, dense integers. The ID of a removed rule is reused
+ * by the next rule that is added. Evaluation results are bitsets with bit <code>n</code>
+ * of word <code>n/64</code> telling whether rule <code>n</code> fired.</p>
+ *
+ * <p>Variables are identified by their index in the rule set's {@link SymbolTable}.
+ * Instances are not thread-safe.</p>
+ */
+public final class RuleSet
+{
+    private static final int NO_NODE = DagBuilder.NO_NODE;
+
+    // min. number of dead nodes before storage gets reclaimed
+    private static final int MIN_GARBAGE = 1024;
+
+    private final SymbolTable symbols;
+
+    private final DagBuilder dag;
+
+    // per-node state , indexed by node ID
+    private int[] refCounts = new int[64];
+    private boolean[] scheduled = new boolean[64];
+    private int liveNodeCount;
+
+    private int[] schedule = new int[64];
+    private int scheduleLength;
+    private int deadInSchedule;
+
+    private int[] ruleRoots = new int[16];
+    private ASTNode[] rules = new ASTNode[16];
+    private int ruleIdLimit;
+    private int ruleCount;
+    // all rule IDs below this one are in use
+    private int lowestFreeRuleId;
+
+    // scratch space for evaluation , value of each node for 64 assignments
+    private long[] values = new long[64];
+
+    public RuleSet() {
+        this( new SymbolTable() );
+    }
+
+    public RuleSet(SymbolTable symbols)
+    {
+        if (symbols == null) {
+            throw new IllegalArgumentException("symbols must not be NULL.");
+        }
+        this.symbols = symbols;
+        this.dag = new DagBuilder( symbols )
+        {
+            @Override
+            protected void capacityChanged(int capacity)
+            {
+                refCounts = Arrays.copyOf( refCounts , capacity );
+                scheduled = Arrays.copyOf( scheduled , capacity );
+                values = Arrays.copyOf( values , capacity );
+            }
+        };
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * Adds a rule.
+     *
+     * @param rule
+     * @return rule ID
+     */
+    public int addRule(ASTNode rule)
+    {
+        if (rule == null) {
+            throw new IllegalArgumentException("rule must not be NULL.");
+        }
+        final int root = dag.intern( rule );
+
+        int ruleId = lowestFreeRuleId;
+        while ( ruleId < ruleIdLimit && ruleRoots[ruleId] != NO_NODE ) {
+            ruleId++;
+        }
+        if ( ruleId == ruleIdLimit )
+        {
+            if ( ruleIdLimit == ruleRoots.length ) {
+                ruleRoots = Arrays.copyOf( ruleRoots , ruleRoots.length * 2 );
+                rules = Arrays.copyOf( rules , rules.length * 2 );
+            }
+            ruleIdLimit++;
+        }
+        ruleRoots[ruleId] = root;
+        rules[ruleId] = rule;
+        ruleCount++;
+        lowestFreeRuleId = ruleId + 1;
+        acquire( root );
+        return ruleId;
+    }
+
+    /**
+     * Removes a rule.
+     *
+     * @param ruleId
+     * @throws IllegalArgumentException if there is no rule with this ID
+     */
+    public void removeRule(int ruleId)
+    {
+        checkRuleId( ruleId );
+        final int root = ruleRoots[ruleId];
+        ruleRoots[ruleId] = NO_NODE;
+        rules[ruleId] = null;
+        ruleCount--;
+        lowestFreeRuleId = Math.min( lowestFreeRuleId , ruleId );
+        while ( ruleIdLimit > 0 && ruleRoots[ ruleIdLimit - 1 ] == NO_NODE ) {
+            ruleIdLimit--;
+        }
+        release( root );
+
+        if ( dag.nodeCount - liveNodeCount > Math.max( MIN_GARBAGE , liveNodeCount ) ) {
+            collectGarbage();
+        } else if ( deadInSchedule > scheduleLength / 2 ) {
+            compactSchedule();
+        }
+    }
+
+    public boolean containsRule(int ruleId) {
+        return ruleId >= 0 && ruleId < ruleIdLimit && ruleRoots[ruleId] != NO_NODE;
+    }
+
+    /**
+     * Returns the term of a rule.
+     *
+     * @param ruleId
+     * @return
+     */
+    public ASTNode getRule(int ruleId)
+    {
+        checkRuleId( ruleId );
+        return rules[ruleId];
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * Returns an upper bound for all rule IDs in use (exclusive).
+     *
+     * @return
+     */
+    public int getRuleIdLimit() {
+        return ruleIdLimit;
+    }
+
+    /**
+     * Returns the number of distinct (sub-)terms that need to be evaluated per assignment.
+     *
+     * @return
+     */
+    public int getLiveNodeCount() {
+        return liveNodeCount;
+    }
+
+    /**
+     * Evaluates all rules.
+     *
+     * @param assignment variable values , bit <code>n</code> of word <code>n/64</code> holds the value of
+     * the variable with index <code>n</code> in this rule set's symbol table
+     * @return bitset of rules that fired
+     */
+    public long[] evaluate(long[] assignment)
+    {
+        if (assignment == null) {
+            throw new IllegalArgumentException("assignment must not be NULL.");
+        }
+        computeValues( assignment , false );
+
+        final long[] result = new long[ ( ruleIdLimit + 63 ) >>> 6 ];
+        for ( int ruleId = 0 ; ruleId < ruleIdLimit ; ruleId++ )
+        {
+            final int root = ruleRoots[ruleId];
+            if ( root != NO_NODE && ( values[root] & 1 ) != 0 ) {
+                result[ ruleId >>> 6 ] |= 1L << ruleId;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates all rules , looking up variable values in a context.
+     *
+     * @param context
+     * @return bitset of rules that fired
+     * @throws RuntimeException if a variable used by any rule has no value in the context
+     * @throws IllegalArgumentException if a variable is not bound to a literal value
+     */
+    public long[] evaluate(IExpressionContext context)
+    {
+        if (context == null) {
+            throw new IllegalArgumentException("context must not be NULL.");
+        }
+        final long[] assignment = new long[ ( symbols.size() + 63 ) >>> 6 ];
+        for ( int i = 0 ; i < scheduleLength ; i++ )
+        {
+            final int node = schedule[i];
+            if ( dag.ops[node] == CompiledExpression.OP_LOAD && refCounts[node] > 0 )
+            {
+                final int variable = dag.lefts[node];
+                final ASTNode value = context.lookup( symbols.get( variable ) );
+                if ( ! value.isLiteralValue() ) {
+                    throw new IllegalArgumentException("Variable '"+symbols.get( variable )+"' is not bound to a literal value");
+                }
+                if ( value.getLiteralValue( context ) ) {
+                    assignment[ variable >>> 6 ] |= 1L << variable;
+                }
+            }
+        }
+        return evaluate( assignment );
+    }
+
+    /**
+     * Evaluates all rules for 64 assignments at once.
+     *
+     * @param variableMasks bit-sliced variable values , bit <code>n</code> of <code>variableMasks[v]</code>
+     * holds the value of variable <code>v</code> in the <code>n</code>-th assignment
+     * @return array indexed by rule ID , bit <code>n</code> tells whether the rule fired for the <code>n</code>-th assignment
+     */
+    public long[] evaluateBitSliced(long[] variableMasks)
+    {
+        if (variableMasks == null) {
+            throw new IllegalArgumentException("variableMasks must not be NULL.");
+        }
+        computeValues( variableMasks , true );
+
+        final long[] result = new long[ ruleIdLimit ];
+        for ( int ruleId = 0 ; ruleId < ruleIdLimit ; ruleId++ )
+        {
+            final int root = ruleRoots[ruleId];
+            if ( root != NO_NODE ) {
+                result[ruleId] = values[root];
+            }
+        }
+        return result;
+    }
+
+    private void computeValues(long[] variables,boolean bitSliced)
+    {
+        final int[] schedule = this.schedule;
+        final int[] ops = dag.ops;
+        final int[] lefts = dag.lefts;
+        final int[] rights = dag.rights;
+        final long[] values = this.values;
+
+        for ( int i = 0 , len = scheduleLength ; i < len ; i++ )
+        {
+            final int node = schedule[i];
+            switch( ops[node] )
+            {
+                case CompiledExpression.OP_FALSE:  values[node] = 0; break;
+                case CompiledExpression.OP_TRUE:   values[node] = ~0L; break;
+                case CompiledExpression.OP_LOAD:
+                    final int variable = lefts[node];
+                    if ( bitSliced ) {
+                        values[node] = variable < variables.length ? variables[variable] : missingVariable( variable );
+                    } else {
+                        values[node] = (variable >>> 6) < variables.length ? -( ( variables[ variable >>> 6 ] >>> variable ) & 1 ) : missingVariable( variable );
+                    }
+                    break;
+                case CompiledExpression.OP_NOT:    values[node] = ~values[ lefts[node] ]; break;
+                case CompiledExpression.OP_AND:    values[node] = values[ lefts[node] ] & values[ rights[node] ]; break;
+                case CompiledExpression.OP_OR:     values[node] = values[ lefts[node] ] | values[ rights[node] ]; break;
+                case CompiledExpression.OP_EQUALS: values[node] = ~( values[ lefts[node] ] ^ values[ rights[node] ] ); break;
+                default:
+                    throw new RuntimeException("Unreachable code reached");
+            }
+        }
+    }
+
+    private long missingVariable(int variable) {
+        throw new IllegalArgumentException("No value for variable '"+symbols.get( variable )+"'");
+    }
+
+    /*
+     * Increments the reference count of a node , scheduling it (and all of its operands that were
+     * not live before) if it became live.
+     */
+    private void acquire(int root)
+    {
+        if ( refCounts[root]++ > 0 ) {
+            return;
+        }
+        // nodes that became live but are not scheduled yet , a node may only be scheduled
+        // after all of its operands are
+        final BitSet pending = new BitSet();
+        final BitSet expanded = new BitSet();
+        final Stack<Integer> stack = new Stack<>();
+        pending.set( root );
+        stack.push( root );
+        while ( ! stack.isEmpty() )
+        {
+            final int node = stack.peek();
+            if ( ! pending.get( node ) ) {
+                // already scheduled through another path
+                stack.pop();
+                continue;
+            }
+            final int[] operands = operandIds( node );
+            if ( ! expanded.get( node ) )
+            {
+                expanded.set( node );
+                liveNodeCount++;
+                for ( int operand : operands ) {
+                    if ( refCounts[operand]++ == 0 ) {
+                        pending.set( operand );
+                    }
+                }
+            }
+            boolean ready = true;
+            for ( int operand : operands ) {
+                if ( pending.get( operand ) ) {
+                    stack.push( operand );
+                    ready = false;
+                }
+            }
+            if ( ready ) {
+                stack.pop();
+                pending.clear( node );
+                schedule( node );
+            }
+        }
+    }
+
+    private void release(int root)
+    {
+        if ( --refCounts[root] > 0 ) {
+            return;
+        }
+        final Stack<Integer> stack = new Stack<>();
+        stack.push( root );
+        while ( ! stack.isEmpty() )
+        {
+            final int node = stack.pop();
+            liveNodeCount--;
+            deadInSchedule++;
+            for ( int operand : operandIds( node ) ) {
+                if ( --refCounts[operand] == 0 ) {
+                    stack.push( operand );
+                }
+            }
+        }
+    }
+
+    private int[] operandIds(int node)
+    {
+        switch( dag.ops[node] )
+        {
+            case CompiledExpression.OP_NOT:
+                return new int[] { dag.lefts[node] };
+            case CompiledExpression.OP_AND:
+            case CompiledExpression.OP_OR:
+            case CompiledExpression.OP_EQUALS:
+                return new int[] { dag.lefts[node] , dag.rights[node] };
+            default:
+                return new int[0];
+        }
+    }
+
+    private void schedule(int node)
+    {
+        if ( scheduled[node] ) {
+            // still in the schedule from a time it was live before , position is still valid
+            deadInSchedule--;
+            return;
+        }
+        if ( scheduleLength == schedule.length ) {
+            schedule = Arrays.copyOf( schedule , schedule.length * 2 );
+        }
+        schedule[ scheduleLength++ ] = node;
+        scheduled[node] = true;
+    }
+
+    private void compactSchedule()
+    {
+        int len = 0;
+        for ( int i = 0 ; i < scheduleLength ; i++ )
+        {
+            final int node = schedule[i];
+            if ( refCounts[node] > 0 ) {
+                schedule[len++] = node;
+            } else {
+                scheduled[node] = false;
+            }
+        }
+        scheduleLength = len;
+        deadInSchedule = 0;
+    }
+
+    /*
+     * Renumbers all live nodes , dropping dead ones.
+     */
+    private void collectGarbage()
+    {
+        compactSchedule();
+
+        final int[] oldRefCounts = refCounts;
+        // the schedule is in topological order , so operands are always renumbered before their users
+        final int[] newIds = dag.retain( schedule , scheduleLength );
+
+        final int capacity = dag.getCapacity();
+        refCounts = new int[ capacity ];
+        scheduled = new boolean[ capacity ];
+        values = new long[ capacity ];
+        for ( int i = 0 ; i < scheduleLength ; i++ )
+        {
+            final int id = newIds[ schedule[i] ];
+            refCounts[id] = oldRefCounts[ schedule[i] ];
+            scheduled[id] = true;
+            schedule[i] = id;
+        }
+        for ( int ruleId = 0 ; ruleId < ruleIdLimit ; ruleId++ )
+        {
+            if ( ruleRoots[ruleId] != NO_NODE ) {
+                ruleRoots[ruleId] = newIds[ ruleRoots[ruleId] ];
+            }
+        }
+    }
+
+    private void checkRuleId(int ruleId)
+    {
+        if ( ! containsRule( ruleId ) ) {
+            throw new IllegalArgumentException("No rule with ID "+ruleId);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RuleSet[ rules="+ruleCount+", live nodes="+liveNodeCount+", nodes="+dag.nodeCount+" ]";
+    }
+}
@@ -0,0 +1,117 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.List;
+
+import de.codesourcery.booleanalgebra.ExpressionContexts;
+import de.codesourcery.booleanalgebra.IExpressionContext;
+import de.codesourcery.booleanalgebra.ILiteralExpressionContext;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+
+/**
+ * The residual of a {@link PreparedExpression} after all variables with known values have been folded away.
+ *
+ * <p>Slots are assigned to the remaining (free) variables only , so evaluating a specialization
+ * never looks at the variables it was specialized for.</p>
+ *
+ * <p>Instances are immutable and thread-safe.</p>
+ */
+public final class SpecializedExpression implements IBooleanFunction
+{
+    private final ASTNode residual;
+    private final TieredExpression function;
+
+    SpecializedExpression(ASTNode residual,BytecodeCompiler compiler,int threshold)
+    {
+        this.residual = residual;
+        this.function = new TieredExpression( CompiledExpression.compile( residual ) , compiler , threshold );
+    }
+
+    /**
+     * Returns the residual term.
+     *
+     * @return a copy that may be modified by the caller
+     */
+    public ASTNode getResidual() {
+        return residual.createCopy( true );
+    }
+
+    /**
+     * Returns whether all variables were bound , in which case the result does not depend on any input.
+     *
+     * @return
+     */
+    public boolean isConstant() {
+        return function.getExpression().getSlotCount() == 0;
+    }
+
+    /**
+     * Returns the variables this specialization still depends on.
+     *
+     * @return variables by slot index
+     */
+    public List<Identifier> getFreeVariables() {
+        return function.getExpression().getIdentifiers();
+    }
+
+    /**
+     *
+     * @param identifier
+     * @return slot index or -1 if the result does not depend on the variable
+     */
+    public int getSlot(Identifier identifier) {
+        return function.getExpression().getSlot( identifier );
+    }
+
+    public CompiledExpression getExpression() {
+        return function.getExpression();
+    }
+
+    @Override
+    public boolean test(long assignment) {
+        return function.test( assignment );
+    }
+
+    @Override
+    public boolean test(boolean[] values) {
+        return function.test( values );
+    }
+
+    /**
+     * Evaluates this specialization , looking up the values of its free variables in a context.
+     *
+     * @param context
+     * @return
+     * @throws IllegalArgumentException if a free variable has no literal value in the context
+     */
+    public boolean evaluate(IExpressionContext context)
+    {
+        final CompiledExpression expression = function.getExpression();
+        final int slotCount = expression.getSlotCount();
+        if ( slotCount > CompiledExpression.MAX_LONG_SLOTS ) {
+            return expression.evaluate( context );
+        }
+        long assignment = 0;
+        for ( int slot = 0 ; slot < slotCount ; slot++ )
+        {
+            if ( getLiteralValue( expression.getIdentifier( slot ) , context ) ) {
+                assignment |= 1L << slot;
+            }
+        }
+        return function.test( assignment );
+    }
+
+    private static boolean getLiteralValue(Identifier identifier,IExpressionContext context)
+    {
+        final int value = ExpressionContexts.lookupLiteral( context , identifier );
+        if ( value == ILiteralExpressionContext.NO_LITERAL ) {
+            throw new IllegalArgumentException("Variable '"+identifier+"' has no literal value");
+        }
+        return value == ILiteralExpressionContext.LITERAL_TRUE;
+    }
+
+    @Override
+    public String toString() {
+        return residual.toString( false );
+    }
+}
@@ -0,0 +1,123 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+
+/**
+ * An expression that starts out interpreted and switches to generated bytecode once it is hot.
+ *
+ * <p>Invocations are counted until they reach the tiering threshold, at which point the
+ * expression is handed to a {@link BytecodeCompiler}. Expressions that are too large to be
+ * translated keep running in the interpreter.</p>
+ *
+ * <p>Instances are thread-safe. The invocation counter is deliberately not synchronized,
+ * losing a few increments only delays tiering up.</p>
+ */
+public final class TieredExpression implements IBooleanFunction
+{
+    public static final int DEFAULT_THRESHOLD = 10000;
+
+    private final CompiledExpression expression;
+    private final BytecodeCompiler compiler;
+    private final int threshold;
+
+    private int invocationCount;
+    private volatile boolean tierUpAttempted;
+    private volatile IBooleanFunction compiled;
+
+    public TieredExpression(CompiledExpression expression) {
+        this( expression , BytecodeCompiler.getDefault() , DEFAULT_THRESHOLD );
+    }
+
+    /**
+     *
+     * @param expression
+     * @param compiler
+     * @param threshold number of invocations after which bytecode gets generated, 0 generates it right away
+     */
+    public TieredExpression(CompiledExpression expression,BytecodeCompiler compiler,int threshold)
+    {
+        if (expression == null) {
+            throw new IllegalArgumentException("expression must not be NULL.");
+        }
+        if (compiler == null) {
+            throw new IllegalArgumentException("compiler must not be NULL.");
+        }
+        if ( threshold < 0 ) {
+            throw new IllegalArgumentException("threshold must be >= 0");
+        }
+        this.expression = expression;
+        this.compiler = compiler;
+        this.threshold = threshold;
+        if ( threshold == 0 ) {
+            tierUp();
+        }
+    }
+
+    public static TieredExpression create(ASTNode term) {
+        return new TieredExpression( CompiledExpression.compile( term ) );
+    }
+
+    public CompiledExpression getExpression() {
+        return expression;
+    }
+
+    /**
+     * Returns whether this expression is currently running as generated bytecode.
+     *
+     * @return
+     */
+    public boolean isCompiled() {
+        return compiled != null;
+    }
+
+    @Override
+    public boolean test(long assignment)
+    {
+        if ( expression.getSlotCount() > CompiledExpression.MAX_LONG_SLOTS ) {
+            throw new IllegalStateException("Expression uses "+expression.getSlotCount()+" variables, cannot evaluate against a long");
+        }
+        final IBooleanFunction function = compiled;
+        if ( function != null ) {
+            return function.test( assignment );
+        }
+        countInvocation();
+        return expression.evaluate( assignment );
+    }
+
+    @Override
+    public boolean test(boolean[] values)
+    {
+        if ( values.length < expression.getSlotCount() ) {
+            throw new IllegalArgumentException("Need values for "+expression.getSlotCount()+" slots but got only "+values.length);
+        }
+        final IBooleanFunction function = compiled;
+        if ( function != null ) {
+            return function.test( values );
+        }
+        countInvocation();
+        return expression.evaluate( values );
+    }
+
+    private void countInvocation()
+    {
+        if ( ++invocationCount >= threshold && ! tierUpAttempted ) {
+            tierUp();
+        }
+    }
+
+    private synchronized void tierUp()
+    {
+        if ( tierUpAttempted ) {
+            return;
+        }
+        tierUpAttempted = true;
+        if ( compiler.canCompile( expression ) ) {
+            compiled = compiler.compile( expression );
+        }
+    }
+
+    @Override
+    public String toString() {
+        return expression.toString()+( isCompiled() ? " [compiled]" : " [interpreted]" );
+    }
+}
@@ -0,0 +1,263 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import de.codesourcery.booleanalgebra.ExpressionContexts;
+import de.codesourcery.booleanalgebra.IExpressionContext;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+
+/**
+ * Bit-parallel truth table of a term.
+ *
+ * <p>The table is stored as a <code>long[]</code> with one bit per row. Row
+ * <code>r</code> assigns to the <code>i</code>-th of <code>n</code> variables the value of bit
+ * <code>(n-1-i)</code> of <code>r</code>, so the first row has all variables set to <code>false</code>
+ * and the last variable toggles fastest.</p>
+ *
+ * <p>Rows are computed 64 at a time using bit-sliced variable masks: within a word the
+ * six fastest-toggling variables follow fixed bit patterns, all slower variables are
+ * constant and taken from the word index.</p>
+ */
+public final class TruthTable
+{
+    /**
+     * Max. number of variables a table (or an equivalence check) may have.
+     */
+    public static final int MAX_VARIABLES = 32;
+
+    // values of the six fastest-toggling variables within a single 64-row word
+    private static final long[] WORD_MASKS = {
+        0xaaaaaaaaaaaaaaaaL,
+        0xccccccccccccccccL,
+        0xf0f0f0f0f0f0f0f0L,
+        0xff00ff00ff00ff00L,
+        0xffff0000ffff0000L,
+        0xffffffff00000000L
+    };
+
+    private final List<Identifier> variables;
+    private final long[] words;
+
+    private TruthTable(List<Identifier> variables,long[] words)
+    {
+        this.variables = Collections.unmodifiableList( new ArrayList<>( variables ) );
+        this.words = words;
+    }
+
+    /**
+     * Computes the truth table of a term over its variables (sorted by name).
+     *
+     * @param term
+     * @return
+     */
+    public static TruthTable compute(ASTNode term) {
+        return compute( term , gatherVariables( term ) );
+    }
+
+    /**
+     * Computes the truth table of a term.
+     *
+     * @param term
+     * @param variables table columns, must contain every variable used by the term
+     * @return
+     */
+    public static TruthTable compute(ASTNode term,List<Identifier> variables)
+    {
+        checkVariableCount( variables );
+
+        final CompiledExpression compiled = CompiledExpression.compile( term , variables );
+        final long[] words = new long[ (int) getWordCount( variables.size() ) ];
+
+        final WordEvaluator evaluator = new WordEvaluator( compiled , variables.size() );
+        for ( int i = 0 ; i < words.length ; i++ ) {
+            words[i] = evaluator.evaluate( i );
+        }
+        return new TruthTable( variables , words );
+    }
+
+    /**
+     * Checks whether two terms have the same value for all possible assignments.
+     *
+     * <p>This does not materialize the tables and thus works for
+     * up to {@link #MAX_VARIABLES} variables.</p>
+     *
+     * @param term1
+     * @param term2
+     * @return
+     */
+    public static boolean isEquivalent(ASTNode term1,ASTNode term2) {
+        return findDifference( term1 , term2 , gatherVariables( term1 , term2 ) ) == -1;
+    }
+
+    /**
+     * Looks for an assignment for which two terms evaluate to different values.
+     *
+     * @param term1
+     * @param term2
+     * @param variables variables to enumerate, must contain every variable used by either term
+     * @return index of the first row that differs or -1 if the terms are equivalent
+     */
+    public static long findDifference(ASTNode term1,ASTNode term2,List<Identifier> variables)
+    {
+        checkVariableCount( variables );
+
+        final WordEvaluator eval1 = new WordEvaluator( CompiledExpression.compile( term1 , variables ) , variables.size() );
+        final WordEvaluator eval2 = new WordEvaluator( CompiledExpression.compile( term2 , variables ) , variables.size() );
+
+        final long wordCount = getWordCount( variables.size() );
+        for ( long i = 0 ; i < wordCount ; i++ )
+        {
+            final long diff = eval1.evaluate( i ) ^ eval2.evaluate( i );
+            if ( diff != 0 ) {
+                return i * 64 + Long.numberOfTrailingZeros( diff );
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns all variables of the given terms, sorted by name.
+     *
+     * @param terms
+     * @return
+     */
+    public static List<Identifier> gatherVariables(ASTNode... terms)
+    {
+        final Set<Identifier> result = new TreeSet<>();
+        for ( ASTNode term : terms ) {
+            result.addAll( CompiledExpression.compile( term ).getIdentifiers() );
+        }
+        return new ArrayList<>( result );
+    }
+
+    /**
+     * Assigns the variable values of a given row.
+     *
+     * @param variables
+     * @param row
+     * @param context
+     */
+    public static void assignRow(List<Identifier> variables,long row,IExpressionContext context)
+    {
+        final int count = variables.size();
+        for ( int i = 0 ; i < count ; i++ ) {
+            ExpressionContexts.define( context , variables.get(i) , ( row & ( 1L << ( count - 1 - i ) ) ) != 0 );
+        }
+    }
+
+    public void assignRow(long row,IExpressionContext context) {
+        assignRow( variables , row , context );
+    }
+
+    public List<Identifier> getVariables() {
+        return variables;
+    }
+
+    public int getVariableCount() {
+        return variables.size();
+    }
+
+    public long getRowCount() {
+        return 1L << variables.size();
+    }
+
+    public boolean getValue(long row)
+    {
+        if ( row < 0 || row >= getRowCount() ) {
+            throw new IndexOutOfBoundsException("Row "+row+" out of range, table has "+getRowCount()+" rows");
+        }
+        return ( words[ (int) ( row >>> 6 ) ] & ( 1L << row ) ) != 0;
+    }
+
+    /**
+     * Returns the number of rows where the term evaluates to <code>true</code>.
+     *
+     * @return
+     */
+    public long getTrueRowCount()
+    {
+        long result = 0;
+        for ( long word : words ) {
+            result += Long.bitCount( word );
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of the table.
+     *
+     * @return table with bit <code>r % 64</code> of word <code>r / 64</code> holding the value of row <code>r</code>
+     */
+    public long[] toLongArray() {
+        return words.clone();
+    }
+
+    public boolean isEquivalent(TruthTable other)
+    {
+        if ( ! variables.equals( other.variables ) ) {
+            throw new IllegalArgumentException("Tables have different variables: "+variables+" <-> "+other.variables);
+        }
+        for ( int i = 0 ; i < words.length ; i++ )
+        {
+            if ( words[i] != other.words[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void checkVariableCount(List<Identifier> variables)
+    {
+        if (variables == null) {
+            throw new IllegalArgumentException("variables must not be NULL.");
+        }
+        if ( variables.size() > MAX_VARIABLES ) {
+            throw new IllegalArgumentException("Too many variables ("+variables.size()+"), at most "+MAX_VARIABLES+" are supported");
+        }
+    }
+
+    private static long getWordCount(int variableCount) {
+        return variableCount <= 6 ? 1 : 1L << ( variableCount - 6 );
+    }
+
+    /**
+     * Evaluates a compiled term for the 64 rows of a given table word.
+     */
+    private static final class WordEvaluator
+    {
+        private final CompiledExpression compiled;
+        private final int variableCount;
+        private final long validRowsMask;
+
+        private final long[] slotMasks;
+        private final long[] stack;
+
+        public WordEvaluator(CompiledExpression compiled,int variableCount)
+        {
+            this.compiled = compiled;
+            this.variableCount = variableCount;
+            this.validRowsMask = variableCount < 6 ? ( 1L << ( 1 << variableCount ) ) - 1 : ~0L;
+            this.slotMasks = new long[ variableCount ];
+            this.stack = new long[ Math.max( 1 , compiled.getMaxStackDepth() ) ];
+        }
+
+        public long evaluate(long wordIndex)
+        {
+            for ( int slot = 0 ; slot < variableCount ; slot++ )
+            {
+                final int bit = variableCount - 1 - slot;
+                if ( bit < 6 ) {
+                    slotMasks[slot] = WORD_MASKS[ bit ];
+                } else {
+                    slotMasks[slot] = ( ( wordIndex >>> ( bit - 6 ) ) & 1 ) != 0 ? ~0L : 0L;
+                }
+            }
+            return compiled.evaluateBitSliced( slotMasks , stack ) & validRowsMask;
+        }
+    }
+}
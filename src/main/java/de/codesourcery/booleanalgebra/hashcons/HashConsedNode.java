@@ -0,0 +1,182 @@
+package de.codesourcery.booleanalgebra.hashcons;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.codesourcery.booleanalgebra.ast.Identifier;
+
+/**
+ * An immutable term node created by a {@link NodeFactory}.
+ *
+ * <p>The factory never creates two structurally equal nodes, so nodes
+ * may (and should) be compared by reference. Subterms are shared between
+ * all terms created by the same factory.</p>
+ *
+ * <p>Unlike {@link de.codesourcery.booleanalgebra.ast.ASTNode}s these nodes have
+ * no parent pointer and there is no node type for parens.</p>
+ */
+public final class HashConsedNode
+{
+    public enum Type {
+        FALSE,
+        TRUE,
+        VARIABLE,
+        NOT,
+        AND,
+        OR;
+    }
+
+    private final Type type;
+    private final int id;
+    private final HashConsedNode left;
+    private final HashConsedNode right;
+    private final Identifier identifier;
+    private final int nodeCount;
+
+    HashConsedNode(Type type,int id,HashConsedNode left,HashConsedNode right,Identifier identifier)
+    {
+        this.type = type;
+        this.id = id;
+        this.left = left;
+        this.right = right;
+        this.identifier = identifier;
+
+        long count = 1;
+        if ( left != null ) {
+            count += left.nodeCount;
+        }
+        if ( right != null ) {
+            count += right.nodeCount;
+        }
+        this.nodeCount = (int) Math.min( count , Integer.MAX_VALUE );
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the unique ID of this node.
+     *
+     * <p>IDs are assigned by the factory in ascending order
+     * starting with 0 , children always have a smaller ID than their parents.</p>
+     *
+     * @return
+     */
+    public int getId() {
+        return id;
+    }
+
+    public HashConsedNode leftChild() {
+        return left;
+    }
+
+    public HashConsedNode rightChild() {
+        return right;
+    }
+
+    public Identifier getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * Returns the number of nodes this term would have as a tree (shared
+     * subterms are counted once per occurrence).
+     *
+     * @return node count , saturates at <code>Integer.MAX_VALUE</code>
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public boolean isLeafNode() {
+        return left == null;
+    }
+
+    public boolean isLiteralValue() {
+        return type == Type.TRUE || type == Type.FALSE;
+    }
+
+    public boolean isTrue() {
+        return type == Type.TRUE;
+    }
+
+    public boolean isFalse() {
+        return type == Type.FALSE;
+    }
+
+    public boolean isVariable() {
+        return type == Type.VARIABLE;
+    }
+
+    public boolean isNOT() {
+        return type == Type.NOT;
+    }
+
+    public boolean isAND() {
+        return type == Type.AND;
+    }
+
+    public boolean isOR() {
+        return type == Type.OR;
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder result = new StringBuilder();
+        // nodes and strings still to be printed , the next one on top.
+        // Uses an explicit stack , so arbitrarily deep terms can be printed.
+        final List<Object> stack = new ArrayList<>();
+        stack.add( this );
+        while ( ! stack.isEmpty() )
+        {
+            final Object part = stack.remove( stack.size() - 1 );
+            if ( part instanceof String ) {
+                result.append( (String) part );
+                continue;
+            }
+            final HashConsedNode node = (HashConsedNode) part;
+            switch( node.type )
+            {
+                case FALSE:
+                    result.append( "false" );
+                    break;
+                case TRUE:
+                    result.append( "true" );
+                    break;
+                case VARIABLE:
+                    result.append( node.identifier );
+                    break;
+                case NOT:
+                    result.append( "NOT " );
+                    pushChild( node.left , stack );
+                    break;
+                case AND:
+                    pushChild( node.right , stack );
+                    stack.add( " AND " );
+                    pushChild( node.left , stack );
+                    break;
+                case OR:
+                    pushChild( node.right , stack );
+                    stack.add( " OR " );
+                    pushChild( node.left , stack );
+                    break;
+                default:
+                    throw new RuntimeException("Unreachable code reached");
+            }
+        }
+        return result.toString();
+    }
+
+    private static void pushChild(HashConsedNode child,List<Object> stack)
+    {
+        if ( child.isLeafNode() ) {
+            stack.add( child );
+        } else {
+            stack.add( ")" );
+            stack.add( child );
+            stack.add( "(" );
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package de.codesourcery.booleanalgebra.hashcons;
+
+import java.util.Arrays;
+import java.util.Stack;
+
+import de.codesourcery.booleanalgebra.hashcons.HashConsedNode.Type;
+
+/**
+ * Applies the laws used by {@link de.codesourcery.booleanalgebra.ASTTransformations#simplify(de.codesourcery.booleanalgebra.ast.ASTNode, de.codesourcery.booleanalgebra.IExpressionContext)}
+ * to {@link HashConsedNode}s.
+ *
+ * <p>Terms are rewritten bottom-up. Since nodes are immutable, a rewrite only
+ * creates new nodes along the path from the rewritten node to the root, everything
+ * else is shared with the input term. Results are memorized per node ID, so a
+ * subterm that occurs many times is only simplified once, and equality checks
+ * inside the laws are simple reference comparisons.</p>
+ *
+ * <p>The distributive law is disabled by default , together with the other laws it does not
+ * converge and keeps expanding terms (just like it does in <code>simplify()</code>). To keep this
+ * in check it is only applied if the resulting subterm stays below a size limit, and the total
+ * number of rewrites is limited as well. Once the limit is reached the remaining term is returned as-is.</p>
+ */
+public final class HashConsedTransformations
+{
+    public static final int DEFAULT_MAX_REWRITES = 10000;
+    public static final int DEFAULT_MAX_DISTRIBUTED_NODE_COUNT = 1000;
+
+    private final NodeFactory factory;
+
+    private int maxRewrites = DEFAULT_MAX_REWRITES;
+    private boolean applyDistributiveLaw = false;
+    private int maxDistributedNodeCount = DEFAULT_MAX_DISTRIBUTED_NODE_COUNT;
+
+    private int rewriteCount;
+    private HashConsedNode[] memo = new HashConsedNode[0];
+
+    public HashConsedTransformations(NodeFactory factory)
+    {
+        if (factory == null) {
+            throw new IllegalArgumentException("factory must not be NULL.");
+        }
+        this.factory = factory;
+    }
+
+    public NodeFactory getFactory() {
+        return factory;
+    }
+
+    public void setMaxRewrites(int maxRewrites)
+    {
+        if ( maxRewrites < 0 ) {
+            throw new IllegalArgumentException("maxRewrites must be >= 0");
+        }
+        this.maxRewrites = maxRewrites;
+    }
+
+    public void setApplyDistributiveLaw(boolean yesNo) {
+        this.applyDistributiveLaw = yesNo;
+    }
+
+    /**
+     * Sets the max. size (as a tree) of terms created by the distributive law.
+     *
+     * @param maxNodeCount
+     */
+    public void setMaxDistributedNodeCount(int maxNodeCount)
+    {
+        if ( maxNodeCount < 1 ) {
+            throw new IllegalArgumentException("maxNodeCount must be >= 1");
+        }
+        this.maxDistributedNodeCount = maxNodeCount;
+    }
+
+    /**
+     * Returns the number of rewrites performed so far.
+     *
+     * @return
+     */
+    public int getRewriteCount() {
+        return rewriteCount;
+    }
+
+    public boolean isRewriteLimitReached() {
+        return rewriteCount >= maxRewrites;
+    }
+
+    public HashConsedNode simplify(HashConsedNode term)
+    {
+        if ( ! factory.isOwnNode( term ) ) {
+            throw new IllegalArgumentException("Term was not created by this transformer's factory");
+        }
+        return normalize( term );
+    }
+
+    /*
+     * A node that is being normalized.
+     */
+    private static final class Frame
+    {
+        public static final int NORMALIZE_LEFT = 0;
+        public static final int NORMALIZE_RIGHT = 1;
+        public static final int REWRITE = 2;
+        public static final int FINISH = 3;
+
+        public final HashConsedNode node;
+        public int state = NORMALIZE_LEFT;
+        public HashConsedNode left;
+        public HashConsedNode rebuilt;
+
+        public Frame(HashConsedNode node) {
+            this.node = node;
+        }
+    }
+
+    /*
+     * Normalizes the children of a node , rebuilds it and normalizes the result of applying the laws to it.
+     *
+     * Uses an explicit stack instead of recursion , so arbitrarily deep terms can be normalized. Each frame
+     * receives the result of normalizing its current child / rewritten node through 'value'.
+     */
+    private HashConsedNode normalize(HashConsedNode root)
+    {
+        final Stack<Frame> stack = new Stack<>();
+        HashConsedNode value = enter( root , stack );
+        while ( ! stack.isEmpty() )
+        {
+            final Frame frame = stack.peek();
+            final HashConsedNode node = frame.node;
+            switch( frame.state )
+            {
+                case Frame.NORMALIZE_LEFT:
+                    frame.state = Frame.NORMALIZE_RIGHT;
+                    value = enter( node.leftChild() , stack );
+                    continue;
+                case Frame.NORMALIZE_RIGHT:
+                    frame.left = value;
+                    frame.state = Frame.REWRITE;
+                    value = node.rightChild() == null ? null : enter( node.rightChild() , stack );
+                    continue;
+                case Frame.REWRITE:
+                    final HashConsedNode rebuilt = factory.operator( node.getType() , frame.left , value );
+                    frame.rebuilt = rebuilt;
+                    frame.state = Frame.FINISH;
+                    if ( rebuilt != node )
+                    {
+                        final HashConsedNode cachedRebuilt = getMemo( rebuilt );
+                        if ( cachedRebuilt != null ) {
+                            setMemo( node , cachedRebuilt );
+                            stack.pop();
+                            value = cachedRebuilt;
+                            continue;
+                        }
+                        setMemo( rebuilt , rebuilt );
+                    }
+                    value = rebuilt;
+                    if ( ! isRewriteLimitReached() )
+                    {
+                        final HashConsedNode rewritten = applyLaws( rebuilt );
+                        if ( rewritten != rebuilt )
+                        {
+                            rewriteCount++;
+                            value = enter( rewritten , stack );
+                        }
+                    }
+                    continue;
+                case Frame.FINISH:
+                    setMemo( node , value );
+                    setMemo( frame.rebuilt , value );
+                    stack.pop();
+                    continue;
+                default:
+                    throw new RuntimeException("Unreachable code reached");
+            }
+        }
+        return value;
+    }
+
+    /*
+     * Starts normalizing a node.
+     *
+     * Returns the normalized node if it is known already , otherwise pushes a new frame and returns NULL.
+     */
+    private HashConsedNode enter(HashConsedNode node,Stack<Frame> stack)
+    {
+        if ( node.isLeafNode() ) {
+            return node;
+        }
+        final HashConsedNode cached = getMemo( node );
+        if ( cached != null ) {
+            return cached;
+        }
+        // guard against rewrite cycles , a node that is currently being
+        // normalized is treated as already being in normal form
+        setMemo( node , node );
+        stack.push( new Frame( node ) );
+        return null;
+    }
+
+    private HashConsedNode applyLaws(HashConsedNode node)
+    {
+        final HashConsedNode left = node.leftChild();
+        if ( node.isNOT() )
+        {
+            switch( left.getType() )
+            {
+                // double negation: not( not a) = a
+                case NOT:
+                    return left.leftChild();
+                // duality: not 0 = 1 , not 1 = 0
+                case TRUE:
+                    return factory.getFalse();
+                case FALSE:
+                    return factory.getTrue();
+                // De Morgan: not(a and b) = not a or  not b
+                //            not(a or  b) = not a and not b
+                case AND:
+                    return factory.or( factory.not( left.leftChild() ) , factory.not( left.rightChild() ) );
+                case OR:
+                    return factory.and( factory.not( left.leftChild() ) , factory.not( left.rightChild() ) );
+                default:
+                    return node;
+            }
+        }
+
+        final HashConsedNode right = node.rightChild();
+        final Type type = node.getType();
+        final Type dualType = node.isAND() ? Type.OR : Type.AND;
+        final HashConsedNode neutralElement = factory.literal( node.isAND() );
+        final HashConsedNode extremalElement = factory.literal( node.isOR() );
+
+        // idempotency: a and a = a , a or a = a
+        if ( left == right ) {
+            return left;
+        }
+
+        // identity: a and 1 = a , a or 0 = a
+        if ( left == neutralElement ) {
+            return right;
+        }
+        if ( right == neutralElement ) {
+            return left;
+        }
+
+        // extrema: a and 0 = 0 , a or 1 = 1
+        if ( left == extremalElement || right == extremalElement ) {
+            return extremalElement;
+        }
+
+        // complements: a and not a = 0 , a or not a = 1
+        if ( ( right.isNOT() && right.leftChild() == left ) || ( left.isNOT() && left.leftChild() == right ) ) {
+            return extremalElement;
+        }
+
+        // absorption: a or (a and b) = a , a and (a or b) = a
+        if ( right.getType() == dualType && ( right.leftChild() == left || right.rightChild() == left ) ) {
+            return left;
+        }
+        if ( left.getType() == dualType && ( left.leftChild() == right || left.rightChild() == right ) ) {
+            return right;
+        }
+
+        // associativity: (a and b) and c = a and (b and c) , (a or b) or c = a or (b or c)
+        if ( left.getType() == type && right.isLeafNode() ) {
+            return factory.operator( type , left.leftChild() , factory.operator( type , left.rightChild() , right ) );
+        }
+
+        // distributivity: a and (b or c) = (a and b) or (a and c)
+        //                 a or (b and c) = (a or b) and (a or c)
+        if ( applyDistributiveLaw && left.getNodeCount() != right.getNodeCount() )
+        {
+            if ( right.getType() == dualType ) {
+                return distribute( node , left , right );
+            }
+            if ( left.getType() == dualType ) {
+                return distribute( node , right , left );
+            }
+        }
+        return node;
+    }
+
+    private HashConsedNode distribute(HashConsedNode node,HashConsedNode factor,HashConsedNode sum)
+    {
+        // factor is duplicated
+        if ( (long) node.getNodeCount() + factor.getNodeCount() > maxDistributedNodeCount ) {
+            return node;
+        }
+        final Type type = node.getType();
+        final HashConsedNode leftTerm = factory.operator( type , factor , sum.leftChild() );
+        final HashConsedNode rightTerm = factory.operator( type , factor , sum.rightChild() );
+        return factory.operator( sum.getType() , leftTerm , rightTerm );
+    }
+
+    private HashConsedNode getMemo(HashConsedNode node)
+    {
+        final int id = node.getId();
+        return id < memo.length ? memo[id] : null;
+    }
+
+    private void setMemo(HashConsedNode node,HashConsedNode value)
+    {
+        final int id = node.getId();
+        if ( id >= memo.length ) {
+            memo = Arrays.copyOf( memo , Math.max( id + 1 , factory.getNodeCount() * 2 ) );
+        }
+        memo[id] = value;
+    }
+}
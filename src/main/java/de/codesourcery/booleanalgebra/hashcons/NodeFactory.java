@@ -0,0 +1,426 @@
+package de.codesourcery.booleanalgebra.hashcons;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+import de.codesourcery.booleanalgebra.IExpressionContext;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.BooleanExpression;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.TermNode;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+import de.codesourcery.booleanalgebra.hashcons.HashConsedNode.Type;
+
+/**
+ * Creates {@link HashConsedNode}s, making sure structurally equal terms are represented
+ * by the very same node instance.
+ *
+ * <p>Operator nodes are looked up in a unique table keyed by operator type and the
+ * IDs of their children, so creating a node that already exists only costs a hash
+ * lookup and no allocation. Since children are themselves unique, two nodes are structurally equal
+ * if and only if they are the same object.</p>
+ *
+ * <p>A factory never forgets a node it has created, use a new factory for
+ * unrelated computations. Factories are not thread-safe.</p>
+ */
+public final class NodeFactory
+{
+    private static final int INITIAL_CAPACITY = 64;
+
+    private HashConsedNode[] nodes = new HashConsedNode[ INITIAL_CAPACITY ];
+    private int nodeCount;
+
+    // open addressing , holds (node ID+1) or 0 for empty slots
+    private int[] table = new int[ INITIAL_CAPACITY*2 ];
+    private int operatorCount;
+
+    private final Map<Identifier,HashConsedNode> variables = new HashMap<>();
+
+    private final HashConsedNode falseNode;
+    private final HashConsedNode trueNode;
+
+    public NodeFactory()
+    {
+        falseNode = register( Type.FALSE , null , null , null );
+        trueNode = register( Type.TRUE , null , null , null );
+    }
+
+    public HashConsedNode getFalse() {
+        return falseNode;
+    }
+
+    public HashConsedNode getTrue() {
+        return trueNode;
+    }
+
+    public HashConsedNode literal(boolean value) {
+        return value ? trueNode : falseNode;
+    }
+
+    public HashConsedNode variable(Identifier identifier)
+    {
+        if (identifier == null) {
+            throw new IllegalArgumentException("identifier must not be NULL.");
+        }
+        HashConsedNode result = variables.get( identifier );
+        if ( result == null ) {
+            result = register( Type.VARIABLE , null , null , identifier );
+            variables.put( identifier , result );
+        }
+        return result;
+    }
+
+    public HashConsedNode not(HashConsedNode child) {
+        return operator( Type.NOT , child , null );
+    }
+
+    public HashConsedNode and(HashConsedNode left,HashConsedNode right) {
+        return operator( Type.AND , left , right );
+    }
+
+    public HashConsedNode or(HashConsedNode left,HashConsedNode right) {
+        return operator( Type.OR , left , right );
+    }
+
+    /**
+     * Creates an operator node.
+     *
+     * @param type <code>NOT</code>, <code>AND</code> or <code>OR</code>
+     * @param left
+     * @param right right child, must be <code>null</code> for <code>NOT</code>
+     * @return
+     */
+    public HashConsedNode operator(Type type,HashConsedNode left,HashConsedNode right)
+    {
+        if ( type == null ) {
+            throw new IllegalArgumentException("type must not be NULL.");
+        }
+        checkOwnNode( left );
+        switch( type )
+        {
+            case NOT:
+                if ( right != null ) {
+                    throw new IllegalArgumentException("NOT takes exactly one argument");
+                }
+                break;
+            case AND:
+            case OR:
+                checkOwnNode( right );
+                break;
+            default:
+                throw new IllegalArgumentException("Not an operator: "+type);
+        }
+
+        final int rightId = right == null ? -1 : right.getId();
+        int index = hash( type , left.getId() , rightId ) & ( table.length - 1 );
+        while ( true )
+        {
+            final int entry = table[index];
+            if ( entry == 0 ) {
+                break;
+            }
+            final HashConsedNode existing = nodes[ entry - 1 ];
+            if ( existing.getType() == type && existing.leftChild() == left && existing.rightChild() == right ) {
+                return existing;
+            }
+            index = ( index + 1 ) & ( table.length - 1 );
+        }
+
+        final HashConsedNode result = register( type , left , right , null );
+        table[index] = result.getId() + 1;
+        operatorCount++;
+        if ( operatorCount*2 > table.length ) {
+            rehash();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the node with the given ID.
+     *
+     * @param id
+     * @return
+     * @see HashConsedNode#getId()
+     */
+    public HashConsedNode getNode(int id)
+    {
+        if ( id < 0 || id >= nodeCount ) {
+            throw new IllegalArgumentException("No node with ID "+id);
+        }
+        return nodes[id];
+    }
+
+    /**
+     * Returns the number of distinct nodes created by this factory so far.
+     *
+     * @return
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public boolean isOwnNode(HashConsedNode node) {
+        return node != null && node.getId() < nodeCount && nodes[ node.getId() ] == node;
+    }
+
+    /**
+     * Converts a term.
+     *
+     * @param term term , must not be a {@link BooleanExpression}
+     * @return
+     */
+    public HashConsedNode fromAST(ASTNode term) {
+        return fromAST( term , null );
+    }
+
+    /**
+     * Converts a term , replacing all variables that are bound to literal values.
+     *
+     * <p>Uses an explicit stack instead of recursion , so arbitrarily deep terms can be converted.</p>
+     *
+     * @param term term , must not be a {@link BooleanExpression}
+     * @param context context used to look up variable values, may be <code>null</code>
+     * @return
+     */
+    public HashConsedNode fromAST(ASTNode term,IExpressionContext context)
+    {
+        final ASTNode root = unwrap( term );
+        if ( ! ( root instanceof OperatorNode ) ) {
+            return fromLeaf( root , context );
+        }
+
+        // operators whose operands are being converted , and the index of the next operand to convert
+        ASTNode[] operators = new ASTNode[ INITIAL_CAPACITY ];
+        int[] nextOperand = new int[ INITIAL_CAPACITY ];
+        int depth = 0;
+        // converted operands , in the order they were converted
+        final List<HashConsedNode> values = new ArrayList<>();
+
+        operators[ depth++ ] = checkOperator( root );
+        while ( depth > 0 )
+        {
+            final ASTNode node = operators[ depth - 1 ];
+            final int index = nextOperand[ depth - 1 ];
+            if ( index < node.getChildCount() )
+            {
+                nextOperand[ depth - 1 ]++;
+                final ASTNode operand = unwrap( node.child( index ) );
+                if ( ! ( operand instanceof OperatorNode ) ) {
+                    values.add( fromLeaf( operand , context ) );
+                    continue;
+                }
+                if ( depth == operators.length ) {
+                    operators = Arrays.copyOf( operators , depth * 2 );
+                    nextOperand = Arrays.copyOf( nextOperand , depth * 2 );
+                }
+                operators[ depth ] = checkOperator( operand );
+                nextOperand[ depth ] = 0;
+                depth++;
+                continue;
+            }
+            operators[ --depth ] = null;
+
+            final List<HashConsedNode> operands = values.subList( values.size() - node.getChildCount() , values.size() );
+            HashConsedNode result = operands.get(0);
+            switch( ((OperatorNode) node).getType() )
+            {
+                case NOT:
+                    result = not( result );
+                    break;
+                case AND:
+                    for ( int i = 1 ; i < operands.size() ; i++ ) {
+                        result = and( result , operands.get(i) );
+                    }
+                    break;
+                case OR:
+                    for ( int i = 1 ; i < operands.size() ; i++ ) {
+                        result = or( result , operands.get(i) );
+                    }
+                    break;
+                default:
+                    throw new RuntimeException("Unreachable code reached");
+            }
+            operands.clear();
+            values.add( result );
+        }
+        return values.get(0);
+    }
+
+    private static ASTNode unwrap(ASTNode term)
+    {
+        ASTNode result = term;
+        while ( result instanceof TermNode )
+        {
+            if ( ! result.hasChildren() ) {
+                throw new IllegalArgumentException("Empty term node");
+            }
+            result = result.child(0);
+        }
+        return result;
+    }
+
+    private static ASTNode checkOperator(ASTNode node)
+    {
+        if ( ((OperatorNode) node).getType() == null ) {
+            throw new IllegalArgumentException("Operator without type: "+node);
+        }
+        if ( ! node.hasChildren() ) {
+            throw new IllegalArgumentException("Operator without operands: "+node);
+        }
+        return node;
+    }
+
+    private HashConsedNode fromLeaf(ASTNode term,IExpressionContext context)
+    {
+        if ( term instanceof IdentifierNode )
+        {
+            final Identifier identifier = ((IdentifierNode) term).getIdentifier();
+            if ( context != null )
+            {
+                final ASTNode value = context.tryLookup( identifier );
+                if ( value != null && value.isLiteralValue() ) {
+                    return literal( value.getLiteralValue( context ) );
+                }
+            }
+            return variable( identifier );
+        }
+        if ( term instanceof TrueNode ) {
+            return trueNode;
+        }
+        if ( term instanceof FalseNode ) {
+            return falseNode;
+        }
+        throw new IllegalArgumentException("Unsupported node type: "+term);
+    }
+
+    /**
+     * Converts a node back into a (newly allocated) AST.
+     *
+     * <p>Shared subterms are copied for every occurrence. Uses an explicit stack
+     * instead of recursion , so arbitrarily deep terms can be converted.</p>
+     *
+     * @param node
+     * @return
+     */
+    public static ASTNode toAST(HashConsedNode node)
+    {
+        final Stack<HashConsedNode> stack = new Stack<>();
+        final Stack<Boolean> expanded = new Stack<>();
+        final Stack<ASTNode> results = new Stack<>();
+
+        stack.push( node );
+        expanded.push( Boolean.FALSE );
+        while ( ! stack.isEmpty() )
+        {
+            final HashConsedNode current = stack.pop();
+            final boolean childrenConverted = expanded.pop();
+            switch( current.getType() )
+            {
+                case FALSE:
+                    results.push( new FalseNode() );
+                    continue;
+                case TRUE:
+                    results.push( new TrueNode() );
+                    continue;
+                case VARIABLE:
+                    results.push( new IdentifierNode( current.getIdentifier() ) );
+                    continue;
+                default:
+                    // $FALL-THROUGH$
+            }
+            if ( ! childrenConverted )
+            {
+                // convert the left child first , so its result ends up below the one of the right child
+                stack.push( current );
+                expanded.push( Boolean.TRUE );
+                if ( current.rightChild() != null )
+                {
+                    stack.push( current.rightChild() );
+                    expanded.push( Boolean.FALSE );
+                }
+                stack.push( current.leftChild() );
+                expanded.push( Boolean.FALSE );
+                continue;
+            }
+            switch( current.getType() )
+            {
+                case NOT:
+                    results.push( OperatorNode.not( results.pop() ) );
+                    break;
+                case AND:
+                {
+                    final ASTNode right = results.pop();
+                    results.push( OperatorNode.and( results.pop() , right ) );
+                    break;
+                }
+                case OR:
+                {
+                    final ASTNode right = results.pop();
+                    results.push( OperatorNode.or( results.pop() , right ) );
+                    break;
+                }
+                default:
+                    throw new RuntimeException("Unreachable code reached");
+            }
+        }
+        return results.pop();
+    }
+
+    private void checkOwnNode(HashConsedNode node)
+    {
+        if ( node == null ) {
+            throw new IllegalArgumentException("node must not be NULL.");
+        }
+        if ( ! isOwnNode( node ) ) {
+            throw new IllegalArgumentException("Node "+node+" was not created by this factory");
+        }
+    }
+
+    private HashConsedNode register(Type type,HashConsedNode left,HashConsedNode right,Identifier identifier)
+    {
+        if ( nodeCount == nodes.length ) {
+            nodes = Arrays.copyOf( nodes , nodes.length * 2 );
+        }
+        final HashConsedNode result = new HashConsedNode( type , nodeCount , left , right , identifier );
+        nodes[ nodeCount++ ] = result;
+        return result;
+    }
+
+    private void rehash()
+    {
+        final int[] newTable = new int[ table.length * 2 ];
+        final int mask = newTable.length - 1;
+        for ( final int entry : table )
+        {
+            if ( entry != 0 )
+            {
+                final HashConsedNode node = nodes[ entry - 1 ];
+                final int rightId = node.rightChild() == null ? -1 : node.rightChild().getId();
+                int index = hash( node.getType() , node.leftChild().getId() , rightId ) & mask;
+                while ( newTable[index] != 0 ) {
+                    index = ( index + 1 ) & mask;
+                }
+                newTable[index] = entry;
+            }
+        }
+        table = newTable;
+    }
+
+    private static int hash(Type type,int leftId,int rightId)
+    {
+        int h = type.ordinal() * 0x9e3779b9;
+        h ^= leftId * 0x85ebca6b;
+        h ^= rightId * 0xc2b2ae35;
+        h ^= h >>> 16;
+        h *= 0x7feb352d;
+        h ^= h >>> 15;
+        return h;
+    }
+}
@@ -0,0 +1,16 @@
+package de.codesourcery.booleanalgebra.lexer;
+
+import de.codesourcery.booleanalgebra.ast.SymbolTable;
+
+/**
+ * A lexer that interns the identifiers it reads into a {@link SymbolTable}.
+ */
+public interface ISymbolTableLexer extends ILexer
+{
+    /**
+     * Returns the symbol table used to intern identifiers.
+     * 
+     * @return
+     */
+    public SymbolTable getSymbolTable();
+}
@@ -6,11 +6,13 @@ import java.util.List;
 
 import de.codesourcery.booleanalgebra.IScanner;
 import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.SymbolTable;
 import de.codesourcery.booleanalgebra.exceptions.ParseException;
 
-public class Lexer implements ILexer
+public class Lexer implements ISymbolTableLexer
 {
     private final IScanner scanner;
+    private final SymbolTable symbolTable;
     
     private final StringBuilder buffer = new StringBuilder();
     private final List<Token> tokens=new ArrayList<Token>();
@@ -18,7 +20,20 @@ public class Lexer implements ILexer
     private boolean skipWhitespace = true;
     
     public Lexer(IScanner scanner) {
+        this( scanner , new SymbolTable() );
+    }
+    
+    public Lexer(IScanner scanner,SymbolTable symbolTable) {
+        if (symbolTable == null) {
+            throw new IllegalArgumentException("symbolTable must not be NULL.");
+        }
         this.scanner = scanner;
+        this.symbolTable = symbolTable;
+    }
+    
+    @Override
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
     }
     
     private Token currentToken() {
@@ -144,7 +159,7 @@ outer:
         
         if ( delimiterSeen ) 
         {
-            if ( Identifier.isValidIdentifier( buf ) ) {
+            if ( symbolTable.contains( buf ) || Identifier.isValidIdentifier( buf ) ) {
                 tokens.add( new Token( buf , startOffset , TokenType.IDENTIFIER ) );                
             } else {
                 tokens.add( new Token( buf , startOffset , TokenType.CHARACTERS ) );
@@ -0,0 +1,391 @@
+package de.codesourcery.booleanalgebra.minimize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Operations on cubes (products of literals) in positional-cube notation.
+ *
+ * <p>Each variable takes two bits of a <code>long[]</code> , the lower bit is set if the
+ * variable may be <code>false</code> , the upper bit if it may be <code>true</code>. So
+ * <code>01</code> is a negative literal , <code>10</code> a positive literal , <code>11</code> means the variable
+ * does not occur in the cube and <code>00</code> makes the cube empty. 32 variables fit into one word.</p>
+ *
+ * <p>A cover (sum of products) is a list of cubes.</p>
+ */
+final class CubeSpace
+{
+    private static final long LOW_BITS = 0x5555555555555555L;
+
+    private final int variableCount;
+    private final long[] full;
+    private final long[] fullLow;
+
+    public CubeSpace(int variableCount)
+    {
+        this.variableCount = variableCount;
+        final int words = Math.max( 1 , ( variableCount + 31 ) / 32 );
+        full = new long[ words ];
+        fullLow = new long[ words ];
+        for ( int i = 0 ; i < variableCount ; i++ ) {
+            full[ i / 32 ] |= 3L << ( 2 * ( i % 32 ) );
+        }
+        for ( int i = 0 ; i < words ; i++ ) {
+            fullLow[i] = full[i] & LOW_BITS;
+        }
+    }
+
+    public int getVariableCount() {
+        return variableCount;
+    }
+
+    /**
+     * Returns the cube that contains everything.
+     *
+     * @return
+     */
+    public long[] universe() {
+        return full.clone();
+    }
+
+    public long[] literal(int variable,boolean value)
+    {
+        final long[] result = full.clone();
+        result[ variable / 32 ] &= ~( ( value ? 1L : 2L ) << ( 2 * ( variable % 32 ) ) );
+        return result;
+    }
+
+    /**
+     * Returns the bits of a variable , 1 for a negative and 2 for a positive literal , 3 if
+     * the variable does not occur and 0 for an empty cube.
+     *
+     * @param cube
+     * @param variable
+     * @return
+     */
+    public int get(long[] cube,int variable) {
+        return (int) ( cube[ variable / 32 ] >>> ( 2 * ( variable % 32 ) ) ) & 3;
+    }
+
+    public long[] set(long[] cube,int variable,int bits)
+    {
+        final long[] result = cube.clone();
+        final int shift = 2 * ( variable % 32 );
+        result[ variable / 32 ] = ( result[ variable / 32 ] & ~( 3L << shift ) ) | ( (long) bits << shift );
+        return result;
+    }
+
+    public boolean isEmpty(long[] cube)
+    {
+        for ( int i = 0 ; i < cube.length ; i++ )
+        {
+            if ( ( ( cube[i] | ( cube[i] >>> 1 ) ) & fullLow[i] ) != fullLow[i] ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isUniverse(long[] cube)
+    {
+        for ( int i = 0 ; i < cube.length ; i++ ) {
+            if ( cube[i] != full[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean intersects(long[] cube1,long[] cube2)
+    {
+        for ( int i = 0 ; i < cube1.length ; i++ )
+        {
+            final long both = cube1[i] & cube2[i];
+            if ( ( ( both | ( both >>> 1 ) ) & fullLow[i] ) != fullLow[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the intersection of two cubes.
+     *
+     * @param cube1
+     * @param cube2
+     * @return intersection or <code>null</code> if the cubes are disjoint
+     */
+    public long[] intersect(long[] cube1,long[] cube2)
+    {
+        final long[] result = new long[ cube1.length ];
+        for ( int i = 0 ; i < result.length ; i++ ) {
+            result[i] = cube1[i] & cube2[i];
+        }
+        return isEmpty( result ) ? null : result;
+    }
+
+    /**
+     * Returns the smallest cube containing two cubes.
+     *
+     * @param cube1
+     * @param cube2
+     * @return
+     */
+    public long[] supercube(long[] cube1,long[] cube2)
+    {
+        final long[] result = new long[ cube1.length ];
+        for ( int i = 0 ; i < result.length ; i++ ) {
+            result[i] = cube1[i] | cube2[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether a cube contains another one.
+     *
+     * @param container
+     * @param cube
+     * @return
+     */
+    public boolean contains(long[] container,long[] cube)
+    {
+        for ( int i = 0 ; i < cube.length ; i++ ) {
+            if ( ( cube[i] & ~container[i] ) != 0 ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getLiteralCount(long[] cube)
+    {
+        int dontCares = 0;
+        for ( int i = 0 ; i < cube.length ; i++ ) {
+            dontCares += Long.bitCount( cube[i] & ( cube[i] >>> 1 ) & fullLow[i] );
+        }
+        return variableCount - dontCares;
+    }
+
+    public int getLiteralCount(List<long[]> cover)
+    {
+        int result = 0;
+        for ( long[] cube : cover ) {
+            result += getLiteralCount( cube );
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cofactor of a cover with respect to a cube , that is the cover restricted to the cube
+     * with all variables of the cube removed.
+     *
+     * @param cover
+     * @param cube
+     * @return
+     */
+    public List<long[]> cofactor(List<long[]> cover,long[] cube)
+    {
+        final List<long[]> result = new ArrayList<>( cover.size() );
+        for ( long[] other : cover )
+        {
+            if ( intersects( other , cube ) )
+            {
+                final long[] restricted = new long[ other.length ];
+                for ( int i = 0 ; i < restricted.length ; i++ ) {
+                    restricted[i] = other[i] | ( ~cube[i] & full[i] );
+                }
+                result.add( restricted );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cofactor of a cover with respect to a single variable.
+     *
+     * @param cover
+     * @param variable
+     * @param value
+     * @return
+     */
+    public List<long[]> cofactor(List<long[]> cover,int variable,boolean value)
+    {
+        final int bit = value ? 2 : 1;
+        final List<long[]> result = new ArrayList<>( cover.size() );
+        for ( long[] cube : cover )
+        {
+            if ( ( get( cube , variable ) & bit ) != 0 ) {
+                result.add( set( cube , variable , 3 ) );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether a variable occurs as a literal in a cover.
+     *
+     * @param cover
+     * @param variable
+     * @return
+     */
+    public boolean hasLiteral(List<long[]> cover,int variable)
+    {
+        for ( long[] cube : cover ) {
+            if ( get( cube , variable ) != 3 ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Counts how often each variable occurs as a positive and as a negative literal.
+     */
+    private void countLiterals(List<long[]> cover,int[] positive,int[] negative)
+    {
+        for ( long[] cube : cover )
+        {
+            for ( int i = 0 ; i < cube.length ; i++ )
+            {
+                // only look at variables that occur as a literal
+                long literals = ~( cube[i] & ( cube[i] >>> 1 ) ) & fullLow[i];
+                while ( literals != 0 )
+                {
+                    final int bit = Long.numberOfTrailingZeros( literals );
+                    literals &= literals - 1;
+                    final int variable = i * 32 + bit / 2;
+                    if ( ( ( cube[i] >>> bit ) & 3 ) == 2 ) {
+                        positive[ variable ]++;
+                    } else {
+                        negative[ variable ]++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether a cover contains every possible assignment , using the unate recursive paradigm.
+     *
+     * @param cover
+     * @return
+     */
+    public boolean isTautology(List<long[]> cover)
+    {
+        final int[] positive = new int[ variableCount ];
+        final int[] negative = new int[ variableCount ];
+        List<long[]> current = cover;
+        while ( true )
+        {
+            double volume = 0;
+            for ( long[] cube : current )
+            {
+                if ( isUniverse( cube ) ) {
+                    return true;
+                }
+                volume += Math.scalb( 1.0 , -getLiteralCount( cube ) );
+            }
+            // the cubes are too small to cover everything
+            if ( volume < 1 ) {
+                return false;
+            }
+
+            Arrays.fill( positive , 0 );
+            Arrays.fill( negative , 0 );
+            countLiterals( current , positive , negative );
+
+            /*
+             * Cubes with a literal of a variable that occurs in one polarity only can be dropped: if the
+             * other cubes do not cover everything , neither do they when the variable has the other value.
+             */
+            long[] unate = null;
+            int variable = -1;
+            int best = 0;
+            for ( int i = 0 ; i < variableCount ; i++ )
+            {
+                if ( positive[i] != 0 && negative[i] != 0 )
+                {
+                    if ( positive[i] + negative[i] > best )
+                    {
+                        best = positive[i] + negative[i];
+                        variable = i;
+                    }
+                }
+                else if ( positive[i] != 0 || negative[i] != 0 )
+                {
+                    if ( unate == null ) {
+                        unate = new long[ full.length ];
+                    }
+                    unate[ i / 32 ] |= 3L << ( 2 * ( i % 32 ) );
+                }
+            }
+
+            if ( unate == null )
+            {
+                if ( variable == -1 ) {
+                    return false;
+                }
+                return isTautology( cofactor( current , variable , false ) ) && isTautology( cofactor( current , variable , true ) );
+            }
+
+            final List<long[]> reduced = new ArrayList<>( current.size() );
+            for ( long[] cube : current )
+            {
+                if ( ! hasLiteral( cube , unate ) ) {
+                    reduced.add( cube );
+                }
+            }
+            current = reduced;
+        }
+    }
+
+    /*
+     * Returns whether a cube has a literal of one of the variables set in a mask.
+     */
+    private boolean hasLiteral(long[] cube,long[] variables)
+    {
+        for ( int i = 0 ; i < cube.length ; i++ ) {
+            if ( ( ~cube[i] & variables[i] ) != 0 ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether a cube is contained in a cover.
+     *
+     * @param cover
+     * @param cube
+     * @return
+     */
+    public boolean isCovered(List<long[]> cover,long[] cube) {
+        return isTautology( cofactor( cover , cube ) );
+    }
+
+    /**
+     * Removes all cubes that are contained in another cube of a cover.
+     *
+     * @param cover
+     * @return
+     */
+    public List<long[]> removeContained(List<long[]> cover)
+    {
+        final List<long[]> result = new ArrayList<>( cover.size() );
+        outer:
+        for ( int i = 0 ; i < cover.size() ; i++ )
+        {
+            final long[] cube = cover.get(i);
+            for ( int j = 0 ; j < cover.size() ; j++ )
+            {
+                // of two equal cubes , keep the first one
+                if ( i != j && contains( cover.get(j) , cube ) && ( j < i || ! contains( cube , cover.get(j) ) ) ) {
+                    continue outer;
+                }
+            }
+            result.add( cube );
+        }
+        return result;
+    }
+}
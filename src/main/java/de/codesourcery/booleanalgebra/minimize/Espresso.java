@@ -0,0 +1,502 @@
+package de.codesourcery.booleanalgebra.minimize;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+import java.util.TreeSet;
+
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.BooleanExpression;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.INodeVisitor;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.TermNode;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+
+/**
+ * Heuristic two-level minimizer in the style of Espresso , turns a term into a
+ * near-minimal sum of products.
+ *
+ * <p>Unlike {@link QuineMcCluskey} this never looks at individual minterms , so it works for terms with
+ * many variables. The term is converted into a cover (by pushing negations down to the variables and
+ * multiplying out) , then these steps are repeated as long as the result gets smaller:</p>
+ *
+ * <ul>
+ *   <li><b>expand</b> - make each product as large as possible while it is still contained in the term ,
+ *   dropping all products that got covered by the expanded one</li>
+ *   <li><b>irredundant</b> - remove products that are covered by the other ones</li>
+ *   <li><b>reduce</b> - make each product as small as possible without uncovering anything , so the
+ *   next expand step may grow it in a different direction</li>
+ * </ul>
+ *
+ * <p>Products are stored in {@link CubeSpace positional-cube notation}. Unlike the original Espresso , expand
+ * does not check products against a cover of the off-set but checks whether they are contained in the
+ * on-set with a tautology check , the off-set of a term with many variables tends to be a lot larger than
+ * the on-set.</p>
+ */
+public final class Espresso implements IMinimizer
+{
+    public static final int DEFAULT_MAX_ITERATIONS = 20;
+
+    /**
+     * Default max. number of products a term may have when multiplied out.
+     */
+    public static final int DEFAULT_MAX_CUBES = 10000;
+
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+    private int maxCubes = DEFAULT_MAX_CUBES;
+
+    // statistics of the last run
+    private int productCount;
+    private int literalCount;
+    private int iterationCount;
+
+    private CubeSpace space;
+
+    private final Comparator<long[]> largestFirst = new Comparator<long[]>() {
+
+        @Override
+        public int compare(long[] o1, long[] o2) {
+            return Integer.compare( space.getLiteralCount( o1 ) , space.getLiteralCount( o2 ) );
+        }
+    };
+
+    @Override
+    public ASTNode minimize(ASTNode term)
+    {
+        if (term == null) {
+            throw new IllegalArgumentException("term must not be NULL.");
+        }
+        if ( term instanceof BooleanExpression ) {
+            throw new IllegalArgumentException("Cannot minimize an expression: "+term);
+        }
+
+        final Set<Identifier> identifiers = new TreeSet<>();
+        gatherIdentifiers( term , identifiers );
+        final List<Identifier> variables = new ArrayList<>( identifiers );
+        final Map<Identifier,Integer> indices = new HashMap<>();
+        for ( int i = 0 ; i < variables.size() ; i++ ) {
+            indices.put( variables.get(i) , i );
+        }
+
+        space = new CubeSpace( variables.size() );
+        productCount = 0;
+        literalCount = 0;
+        iterationCount = 0;
+        try
+        {
+            final List<long[]> onSet = toCover( term , false , indices );
+            if ( onSet.isEmpty() ) {
+                return new FalseNode();
+            }
+            if ( space.isTautology( onSet ) )
+            {
+                productCount = 1;
+                return new TrueNode();
+            }
+
+            List<long[]> cover = irredundant( expand( onSet , onSet ) );
+            while ( iterationCount < maxIterations )
+            {
+                iterationCount++;
+                final List<long[]> candidate = irredundant( expand( reduce( cover ) , onSet ) );
+                if ( ! isSmaller( candidate , cover ) ) {
+                    break;
+                }
+                cover = candidate;
+            }
+
+            productCount = cover.size();
+            literalCount = space.getLiteralCount( cover );
+            return toAST( cover , variables );
+        } finally {
+            space = null;
+        }
+    }
+
+    private boolean isSmaller(List<long[]> cover1,List<long[]> cover2)
+    {
+        if ( cover1.size() != cover2.size() ) {
+            return cover1.size() < cover2.size();
+        }
+        return space.getLiteralCount( cover1 ) < space.getLiteralCount( cover2 );
+    }
+
+    private static void gatherIdentifiers(ASTNode term,final Set<Identifier> result)
+    {
+        term.visitPreOrder( new INodeVisitor() {
+
+            @Override
+            public boolean visit(ASTNode node, int currentDepth)
+            {
+                if ( node instanceof IdentifierNode ) {
+                    result.add( ((IdentifierNode) node).getIdentifier() );
+                }
+                return true;
+            }
+        });
+    }
+
+    /*
+     * An AND / OR node whose children are being multiplied out.
+     */
+    private final class Frame
+    {
+        public final ASTNode node;
+        public final boolean negate;
+        // whether the covers of the children get combined by product or by union
+        public final boolean multiply;
+        public int nextChild = 1;
+        public List<long[]> result;
+
+        public Frame(ASTNode node,boolean negate,boolean multiply)
+        {
+            this.node = node;
+            this.negate = negate;
+            this.multiply = multiply;
+        }
+
+        public void add(List<long[]> cover)
+        {
+            if ( result == null ) {
+                result = cover;
+            } else {
+                result = multiply ? product( result , cover ) : union( result , cover );
+            }
+        }
+    }
+
+    /*
+     * Multiplies out a term , negations are pushed down to the variables.
+     *
+     * Uses an explicit stack , so arbitrarily deep terms can be multiplied out.
+     */
+    private List<long[]> toCover(ASTNode root,boolean rootNegate,Map<Identifier,Integer> indices)
+    {
+        final Stack<Frame> stack = new Stack<>();
+        ASTNode node = root;
+        boolean negate = rootNegate;
+        while ( true )
+        {
+            // descend to the leftmost leaf , skipping parentheses and negations
+            List<long[]> cover = null;
+            while ( cover == null )
+            {
+                if ( node instanceof TermNode )
+                {
+                    if ( ! node.hasChildren() ) {
+                        throw new IllegalArgumentException("Empty term node");
+                    }
+                    node = node.child(0);
+                }
+                else if ( node instanceof OperatorNode )
+                {
+                    switch( ((OperatorNode) node).getType() )
+                    {
+                        case NOT:
+                            negate = ! negate;
+                            break;
+                        case AND:
+                            // not( a and b ) = not a or not b
+                            stack.push( new Frame( node , negate , ! negate ) );
+                            break;
+                        case OR:
+                            // not( a or b ) = not a and not b
+                            stack.push( new Frame( node , negate , negate ) );
+                            break;
+                        default:
+                            throw new RuntimeException("Unreachable code reached");
+                    }
+                    node = node.child(0);
+                } else {
+                    cover = leafToCover( node , negate , indices );
+                }
+            }
+
+            // combine with the covers of the siblings , until there is a sibling that still needs to be multiplied out
+            while ( true )
+            {
+                if ( stack.isEmpty() ) {
+                    return cover;
+                }
+                final Frame frame = stack.peek();
+                frame.add( cover );
+                if ( frame.nextChild < frame.node.getChildCount() )
+                {
+                    node = frame.node.child( frame.nextChild++ );
+                    negate = frame.negate;
+                    break;
+                }
+                stack.pop();
+                cover = frame.result;
+            }
+        }
+    }
+
+    private List<long[]> leafToCover(ASTNode node,boolean negate,Map<Identifier,Integer> indices)
+    {
+        if ( node instanceof IdentifierNode ) {
+            return singleton( space.literal( indices.get( ((IdentifierNode) node).getIdentifier() ) , ! negate ) );
+        }
+        if ( node instanceof TrueNode ) {
+            return negate ? new ArrayList<long[]>() : singleton( space.universe() );
+        }
+        if ( node instanceof FalseNode ) {
+            return negate ? singleton( space.universe() ) : new ArrayList<long[]>();
+        }
+        throw new IllegalArgumentException("Unsupported node type: "+node);
+    }
+
+    private static List<long[]> singleton(long[] cube)
+    {
+        final List<long[]> result = new ArrayList<>();
+        result.add( cube );
+        return result;
+    }
+
+    private List<long[]> union(List<long[]> cover1,List<long[]> cover2)
+    {
+        final List<long[]> result = new ArrayList<>( cover1 );
+        result.addAll( cover2 );
+        return checkSize( space.removeContained( result ) );
+    }
+
+    private List<long[]> product(List<long[]> cover1,List<long[]> cover2)
+    {
+        final List<long[]> result = new ArrayList<>();
+        for ( long[] cube1 : cover1 )
+        {
+            for ( long[] cube2 : cover2 )
+            {
+                final long[] intersection = space.intersect( cube1 , cube2 );
+                if ( intersection != null )
+                {
+                    result.add( intersection );
+                    checkSize( result.size() );
+                }
+            }
+        }
+        return space.removeContained( result );
+    }
+
+    private List<long[]> checkSize(List<long[]> cover)
+    {
+        checkSize( cover.size() );
+        return cover;
+    }
+
+    private void checkSize(int cubeCount)
+    {
+        if ( cubeCount > maxCubes ) {
+            throw new IllegalArgumentException("Term is too large , its sum of products has more than "+maxCubes+" products");
+        }
+    }
+
+    /*
+     * Grows each cube as long as it is contained in the on-set , first by merging it with
+     * other cubes (so these become redundant) , then by dropping single literals.
+     */
+    private List<long[]> expand(List<long[]> cover,List<long[]> onSet)
+    {
+        final List<long[]> cubes = new ArrayList<>( cover );
+        Collections.sort( cubes , largestFirst );
+
+        final boolean[] covered = new boolean[ cubes.size() ];
+        final List<long[]> result = new ArrayList<>();
+        for ( int i = 0 ; i < cubes.size() ; i++ )
+        {
+            if ( covered[i] ) {
+                continue;
+            }
+            long[] cube = cubes.get(i);
+
+            // a literal that cannot be dropped on its own cannot be dropped together with others either
+            long[] limit = cube;
+            for ( int variable = 0 ; variable < space.getVariableCount() ; variable++ )
+            {
+                if ( space.get( cube , variable ) != 3 && space.isCovered( onSet , space.set( cube , variable , 3 ) ) ) {
+                    limit = space.set( limit , variable , 3 );
+                }
+            }
+
+            for ( int j = 0 ; j < cubes.size() ; j++ )
+            {
+                if ( j != i && ! covered[j] && ! space.contains( cube , cubes.get(j) ) )
+                {
+                    final long[] supercube = space.supercube( cube , cubes.get(j) );
+                    if ( space.contains( limit , supercube ) && space.isCovered( onSet , supercube ) ) {
+                        cube = supercube;
+                    }
+                }
+            }
+            for ( int variable = 0 ; variable < space.getVariableCount() ; variable++ )
+            {
+                if ( space.get( cube , variable ) != 3 && space.get( limit , variable ) == 3 )
+                {
+                    final long[] raised = space.set( cube , variable , 3 );
+                    if ( space.isCovered( onSet , raised ) ) {
+                        cube = raised;
+                    }
+                }
+            }
+            for ( int j = i + 1 ; j < cubes.size() ; j++ )
+            {
+                if ( ! covered[j] && space.contains( cube , cubes.get(j) ) ) {
+                    covered[j] = true;
+                }
+            }
+            result.add( cube );
+        }
+        return space.removeContained( result );
+    }
+
+    /*
+     * Removes cubes that are covered by the remaining ones , smallest cubes first.
+     */
+    private List<long[]> irredundant(List<long[]> cover)
+    {
+        final List<long[]> result = new ArrayList<>( cover );
+        Collections.sort( result , Collections.reverseOrder( largestFirst ) );
+        for ( int i = 0 ; i < result.size() ; )
+        {
+            final long[] cube = result.remove( i );
+            if ( ! space.isCovered( result , cube ) ) {
+                result.add( i++ , cube );
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Shrinks each cube to the smallest cube that still covers everything not covered by the other ones ,
+     * largest cubes first.
+     *
+     * A variable is fixed in this smallest cube if one of the halves of the cube where the variable
+     * is true or false is covered by the other cubes.
+     */
+    private List<long[]> reduce(List<long[]> cover)
+    {
+        final List<long[]> result = new ArrayList<>( cover );
+        Collections.sort( result , largestFirst );
+        for ( int i = 0 ; i < result.size() ; )
+        {
+            final long[] cube = result.remove( i );
+            final List<long[]> others = space.cofactor( result , cube );
+            if ( space.isTautology( others ) ) {
+                continue;
+            }
+            long[] reduced = cube;
+            for ( int variable = 0 ; variable < space.getVariableCount() ; variable++ )
+            {
+                // a variable the other cubes do not depend on cannot make a difference
+                if ( space.get( cube , variable ) == 3 && space.hasLiteral( others , variable ) )
+                {
+                    if ( space.isTautology( space.cofactor( others , variable , false ) ) ) {
+                        reduced = space.set( reduced , variable , 2 );
+                    } else if ( space.isTautology( space.cofactor( others , variable , true ) ) ) {
+                        reduced = space.set( reduced , variable , 1 );
+                    }
+                }
+            }
+            result.add( i++ , reduced );
+        }
+        return result;
+    }
+
+    private ASTNode toAST(List<long[]> cover,List<Identifier> variables)
+    {
+        final List<long[]> cubes = new ArrayList<>( cover );
+        // order products by their literals , in variable order
+        Collections.sort( cubes , new Comparator<long[]>() {
+
+            @Override
+            public int compare(long[] o1, long[] o2)
+            {
+                for ( int i = 0 ; i < space.getVariableCount() ; i++ )
+                {
+                    final int result = Integer.compare( rank( o1 , i ) , rank( o2 , i ) );
+                    if ( result != 0 ) {
+                        return result;
+                    }
+                }
+                return 0;
+            }
+
+            private int rank(long[] cube,int variable)
+            {
+                switch( space.get( cube , variable ) ) {
+                    case 2: return 0;
+                    case 1: return 1;
+                    default: return 2;
+                }
+            }
+        });
+
+        ASTNode result = null;
+        for ( long[] cube : cubes )
+        {
+            ASTNode product = null;
+            for ( int i = 0 ; i < variables.size() ; i++ )
+            {
+                final int bits = space.get( cube , i );
+                if ( bits != 3 )
+                {
+                    ASTNode literal = new IdentifierNode( variables.get(i) );
+                    if ( bits == 1 ) {
+                        literal = OperatorNode.not( literal );
+                    }
+                    product = product == null ? literal : OperatorNode.and( product , literal );
+                }
+            }
+            result = result == null ? product : OperatorNode.or( result , product );
+        }
+        return result;
+    }
+
+    /**
+     * Sets the max. number of reduce / expand / irredundant rounds.
+     *
+     * @param maxIterations
+     */
+    public void setMaxIterations(int maxIterations)
+    {
+        if ( maxIterations < 0 ) {
+            throw new IllegalArgumentException("maxIterations must not be negative");
+        }
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Sets the max. number of products a term may have when multiplied out.
+     *
+     * @param maxCubes
+     */
+    public void setMaxCubes(int maxCubes)
+    {
+        if ( maxCubes < 1 ) {
+            throw new IllegalArgumentException("maxCubes must be positive");
+        }
+        this.maxCubes = maxCubes;
+    }
+
+    @Override
+    public int getProductCount() {
+        return productCount;
+    }
+
+    @Override
+    public int getLiteralCount() {
+        return literalCount;
+    }
+
+    public int getIterationCount() {
+        return iterationCount;
+    }
+}
@@ -0,0 +1,32 @@
+package de.codesourcery.booleanalgebra.minimize;
+
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.BooleanExpression;
+
+/**
+ * Turns a term into a (small) sum of products.
+ */
+public interface IMinimizer
+{
+    /**
+     * Minimizes a term.
+     *
+     * @param term term , must not be a {@link BooleanExpression}
+     * @return equivalent sum of products over the variables of the term
+     */
+    public ASTNode minimize(ASTNode term);
+
+    /**
+     * Returns the number of products of the last result.
+     *
+     * @return
+     */
+    public int getProductCount();
+
+    /**
+     * Returns the number of literals of the last result.
+     *
+     * @return
+     */
+    public int getLiteralCount();
+}
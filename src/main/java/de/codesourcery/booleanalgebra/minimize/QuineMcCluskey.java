@@ -0,0 +1,688 @@
+package de.codesourcery.booleanalgebra.minimize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.BooleanExpression;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+import de.codesourcery.booleanalgebra.eval.TruthTable;
+
+/**
+ * Exact two-level minimizer , turns a term into a sum of products with the least number
+ * of products (and , among those , the least number of literals).
+ *
+ * <p>Minterms are read from the {@link TruthTable bit-parallel truth table} of the term. Prime
+ * implicants are generated Quine-McCluskey style by merging implicants that differ in a single
+ * variable , but instead of comparing implicants pairwise all implicants that differ in a given variable
+ * are merged at once by AND-ing the two halves of the (bit-packed) table. An implicant is packed into a
+ * <code>long</code> with the don't-care mask in the upper and the values of the remaining variables
+ * in the lower 32 bits.</p>
+ *
+ * <p>The covering problem is solved by branch-and-bound (instead of expanding Petrick's product of sums ,
+ * which blows up quickly): branching always happens on the uncovered minterm with the fewest
+ * candidate primes (so essential primes never cause a branch) and a search path is cut off as soon as
+ * a lower bound , the number of uncovered minterms that pairwise share no candidate , shows that it
+ * cannot beat the best cover found so far. Since the covering problem is NP-hard , the search is
+ * limited to {@link #setMaxBranches(long) a max. number of branches} , if the limit is hit the
+ * best cover found so far is returned and {@link #isMinimal()} returns <code>false</code>.</p>
+ */
+public final class QuineMcCluskey implements IMinimizer
+{
+    /**
+     * Max. number of variables a term may have.
+     */
+    public static final int MAX_VARIABLES = 20;
+
+    public static final long DEFAULT_MAX_BRANCHES = 1000000;
+
+    private long maxBranches = DEFAULT_MAX_BRANCHES;
+
+    // statistics of the last run
+    private int primeImplicantCount;
+    private int productCount;
+    private int literalCount;
+    private long branchCount;
+    private boolean minimal;
+
+    @Override
+    public ASTNode minimize(ASTNode term)
+    {
+        if (term == null) {
+            throw new IllegalArgumentException("term must not be NULL.");
+        }
+        if ( term instanceof BooleanExpression ) {
+            throw new IllegalArgumentException("Cannot minimize an expression: "+term);
+        }
+        final List<Identifier> variables = TruthTable.gatherVariables( term );
+        checkVariableCount( variables.size() );
+        return minimize( TruthTable.compute( term , variables ) );
+    }
+
+    /**
+     * Returns a minimal sum of products for a truth table.
+     *
+     * @param table
+     * @return
+     */
+    public ASTNode minimize(TruthTable table)
+    {
+        if (table == null) {
+            throw new IllegalArgumentException("table must not be NULL.");
+        }
+        final int variableCount = table.getVariableCount();
+        checkVariableCount( variableCount );
+
+        primeImplicantCount = 0;
+        productCount = 0;
+        literalCount = 0;
+        branchCount = 0;
+        minimal = true;
+
+        final int[] minterms = getMinterms( table );
+        if ( minterms.length == 0 ) {
+            return new FalseNode();
+        }
+        if ( minterms.length == table.getRowCount() ) {
+            productCount = 1;
+            return new TrueNode();
+        }
+
+        final long[] primes = new PrimeGenerator().getPrimes( table.toLongArray() , variableCount );
+        primeImplicantCount = primes.length;
+
+        final CoverSearch search = new CoverSearch( minterms , primes , variableCount , maxBranches );
+        final long[] cover = search.solve();
+        branchCount = search.branchCount;
+        minimal = ! search.aborted;
+
+        productCount = cover.length;
+        for ( long implicant : cover ) {
+            literalCount += variableCount - Integer.bitCount( getMask( implicant ) );
+        }
+        return toAST( cover , table.getVariables() );
+    }
+
+    private static void checkVariableCount(int count)
+    {
+        if ( count > MAX_VARIABLES ) {
+            throw new IllegalArgumentException("Too many variables ("+count+"), at most "+MAX_VARIABLES+" are supported");
+        }
+    }
+
+    private static int[] getMinterms(TruthTable table)
+    {
+        final long[] words = table.toLongArray();
+        final int[] result = new int[ (int) table.getTrueRowCount() ];
+        int count = 0;
+        for ( int i = 0 ; i < words.length ; i++ )
+        {
+            long word = words[i];
+            while ( word != 0 )
+            {
+                result[ count++ ] = i * 64 + Long.numberOfTrailingZeros( word );
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Implicants are packed as ( mask << 32 ) | value , with all value bits that are set in the mask being zero.
+     */
+    private static int getMask(long implicant) {
+        return (int) ( implicant >>> 32 );
+    }
+
+    private static int getValue(long implicant) {
+        return (int) implicant;
+    }
+
+    /*
+     * Merging implicants that only differ in variable x is done for all implicants at once , by AND-ing
+     * the two halves of the truth table where x is false and true: with f0 and f1 being these halves ,
+     * the primes of f are
+     *
+     *  - the primes of (f0 AND f1) , with x being a don't-care
+     *  - the primes of f0 that are no primes of (f0 AND f1) , with x being false
+     *  - the primes of f1 that are no primes of (f0 AND f1) , with x being true
+     *
+     * Enumerating implicants one by one instead gets way too slow once a product covers a
+     * large part of the table , a product with k don't-cares has 3^k sub-cubes.
+     */
+    private static final class PrimeGenerator
+    {
+        private static final long[] NO_PRIMES = new long[0];
+
+        private final Map<TableKey,long[]> cache = new HashMap<>();
+
+        public long[] getPrimes(long[] table,int variableCount)
+        {
+            if ( isZero( table ) ) {
+                return NO_PRIMES;
+            }
+            if ( isOne( table , variableCount ) ) {
+                return new long[] { (long) ( ( 1 << variableCount ) - 1 ) << 32 };
+            }
+
+            final TableKey key = new TableKey( table , variableCount );
+            final long[] cached = cache.get( key );
+            if ( cached != null ) {
+                return cached;
+            }
+
+            final long[] f0;
+            final long[] f1;
+            if ( variableCount <= 6 )
+            {
+                final int half = 1 << ( variableCount - 1 );
+                final long mask = ( 1L << half ) - 1;
+                f0 = new long[] { table[0] & mask };
+                f1 = new long[] { ( table[0] >>> half ) & mask };
+            } else {
+                f0 = Arrays.copyOfRange( table , 0 , table.length / 2 );
+                f1 = Arrays.copyOfRange( table , table.length / 2 , table.length );
+            }
+            final long[] both = new long[ f0.length ];
+            for ( int i = 0 ; i < both.length ; i++ ) {
+                both[i] = f0[i] & f1[i];
+            }
+
+            final long[] primes0 = getPrimes( f0 , variableCount - 1 );
+            final long[] primes1 = getPrimes( f1 , variableCount - 1 );
+            final long[] merged = getPrimes( both , variableCount - 1 );
+
+            final int bit = 1 << ( variableCount - 1 );
+            long[] result = new long[ primes0.length + primes1.length + merged.length ];
+            int count = 0;
+            for ( long prime : merged ) {
+                result[ count++ ] = prime | ( (long) bit << 32 );
+            }
+            for ( long prime : primes0 ) {
+                if ( Arrays.binarySearch( merged , prime ) < 0 ) {
+                    result[ count++ ] = prime;
+                }
+            }
+            for ( long prime : primes1 ) {
+                if ( Arrays.binarySearch( merged , prime ) < 0 ) {
+                    result[ count++ ] = prime | bit;
+                }
+            }
+            result = Arrays.copyOf( result , count );
+            Arrays.sort( result );
+            cache.put( key , result );
+            return result;
+        }
+
+        private static boolean isZero(long[] table)
+        {
+            for ( long word : table ) {
+                if ( word != 0 ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isOne(long[] table,int variableCount)
+        {
+            if ( variableCount < 6 ) {
+                return table[0] == ( 1L << ( 1 << variableCount ) ) - 1;
+            }
+            for ( long word : table ) {
+                if ( word != ~0L ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class TableKey
+    {
+        private final long[] table;
+        private final int variableCount;
+        private final int hash;
+
+        public TableKey(long[] table,int variableCount)
+        {
+            this.table = table;
+            this.variableCount = variableCount;
+            this.hash = 31 * Arrays.hashCode( table ) + variableCount;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if ( ! ( obj instanceof TableKey ) ) {
+                return false;
+            }
+            final TableKey other = (TableKey) obj;
+            return hash == other.hash && variableCount == other.variableCount && Arrays.equals( table , other.table );
+        }
+    }
+
+    private static ASTNode toAST(long[] cover,List<Identifier> variables)
+    {
+        final int variableCount = variables.size();
+        final List<Long> products = new ArrayList<>();
+        for ( long implicant : cover ) {
+            products.add( implicant );
+        }
+        // order products by their literals , in variable order
+        Collections.sort( products , new Comparator<Long>() {
+
+            @Override
+            public int compare(Long o1, Long o2)
+            {
+                for ( int i = 0 ; i < variableCount ; i++ )
+                {
+                    final int bit = 1 << ( variableCount - 1 - i );
+                    final int result = Integer.compare( rank( o1 , bit ) , rank( o2 , bit ) );
+                    if ( result != 0 ) {
+                        return result;
+                    }
+                }
+                return 0;
+            }
+
+            private int rank(long implicant,int bit)
+            {
+                if ( ( getMask( implicant ) & bit ) != 0 ) {
+                    return 2;
+                }
+                return ( getValue( implicant ) & bit ) != 0 ? 0 : 1;
+            }
+        });
+
+        ASTNode result = null;
+        for ( long implicant : products )
+        {
+            ASTNode product = null;
+            for ( int i = 0 ; i < variableCount ; i++ )
+            {
+                final int bit = 1 << ( variableCount - 1 - i );
+                if ( ( getMask( implicant ) & bit ) == 0 )
+                {
+                    ASTNode literal = new IdentifierNode( variables.get(i) );
+                    if ( ( getValue( implicant ) & bit ) == 0 ) {
+                        literal = OperatorNode.not( literal );
+                    }
+                    product = product == null ? literal : OperatorNode.and( product , literal );
+                }
+            }
+            result = result == null ? product : OperatorNode.or( result , product );
+        }
+        return result;
+    }
+
+    /**
+     * Branch-and-bound search for a minimal set of prime implicants covering all minterms.
+     */
+    private static final class CoverSearch
+    {
+        private final long[] primes;
+        private final int[][] mintermsByPrime;
+        private final int[][] primesByMinterm;
+        private final int[] literalCounts;
+        private final long maxBranches;
+
+        // how many chosen primes cover each minterm
+        private final int[] coverCounts;
+        private int uncoveredCount;
+        private final boolean[] excluded;
+
+        private final int[] chosen;
+        private int chosenCount;
+        private int chosenLiterals;
+
+        private int[] best;
+        private int bestLiterals;
+
+        private final int[] stamps;
+        private int stamp;
+
+        public long branchCount;
+        public boolean aborted;
+
+        public CoverSearch(int[] minterms,long[] primes,int variableCount,long maxBranches)
+        {
+            this.primes = primes;
+            this.maxBranches = maxBranches;
+
+            final int[] mintermIndex = new int[ 1 << variableCount ];
+            for ( int i = 0 ; i < minterms.length ; i++ ) {
+                mintermIndex[ minterms[i] ] = i;
+            }
+
+            final int[] primeCounts = new int[ minterms.length ];
+            mintermsByPrime = new int[ primes.length ][];
+            literalCounts = new int[ primes.length ];
+            for ( int p = 0 ; p < primes.length ; p++ )
+            {
+                final int mask = getMask( primes[p] );
+                final int value = getValue( primes[p] );
+                final int[] covered = new int[ 1 << Integer.bitCount( mask ) ];
+                int count = 0;
+                // enumerate all sub-masks of the don't-care mask
+                int subMask = mask;
+                do {
+                    final int minterm = mintermIndex[ value | subMask ];
+                    covered[ count++ ] = minterm;
+                    primeCounts[ minterm ]++;
+                    subMask = ( subMask - 1 ) & mask;
+                } while ( subMask != mask );
+                mintermsByPrime[p] = covered;
+                literalCounts[p] = variableCount - Integer.bitCount( mask );
+            }
+
+            primesByMinterm = new int[ minterms.length ][];
+            for ( int m = 0 ; m < minterms.length ; m++ ) {
+                primesByMinterm[m] = new int[ primeCounts[m] ];
+            }
+            Arrays.fill( primeCounts , 0 );
+            for ( int p = 0 ; p < primes.length ; p++ )
+            {
+                for ( int m : mintermsByPrime[p] ) {
+                    primesByMinterm[m][ primeCounts[m]++ ] = p;
+                }
+            }
+
+            coverCounts = new int[ minterms.length ];
+            uncoveredCount = minterms.length;
+            excluded = new boolean[ primes.length ];
+            chosen = new int[ minterms.length ];
+            stamps = new int[ primes.length ];
+        }
+
+        public long[] solve()
+        {
+            greedy();
+            search();
+
+            final long[] result = new long[ best.length ];
+            for ( int i = 0 ; i < best.length ; i++ ) {
+                result[i] = primes[ best[i] ];
+            }
+            return result;
+        }
+
+        /*
+         * Finds an initial cover , picking the prime that covers the most
+         * uncovered minterms until all are covered.
+         */
+        private void greedy()
+        {
+            while ( uncoveredCount > 0 )
+            {
+                int bestPrime = -1;
+                int bestGain = 0;
+                for ( int p = 0 ; p < primes.length ; p++ )
+                {
+                    final int gain = getGain( p );
+                    if ( gain > bestGain || ( gain == bestGain && gain > 0 && literalCounts[p] < literalCounts[bestPrime] ) )
+                    {
+                        bestPrime = p;
+                        bestGain = gain;
+                    }
+                }
+                choose( bestPrime );
+            }
+
+            // drop primes that became redundant
+            for ( int i = chosenCount - 1 ; i >= 0 ; i-- )
+            {
+                final int p = chosen[i];
+                if ( isRedundant( p ) )
+                {
+                    unchoose( p );
+                    System.arraycopy( chosen , i + 1 , chosen , i , chosenCount - i );
+                }
+            }
+            recordBest();
+
+            while ( chosenCount > 0 ) {
+                unchoose( chosen[ chosenCount - 1 ] );
+            }
+        }
+
+        private boolean isRedundant(int prime)
+        {
+            for ( int m : mintermsByPrime[ prime ] ) {
+                if ( coverCounts[m] < 2 ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void search()
+        {
+            if ( aborted ) {
+                return;
+            }
+            if ( branchCount++ >= maxBranches )
+            {
+                aborted = true;
+                return;
+            }
+            if ( uncoveredCount == 0 )
+            {
+                if ( chosenCount < best.length || ( chosenCount == best.length && chosenLiterals < bestLiterals ) ) {
+                    recordBest();
+                }
+                return;
+            }
+
+            // every other uncovered minterm needs at least one more product
+            final int lowerBound = chosenCount + getLowerBound();
+            if ( lowerBound > best.length || ( lowerBound == best.length && chosenLiterals >= bestLiterals ) ) {
+                return;
+            }
+
+            // branch on the minterm with the fewest candidates
+            int minterm = -1;
+            int minCandidates = Integer.MAX_VALUE;
+            for ( int m = 0 ; m < coverCounts.length && minCandidates > 1 ; m++ )
+            {
+                if ( coverCounts[m] == 0 )
+                {
+                    final int count = getCandidateCount( m );
+                    if ( count < minCandidates )
+                    {
+                        minterm = m;
+                        minCandidates = count;
+                    }
+                }
+            }
+            if ( minCandidates == 0 ) {
+                return;
+            }
+
+            final int[] candidates = getCandidates( minterm , minCandidates );
+            int excludedCount = 0;
+            for ( int p : candidates )
+            {
+                choose( p );
+                search();
+                unchoose( p );
+                if ( aborted ) {
+                    break;
+                }
+                // all covers containing p have been looked at
+                excluded[p] = true;
+                excludedCount++;
+            }
+            for ( int i = 0 ; i < excludedCount ; i++ ) {
+                excluded[ candidates[i] ] = false;
+            }
+        }
+
+        /*
+         * Uncovered minterms that pairwise share no candidate prime need distinct products.
+         */
+        private int getLowerBound()
+        {
+            stamp++;
+            int result = 0;
+            for ( int m = 0 ; m < coverCounts.length ; m++ )
+            {
+                if ( coverCounts[m] != 0 ) {
+                    continue;
+                }
+                boolean independent = true;
+                for ( int p : primesByMinterm[m] )
+                {
+                    if ( ! excluded[p] && stamps[p] == stamp )
+                    {
+                        independent = false;
+                        break;
+                    }
+                }
+                if ( independent )
+                {
+                    result++;
+                    for ( int p : primesByMinterm[m] ) {
+                        stamps[p] = stamp;
+                    }
+                }
+            }
+            return result;
+        }
+
+        private int getCandidateCount(int minterm)
+        {
+            int result = 0;
+            for ( int p : primesByMinterm[ minterm ] ) {
+                if ( ! excluded[p] ) {
+                    result++;
+                }
+            }
+            return result;
+        }
+
+        /*
+         * Returns the candidate primes of a minterm , most newly covered minterms first.
+         */
+        private int[] getCandidates(int minterm,int count)
+        {
+            final int[] result = new int[ count ];
+            final int[] gains = new int[ count ];
+            int size = 0;
+            for ( int p : primesByMinterm[ minterm ] )
+            {
+                if ( excluded[p] ) {
+                    continue;
+                }
+                final int gain = getGain( p );
+                int i = size++;
+                while ( i > 0 && ( gains[i-1] < gain || ( gains[i-1] == gain && literalCounts[ result[i-1] ] > literalCounts[p] ) ) )
+                {
+                    result[i] = result[i-1];
+                    gains[i] = gains[i-1];
+                    i--;
+                }
+                result[i] = p;
+                gains[i] = gain;
+            }
+            return result;
+        }
+
+        private int getGain(int prime)
+        {
+            int result = 0;
+            for ( int m : mintermsByPrime[ prime ] ) {
+                if ( coverCounts[m] == 0 ) {
+                    result++;
+                }
+            }
+            return result;
+        }
+
+        private void choose(int prime)
+        {
+            for ( int m : mintermsByPrime[ prime ] ) {
+                if ( coverCounts[m]++ == 0 ) {
+                    uncoveredCount--;
+                }
+            }
+            chosen[ chosenCount++ ] = prime;
+            chosenLiterals += literalCounts[ prime ];
+        }
+
+        /*
+         * Undoes a choice , the caller is responsible for removing the prime from the chosen ones.
+         */
+        private void unchoose(int prime)
+        {
+            for ( int m : mintermsByPrime[ prime ] ) {
+                if ( --coverCounts[m] == 0 ) {
+                    uncoveredCount++;
+                }
+            }
+            chosenCount--;
+            chosenLiterals -= literalCounts[ prime ];
+        }
+
+        private void recordBest()
+        {
+            best = Arrays.copyOf( chosen , chosenCount );
+            bestLiterals = chosenLiterals;
+        }
+    }
+
+    /**
+     * Sets the max. number of branches the cover search may take.
+     *
+     * @param maxBranches
+     */
+    public void setMaxBranches(long maxBranches)
+    {
+        if ( maxBranches < 1 ) {
+            throw new IllegalArgumentException("maxBranches must be positive");
+        }
+        this.maxBranches = maxBranches;
+    }
+
+    /**
+     * Returns whether the last result is guaranteed to be minimal , this is only
+     * not the case when the cover search hit {@link #setMaxBranches(long) the branch limit}.
+     *
+     * @return
+     */
+    public boolean isMinimal() {
+        return minimal;
+    }
+
+    public int getPrimeImplicantCount() {
+        return primeImplicantCount;
+    }
+
+    @Override
+    public int getProductCount() {
+        return productCount;
+    }
+
+    @Override
+    public int getLiteralCount() {
+        return literalCount;
+    }
+
+    public long getBranchCount() {
+        return branchCount;
+    }
+}
@@ -0,0 +1,589 @@
+package de.codesourcery.booleanalgebra.rewrite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+import de.codesourcery.booleanalgebra.IExpressionContext;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.CanonicalOrder;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.OperatorType;
+import de.codesourcery.booleanalgebra.ast.TermNode;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+
+/**
+ * The laws of boolean algebra used by {@link de.codesourcery.booleanalgebra.ASTTransformations#simplify(ASTNode, IExpressionContext)},
+ * as {@link IRewriteRule}s.
+ *
+ * <p>Each rule matches the same patterns as the corresponding law in {@link de.codesourcery.booleanalgebra.ASTTransformations},
+ * except that only literals , variables with a literal value and their negations are treated as literal values.</p>
+ *
+ * <p>The distributive law is not part of the {@link #createDefaultRules() default rules}: together with the
+ * other laws it does not converge and keeps expanding terms in both directions.</p>
+ *
+ * <p>Instead of the associative law , the default rules {@link #flattening() flatten} nested AND / OR terms
+ * into n-ary nodes whose children are kept in {@link CanonicalOrder canonical order}. Idempotency and complements
+ * then only need to compare neighbouring children and absorption merges two sorted child lists.</p>
+ */
+public final class BooleanLaws
+{
+    /**
+     * Default max. node count of terms produced by the distributive law.
+     */
+    public static final int DEFAULT_MAX_DISTRIBUTED_NODE_COUNT = 1000;
+
+    private static final Set<OperatorType> AND_OR = EnumSet.of( OperatorType.AND , OperatorType.OR );
+    private static final Set<OperatorType> NOT = EnumSet.of( OperatorType.NOT );
+
+    private BooleanLaws() {
+    }
+
+    /**
+     * Returns all laws except the distributive law , in the order they get applied by {@link de.codesourcery.booleanalgebra.ASTTransformations}.
+     *
+     * @return
+     */
+    public static List<IRewriteRule> createDefaultRules() {
+        return createDefaultRules( false );
+    }
+
+    /**
+     * Returns all laws , in the order they get applied by {@link de.codesourcery.booleanalgebra.ASTTransformations}.
+     *
+     * @param withDistributiveLaw whether to include {@link #distributivity(int) the distributive law}
+     * @return
+     */
+    public static List<IRewriteRule> createDefaultRules(boolean withDistributiveLaw)
+    {
+        final List<IRewriteRule> result = new ArrayList<>();
+        result.add( flattening() );
+        result.add( idempotency() );
+        result.add( doubleNegation() );
+        result.add( duality() );
+        result.add( identity() );
+        result.add( extrema() );
+        result.add( complements() );
+        result.add( absorption() );
+        if ( withDistributiveLaw ) {
+            result.add( distributivity( DEFAULT_MAX_DISTRIBUTED_NODE_COUNT ) );
+        }
+        result.add( deMorgan() );
+        return result;
+    }
+
+    private static abstract class Rule implements IRewriteRule
+    {
+        private final String name;
+        private final Set<OperatorType> rootTypes;
+
+        protected Rule(String name,Set<OperatorType> rootTypes) {
+            this.name = name;
+            this.rootTypes = rootTypes;
+        }
+
+        @Override
+        public final String getName() {
+            return name;
+        }
+
+        @Override
+        public final Set<OperatorType> getRootTypes() {
+            return rootTypes;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * (a and b) and c => a and (b and c) , likewise for OR.
+     *
+     * <p>Only applies to binary nodes and if c is a leaf node.</p>
+     */
+    public static IRewriteRule associativity()
+    {
+        return new Rule( "ASSOCIATIVITY" , AND_OR ) {
+
+            @Override
+            public ASTNode rewrite(OperatorNode node, IExpressionContext context)
+            {
+                if ( node.getChildCount() != 2 ) {
+                    return null;
+                }
+                final ASTNode left = node.leftChild();
+                final ASTNode right = node.rightChild();
+                if ( ! right.isLeafNode() || ! isNonTrivialTerm( left ) || getType( unwrap( left ) ) != node.getType() ||
+                     unwrap( left ).getChildCount() != 2 ) 
+                {
+                    return null;
+                }
+                final OperatorNode unwrappedLeft = (OperatorNode) unwrap( left );
+                final ASTNode term = new TermNode( new OperatorNode( node.getType() , unwrappedLeft.rightChild() , right ) );
+                return new OperatorNode( node.getType() , unwrappedLeft.leftChild() , term );
+            }
+        };
+    }
+
+    /**
+     * a and (b and c) => a and b and c , likewise for OR.
+     *
+     * <p>Merges all children of the same type into their parent and sorts the children
+     * in {@link CanonicalOrder canonical order}.</p>
+     */
+    public static IRewriteRule flattening()
+    {
+        return new Rule( "FLATTENING" , AND_OR ) {
+
+            @Override
+            public ASTNode rewrite(OperatorNode node, IExpressionContext context)
+            {
+                boolean nested = false;
+                for ( ASTNode child : node.children() ) {
+                    nested |= getType( unwrap( child ) ) == node.getType();
+                }
+                if ( ! nested && CanonicalOrder.isSorted( node.children() ) ) {
+                    return null;
+                }
+                final List<ASTNode> children = new ArrayList<>();
+                for ( ASTNode child : node.children() )
+                {
+                    final ASTNode unwrapped = unwrap( child );
+                    if ( getType( unwrapped ) == node.getType() ) {
+                        children.addAll( unwrapped.children() );
+                    } else {
+                        children.add( child );
+                    }
+                }
+                Collections.sort( children , CanonicalOrder.INSTANCE );
+                return new OperatorNode( node.getType() , children );
+            }
+        };
+    }
+
+    /**
+     * Applies {@link #flattening()} to all nodes of a term in a single pass , without sorting any children.
+     *
+     * <p>Flattening a chain of n nested binary nodes one node at a time copies the children of the
+     * growing node over and over again , which takes O(n^2). This pass extends the largest nested node
+     * in place instead and takes linear time.</p>
+     *
+     * @param term root of the term to flatten , gets modified
+     * @return the flattened term , may be a different node than the input
+     */
+    public static ASTNode flattenAll(ASTNode term)
+    {
+        // children are flattened before their parents , nodes that got replaced map to their replacements
+        final List<ASTNode> nodes = new ArrayList<>();
+        final Stack<ASTNode> stack = new Stack<>();
+        stack.push( term );
+        while ( ! stack.isEmpty() )
+        {
+            final ASTNode node = stack.pop();
+            nodes.add( node );
+            stack.addAll( node.children() );
+        }
+
+        final Map<ASTNode,ASTNode> replacements = new IdentityHashMap<>();
+        for ( int i = nodes.size() - 1 ; i >= 0 ; i-- )
+        {
+            final ASTNode node = nodes.get( i );
+            if ( ! node.hasChildren() ) {
+                continue;
+            }
+            final List<ASTNode> children = new ArrayList<>( node.getChildCount() );
+            boolean childReplaced = false;
+            for ( ASTNode child : node.children() )
+            {
+                final ASTNode replacement = replacements.get( child );
+                childReplaced |= replacement != null;
+                children.add( replacement != null ? replacement : child );
+            }
+
+            ASTNode result = flattenInPlace( node , children );
+            if ( result == node && childReplaced )
+            {
+                result = node.createCopy( false );
+                for ( ASTNode child : children ) {
+                    result.addChild( child );
+                }
+            }
+            if ( result != node ) {
+                replacements.put( node , result );
+            }
+        }
+        final ASTNode result = replacements.get( term );
+        if ( result == null ) {
+            return term;
+        }
+        result.setParent( null );
+        return result;
+    }
+
+    /*
+     * Merges the children of a node into its largest nested child of the same type.
+     *
+     * Returns either the extended child or the input node if none of its children has the same type.
+     */
+    private static ASTNode flattenInPlace(ASTNode node,List<ASTNode> children)
+    {
+        final OperatorType type = getType( node );
+        if ( ! AND_OR.contains( type ) ) {
+            return node;
+        }
+        int targetIndex = -1;
+        for ( int i = 0 ; i < children.size() ; i++ )
+        {
+            final ASTNode unwrapped = unwrap( children.get( i ) );
+            if ( getType( unwrapped ) == type && ( targetIndex == -1 || unwrapped.getChildCount() > unwrap( children.get( targetIndex ) ).getChildCount() ) ) {
+                targetIndex = i;
+            }
+        }
+        if ( targetIndex == -1 ) {
+            return node;
+        }
+        final ASTNode target = unwrap( children.get( targetIndex ) );
+        target.setParent( null );
+        for ( int i = 0 ; i < children.size() ; i++ )
+        {
+            if ( i == targetIndex ) {
+                continue;
+            }
+            final ASTNode unwrapped = unwrap( children.get( i ) );
+            if ( getType( unwrapped ) == type )
+            {
+                for ( ASTNode child : unwrapped.children() ) {
+                    target.addChild( child );
+                }
+            } else {
+                target.addChild( children.get( i ) );
+            }
+        }
+        return target;
+    }
+
+    /**
+     * a and a => a , a or a => a
+     *
+     * <p>Only compares neighbouring children , so all duplicates are only found
+     * if the children are {@link #flattening() sorted}.</p>
+     */
+    public static IRewriteRule idempotency()
+    {
+        return new Rule( "IDEMPOTENCY" , AND_OR ) {
+
+            @Override
+            public ASTNode rewrite(OperatorNode node, IExpressionContext context)
+            {
+                List<ASTNode> children = null;
+                for ( int i = 1 ; i < node.getChildCount() ; i++ )
+                {
+                    final boolean duplicate = isEquivalent( unwrap( node.child( i - 1 ) ) , unwrap( node.child(i) ) , context );
+                    if ( duplicate && children == null ) {
+                        children = new ArrayList<>( node.children().subList( 0 , i ) );
+                    } else if ( ! duplicate && children != null ) {
+                        children.add( node.child(i) );
+                    }
+                }
+                return children == null ? null : combine( node.getType() , children );
+            }
+        };
+    }
+
+    /**
+     * not( not a ) => a
+     */
+    public static IRewriteRule doubleNegation()
+    {
+        return new Rule( "DOUBLE NEGATION" , NOT ) {
+
+            @Override
+            public ASTNode rewrite(OperatorNode node, IExpressionContext context)
+            {
+                final ASTNode child = unwrap( node.leftChild() );
+                return child.isNOT() ? child.leftChild() : null;
+            }
+        };
+    }
+
+    /**
+     * not true => false , not false => true
+     */
+    public static IRewriteRule duality()
+    {
+        return new Rule( "DUALITY" , NOT ) {
+
+            @Override
+            public ASTNode rewrite(OperatorNode node, IExpressionContext context)
+            {
+                final Boolean value = literalValue( node , context );
+                if ( value == null ) {
+                    return null;
+                }
+                return value ? new TrueNode() : new FalseNode();
+            }
+        };
+    }
+
+    /**
+     * a and true => a , a or false => a
+     */
+    public static IRewriteRule identity()
+    {
+        return new Rule( "IDENTITY" , AND_OR ) {
+
+            @Override
+            public ASTNode rewrite(OperatorNode node, IExpressionContext context)
+            {
+                final Boolean neutral = Boolean.valueOf( node.isAND() );
+                final List<ASTNode> children = new ArrayList<>();
+                for ( ASTNode child : node.children() )
+                {
+                    if ( ! neutral.equals( literalValue( child , context ) ) ) {
+                        children.add( child );
+                    }
+                }
+                if ( children.size() == node.getChildCount() ) {
+                    return null;
+                }
+                if ( children.isEmpty() ) {
+                    return neutral ? new TrueNode() : new FalseNode();
+                }
+                return combine( node.getType() , children );
+            }
+        };
+    }
+
+    /**
+     * a and false => false , a or true => true
+     */
+    public static IRewriteRule extrema()
+    {
+        return new Rule( "EXTREMA" , AND_OR ) {
+
+            @Override
+            public ASTNode rewrite(OperatorNode node, IExpressionContext context)
+            {
+                final Boolean extremum = Boolean.valueOf( node.isOR() );
+                for ( ASTNode child : node.children() )
+                {
+                    if ( extremum.equals( literalValue( child , context ) ) ) {
+                        return extremum ? new TrueNode() : new FalseNode();
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * a and not a => false , a or not a => true
+     *
+     * <p>Only compares neighbouring children , so all complements are only found
+     * if the children are {@link #flattening() sorted}.</p>
+     */
+    public static IRewriteRule complements()
+    {
+        return new Rule( "COMPLEMENTS" , AND_OR ) {
+
+            @Override
+            public ASTNode rewrite(OperatorNode node, IExpressionContext context)
+            {
+                for ( int i = 1 ; i < node.getChildCount() ; i++ )
+                {
+                    if ( CanonicalOrder.isComplement( node.child( i - 1 ) , node.child(i) ) ) {
+                        return node.isAND() ? new FalseNode() : new TrueNode();
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * a and (a or b) => a , a or (a and b) => a
+     *
+     * <p>Removes every child of the opposite type that shares a child with its parent. Both child lists
+     * are merged in {@link CanonicalOrder canonical order} , so all shared children are only found
+     * if they are {@link #flattening() sorted}.</p>
+     */
+    public static IRewriteRule absorption()
+    {
+        return new Rule( "ABSORPTION" , AND_OR ) {
+
+            @Override
+            public ASTNode rewrite(OperatorNode node, IExpressionContext context)
+            {
+                final List<ASTNode> children = new ArrayList<>();
+                for ( ASTNode child : node.children() )
+                {
+                    final ASTNode unwrapped = unwrap( child );
+                    if ( ! isOpposite( node.getType() , getType( unwrapped ) ) || ! sharesChild( node , unwrapped ) ) {
+                        children.add( child );
+                    }
+                }
+                if ( children.size() == node.getChildCount() ) {
+                    return null;
+                }
+                return combine( node.getType() , children );
+            }
+
+            private boolean sharesChild(ASTNode parent,ASTNode term)
+            {
+                int i = 0;
+                int j = 0;
+                while ( i < parent.getChildCount() && j < term.getChildCount() )
+                {
+                    final int cmp = CanonicalOrder.INSTANCE.compare( parent.child(i) , term.child(j) );
+                    if ( cmp == 0 ) {
+                        return true;
+                    }
+                    if ( cmp < 0 ) {
+                        i++;
+                    } else {
+                        j++;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * a and (b or c) => (a and b) or (a and c) , a or (b and c) => (a or b) and (a or c)
+     *
+     * <p>Only applies if both sides differ in size and the resulting term
+     * does not have more than <code>maxNodeCount</code> nodes.</p>
+     *
+     * @param maxNodeCount
+     */
+    public static IRewriteRule distributivity(final int maxNodeCount)
+    {
+        return new Rule( "DISTRIBUTIVITY" , AND_OR ) {
+
+            @Override
+            public ASTNode rewrite(OperatorNode node, IExpressionContext context)
+            {
+                if ( node.getChildCount() != 2 ) {
+                    return null;
+                }
+                final ASTNode result = distribute( node , unwrap( node.leftChild() ) , unwrap( node.rightChild() ) );
+                return result != null ? result : distribute( node , unwrap( node.rightChild() ) , unwrap( node.leftChild() ) );
+            }
+
+            private ASTNode distribute(OperatorNode node,ASTNode other,ASTNode term)
+            {
+                if ( ! ( term instanceof OperatorNode ) || ! isOpposite( node.getType() , ((OperatorNode) term).getType() ) ||
+                     term.getChildCount() != 2 ) 
+                {
+                    return null;
+                }
+                final int otherCount = other.getNodeCount();
+                final int termCount = term.getNodeCount();
+                if ( otherCount == termCount || 2 * otherCount + termCount + 4 > maxNodeCount ) {
+                    return null;
+                }
+                final ASTNode left = maybeWrapInTerm( new OperatorNode( node.getType() , other.createCopy( true ) , term.child(0) ) );
+                final ASTNode right = maybeWrapInTerm( new OperatorNode( node.getType() , other , term.child(1) ) );
+                return new OperatorNode( ((OperatorNode) term).getType() , left , right );
+            }
+        };
+    }
+
+    /**
+     * not( a and b ) => not a or not b , not( a or b ) => not a and not b
+     */
+    public static IRewriteRule deMorgan()
+    {
+        return new Rule( "DE MORGAN" , NOT ) {
+
+            @Override
+            public ASTNode rewrite(OperatorNode node, IExpressionContext context)
+            {
+                final ASTNode child = unwrap( node.leftChild() );
+                if ( ! child.isAND() && ! child.isOR() ) {
+                    return null;
+                }
+                final List<ASTNode> negated = new ArrayList<>();
+                for ( ASTNode operand : child.children() ) {
+                    negated.add( OperatorNode.not( unwrap( operand ) ) );
+                }
+                return new OperatorNode( child.isAND() ? OperatorType.OR : OperatorType.AND , negated );
+            }
+        };
+    }
+
+    private static boolean isOpposite(OperatorType type1,OperatorType type2)
+    {
+        return ( type1 == OperatorType.AND && type2 == OperatorType.OR ) ||
+               ( type1 == OperatorType.OR && type2 == OperatorType.AND );
+    }
+
+    /*
+     * Returns the literal value of a literal , a variable that has a literal value or a negation of these (or NULL).
+     *
+     * Unlike ASTNode#isEquivalent() this does not evaluate AND / OR terms , the engine
+     * works bottom-up so these have already been folded by the identity and extrema laws.
+     */
+    private static Boolean literalValue(ASTNode node,IExpressionContext context)
+    {
+        ASTNode current = unwrap( node );
+        boolean negate = false;
+        while ( current.isNOT() ) {
+            negate = ! negate;
+            current = unwrap( current.leftChild() );
+        }
+        if ( current.isLiteralValue() || ( current instanceof IdentifierNode && current.hasLiteralValue( context ) ) ) {
+            return current.getLiteralValue( context ) ^ negate;
+        }
+        return null;
+    }
+
+    private static boolean isEquivalent(ASTNode node1,ASTNode node2,IExpressionContext context)
+    {
+        final Boolean value1 = literalValue( node1 , context );
+        final Boolean value2 = literalValue( node2 , context );
+        if ( value1 != null || value2 != null ) {
+            return value1 != null && value1.equals( value2 );
+        }
+        return node1.isEquals( node2 );
+    }
+
+    /*
+     * Returns the only child or a new node holding all children.
+     */
+    private static ASTNode combine(OperatorType type,List<ASTNode> children) {
+        return children.size() == 1 ? unwrap( children.get(0) ) : new OperatorNode( type , children );
+    }
+
+    private static boolean isNonTrivialTerm(ASTNode node)
+    {
+        return node instanceof TermNode && ! node.child(0).isLeafNode();
+    }
+
+    private static ASTNode maybeWrapInTerm(ASTNode node) {
+        return node.getNodeCount() == 1 ? node : new TermNode( node );
+    }
+
+    private static ASTNode unwrap(ASTNode node)
+    {
+        ASTNode result = node;
+        while ( result instanceof TermNode && result.hasChildren() ) {
+            result = result.child(0);
+        }
+        return result;
+    }
+
+    private static OperatorType getType(ASTNode node) {
+        return node instanceof OperatorNode ? ((OperatorNode) node).getType() : null;
+    }
+}
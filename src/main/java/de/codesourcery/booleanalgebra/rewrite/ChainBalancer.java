@@ -0,0 +1,265 @@
+package de.codesourcery.booleanalgebra.rewrite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.OperatorType;
+import de.codesourcery.booleanalgebra.ast.TermNode;
+
+/**
+ * Turns chains of AND / OR nodes into balanced trees.
+ *
+ * <p>The parser turns <code>a or b or c or ...</code> into a left-deep chain (and <code>a or (b or (c or ...))</code>
+ * into a right-deep one) , so the depth of a term grows linearly with the length of its chains. Both operators are
+ * associative , so the operands of a chain (all nested nodes with the same operator , including the terms
+ * wrapping them) can be regrouped into a balanced tree of binary nodes. A chain of n operands that are all
+ * of the same height gets depth log2(n) , operands of different heights are grouped so that higher operands
+ * end up closer to the root.
+ * Chains that consist of a single (n-ary) node are flat already and keep their arity.</p>
+ *
+ * <p>Optionally , the operands of each chain get ordered by their estimated evaluation cost , cheapest first ,
+ * before the tree gets built. The cost of a term is its number of nodes. Otherwise operands keep their order and
+ * balancing never makes a term deeper.</p>
+ *
+ * <p>Terms are processed iteratively , so chains of any length can be balanced. Instances are immutable and thread-safe.</p>
+ */
+public final class ChainBalancer
+{
+    /**
+     * Balances chains , keeping the order of their operands.
+     */
+    public static final ChainBalancer DEFAULT = new ChainBalancer( false );
+
+    /**
+     * Balances chains , ordering their operands by ascending cost.
+     */
+    public static final ChainBalancer ORDER_BY_COST = new ChainBalancer( true );
+
+    private final boolean orderByCost;
+
+    /**
+     *
+     * @param orderByCost whether to order the operands of each chain by their estimated cost
+     */
+    public ChainBalancer(boolean orderByCost) {
+        this.orderByCost = orderByCost;
+    }
+
+    public boolean isOrderByCost() {
+        return orderByCost;
+    }
+
+    /**
+     * Balances all chains of a term.
+     *
+     * @param term root of the term to balance , gets modified
+     * @return the balanced term , may be a different node than the input
+     */
+    public ASTNode balance(ASTNode term)
+    {
+        if (term == null) {
+            throw new IllegalArgumentException("term must not be NULL.");
+        }
+        // nodes that continue the chain of their parent , they get merged into the chain instead of being processed on their own
+        final Set<ASTNode> chainLinks = Collections.newSetFromMap( new IdentityHashMap<ASTNode,Boolean>() );
+
+        final List<ASTNode> nodes = new ArrayList<>();
+        final Stack<ASTNode> stack = new Stack<>();
+        stack.push( term );
+        while ( ! stack.isEmpty() )
+        {
+            final ASTNode node = stack.pop();
+            nodes.add( node );
+            final OperatorType type = getChainType( node );
+            for ( ASTNode child : node.children() )
+            {
+                if ( type != null ) {
+                    markChainLinks( child , type , chainLinks );
+                }
+                stack.push( child );
+            }
+        }
+
+        // children are balanced before their parents , nodes that got replaced map to their replacements
+        final Map<ASTNode,ASTNode> replacements = new IdentityHashMap<>();
+        final Map<ASTNode,Integer> heights = new IdentityHashMap<>();
+        final Map<ASTNode,Integer> costs = new IdentityHashMap<>();
+        for ( int i = nodes.size() - 1 ; i >= 0 ; i-- )
+        {
+            final ASTNode node = nodes.get( i );
+            if ( chainLinks.contains( node ) ) {
+                continue;
+            }
+            final OperatorType type = getChainType( node );
+            final List<ASTNode> operands = gatherOperands( node , chainLinks , replacements );
+            if ( orderByCost && type != null )
+            {
+                Collections.sort( operands , new Comparator<ASTNode>() {
+
+                    @Override
+                    public int compare(ASTNode o1, ASTNode o2) {
+                        return Integer.compare( costs.get( o1 ) , costs.get( o2 ) );
+                    }
+                });
+            }
+
+            final boolean isChain = type != null && operands.size() > 2 && isChain( node , chainLinks );
+            final ASTNode result;
+            if ( isChain ) {
+                result = build( type , operands , heights );
+            } 
+            else 
+            {
+                result = rebuild( node , operands );
+                int height = 0;
+                for ( ASTNode operand : operands ) {
+                    height = Math.max( height , heights.get( operand ) + 1 );
+                }
+                heights.put( result , height );
+            }
+            if ( result != node ) {
+                replacements.put( node , result );
+            }
+            if ( orderByCost )
+            {
+                // number of nodes
+                int cost = isChain ? operands.size() - 1 : 1;
+                for ( ASTNode operand : operands ) {
+                    cost += costs.get( operand );
+                }
+                costs.put( result , cost );
+            }
+        }
+        final ASTNode result = replacements.get( term );
+        if ( result == null ) {
+            return term;
+        }
+        result.setParent( null );
+        return result;
+    }
+
+    /*
+     * Marks a child (and all terms wrapping it) as a chain link if it has the same operator as its parent.
+     */
+    private static void markChainLinks(ASTNode child,OperatorType parentType,Set<ASTNode> chainLinks)
+    {
+        ASTNode unwrapped = child;
+        while ( unwrapped instanceof TermNode && unwrapped.hasChildren() ) {
+            unwrapped = unwrapped.child(0);
+        }
+        if ( getChainType( unwrapped ) != parentType ) {
+            return;
+        }
+        for ( ASTNode current = child ; current != unwrapped ; current = current.child(0) ) {
+            chainLinks.add( current );
+        }
+        chainLinks.add( unwrapped );
+    }
+
+    private static boolean isChain(ASTNode node,Set<ASTNode> chainLinks)
+    {
+        for ( ASTNode child : node.children() )
+        {
+            if ( chainLinks.contains( child ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Returns the (already balanced) operands of a chain from left to right ,
+     * or the children of the node if it is not an AND / OR node.
+     */
+    private static List<ASTNode> gatherOperands(ASTNode node,Set<ASTNode> chainLinks,Map<ASTNode,ASTNode> replacements)
+    {
+        final List<ASTNode> result = new ArrayList<>( node.getChildCount() );
+        final Stack<ASTNode> stack = new Stack<>();
+        for ( int i = node.getChildCount() - 1 ; i >= 0 ; i-- ) {
+            stack.push( node.child( i ) );
+        }
+        while ( ! stack.isEmpty() )
+        {
+            final ASTNode current = stack.pop();
+            if ( chainLinks.contains( current ) )
+            {
+                for ( int i = current.getChildCount() - 1 ; i >= 0 ; i-- ) {
+                    stack.push( current.child( i ) );
+                }
+                continue;
+            }
+            final ASTNode replacement = replacements.get( current );
+            result.add( replacement != null ? replacement : current );
+        }
+        return result;
+    }
+
+    /*
+     * Builds a tree of (close to) minimal height , without changing the order of the operands.
+     *
+     * Greedily merges neighbouring subtrees whose merged height is a local minimum: before an operand gets pushed ,
+     * the two topmost subtrees are merged as long as they are not higher than the topmost subtree and the new operand.
+     * Operands of the same height end up in a perfectly balanced tree , like the bits of a binary counter.
+     */
+    private static ASTNode build(OperatorType type,List<ASTNode> operands,Map<ASTNode,Integer> heights)
+    {
+        final ASTNode[] stack = new ASTNode[ operands.size() ];
+        final int[] stackHeights = new int[ operands.size() ];
+        int size = 0;
+        for ( ASTNode operand : operands )
+        {
+            final int height = heights.get( operand );
+            while ( size > 1 && Math.max( stackHeights[ size - 2 ] , stackHeights[ size - 1 ] ) <= Math.max( stackHeights[ size - 1 ] , height ) ) {
+                size = merge( type , stack , stackHeights , size );
+            }
+            stack[ size ] = operand;
+            stackHeights[ size ] = height;
+            size++;
+        }
+        while ( size > 1 ) {
+            size = merge( type , stack , stackHeights , size );
+        }
+        heights.put( stack[0] , stackHeights[0] );
+        return stack[0];
+    }
+
+    private static int merge(OperatorType type,ASTNode[] stack,int[] stackHeights,int size)
+    {
+        stack[ size - 2 ] = new OperatorNode( type , stack[ size - 2 ] , stack[ size - 1 ] );
+        stackHeights[ size - 2 ] = 1 + Math.max( stackHeights[ size - 2 ] , stackHeights[ size - 1 ] );
+        stack[ size - 1 ] = null;
+        return size - 1;
+    }
+
+    private static ASTNode rebuild(ASTNode node,List<ASTNode> children)
+    {
+        if ( children.equals( node.children() ) ) {
+            return node;
+        }
+        final ASTNode result = node.createCopy( false );
+        for ( ASTNode child : children ) {
+            result.addChild( child );
+        }
+        return result;
+    }
+
+    private static OperatorType getChainType(ASTNode node)
+    {
+        if ( node instanceof OperatorNode )
+        {
+            final OperatorType type = ((OperatorNode) node).getType();
+            if ( type == OperatorType.AND || type == OperatorType.OR ) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,18 @@
+package de.codesourcery.booleanalgebra.rewrite;
+
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+
+/**
+ * Gets notified about each rewrite the {@link RewriteEngine} performs.
+ */
+public interface IRewriteListener
+{
+    /**
+     * Invoked after a node has been replaced.
+     *
+     * @param rule the rule that matched
+     * @param replacement the replacement , already part of the tree
+     * @param root current root of the tree , must not be modified
+     */
+    public void rewritten(IRewriteRule rule,ASTNode replacement,ASTNode root);
+}
@@ -0,0 +1,39 @@
+package de.codesourcery.booleanalgebra.rewrite;
+
+import java.util.Set;
+
+import de.codesourcery.booleanalgebra.IExpressionContext;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.OperatorType;
+
+/**
+ * A rewrite rule applied by the {@link RewriteEngine}.
+ */
+public interface IRewriteRule
+{
+    public String getName();
+
+    /**
+     * Returns the operator types this rule can match.
+     *
+     * <p>The engine only invokes {@link #rewrite(OperatorNode, IExpressionContext)} for
+     * nodes of these types.</p>
+     *
+     * @return
+     */
+    public Set<OperatorType> getRootTypes();
+
+    /**
+     * Tries to rewrite a node.
+     *
+     * <p>Implementations must not modify the tree unless they return a replacement. The replacement
+     * may re-use nodes from the subtree of <code>node</code> (which is discarded afterwards) but no other nodes.</p>
+     *
+     * @param node the node to rewrite , never a {@link de.codesourcery.booleanalgebra.ast.TermNode}
+     * and always attached to a parent
+     * @param context
+     * @return replacement or <code>null</code> if this rule does not apply
+     */
+    public ASTNode rewrite(OperatorNode node,IExpressionContext context);
+}
@@ -0,0 +1,266 @@
+package de.codesourcery.booleanalgebra.rewrite;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+import de.codesourcery.booleanalgebra.IExpressionContext;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.OperatorType;
+import de.codesourcery.booleanalgebra.ast.TermNode;
+
+/**
+ * Applies {@link IRewriteRule}s to a tree until none of them matches anymore.
+ *
+ * <p>Instead of repeatedly traversing the whole tree, the engine keeps a worklist of
+ * nodes that may match a rule. Initially this holds all operator nodes (children before parents).
+ * After a node has been rewritten, only the replacement, any nodes newly created by the rule and
+ * the replacement's ancestors (whose patterns might match now) are put back on the worklist.
+ * Rules are indexed by the operator type they match, so each node is only tested
+ * against rules that may apply to it.</p>
+ *
+ * <p>Nodes that a rule discarded are remembered and skipped when they come up in the worklist.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class RewriteEngine
+{
+    /**
+     * Default max. number of rewrites per call to {@link #rewrite(ASTNode, IExpressionContext)}.
+     */
+    public static final int DEFAULT_MAX_REWRITES = 100000;
+
+    private final Map<OperatorType,List<IRewriteRule>> rulesByType = new EnumMap<>( OperatorType.class );
+    private final List<IRewriteRule> rules = new ArrayList<>();
+
+    private int maxRewrites = DEFAULT_MAX_REWRITES;
+    private int rewriteCount;
+    private boolean debug;
+    private IRewriteListener listener;
+
+    public RewriteEngine() {
+        for ( OperatorType type : OperatorType.values() ) {
+            rulesByType.put( type , new ArrayList<IRewriteRule>() );
+        }
+    }
+
+    public RewriteEngine(List<IRewriteRule> rules)
+    {
+        this();
+        for ( IRewriteRule rule : rules ) {
+            addRule( rule );
+        }
+    }
+
+    /**
+     * Adds a rule.
+     *
+     * <p>When more than one rule matches a node , the rule that was added first wins.</p>
+     *
+     * @param rule
+     */
+    public void addRule(IRewriteRule rule)
+    {
+        if (rule == null) {
+            throw new IllegalArgumentException("rule must not be NULL.");
+        }
+        rules.add( rule );
+        for ( OperatorType type : rule.getRootTypes() ) {
+            rulesByType.get( type ).add( rule );
+        }
+    }
+
+    public List<IRewriteRule> getRules() {
+        return Collections.unmodifiableList( rules );
+    }
+
+    /**
+     * Sets the max. number of rewrites per call to {@link #rewrite(ASTNode, IExpressionContext)}.
+     *
+     * <p>Rule sets that may grow a term (like the distributive law) do not always
+     * reach a fixed point, the engine stops once this limit is reached. The result is still equivalent to the input.</p>
+     *
+     * @param maxRewrites
+     */
+    public void setMaxRewrites(int maxRewrites)
+    {
+        if ( maxRewrites < 0 ) {
+            throw new IllegalArgumentException("maxRewrites must be >= 0");
+        }
+        this.maxRewrites = maxRewrites;
+    }
+
+    public int getMaxRewrites() {
+        return maxRewrites;
+    }
+
+    /**
+     * Returns the number of rewrites performed by the last call to {@link #rewrite(ASTNode, IExpressionContext)}.
+     *
+     * @return
+     */
+    public int getRewriteCount() {
+        return rewriteCount;
+    }
+
+    public void setDebug(boolean yesNo) {
+        this.debug = yesNo;
+    }
+
+    /**
+     * Sets a listener that gets notified about every rewrite.
+     *
+     * @param listener listener or <code>null</code>
+     */
+    public void setListener(IRewriteListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Rewrites a tree in-place.
+     *
+     * @param term root of the tree
+     * @param context
+     * @return the new root , may be different from <code>term</code> if the root itself got rewritten
+     */
+    public ASTNode rewrite(ASTNode term,IExpressionContext context)
+    {
+        if (term == null) {
+            throw new IllegalArgumentException("term must not be NULL.");
+        }
+        if (context == null) {
+            throw new IllegalArgumentException("context must not be NULL.");
+        }
+        if ( term.hasParent() ) {
+            throw new IllegalArgumentException("term must be the root of its tree");
+        }
+
+        // so that every node, including the root, can be replaced
+        final TermNode holder = new TermNode( term );
+
+        final Set<ASTNode> seen = identitySet();
+        final Set<ASTNode> discarded = identitySet();
+        final Set<ASTNode> queued = identitySet();
+        final ArrayDeque<ASTNode> worklist = new ArrayDeque<>();
+
+        enqueueNew( term , seen , queued , worklist , null );
+
+        rewriteCount = 0;
+        while ( ! worklist.isEmpty() && rewriteCount < maxRewrites )
+        {
+            final ASTNode node = worklist.poll();
+            queued.remove( node );
+            if ( discarded.contains( node ) ) {
+                continue;
+            }
+
+            final OperatorNode op = (OperatorNode) node;
+            for ( IRewriteRule rule : rulesByType.get( op.getType() ) )
+            {
+                final ASTNode replacement = rule.rewrite( op , context );
+                if ( replacement == null || replacement == node ) {
+                    continue;
+                }
+                if ( debug ) {
+                    System.out.println( rule.getName()+": Replacing "+node.toString(false)+" -> "+replacement.toString(false) );
+                }
+                rewriteCount++;
+                final ASTNode parent = node.getParent();
+                node.replaceWith( replacement );
+                if ( listener != null ) {
+                    listener.rewritten( rule , replacement , holder.child(0) );
+                }
+
+                // nodes the rule created need to be looked at, nodes it re-used are still in normal form
+                final Set<ASTNode> reused = identitySet();
+                enqueueNew( replacement , seen , queued , worklist , reused );
+                discard( node , reused , discarded );
+
+                enqueue( unwrap( replacement ) , queued , worklist );
+                for ( ASTNode current = parent ; current != null && current != holder ; current = current.getParent() ) {
+                    enqueue( current , queued , worklist );
+                }
+                break;
+            }
+        }
+
+        final ASTNode result = holder.child(0);
+        result.setParent( null );
+        return result;
+    }
+
+    /*
+     * Enqueues all nodes of a subtree that have not been seen before (children before parents).
+     * Subtrees that have been seen before are added to 'reused'.
+     */
+    private static void enqueueNew(ASTNode root,Set<ASTNode> seen,Set<ASTNode> queued,ArrayDeque<ASTNode> worklist,Set<ASTNode> reused)
+    {
+        // entries are either nodes to expand or (after their children) nodes to enqueue , the latter wrapped in a one-element array
+        final Stack<Object> stack = new Stack<>();
+        stack.push( root );
+        while ( ! stack.isEmpty() )
+        {
+            final Object entry = stack.pop();
+            if ( entry instanceof ASTNode[] ) {
+                enqueue( ((ASTNode[]) entry)[0] , queued , worklist );
+                continue;
+            }
+            final ASTNode node = (ASTNode) entry;
+            if ( ! seen.add( node ) )
+            {
+                if ( reused != null ) {
+                    reused.add( node );
+                }
+                continue;
+            }
+            stack.push( new ASTNode[] { node } );
+            final List<ASTNode> children = node.children();
+            for ( int i = children.size() - 1 ; i >= 0 ; i-- ) {
+                stack.push( children.get(i) );
+            }
+        }
+    }
+
+    /*
+     * Marks a replaced node and all of its descendants that are not part of the replacement.
+     */
+    private static void discard(ASTNode replaced,Set<ASTNode> reused,Set<ASTNode> discarded)
+    {
+        final Stack<ASTNode> stack = new Stack<>();
+        stack.push( replaced );
+        while ( ! stack.isEmpty() )
+        {
+            final ASTNode node = stack.pop();
+            if ( ! reused.contains( node ) && discarded.add( node ) ) {
+                stack.addAll( node.children() );
+            }
+        }
+    }
+
+    private static void enqueue(ASTNode node,Set<ASTNode> queued,ArrayDeque<ASTNode> worklist)
+    {
+        if ( node instanceof OperatorNode && ((OperatorNode) node).getType() != null && queued.add( node ) ) {
+            worklist.add( node );
+        }
+    }
+
+    private static ASTNode unwrap(ASTNode node)
+    {
+        ASTNode result = node;
+        while ( result instanceof TermNode && result.hasChildren() ) {
+            result = result.child(0);
+        }
+        return result;
+    }
+
+    private static Set<ASTNode> identitySet() {
+        return Collections.newSetFromMap( new IdentityHashMap<ASTNode,Boolean>() );
+    }
+}
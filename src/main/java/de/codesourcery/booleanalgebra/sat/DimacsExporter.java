@@ -0,0 +1,497 @@
+package de.codesourcery.booleanalgebra.sat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.codesourcery.booleanalgebra.IExpressionContext;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.BooleanExpression;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.TermNode;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+
+/**
+ * Writes the Tseitin CNF of a term in DIMACS format.
+ *
+ * <p>The term is first turned into a graph of two-input <code>AND</code> gates (<code>OR</code> and negation
+ * become negated gate inputs and outputs) that only stores two literals per gate. Gates are hash-consed with
+ * their inputs in a canonical order , so structurally identical subterms share one auxiliary variable. The
+ * clauses of each gate are then written straight to the channel through a fixed-size buffer , they are never
+ * kept in memory. The AST is traversed without recursion , so arbitrarily deep terms can be exported.</p>
+ *
+ * <p>With the Plaisted-Greenbaum option , each gate only gets the clauses for the polarities it is used in ,
+ * the result is equisatisfiable with the term but has about a third fewer clauses.</p>
+ *
+ * <p>Identifiers are listed in comment lines <code>c &lt;variable&gt; &lt;identifier&gt;</code> before the header.
+ * A {@link BooleanExpression} is exported as <code>lhs = rhs</code>.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class DimacsExporter
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte POSITIVE = 1;
+    private static final byte NEGATIVE = 2;
+
+    private boolean plaistedGreenbaum;
+
+    private final Map<Identifier,Integer> identifiers = new LinkedHashMap<>();
+    private int trueVariable;
+    private int variableCount;
+    private long clauseCount;
+
+    // inputs of each gate by variable , both 0 for identifiers
+    private int[] left = new int[ 64 ];
+    private int[] right = new int[ 64 ];
+    private int gateCount;
+
+    // open addressing , gate variables or 0
+    private int[] table = new int[ 64 ];
+
+    private ByteBuffer buffer;
+    private WritableByteChannel channel;
+
+    /**
+     * Enables or disables the Plaisted-Greenbaum polarity optimization , disabled by default.
+     *
+     * @param yesNo
+     */
+    public void setPlaistedGreenbaum(boolean yesNo) {
+        this.plaistedGreenbaum = yesNo;
+    }
+
+    public boolean isPlaistedGreenbaum() {
+        return plaistedGreenbaum;
+    }
+
+    /**
+     * Returns the number of variables written by the last export.
+     *
+     * @return
+     */
+    public int getVariableCount() {
+        return variableCount;
+    }
+
+    /**
+     * Returns the number of clauses written by the last export.
+     *
+     * @return
+     */
+    public long getClauseCount() {
+        return clauseCount;
+    }
+
+    /**
+     * Returns the number of gates (auxiliary variables) of the last export.
+     *
+     * @return
+     */
+    public int getGateCount() {
+        return gateCount;
+    }
+
+    /**
+     * Returns the variables of all identifiers of the last export.
+     *
+     * @return
+     */
+    public Map<Identifier,Integer> getVariables() {
+        return identifiers;
+    }
+
+    public void export(ASTNode term,WritableByteChannel channel) throws IOException {
+        export( term , null , channel );
+    }
+
+    /**
+     * Writes the clauses that are satisfiable if and only if a term can be <code>true</code>.
+     *
+     * <p>The channel is not closed.</p>
+     *
+     * @param term term or expression
+     * @param context context used to look up variable values, may be <code>null</code>
+     * @param channel
+     * @throws IOException
+     */
+    public void export(ASTNode term,IExpressionContext context,WritableByteChannel channel) throws IOException
+    {
+        if (term == null) {
+            throw new IllegalArgumentException("term must not be NULL.");
+        }
+        if (channel == null) {
+            throw new IllegalArgumentException("channel must not be NULL.");
+        }
+        reset();
+        final int root = build( term , context );
+        final byte[] polarity = computePolarities( root );
+
+        clauseCount = 1 + ( trueVariable != 0 ? 1 : 0 );
+        for ( int v = 1 ; v <= variableCount ; v++ )
+        {
+            if ( ( polarity[v] & POSITIVE ) != 0 ) {
+                clauseCount += 2;
+            }
+            if ( ( polarity[v] & NEGATIVE ) != 0 ) {
+                clauseCount++;
+            }
+        }
+
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate( BUFFER_SIZE );
+        try
+        {
+            for ( Map.Entry<Identifier,Integer> entry : identifiers.entrySet() ) {
+                write( "c "+entry.getValue()+" "+entry.getKey().getValue()+"\n" );
+            }
+            write( "p cnf "+variableCount+" "+clauseCount+"\n" );
+            if ( trueVariable != 0 ) {
+                writeClause( trueVariable );
+            }
+            for ( int v = 1 ; v <= variableCount ; v++ )
+            {
+                final int a = left[v];
+                final int b = right[v];
+                if ( ( polarity[v] & POSITIVE ) != 0 )
+                {
+                    writeClause( -v , a );
+                    writeClause( -v , b );
+                }
+                if ( ( polarity[v] & NEGATIVE ) != 0 ) {
+                    writeClause( v , -a , -b );
+                }
+            }
+            writeClause( root );
+            flush();
+        }
+        finally
+        {
+            this.buffer = null;
+            this.channel = null;
+        }
+    }
+
+    private void reset()
+    {
+        identifiers.clear();
+        trueVariable = 0;
+        variableCount = 0;
+        gateCount = 0;
+        clauseCount = 0;
+        left = new int[ 64 ];
+        right = new int[ 64 ];
+        table = new int[ 64 ];
+    }
+
+    /*
+     * Post-order traversal with explicit stacks , returns the literal of the term.
+     */
+    private int build(ASTNode term,IExpressionContext context)
+    {
+        ASTNode[] nodes = new ASTNode[ 64 ];
+        int[] visitedChildren = new int[ 64 ];
+        int[] literals = new int[ 64 ];
+        int nodeCount = 0;
+        int literalCount = 0;
+
+        nodes[ nodeCount++ ] = term;
+        while ( nodeCount > 0 )
+        {
+            final ASTNode node = nodes[ nodeCount - 1 ];
+            if ( node instanceof TermNode )
+            {
+                if ( ! node.hasChildren() ) {
+                    throw new IllegalArgumentException("Empty term node");
+                }
+                nodes[ nodeCount - 1 ] = node.child(0);
+                continue;
+            }
+
+            final int childCount = node.getChildCount();
+            final int visited = visitedChildren[ nodeCount - 1 ];
+            if ( visited < childCount )
+            {
+                visitedChildren[ nodeCount - 1 ]++;
+                if ( nodeCount == nodes.length )
+                {
+                    nodes = Arrays.copyOf( nodes , nodeCount * 2 );
+                    visitedChildren = Arrays.copyOf( visitedChildren , nodeCount * 2 );
+                }
+                nodes[ nodeCount ] = node.child( visited );
+                visitedChildren[ nodeCount++ ] = 0;
+                continue;
+            }
+
+            // all children done , their literals are on top of the literal stack
+            nodeCount--;
+            final int result;
+            if ( node instanceof IdentifierNode ) {
+                result = identifier( ((IdentifierNode) node).getIdentifier() , context );
+            } else if ( node instanceof TrueNode ) {
+                result = trueLiteral();
+            } else if ( node instanceof FalseNode ) {
+                result = -trueLiteral();
+            }
+            else if ( node instanceof BooleanExpression )
+            {
+                final int b = literals[ --literalCount ];
+                final int a = literals[ --literalCount ];
+                result = or( and( a , b ) , and( -a , -b ) );
+            }
+            else if ( node instanceof OperatorNode )
+            {
+                switch( ((OperatorNode) node).getType() )
+                {
+                    case NOT:
+                        result = -literals[ --literalCount ];
+                        break;
+                    case AND:
+                    {
+                        literalCount -= node.getChildCount();
+                        int value = literals[ literalCount ];
+                        for ( int i = 1 ; i < node.getChildCount() ; i++ ) {
+                            value = and( value , literals[ literalCount + i ] );
+                        }
+                        result = value;
+                        break;
+                    }
+                    case OR:
+                    {
+                        literalCount -= node.getChildCount();
+                        int value = literals[ literalCount ];
+                        for ( int i = 1 ; i < node.getChildCount() ; i++ ) {
+                            value = or( value , literals[ literalCount + i ] );
+                        }
+                        result = value;
+                        break;
+                    }
+                    default:
+                        throw new RuntimeException("Unreachable code reached");
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported node type: "+node);
+            }
+
+            if ( literalCount == literals.length ) {
+                literals = Arrays.copyOf( literals , literalCount * 2 );
+            }
+            literals[ literalCount++ ] = result;
+        }
+        return literals[0];
+    }
+
+    private int identifier(Identifier identifier,IExpressionContext context)
+    {
+        if ( context != null )
+        {
+            final ASTNode value = context.tryLookup( identifier );
+            if ( value != null && value.isLiteralValue() ) {
+                return value.getLiteralValue( context ) ? trueLiteral() : -trueLiteral();
+            }
+        }
+        Integer result = identifiers.get( identifier );
+        if ( result == null ) {
+            result = newVariable();
+            identifiers.put( identifier , result );
+        }
+        return result;
+    }
+
+    private int trueLiteral()
+    {
+        if ( trueVariable == 0 ) {
+            trueVariable = newVariable();
+        }
+        return trueVariable;
+    }
+
+    private int newVariable()
+    {
+        final int result = ++variableCount;
+        if ( result == left.length )
+        {
+            left = Arrays.copyOf( left , result * 2 );
+            right = Arrays.copyOf( right , result * 2 );
+        }
+        return result;
+    }
+
+    private int or(int a,int b) {
+        return -and( -a , -b );
+    }
+
+    private int and(int a,int b)
+    {
+        if ( trueVariable != 0 )
+        {
+            if ( a == trueVariable ) {
+                return b;
+            }
+            if ( b == trueVariable ) {
+                return a;
+            }
+            if ( a == -trueVariable || b == -trueVariable ) {
+                return -trueVariable;
+            }
+        }
+        if ( a == b ) {
+            return a;
+        }
+        if ( a == -b ) {
+            return -trueLiteral();
+        }
+        if ( a > b )
+        {
+            final int tmp = a;
+            a = b;
+            b = tmp;
+        }
+
+        final int mask = table.length - 1;
+        int index = hash( a , b ) & mask;
+        for ( int v = table[index] ; v != 0 ; v = table[index] )
+        {
+            if ( left[v] == a && right[v] == b ) {
+                return v;
+            }
+            index = ( index + 1 ) & mask;
+        }
+
+        final int v = newVariable();
+        left[v] = a;
+        right[v] = b;
+        table[index] = v;
+        if ( ++gateCount * 2 > table.length ) {
+            rehash();
+        }
+        return v;
+    }
+
+    private static int hash(int a,int b)
+    {
+        final int h = a * 0x9E3779B1 + b * 0x85EBCA6B;
+        return h ^ ( h >>> 16 );
+    }
+
+    private void rehash()
+    {
+        table = new int[ table.length * 2 ];
+        final int mask = table.length - 1;
+        for ( int v = 1 ; v <= variableCount ; v++ )
+        {
+            if ( left[v] != 0 )
+            {
+                int index = hash( left[v] , right[v] ) & mask;
+                while ( table[index] != 0 ) {
+                    index = ( index + 1 ) & mask;
+                }
+                table[index] = v;
+            }
+        }
+    }
+
+    /*
+     * Gates always have larger variables than their inputs , so one pass from the root downwards
+     * sees every gate after all gates using it.
+     */
+    private byte[] computePolarities(int root)
+    {
+        final byte[] result = new byte[ variableCount + 1 ];
+        result[ Math.abs( root ) ] |= root > 0 ? POSITIVE : NEGATIVE;
+        for ( int v = variableCount ; v > 0 ; v-- )
+        {
+            if ( left[v] == 0 ) {
+                result[v] = 0;
+                continue;
+            }
+            if ( ! plaistedGreenbaum ) {
+                result[v] = POSITIVE | NEGATIVE;
+            }
+            final byte polarity = result[v];
+            final byte negated = (byte) ( ( ( polarity & POSITIVE ) != 0 ? NEGATIVE : 0 ) | ( ( polarity & NEGATIVE ) != 0 ? POSITIVE : 0 ) );
+            result[ Math.abs( left[v] ) ] |= left[v] > 0 ? polarity : negated;
+            result[ Math.abs( right[v] ) ] |= right[v] > 0 ? polarity : negated;
+        }
+        return result;
+    }
+
+    private void writeClause(int a) throws IOException
+    {
+        ensureCapacity();
+        writeLiteral( a );
+        buffer.put( (byte) '0' ).put( (byte) '\n' );
+    }
+
+    private void writeClause(int a,int b) throws IOException
+    {
+        ensureCapacity();
+        writeLiteral( a );
+        writeLiteral( b );
+        buffer.put( (byte) '0' ).put( (byte) '\n' );
+    }
+
+    private void writeClause(int a,int b,int c) throws IOException
+    {
+        ensureCapacity();
+        writeLiteral( a );
+        writeLiteral( b );
+        writeLiteral( c );
+        buffer.put( (byte) '0' ).put( (byte) '\n' );
+    }
+
+    // max. length of a clause with three literals
+    private void ensureCapacity() throws IOException
+    {
+        if ( buffer.remaining() < 3 * 12 + 2 ) {
+            flush();
+        }
+    }
+
+    private void writeLiteral(int literal)
+    {
+        if ( literal < 0 )
+        {
+            buffer.put( (byte) '-' );
+            literal = -literal;
+        }
+        int divisor = 1;
+        while ( divisor <= literal / 10 ) {
+            divisor *= 10;
+        }
+        for ( ; divisor > 0 ; divisor /= 10 ) {
+            buffer.put( (byte) ( '0' + ( literal / divisor ) % 10 ) );
+        }
+        buffer.put( (byte) ' ' );
+    }
+
+    private void write(String text) throws IOException
+    {
+        final byte[] bytes = text.getBytes( "UTF-8" );
+        for ( int offset = 0 ; offset < bytes.length ; )
+        {
+            if ( ! buffer.hasRemaining() ) {
+                flush();
+            }
+            final int length = Math.min( buffer.remaining() , bytes.length - offset );
+            buffer.put( bytes , offset , length );
+            offset += length;
+        }
+    }
+
+    private void flush() throws IOException
+    {
+        buffer.flip();
+        while ( buffer.hasRemaining() ) {
+            channel.write( buffer );
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,84 @@
+package de.codesourcery.booleanalgebra.sat;
+
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.IExpressionContext;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.BooleanExpression;
+
+/**
+ * Checks many candidate terms for equivalence with one fixed term , using a single incremental {@link SATSolver}.
+ *
+ * <p>The fixed term is encoded once. Each query encodes the candidate (subterms it shares with the fixed
+ * term or earlier candidates are hash-consed to the same variables) and the XOR of both terms , which only
+ * defines a new variable and does not constrain the other ones. The solver is then asked whether this
+ * variable can be <code>true</code> , as an assumption , so all clauses learnt during a query stay valid
+ * and speed up the following ones.</p>
+ *
+ * <p>This is meant for checking rewrites of a term: each rewrite only changes a small part of
+ * the tree , most of the candidate is already encoded and most of what the solver learnt still applies.</p>
+ */
+public final class IncrementalEquivalenceChecker
+{
+    private final IExpressionContext context;
+    private final TseitinEncoder encoder = new TseitinEncoder( new SATSolver() );
+    private final int base;
+    private final boolean expression;
+
+    private int queryCount;
+
+    public IncrementalEquivalenceChecker(ASTNode base) {
+        this( base , null );
+    }
+
+    /**
+     * Creates a checker.
+     *
+     * @param base the term all candidates are compared with
+     * @param context context used to look up variable values, may be <code>null</code>
+     */
+    public IncrementalEquivalenceChecker(ASTNode base,IExpressionContext context)
+    {
+        if (base == null) {
+            throw new IllegalArgumentException("base must not be NULL.");
+        }
+        this.context = context;
+        this.expression = base instanceof BooleanExpression;
+        this.base = encoder.encode( base , context );
+    }
+
+    /**
+     * Returns an assignment for which a candidate and the base term have different values.
+     *
+     * @param candidate a {@link BooleanExpression} if the base term is one , otherwise a term
+     * @return assignment of all variables encoded so far or <code>null</code> if the candidate is equivalent
+     */
+    public ExpressionContext findCounterExample(ASTNode candidate)
+    {
+        if (candidate == null) {
+            throw new IllegalArgumentException("candidate must not be NULL.");
+        }
+        if ( ( candidate instanceof BooleanExpression ) != expression ) {
+            throw new IllegalArgumentException("Cannot compare a term with an expression: "+candidate);
+        }
+        queryCount++;
+        final int literal = encoder.encode( candidate , context );
+        if ( literal == base ) {
+            // structurally equal to the base term
+            return null;
+        }
+        final int miter = encoder.xor( base , literal );
+        return encoder.getSolver().solve( miter ) ? encoder.getModel() : null;
+    }
+
+    public boolean isEquivalent(ASTNode candidate) {
+        return findCounterExample( candidate ) == null;
+    }
+
+    public int getQueryCount() {
+        return queryCount;
+    }
+
+    public SATSolver getSolver() {
+        return encoder.getSolver();
+    }
+}
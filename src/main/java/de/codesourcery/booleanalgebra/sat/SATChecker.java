@@ -0,0 +1,113 @@
+package de.codesourcery.booleanalgebra.sat;
+
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.IExpressionContext;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.BooleanExpression;
+
+/**
+ * Answers satisfiability , tautology and equivalence questions about terms with a {@link SATSolver}.
+ *
+ * <p>Each query encodes its terms into a new solver , so the number of variables is not limited like it is for
+ * truth tables. Variables bound to literal values in the context are replaced by their values.</p>
+ */
+public final class SATChecker
+{
+    private final IExpressionContext context;
+
+    private long conflicts;
+
+    public SATChecker() {
+        this( null );
+    }
+
+    /**
+     * Creates a checker.
+     *
+     * @param context context used to look up variable values, may be <code>null</code>
+     */
+    public SATChecker(IExpressionContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Returns the number of conflicts the solver ran into during the last query.
+     *
+     * @return
+     */
+    public long getConflictCount() {
+        return conflicts;
+    }
+
+    /**
+     * Returns an assignment that makes a term <code>true</code>.
+     *
+     * @param term term or expression
+     * @return assignment of all variables of the term or <code>null</code> if the term is not satisfiable
+     */
+    public ExpressionContext findModel(ASTNode term) {
+        return findAssignment( term , true );
+    }
+
+    private ExpressionContext findAssignment(ASTNode term,boolean value)
+    {
+        final TseitinEncoder encoder = new TseitinEncoder( new SATSolver() );
+        final int literal = encoder.encode( term , context );
+        encoder.getSolver().addClause( value ? literal : -literal );
+        return solve( encoder );
+    }
+
+    /**
+     * Returns an assignment for which two terms have different values.
+     *
+     * <p>The terms are combined into a <i>miter</i> , the XOR of both terms , which is satisfiable
+     * if and only if the terms are not equivalent.</p>
+     *
+     * @param term1 term , must not be a {@link BooleanExpression}
+     * @param term2 term , must not be a {@link BooleanExpression}
+     * @return assignment of all variables of both terms or <code>null</code> if the terms are equivalent
+     */
+    public ExpressionContext findCounterExample(ASTNode term1,ASTNode term2)
+    {
+        final TseitinEncoder encoder = new TseitinEncoder( new SATSolver() );
+        final int miter = encoder.xor( encoder.encode( term1 , context ) , encoder.encode( term2 , context ) );
+        encoder.getSolver().addClause( miter );
+        return solve( encoder );
+    }
+
+    private ExpressionContext solve(TseitinEncoder encoder)
+    {
+        final SATSolver solver = encoder.getSolver();
+        final boolean satisfiable = solver.solve();
+        conflicts = solver.getConflictCount();
+        return satisfiable ? encoder.getModel() : null;
+    }
+
+    public boolean isSatisfiable(ASTNode term) {
+        return findModel( term ) != null;
+    }
+
+    /**
+     * Returns whether a term is <code>true</code> for all assignments.
+     *
+     * @param term term or expression
+     * @return
+     */
+    public boolean isTautology(ASTNode term) {
+        return findAssignment( term , false ) == null;
+    }
+
+    /**
+     * Returns whether a term is <code>false</code> for all assignments.
+     *
+     * @param term term or expression
+     * @return
+     */
+    public boolean isContradiction(ASTNode term) {
+        return findModel( term ) == null;
+    }
+
+    public boolean isEquivalent(ASTNode term1,ASTNode term2) {
+        return findCounterExample( term1 , term2 ) == null;
+    }
+}
@@ -0,0 +1,835 @@
+package de.codesourcery.booleanalgebra.sat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A conflict-driven clause learning (CDCL) SAT solver.
+ *
+ * <p>Literals use the DIMACS convention: variables are numbered from 1 and a negative number is the negation
+ * of a variable. Internally , literal <code>2*(v-1)</code> is variable <code>v</code> and
+ * <code>2*(v-1)+1</code> its negation.</p>
+ *
+ * <p>The search uses two watched literals per clause for unit propagation , VSIDS to pick decision variables
+ * (with phase saving) , first-UIP clause learning with minimization , Luby restarts and periodic removal
+ * of inactive learnt clauses.</p>
+ *
+ * <p>The solver is incremental: clauses may be added between calls to {@link #solve(int...)} and
+ * each call may assume some literals to be <code>true</code> just for this call. Learnt clauses are kept
+ * across calls , they only depend on the clauses and never on assumptions.</p>
+ *
+ * <p>Solvers are not thread-safe.</p>
+ */
+public final class SATSolver
+{
+    private static final byte TRUE = 1;
+    private static final byte FALSE = -1;
+    private static final byte UNDEFINED = 0;
+
+    private static final int RESTART_BASE = 100;
+    private static final double VARIABLE_DECAY = 0.95;
+    private static final double CLAUSE_DECAY = 0.999;
+    private static final double LEARNT_SIZE_FACTOR = 1 / 3.0;
+    private static final double LEARNT_SIZE_INCREMENT = 1.1;
+    // the limit for learnt clauses grows after 100 conflicts , then after 150 more and so on
+    private static final int LEARNT_ADJUST_START = 100;
+    private static final double LEARNT_ADJUST_INCREMENT = 1.5;
+
+    private static final class Clause
+    {
+        public final int[] literals;
+        public final boolean learnt;
+        public double activity;
+        public boolean deleted;
+
+        public Clause(int[] literals,boolean learnt)
+        {
+            this.literals = literals;
+            this.learnt = learnt;
+        }
+    }
+
+    /*
+     * Clauses watching the negation of a literal , together with a blocker literal: if the blocker is true,
+     * the clause is satisfied and need not be looked at.
+     */
+    private static final class WatchList
+    {
+        public Clause[] clauses = new Clause[4];
+        public int[] blockers = new int[4];
+        public int size;
+
+        public void add(Clause clause,int blocker)
+        {
+            if ( size == clauses.length )
+            {
+                clauses = Arrays.copyOf( clauses , size * 2 );
+                blockers = Arrays.copyOf( blockers , size * 2 );
+            }
+            clauses[size] = clause;
+            blockers[size++] = blocker;
+        }
+
+        public void removeDeleted()
+        {
+            int j = 0;
+            for ( int i = 0 ; i < size ; i++ )
+            {
+                if ( ! clauses[i].deleted )
+                {
+                    clauses[j] = clauses[i];
+                    blockers[j++] = blockers[i];
+                }
+            }
+            for ( int i = j ; i < size ; i++ ) {
+                clauses[i] = null;
+            }
+            size = j;
+        }
+    }
+
+    private int variableCount;
+
+    // indexed by literal
+    private byte[] values = new byte[0];
+    private WatchList[] watches = new WatchList[0];
+
+    // indexed by variable
+    private int[] levels = new int[0];
+    private Clause[] reasons = new Clause[0];
+    private boolean[] polarity = new boolean[0];
+    private boolean[] seen = new boolean[0];
+    private double[] activity = new double[0];
+
+    // VSIDS order , binary max-heap of variables
+    private int[] heap = new int[0];
+    private int[] heapIndex = new int[0];
+    private int heapSize;
+
+    private int[] trail = new int[0];
+    private int trailSize;
+    private int propagationHead;
+    private int[] trailLimits = new int[16];
+    private int decisionLevel;
+
+    private final List<Clause> clauses = new ArrayList<>();
+    private final List<Clause> learnts = new ArrayList<>();
+
+    private double variableIncrement = 1;
+    private double clauseIncrement = 1;
+    private double maxLearnts;
+    private double learntAdjustInterval;
+    private int learntAdjustCountdown;
+
+    // false once the clauses are known to be unsatisfiable
+    private boolean ok = true;
+    private boolean[] model = new boolean[0];
+
+    // internal literals assumed by the current call to solve()
+    private int[] assumptions = new int[0];
+    private int[] failedAssumptions = new int[0];
+
+    private long conflicts;
+    private long decisions;
+    private long propagations;
+    private long restarts;
+
+    /**
+     * Creates a new variable.
+     *
+     * @return the variable , numbered from 1
+     */
+    public int newVariable()
+    {
+        final int v = variableCount++;
+        if ( v == levels.length )
+        {
+            final int capacity = Math.max( 16 , v * 2 );
+            values = Arrays.copyOf( values , 2 * capacity );
+            watches = Arrays.copyOf( watches , 2 * capacity );
+            levels = Arrays.copyOf( levels , capacity );
+            reasons = Arrays.copyOf( reasons , capacity );
+            polarity = Arrays.copyOf( polarity , capacity );
+            seen = Arrays.copyOf( seen , capacity );
+            activity = Arrays.copyOf( activity , capacity );
+            heap = Arrays.copyOf( heap , capacity );
+            heapIndex = Arrays.copyOf( heapIndex , capacity );
+            trail = Arrays.copyOf( trail , capacity );
+        }
+        watches[ 2 * v ] = new WatchList();
+        watches[ 2 * v + 1 ] = new WatchList();
+        heapIndex[v] = -1;
+        heapInsert( v );
+        return v + 1;
+    }
+
+    public int getVariableCount() {
+        return variableCount;
+    }
+
+    public int getClauseCount() {
+        return clauses.size();
+    }
+
+    public int getLearntClauseCount() {
+        return learnts.size();
+    }
+
+    public long getConflictCount() {
+        return conflicts;
+    }
+
+    public long getDecisionCount() {
+        return decisions;
+    }
+
+    public long getPropagationCount() {
+        return propagations;
+    }
+
+    public long getRestartCount() {
+        return restarts;
+    }
+
+    private int toInternal(int literal)
+    {
+        final int v = Math.abs( literal ) - 1;
+        if ( literal == 0 || v >= variableCount ) {
+            throw new IllegalArgumentException("Unknown variable: "+literal);
+        }
+        return literal > 0 ? 2 * v : 2 * v + 1;
+    }
+
+    /**
+     * Adds a clause.
+     *
+     * @param literals literals in DIMACS convention
+     * @return <code>false</code> if the clauses are now known to be unsatisfiable
+     */
+    public boolean addClause(int... literals)
+    {
+        if (literals == null) {
+            throw new IllegalArgumentException("literals must not be NULL.");
+        }
+        final int[] sorted = new int[ literals.length ];
+        for ( int i = 0 ; i < literals.length ; i++ ) {
+            sorted[i] = toInternal( literals[i] );
+        }
+        if ( ! ok ) {
+            return false;
+        }
+        cancelUntil( 0 );
+
+        // drop duplicates and false literals , ignore tautologies and satisfied clauses
+        Arrays.sort( sorted );
+        int size = 0;
+        int previous = -1;
+        for ( int literal : sorted )
+        {
+            if ( values[literal] == TRUE || literal == ( previous ^ 1 ) ) {
+                return true;
+            }
+            if ( literal != previous && values[literal] != FALSE ) {
+                sorted[ size++ ] = literal;
+                previous = literal;
+            }
+        }
+
+        if ( size == 0 ) {
+            return ok = false;
+        }
+        if ( size == 1 )
+        {
+            enqueue( sorted[0] , null );
+            return ok = ( propagate() == null );
+        }
+        final Clause clause = new Clause( Arrays.copyOf( sorted , size ) , false );
+        clauses.add( clause );
+        attach( clause );
+        return true;
+    }
+
+    private void attach(Clause clause)
+    {
+        final int[] literals = clause.literals;
+        watches[ literals[0] ^ 1 ].add( clause , literals[1] );
+        watches[ literals[1] ^ 1 ].add( clause , literals[0] );
+    }
+
+    /**
+     * Checks whether the clauses are satisfiable with some literals assumed to be <code>true</code>.
+     *
+     * <p>Assumptions only hold for this call , if the clauses are unsatisfiable because of
+     * them {@link #getFailedAssumptions()} tells which ones and later calls may still succeed.</p>
+     *
+     * @param assumptions literals in DIMACS convention
+     * @return
+     * @see #getModelValue(int)
+     * @see #getFailedAssumptions()
+     */
+    public boolean solve(int... assumptions)
+    {
+        if (assumptions == null) {
+            throw new IllegalArgumentException("assumptions must not be NULL.");
+        }
+        this.assumptions = new int[ assumptions.length ];
+        for ( int i = 0 ; i < assumptions.length ; i++ ) {
+            this.assumptions[i] = toInternal( assumptions[i] );
+        }
+        failedAssumptions = new int[0];
+        if ( ! ok ) {
+            return false;
+        }
+        maxLearnts = Math.max( 100 , clauses.size() * LEARNT_SIZE_FACTOR );
+        learntAdjustInterval = LEARNT_ADJUST_START;
+        learntAdjustCountdown = LEARNT_ADJUST_START;
+        byte status = UNDEFINED;
+        for ( int restart = 0 ; status == UNDEFINED ; restart++ )
+        {
+            status = search( (long) ( luby( restart ) * RESTART_BASE ) );
+            if ( status == UNDEFINED ) {
+                restarts++;
+            }
+        }
+
+        if ( status == TRUE )
+        {
+            model = new boolean[ variableCount ];
+            for ( int v = 0 ; v < variableCount ; v++ ) {
+                model[v] = values[ 2 * v ] == TRUE;
+            }
+        }
+        else if ( failedAssumptions.length == 0 ) {
+            ok = false;
+        }
+        cancelUntil( 0 );
+        assumptions = new int[0];
+        return status == TRUE;
+    }
+
+    /**
+     * Returns the assumptions responsible for the last call to {@link #solve(int...)} failing.
+     *
+     * @return subset of the assumptions (in DIMACS convention) that cannot be <code>true</code> together ,
+     * empty if the clauses are unsatisfiable regardless of assumptions or the last call succeeded
+     */
+    public int[] getFailedAssumptions()
+    {
+        final int[] result = new int[ failedAssumptions.length ];
+        for ( int i = 0 ; i < result.length ; i++ ) {
+            final int literal = failedAssumptions[i];
+            result[i] = ( literal & 1 ) == 0 ? ( literal >> 1 ) + 1 : -( ( literal >> 1 ) + 1 );
+        }
+        return result;
+    }
+
+    /**
+     * Returns the value of a variable in the model found by the last successful {@link #solve(int...)}.
+     *
+     * @param variable variable , numbered from 1
+     * @return
+     */
+    public boolean getModelValue(int variable)
+    {
+        if ( variable < 1 || variable > model.length ) {
+            throw new IllegalArgumentException("No value for variable "+variable);
+        }
+        return model[ variable - 1 ];
+    }
+
+    /*
+     * Finite subsequence of the Luby sequence 1,1,2,1,1,2,4,1,1,2,...
+     */
+    private static double luby(int index)
+    {
+        int size = 1;
+        int sequence = 0;
+        while ( size < index + 1 )
+        {
+            sequence++;
+            size = 2 * size + 1;
+        }
+        int x = index;
+        while ( size - 1 != x )
+        {
+            size = ( size - 1 ) >> 1;
+            sequence--;
+            x = x % size;
+        }
+        return Math.pow( 2 , sequence );
+    }
+
+    private byte search(long maxConflicts)
+    {
+        final int[] learnt = new int[ variableCount ];
+        long conflictCount = 0;
+        while ( true )
+        {
+            final Clause conflict = propagate();
+            if ( conflict != null )
+            {
+                conflicts++;
+                conflictCount++;
+                if ( decisionLevel == 0 ) {
+                    return FALSE;
+                }
+
+                final int size = analyze( conflict , learnt );
+                int backtrackLevel = 0;
+                if ( size > 1 )
+                {
+                    // the literal of the highest level below the current one is watched
+                    int max = 1;
+                    for ( int i = 2 ; i < size ; i++ ) {
+                        if ( levels[ learnt[i] >> 1 ] > levels[ learnt[max] >> 1 ] ) {
+                            max = i;
+                        }
+                    }
+                    final int tmp = learnt[1];
+                    learnt[1] = learnt[max];
+                    learnt[max] = tmp;
+                    backtrackLevel = levels[ learnt[1] >> 1 ];
+                }
+                cancelUntil( backtrackLevel );
+
+                if ( size == 1 ) {
+                    enqueue( learnt[0] , null );
+                }
+                else
+                {
+                    final Clause clause = new Clause( Arrays.copyOf( learnt , size ) , true );
+                    learnts.add( clause );
+                    attach( clause );
+                    bumpClause( clause );
+                    enqueue( learnt[0] , clause );
+                }
+                variableIncrement /= VARIABLE_DECAY;
+                clauseIncrement /= CLAUSE_DECAY;
+
+                if ( --learntAdjustCountdown == 0 )
+                {
+                    learntAdjustInterval *= LEARNT_ADJUST_INCREMENT;
+                    learntAdjustCountdown = (int) learntAdjustInterval;
+                    maxLearnts *= LEARNT_SIZE_INCREMENT;
+                }
+            }
+            else
+            {
+                if ( conflictCount >= maxConflicts )
+                {
+                    cancelUntil( 0 );
+                    return UNDEFINED;
+                }
+                if ( learnts.size() - trailSize >= maxLearnts ) {
+                    reduceLearnts();
+                }
+
+                // assumptions are the first decisions , one level each
+                int next = -1;
+                while ( next == -1 && decisionLevel < assumptions.length )
+                {
+                    final int p = assumptions[ decisionLevel ];
+                    if ( values[p] == TRUE ) {
+                        newDecisionLevel();
+                    }
+                    else if ( values[p] == FALSE )
+                    {
+                        analyzeFinal( p );
+                        return FALSE;
+                    } else {
+                        next = p;
+                    }
+                }
+                if ( next == -1 )
+                {
+                    next = pickBranchLiteral();
+                    if ( next == -1 ) {
+                        return TRUE;
+                    }
+                }
+                decisions++;
+                newDecisionLevel();
+                enqueue( next , null );
+            }
+        }
+    }
+
+    private void newDecisionLevel()
+    {
+        if ( decisionLevel == trailLimits.length ) {
+            trailLimits = Arrays.copyOf( trailLimits , decisionLevel * 2 );
+        }
+        trailLimits[ decisionLevel++ ] = trailSize;
+    }
+
+    private int pickBranchLiteral()
+    {
+        while ( heapSize > 0 )
+        {
+            final int v = heapRemoveMax();
+            if ( values[ 2 * v ] == UNDEFINED ) {
+                return polarity[v] ? 2 * v : 2 * v + 1;
+            }
+        }
+        return -1;
+    }
+
+    private void enqueue(int literal,Clause reason)
+    {
+        final int v = literal >> 1;
+        values[ literal ] = TRUE;
+        values[ literal ^ 1 ] = FALSE;
+        levels[v] = decisionLevel;
+        reasons[v] = reason;
+        trail[ trailSize++ ] = literal;
+    }
+
+    private void cancelUntil(int level)
+    {
+        if ( decisionLevel <= level ) {
+            return;
+        }
+        for ( int i = trailSize - 1 ; i >= trailLimits[level] ; i-- )
+        {
+            final int literal = trail[i];
+            final int v = literal >> 1;
+            values[ literal ] = UNDEFINED;
+            values[ literal ^ 1 ] = UNDEFINED;
+            reasons[v] = null;
+            polarity[v] = ( literal & 1 ) == 0;
+            if ( heapIndex[v] == -1 ) {
+                heapInsert( v );
+            }
+        }
+        trailSize = trailLimits[level];
+        propagationHead = trailSize;
+        decisionLevel = level;
+    }
+
+    /*
+     * Unit propagation , returns a conflicting clause or null.
+     */
+    private Clause propagate()
+    {
+        Clause conflict = null;
+        while ( propagationHead < trailSize )
+        {
+            final int literal = trail[ propagationHead++ ];
+            final int falseLiteral = literal ^ 1;
+            final WatchList list = watches[ literal ];
+            final Clause[] watchers = list.clauses;
+            final int[] blockers = list.blockers;
+            propagations++;
+
+            int i = 0;
+            int j = 0;
+            final int size = list.size;
+            next:
+            while ( i < size )
+            {
+                final int blocker = blockers[i];
+                if ( values[ blocker ] == TRUE )
+                {
+                    watchers[j] = watchers[i];
+                    blockers[j++] = blockers[i++];
+                    continue;
+                }
+
+                final Clause clause = watchers[i++];
+                final int[] literals = clause.literals;
+                if ( literals[0] == falseLiteral )
+                {
+                    literals[0] = literals[1];
+                    literals[1] = falseLiteral;
+                }
+
+                final int first = literals[0];
+                if ( first != blocker && values[ first ] == TRUE )
+                {
+                    watchers[j] = clause;
+                    blockers[j++] = first;
+                    continue;
+                }
+
+                for ( int k = 2 ; k < literals.length ; k++ )
+                {
+                    if ( values[ literals[k] ] != FALSE )
+                    {
+                        literals[1] = literals[k];
+                        literals[k] = falseLiteral;
+                        watches[ literals[1] ^ 1 ].add( clause , first );
+                        continue next;
+                    }
+                }
+
+                // clause is unit or conflicting
+                watchers[j] = clause;
+                blockers[j++] = first;
+                if ( values[ first ] == FALSE )
+                {
+                    conflict = clause;
+                    propagationHead = trailSize;
+                    while ( i < size )
+                    {
+                        watchers[j] = watchers[i];
+                        blockers[j++] = blockers[i++];
+                    }
+                }
+                else {
+                    enqueue( first , clause );
+                }
+            }
+            for ( int k = j ; k < size ; k++ ) {
+                watchers[k] = null;
+            }
+            list.size = j;
+        }
+        return conflict;
+    }
+
+    /*
+     * Derives the first-UIP clause of a conflict , the asserting literal goes first.
+     */
+    private int analyze(Clause conflict,int[] learnt)
+    {
+        int size = 1;
+        int pathCount = 0;
+        int literal = -1;
+        int index = trailSize - 1;
+        Clause clause = conflict;
+        do
+        {
+            if ( clause.learnt ) {
+                bumpClause( clause );
+            }
+            final int[] literals = clause.literals;
+            for ( int k = literal == -1 ? 0 : 1 ; k < literals.length ; k++ )
+            {
+                final int q = literals[k];
+                final int v = q >> 1;
+                if ( ! seen[v] && levels[v] > 0 )
+                {
+                    bumpVariable( v );
+                    seen[v] = true;
+                    if ( levels[v] >= decisionLevel ) {
+                        pathCount++;
+                    } else {
+                        learnt[ size++ ] = q;
+                    }
+                }
+            }
+            while ( ! seen[ trail[ index ] >> 1 ] ) {
+                index--;
+            }
+            literal = trail[ index-- ];
+            clause = reasons[ literal >> 1 ];
+            seen[ literal >> 1 ] = false;
+            pathCount--;
+        }
+        while ( pathCount > 0 );
+        learnt[0] = literal ^ 1;
+
+        // drop literals implied by the other literals of the clause
+        final int[] marked = Arrays.copyOf( learnt , size );
+        int newSize = 1;
+        for ( int i = 1 ; i < size ; i++ )
+        {
+            final Clause reason = reasons[ learnt[i] >> 1 ];
+            boolean redundant = reason != null;
+            if ( redundant )
+            {
+                final int[] literals = reason.literals;
+                for ( int k = 1 ; k < literals.length ; k++ )
+                {
+                    final int v = literals[k] >> 1;
+                    if ( ! seen[v] && levels[v] > 0 )
+                    {
+                        redundant = false;
+                        break;
+                    }
+                }
+            }
+            if ( ! redundant ) {
+                learnt[ newSize++ ] = learnt[i];
+            }
+        }
+        for ( int i = 1 ; i < size ; i++ ) {
+            seen[ marked[i] >> 1 ] = false;
+        }
+        return newSize;
+    }
+
+    /*
+     * Collects the assumptions that imply the negation of a false assumption.
+     */
+    private void analyzeFinal(int assumption)
+    {
+        final List<Integer> result = new ArrayList<>();
+        result.add( assumption );
+        if ( decisionLevel > 0 )
+        {
+            seen[ assumption >> 1 ] = true;
+            for ( int i = trailSize - 1 ; i >= trailLimits[0] ; i-- )
+            {
+                final int v = trail[i] >> 1;
+                if ( ! seen[v] ) {
+                    continue;
+                }
+                final Clause reason = reasons[v];
+                if ( reason == null ) {
+                    // only assumptions are decided so far
+                    result.add( trail[i] );
+                }
+                else
+                {
+                    final int[] literals = reason.literals;
+                    for ( int k = 1 ; k < literals.length ; k++ ) {
+                        if ( levels[ literals[k] >> 1 ] > 0 ) {
+                            seen[ literals[k] >> 1 ] = true;
+                        }
+                    }
+                }
+                seen[v] = false;
+            }
+            seen[ assumption >> 1 ] = false;
+        }
+        failedAssumptions = new int[ result.size() ];
+        for ( int i = 0 ; i < failedAssumptions.length ; i++ ) {
+            failedAssumptions[i] = result.get(i);
+        }
+    }
+
+    private void bumpVariable(int v)
+    {
+        activity[v] += variableIncrement;
+        if ( activity[v] > 1e100 )
+        {
+            for ( int i = 0 ; i < variableCount ; i++ ) {
+                activity[i] *= 1e-100;
+            }
+            variableIncrement *= 1e-100;
+        }
+        if ( heapIndex[v] != -1 ) {
+            heapUp( heapIndex[v] );
+        }
+    }
+
+    private void bumpClause(Clause clause)
+    {
+        clause.activity += clauseIncrement;
+        if ( clause.activity > 1e20 )
+        {
+            for ( Clause learnt : learnts ) {
+                learnt.activity *= 1e-20;
+            }
+            clauseIncrement *= 1e-20;
+        }
+    }
+
+    /*
+     * Removes half of the learnt clauses , keeping binary clauses , clauses that are the reason
+     * for an assignment and the most active ones.
+     */
+    private void reduceLearnts()
+    {
+        Collections.sort( learnts , new Comparator<Clause>() {
+
+            @Override
+            public int compare(Clause o1, Clause o2) {
+                return Double.compare( o1.activity , o2.activity );
+            }
+        });
+        final double limit = clauseIncrement / learnts.size();
+        final List<Clause> kept = new ArrayList<>( learnts.size() );
+        for ( int i = 0 ; i < learnts.size() ; i++ )
+        {
+            final Clause clause = learnts.get(i);
+            final boolean remove = clause.literals.length > 2 && ! isLocked( clause ) &&
+                    ( i < learnts.size() / 2 || clause.activity < limit );
+            if ( remove ) {
+                clause.deleted = true;
+            } else {
+                kept.add( clause );
+            }
+        }
+        learnts.clear();
+        learnts.addAll( kept );
+        for ( int i = 0 ; i < 2 * variableCount ; i++ ) {
+            watches[i].removeDeleted();
+        }
+    }
+
+    private boolean isLocked(Clause clause)
+    {
+        final int first = clause.literals[0];
+        return reasons[ first >> 1 ] == clause && values[ first ] == TRUE;
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // variable order heap
+    // ------------------------------------------------------------------------------------------------
+
+    private void heapInsert(int v)
+    {
+        heap[ heapSize ] = v;
+        heapIndex[v] = heapSize;
+        heapUp( heapSize++ );
+    }
+
+    private int heapRemoveMax()
+    {
+        final int result = heap[0];
+        heapIndex[ result ] = -1;
+        heapSize--;
+        if ( heapSize > 0 )
+        {
+            heap[0] = heap[ heapSize ];
+            heapIndex[ heap[0] ] = 0;
+            heapDown( 0 );
+        }
+        return result;
+    }
+
+    private void heapUp(int index)
+    {
+        final int v = heap[index];
+        while ( index > 0 )
+        {
+            final int parent = ( index - 1 ) >> 1;
+            if ( activity[ heap[parent] ] >= activity[v] ) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heapIndex[ heap[index] ] = index;
+            index = parent;
+        }
+        heap[index] = v;
+        heapIndex[v] = index;
+    }
+
+    private void heapDown(int index)
+    {
+        final int v = heap[index];
+        while ( true )
+        {
+            int child = 2 * index + 1;
+            if ( child >= heapSize ) {
+                break;
+            }
+            if ( child + 1 < heapSize && activity[ heap[ child + 1 ] ] > activity[ heap[child] ] ) {
+                child++;
+            }
+            if ( activity[ heap[child] ] <= activity[v] ) {
+                break;
+            }
+            heap[index] = heap[child];
+            heapIndex[ heap[index] ] = index;
+            index = child;
+        }
+        heap[index] = v;
+        heapIndex[v] = index;
+    }
+}
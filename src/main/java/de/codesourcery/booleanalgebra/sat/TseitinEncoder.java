@@ -0,0 +1,242 @@
+package de.codesourcery.booleanalgebra.sat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Stack;
+
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.IExpressionContext;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.BooleanExpression;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+import de.codesourcery.booleanalgebra.hashcons.HashConsedNode;
+import de.codesourcery.booleanalgebra.hashcons.NodeFactory;
+
+/**
+ * Adds the clauses of terms to a {@link SATSolver} using the Tseitin transformation.
+ *
+ * <p>Every <code>AND</code> and <code>OR</code> gets an auxiliary variable that is constrained to be equal to
+ * its value , negations just negate the literal. Terms are hash-consed first , so structurally equal
+ * subterms (also across several calls) share one variable.</p>
+ */
+public final class TseitinEncoder
+{
+    private final SATSolver solver;
+    private final NodeFactory factory = new NodeFactory();
+
+    private final Map<Identifier,Integer> variables = new HashMap<>();
+
+    // literal of each hash-consed node by ID , 0 if not encoded yet
+    private int[] literals = new int[ 64 ];
+
+    public TseitinEncoder(SATSolver solver)
+    {
+        if (solver == null) {
+            throw new IllegalArgumentException("solver must not be NULL.");
+        }
+        this.solver = solver;
+    }
+
+    public SATSolver getSolver() {
+        return solver;
+    }
+
+    /**
+     * Returns the solver variable of an identifier , creating it if needed.
+     *
+     * @param identifier
+     * @return
+     */
+    public int getVariable(Identifier identifier)
+    {
+        if (identifier == null) {
+            throw new IllegalArgumentException("identifier must not be NULL.");
+        }
+        Integer result = variables.get( identifier );
+        if ( result == null ) {
+            result = solver.newVariable();
+            variables.put( identifier , result );
+        }
+        return result;
+    }
+
+    /**
+     * Returns all identifiers encoded so far and their solver variables.
+     *
+     * @return
+     */
+    public Map<Identifier,Integer> getVariables() {
+        return Collections.unmodifiableMap( variables );
+    }
+
+    /**
+     * Encodes a term or expression.
+     *
+     * @param term
+     * @return literal that is <code>true</code> if and only if the term is <code>true</code> ,
+     * a {@link BooleanExpression} is <code>true</code> when both sides have the same value
+     * @see #encode(ASTNode, IExpressionContext)
+     */
+    public int encode(ASTNode term) {
+        return encode( term , null );
+    }
+
+    /**
+     * Encodes a term or expression , replacing all variables that are bound to literal values.
+     *
+     * @param term
+     * @param context context used to look up variable values, may be <code>null</code>
+     * @return literal that is <code>true</code> if and only if the term is <code>true</code>
+     */
+    public int encode(ASTNode term,IExpressionContext context)
+    {
+        if ( term == null ) {
+            throw new IllegalArgumentException("term must not be NULL.");
+        }
+        if ( term instanceof BooleanExpression )
+        {
+            final BooleanExpression expr = (BooleanExpression) term;
+            final int lhs = encode( factory.fromAST( expr.getLHS() , context ) );
+            final int rhs = encode( factory.fromAST( expr.getRHS() , context ) );
+            return -xor( lhs , rhs );
+        }
+        return encode( factory.fromAST( term , context ) );
+    }
+
+    /**
+     * Returns a literal that is <code>true</code> if and only if exactly one of two literals is <code>true</code>.
+     *
+     * @param a
+     * @param b
+     * @return
+     */
+    public int xor(int a,int b)
+    {
+        final int x = solver.newVariable();
+        solver.addClause( -x , a , b );
+        solver.addClause( -x , -a , -b );
+        solver.addClause( x , -a , b );
+        solver.addClause( x , a , -b );
+        return x;
+    }
+
+    /*
+     * Encodes a hash-consed term using an explicit stack , so arbitrarily deep terms can be encoded.
+     * Nodes are encoded in post-order (left before right) , so variables get created in the same order
+     * as with a recursive encoding.
+     */
+    private int encode(HashConsedNode root)
+    {
+        final Stack<HashConsedNode> stack = new Stack<>();
+        stack.push( root );
+        while ( ! stack.isEmpty() )
+        {
+            final HashConsedNode node = stack.peek();
+            if ( getLiteral( node ) != 0 ) {
+                stack.pop();
+                continue;
+            }
+            // FALSE is encoded as the negation of TRUE
+            final HashConsedNode left = node.isFalse() ? factory.getTrue() : node.leftChild();
+            final HashConsedNode right = node.rightChild();
+            boolean operandsEncoded = true;
+            if ( right != null && getLiteral( right ) == 0 )
+            {
+                stack.push( right );
+                operandsEncoded = false;
+            }
+            if ( left != null && getLiteral( left ) == 0 )
+            {
+                stack.push( left );
+                operandsEncoded = false;
+            }
+            if ( operandsEncoded )
+            {
+                stack.pop();
+                setLiteral( node , encodeNode( node ) );
+            }
+        }
+        return getLiteral( root );
+    }
+
+    private int getLiteral(HashConsedNode node)
+    {
+        final int id = node.getId();
+        return id < literals.length ? literals[id] : 0;
+    }
+
+    private void setLiteral(HashConsedNode node,int literal)
+    {
+        final int id = node.getId();
+        if ( id >= literals.length ) {
+            literals = Arrays.copyOf( literals , Math.max( id + 1 , literals.length * 2 ) );
+        }
+        literals[id] = literal;
+    }
+
+    /*
+     * Encodes a node whose operands have been encoded already.
+     */
+    private int encodeNode(HashConsedNode node)
+    {
+        final int result;
+        switch( node.getType() )
+        {
+            case TRUE:
+                result = solver.newVariable();
+                solver.addClause( result );
+                break;
+            case FALSE:
+                result = -getLiteral( factory.getTrue() );
+                break;
+            case VARIABLE:
+                result = getVariable( node.getIdentifier() );
+                break;
+            case NOT:
+                result = -getLiteral( node.leftChild() );
+                break;
+            case AND:
+            {
+                final int a = getLiteral( node.leftChild() );
+                final int b = getLiteral( node.rightChild() );
+                result = solver.newVariable();
+                solver.addClause( -result , a );
+                solver.addClause( -result , b );
+                solver.addClause( result , -a , -b );
+                break;
+            }
+            case OR:
+            {
+                final int a = getLiteral( node.leftChild() );
+                final int b = getLiteral( node.rightChild() );
+                result = solver.newVariable();
+                solver.addClause( result , -a );
+                solver.addClause( result , -b );
+                solver.addClause( -result , a , b );
+                break;
+            }
+            default:
+                throw new RuntimeException("Unreachable code reached");
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values of all encoded identifiers in the model found by the last successful
+     * {@link SATSolver#solve(int...)}.
+     *
+     * @return context with {@link TrueNode}s and {@link FalseNode}s
+     */
+    public ExpressionContext getModel()
+    {
+        final ExpressionContext result = new ExpressionContext();
+        for ( Map.Entry<Identifier,Integer> entry : variables.entrySet() ) {
+            result.set( entry.getKey() , solver.getModelValue( entry.getValue() ) ? new TrueNode() : new FalseNode() );
+        }
+        return result;
+    }
+}
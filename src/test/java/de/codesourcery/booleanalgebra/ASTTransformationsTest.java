@@ -12,15 +12,14 @@ import org.apache.commons.lang.StringUtils;
 import de.codesourcery.booleanalgebra.ASTTransformations;
 import de.codesourcery.booleanalgebra.BooleanExpressionParser;
 import de.codesourcery.booleanalgebra.ExpressionContext;
-import de.codesourcery.booleanalgebra.IExpressionContext;
 import de.codesourcery.booleanalgebra.ast.ASTNode;
-import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.CanonicalOrder;
 import de.codesourcery.booleanalgebra.ast.Identifier;
 import de.codesourcery.booleanalgebra.ast.IdentifierNode;
 import de.codesourcery.booleanalgebra.ast.OperatorNode;
 import de.codesourcery.booleanalgebra.ast.OperatorType;
 import de.codesourcery.booleanalgebra.ast.TermNode;
-import de.codesourcery.booleanalgebra.ast.TrueNode;
+import de.codesourcery.booleanalgebra.eval.TruthTable;
 
 public class ASTTransformationsTest extends TestCase
 {
@@ -43,6 +42,22 @@ public class ASTTransformationsTest extends TestCase
         transformer.simplify( term , new ExpressionContext() );
     }
     
+    public void testSubstituteCommonTerms() 
+    {
+        final ExpressionContext context = new ExpressionContext();
+        final ASTNode term = parseTerm( "((Aa or c) and d) or ((BB or c) and e) or ((Aa or c) and f)" );
+        
+        final ASTNode result = transformer.substituteCommonTerms( term , context );
+        
+        // "Aa" and "BB" have the same String#hashCode()
+        final String stringForm = result.toString(false);
+        assertEquals( 2 , StringUtils.countMatches( stringForm , "_tmp_" ) );
+        assertTrue( stringForm.contains( "(BB OR c)" ) );
+        assertEquals( 1 , context.getAllIdentifiers().size() );
+        final Identifier identifier = context.getAllIdentifiers().iterator().next();
+        assertEquals( 0 , CanonicalOrder.INSTANCE.compare( parseTerm( "Aa or c" ) , context.lookup( identifier ) ) );
+    }
+    
     public void testSimplify() throws FileNotFoundException 
     {
         for ( int i = 0 ; i < 10000 ; i++ ) 
@@ -65,53 +80,22 @@ public class ASTTransformationsTest extends TestCase
         assertTermsAreEquivalent( term , simplified );
     }
     
-    protected interface IValidator {
-        public boolean validate(ASTNode val1,ASTNode val2, IExpressionContext ctx);
-    }
-    
     public void assertTermsAreEquivalent(ASTNode input , ASTNode output) 
     {
-        final IValidator v = new IValidator() {
-            
-            @Override
-            public boolean validate(ASTNode term1, ASTNode term2, IExpressionContext context) {
-                ASTNode val1 = term1.evaluate( context );
-                ASTNode val2 = term2.evaluate( context );
-                return val1.isEquivalent( val2 , context); 
-            }
-        };
-        assertTermsAreEquivalent( input , output , v );
-    }
-    
-    public void assertTermsAreEquivalent(ASTNode input , ASTNode output,IValidator validator) 
-    {
-        ExpressionContext context = new ExpressionContext();
-        
-        final List<Identifier> vars = new ArrayList<Identifier>( transformer.gatherIdentifiers( input ) );
-        
-        // size = 1 => 1 << 1 => 2
-        // size = 2 => 1 << 2 => 4
-        long maxValue = vars.isEmpty() ? 0 : 1<< vars.size();
-        for ( long val = 0 ; val <= maxValue ; val++ ) 
+        final List<Identifier> vars = TruthTable.gatherVariables( input , output );
+        final long row = TruthTable.findDifference( input , output , vars );
+        if ( row != -1 )
         {
-            int mask = 1;
-            for ( Identifier id : vars ) 
-            {
-                final ASTNode bitValue = ( val & mask) != 0 ? new TrueNode() : new FalseNode();
-                context.set( id  , bitValue );
-                mask = mask << 1;
-            }
+            final ExpressionContext context = new ExpressionContext();
+            TruthTable.assignRow( vars , row , context );
             
-            if ( ! validator.validate( input , output , context ) )
-            {
-                System.out.println("\n------------------------");
-                System.out.println( "\nVariables:\n\n"+context.toString() );
-                System.out.println("INPUT: "+input);
-                System.out.println("\n------------------------");
-                System.out.println("OUTPUT: "+output);
-                
-                throw new RuntimeException("validator failed for: "+input+" <-> "+output);
-            }
+            System.out.println("\n------------------------");
+            System.out.println( "\nVariables:\n\n"+context.toString() );
+            System.out.println("INPUT: "+input);
+            System.out.println("\n------------------------");
+            System.out.println("OUTPUT: "+output);
+            
+            throw new RuntimeException("validator failed for: "+input+" <-> "+output);
         }
     }
     
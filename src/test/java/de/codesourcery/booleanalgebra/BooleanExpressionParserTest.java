@@ -5,10 +5,13 @@ import java.util.Iterator;
 
 import junit.framework.TestCase;
 import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
 import de.codesourcery.booleanalgebra.ast.IdentifierNode;
 import de.codesourcery.booleanalgebra.ast.OperatorNode;
 import de.codesourcery.booleanalgebra.ast.OperatorType;
 import de.codesourcery.booleanalgebra.ast.TermNode;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
 import de.codesourcery.booleanalgebra.exceptions.ParseException;
 
 public class BooleanExpressionParserTest extends TestCase
@@ -237,4 +240,37 @@ public class BooleanExpressionParserTest extends TestCase
         
         assertIteratorAtEOF(it);
     }    
+    
+    public void testParseNaryOperators() {
+        
+        parser.setNaryOperators( true );
+        final ASTNode term = parser.parse( "a or b or c and d and e or f" , false );
+        
+        assertTrue( term.isOR() );
+        assertEquals( 4 , term.getChildCount() );
+        assertTrue( term.child(2).isAND() );
+        assertEquals( 3 , term.child(2).getChildCount() );
+        assertEquals( "a OR b OR (c AND d AND e) OR f" , term.toString() );
+        
+        // parenthesized terms are kept
+        final ASTNode nested = parser.parse( "(a or b) or c" , false );
+        assertEquals( 2 , nested.getChildCount() );
+        assertTrue( nested.child(0) instanceof TermNode );
+    }
+    
+    public void testEvaluateNaryOperators() {
+        
+        parser.setNaryOperators( true );
+        final ASTNode term = parser.parse( "a and b and c" , false );
+        final ExpressionContext context = new ExpressionContext();
+        context.set( Identifier.id("a") , new TrueNode() );
+        context.set( Identifier.id("b") , new TrueNode() );
+        assertSame( term , term.evaluate( context ) );
+        
+        context.set( Identifier.id("c") , new TrueNode() );
+        assertTrue( term.evaluate( context ).getLiteralValue( context ) );
+        
+        context.set( Identifier.id("b") , new FalseNode() );
+        assertFalse( term.evaluate( context ).getLiteralValue( context ) );
+    }
 }
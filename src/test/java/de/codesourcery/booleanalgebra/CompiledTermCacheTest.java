@@ -0,0 +1,61 @@
+package de.codesourcery.booleanalgebra;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.eval.CompiledExpression;
+
+public class CompiledTermCacheTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    public void testLookupByIdentity()
+    {
+        final CompiledTermCache cache = new CompiledTermCache();
+        final ASTNode term = parser.parse( "a and b" , false );
+        final CompiledExpression program = CompiledExpression.compile( term );
+        cache.put( term , program );
+
+        assertSame( program , cache.get( term ) );
+        // same structure , but not the same term
+        final ASTNode copy = term.createCopy( true );
+        assertEquals( term.getFingerprint() , copy.getFingerprint() );
+        assertNull( cache.get( copy ) );
+    }
+
+    public void testModifiedTermsAreReplaced()
+    {
+        final CompiledTermCache cache = new CompiledTermCache();
+        final ASTNode term = parser.parse( "a and b" , false );
+        cache.put( term , CompiledExpression.compile( term ) );
+
+        // changes the hash code of the term
+        final int hashCode = term.hashCode();
+        term.child(1).replaceWith( new IdentifierNode( Identifier.id("c") ) );
+        assertTrue( hashCode != term.hashCode() );
+        assertNull( cache.get( term ) );
+
+        final CompiledExpression program = CompiledExpression.compile( term );
+        cache.put( term , program );
+        assertSame( program , cache.get( term ) );
+        assertEquals( 1 , cache.size() );
+    }
+
+    public void testManyTerms()
+    {
+        final CompiledTermCache cache = new CompiledTermCache();
+        final ASTNode[] terms = new ASTNode[1000];
+        final CompiledExpression[] programs = new CompiledExpression[ terms.length ];
+        for ( int i = 0 ; i < terms.length ; i++ )
+        {
+            terms[i] = parser.parse( "v"+i+" or not v"+(i+1) , false );
+            programs[i] = CompiledExpression.compile( terms[i] );
+            cache.put( terms[i] , programs[i] );
+        }
+        assertEquals( terms.length , cache.size() );
+        for ( int i = 0 ; i < terms.length ; i++ ) {
+            assertSame( programs[i] , cache.get( terms[i] ) );
+        }
+    }
+}
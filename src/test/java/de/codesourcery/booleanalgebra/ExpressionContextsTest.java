@@ -0,0 +1,87 @@
+package de.codesourcery.booleanalgebra;
+
+import java.util.Set;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.eval.CompiledExpression;
+
+public class ExpressionContextsTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    /*
+     * A context that implements nothing but IExpressionContext.
+     */
+    private static final class PlainContext implements IExpressionContext
+    {
+        private final ExpressionContext delegate = new ExpressionContext();
+
+        @Override
+        public IExpressionContext createCopy() {
+            return delegate.createCopy();
+        }
+
+        @Override
+        public ASTNode lookup(Identifier identifier) {
+            return delegate.lookup( identifier );
+        }
+
+        @Override
+        public ASTNode tryLookup(Identifier identifier) {
+            return delegate.tryLookup( identifier );
+        }
+
+        @Override
+        public void set(Identifier name, ASTNode value) {
+            delegate.set( name , value );
+        }
+
+        @Override
+        public Set<Identifier> getAllIdentifiers() {
+            return delegate.getAllIdentifiers();
+        }
+
+        @Override
+        public Identifier createIdentifier(ASTNode value) {
+            return delegate.createIdentifier( value );
+        }
+
+        @Override
+        public void retainOnly(Set<Identifier> ids) {
+            delegate.retainOnly( ids );
+        }
+
+        @Override
+        public void remove(Identifier identifier) {
+            delegate.remove( identifier );
+        }
+
+        @Override
+        public void clear() {
+            delegate.clear();
+        }
+    }
+
+    public void testPlainContext()
+    {
+        final Identifier a = Identifier.id( "a" );
+        final Identifier b = Identifier.id( "b" );
+        final Identifier c = Identifier.id( "c" );
+
+        final PlainContext context = new PlainContext();
+        ExpressionContexts.define( context , a , true );
+        ExpressionContexts.define( context , b , false );
+        context.set( c , parser.parse( "a or b" , false ) );
+
+        assertEquals( ILiteralExpressionContext.LITERAL_TRUE , ExpressionContexts.lookupLiteral( context , a ) );
+        assertEquals( ILiteralExpressionContext.LITERAL_FALSE , ExpressionContexts.lookupLiteral( context , b ) );
+        assertEquals( ILiteralExpressionContext.NO_LITERAL , ExpressionContexts.lookupLiteral( context , c ) );
+        assertEquals( ILiteralExpressionContext.NO_LITERAL , ExpressionContexts.lookupLiteral( context , Identifier.id( "d" ) ) );
+
+        final CompiledExpression compiled = CompiledExpression.compile( parser.parse( "a and not b" , false ) );
+        assertEquals( ILiteralExpressionContext.LITERAL_TRUE , compiled.tryEvaluate( context ) );
+        assertTrue( new ASTTransformations().eval( parser.parse( "a and not b" , false ) , context ).getLiteralValue( context ) );
+    }
+}
@@ -0,0 +1,150 @@
+package de.codesourcery.booleanalgebra;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.SymbolTable;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+import de.codesourcery.booleanalgebra.eval.CompiledExpression;
+
+public class PackedExpressionContextTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    private final Identifier a = Identifier.id("a");
+    private final Identifier b = Identifier.id("b");
+    private final Identifier c = Identifier.id("c");
+
+    public void testLiteralValues()
+    {
+        final PackedExpressionContext context = new PackedExpressionContext();
+        assertNull( context.tryLookup( a ) );
+
+        context.define( a , true );
+        context.set( b , parser.parse( "false" , false ) );
+
+        assertTrue( context.hasLiteralValue( a ) );
+        assertTrue( context.getLiteralValue( a ) );
+        assertFalse( context.getLiteralValue( b ) );
+        assertTrue( context.lookup( a ) instanceof TrueNode );
+        assertEquals( new HashSet<>( Arrays.asList( a , b ) ) , context.getAllIdentifiers() );
+
+        context.remove( a );
+        assertNull( context.tryLookup( a ) );
+        assertFalse( context.hasLiteralValue( a ) );
+    }
+
+    public void testNonLiteralValues()
+    {
+        final PackedExpressionContext context = new PackedExpressionContext();
+        context.define( a , true );
+        context.set( a , parser.parse( "b or c" , false ) );
+
+        assertFalse( context.hasLiteralValue( a ) );
+        final ASTNode value = context.lookup( a );
+        assertEquals( "b OR c" , value.toString( false ) );
+        // callers get a copy
+        assertNotSame( value , context.lookup( a ) );
+
+        context.define( a , false );
+        assertTrue( context.lookup( a ).isLiteralValue() );
+        assertEquals( 1 , context.getAllIdentifiers().size() );
+    }
+
+    public void testCopiesAreIndependent()
+    {
+        final PackedExpressionContext context = new PackedExpressionContext();
+        context.define( a , true );
+        context.set( b , parser.parse( "a and c" , false ) );
+
+        final PackedExpressionContext copy = (PackedExpressionContext) context.createCopy();
+        copy.define( a , false );
+        copy.remove( b );
+        copy.set( c , parser.parse( "not a" , false ) );
+
+        assertTrue( context.getLiteralValue( a ) );
+        assertNotNull( context.tryLookup( b ) );
+        assertNull( context.tryLookup( c ) );
+
+        assertFalse( copy.getLiteralValue( a ) );
+        assertNull( copy.tryLookup( b ) );
+        assertNotNull( copy.tryLookup( c ) );
+    }
+
+    public void testRetainOnlyAndClear()
+    {
+        final PackedExpressionContext context = new PackedExpressionContext();
+        context.define( a , true );
+        context.define( b , true );
+        context.set( c , parser.parse( "a and b" , false ) );
+
+        context.retainOnly( Collections.singleton( b ) );
+        assertEquals( Collections.singleton( b ) , context.getAllIdentifiers() );
+
+        context.clear();
+        assertTrue( context.getAllIdentifiers().isEmpty() );
+    }
+
+    public void testManyVariables()
+    {
+        final SymbolTable symbols = new SymbolTable();
+        final PackedExpressionContext context = new PackedExpressionContext( symbols );
+        for ( int i = 0 ; i < 1000 ; i++ ) {
+            context.define( symbols.intern( "v"+i ) , ( i % 3 ) == 0 );
+        }
+        for ( int i = 0 ; i < 1000 ; i++ ) {
+            assertEquals( ( i % 3 ) == 0 , context.getLiteralValue( i ) );
+        }
+        assertEquals( 1000 , context.getAllIdentifiers().size() );
+    }
+
+    public void testCreateIdentifier()
+    {
+        final PackedExpressionContext context = new PackedExpressionContext();
+        final Identifier id1 = context.createIdentifier( parser.parse( "a and b" , false ) );
+        final Identifier id2 = context.createIdentifier( parser.parse( "a or b" , false ) );
+        assertFalse( id1.equals( id2 ) );
+        assertEquals( "a OR b" , context.lookup( id2 ).toString( false ) );
+
+        // names that are taken get skipped , only the returned one gets added to the symbol table
+        context.define( Identifier.id( "_tmp_4" ) , true );
+        final int size = context.getSymbolTable().size();
+        final Identifier id3 = context.createIdentifier( parser.parse( "c" , false ) );
+        assertEquals( "_tmp_5" , id3.getValue() );
+        assertEquals( size + 1 , context.getSymbolTable().size() );
+    }
+
+    public void testLookupLiteral()
+    {
+        for ( ILiteralExpressionContext context : new ILiteralExpressionContext[] { new PackedExpressionContext() , new ExpressionContext() } )
+        {
+            context.define( a , true );
+            context.define( b , false );
+            context.set( c , parser.parse( "a or b" , false ) );
+
+            assertEquals( ILiteralExpressionContext.LITERAL_TRUE , context.lookupLiteral( a ) );
+            assertEquals( ILiteralExpressionContext.LITERAL_FALSE , context.lookupLiteral( b ) );
+            assertEquals( ILiteralExpressionContext.NO_LITERAL , context.lookupLiteral( c ) );
+            assertEquals( ILiteralExpressionContext.NO_LITERAL , context.lookupLiteral( Identifier.id( "d" ) ) );
+        }
+    }
+
+    public void testCompiledExpressionFastPath()
+    {
+        final PackedExpressionContext context = new PackedExpressionContext( parser.getSymbolTable() );
+        final ASTNode term = parser.parse( "a and not (b or c)" , true );
+        final CompiledExpression compiled = CompiledExpression.compile( term );
+
+        assertFalse( compiled.hasLiteralValues( context ) );
+        context.define( a , true );
+        context.define( b , false );
+        context.define( c , false );
+        assertTrue( compiled.hasLiteralValues( context ) );
+        assertTrue( compiled.evaluate( context ) );
+        assertTrue( term.evaluate( context ).getLiteralValue( context ) );
+    }
+}
@@ -0,0 +1,177 @@
+package de.codesourcery.booleanalgebra;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.OperatorType;
+import de.codesourcery.booleanalgebra.ast.TermNode;
+
+/**
+ * Generates random terms for tests and benchmarks.
+ */
+public class TermGenerator
+{
+    private final Random r;
+
+    public TermGenerator(long seed) {
+        this.r = new Random( seed );
+    }
+
+    public Random getRandom() {
+        return r;
+    }
+
+    public static List<Identifier> createVariables(int count)
+    {
+        final List<Identifier> variables = new ArrayList<Identifier>();
+        for ( int i = 0 ; i < count ;i++)
+        {
+            if ( count <= 26 ) {
+                variables.add( new Identifier( Character.toString( (char) ('a'+i) ) ) );
+            } else {
+                variables.add( new Identifier( "v"+i ) );
+            }
+        }
+        return variables;
+    }
+
+    /**
+     * Creates a random term.
+     *
+     * @param variablesCount number of distinct variables to choose from
+     * @param maxNodeCount
+     * @return
+     */
+    public ASTNode createTerm(int variablesCount,int maxNodeCount) {
+        return createNode( createVariables( variablesCount ) , 0 , maxNodeCount );
+    }
+
+    private ASTNode createNode(List<Identifier> variables,int nodeCount,int maxNodeCount)
+    {
+        if ( nodeCount >= maxNodeCount ) {
+            return new IdentifierNode( variables.get( r.nextInt( variables.size() ) ) );
+        }
+
+        switch( r.nextInt( 4 ) ) {
+            case 0:
+                return new OperatorNode( OperatorType.AND ,
+                        createNode( variables , nodeCount + 1 , maxNodeCount ),
+                        createNode( variables , nodeCount + 2 , maxNodeCount ) );
+            case 1:
+                return new OperatorNode( OperatorType.NOT , createNode( variables , nodeCount + 1 , maxNodeCount ) );
+            case 2:
+                return new TermNode( createNode( variables , nodeCount + 1 , maxNodeCount ) );
+            case 3:
+                return new OperatorNode( OperatorType.OR ,
+                        createNode( variables , nodeCount + 1 , maxNodeCount ),
+                        createNode( variables , nodeCount + 2 , maxNodeCount ) );
+            default:
+                throw new RuntimeException("Unreachable code reached?");
+        }
+    }
+
+    /**
+     * Creates a random term with a given number of leaves.
+     *
+     * <p>Unlike {@link #createTerm(int, int)} the shape of the tree is not biased
+     * towards shallow trees, which makes this suitable for creating large terms.</p>
+     *
+     * @param variables
+     * @param leafCount
+     * @return
+     */
+    public ASTNode createLargeTerm(List<Identifier> variables,int leafCount)
+    {
+        final List<ASTNode> nodes = new ArrayList<>();
+        for ( int i = 0 ; i < leafCount ; i++ )
+        {
+            ASTNode leaf = new IdentifierNode( variables.get( r.nextInt( variables.size() ) ) );
+            if ( r.nextInt( 3 ) == 0 ) {
+                leaf = OperatorNode.not( leaf );
+            }
+            nodes.add( leaf );
+        }
+        while ( nodes.size() > 1 )
+        {
+            final ASTNode left = removeRandom( nodes );
+            final ASTNode right = removeRandom( nodes );
+            ASTNode combined = r.nextBoolean() ? OperatorNode.and( left , right ) : OperatorNode.or( left , right );
+            if ( r.nextInt( 8 ) == 0 ) {
+                combined = OperatorNode.not( new TermNode( combined ) );
+            }
+            nodes.add( combined );
+        }
+        return nodes.get(0);
+    }
+
+    /**
+     * Creates the carry-out of a ripple-carry adder , <code>a[0]</code> and <code>b[0]</code> are the least
+     * significant bits.
+     *
+     * @param a
+     * @param b
+     * @return
+     */
+    public static ASTNode createAdderCarry(List<Identifier> a,List<Identifier> b)
+    {
+        ASTNode carry = OperatorNode.and( new IdentifierNode( a.get(0) ) , new IdentifierNode( b.get(0) ) );
+        for ( int i = 1 ; i < a.size() ; i++ )
+        {
+            final ASTNode generate = OperatorNode.and( new IdentifierNode( a.get(i) ) , new IdentifierNode( b.get(i) ) );
+            final ASTNode propagate = OperatorNode.or( new IdentifierNode( a.get(i) ) , new IdentifierNode( b.get(i) ) );
+            carry = OperatorNode.or( generate , OperatorNode.and( carry , propagate ) );
+        }
+        return carry;
+    }
+
+    /**
+     * Creates a comparator that is <code>true</code> if the unsigned number <code>a</code> is greater than <code>b</code> , 
+     * <code>a[0]</code> and <code>b[0]</code> are the least significant bits.
+     *
+     * @param a
+     * @param b
+     * @return
+     */
+    public static ASTNode createComparator(List<Identifier> a,List<Identifier> b)
+    {
+        ASTNode greater = OperatorNode.and( new IdentifierNode( a.get(0) ) , OperatorNode.not( new IdentifierNode( b.get(0) ) ) );
+        for ( int i = 1 ; i < a.size() ; i++ )
+        {
+            final ASTNode bitGreater = OperatorNode.and( new IdentifierNode( a.get(i) ) , OperatorNode.not( new IdentifierNode( b.get(i) ) ) );
+            final ASTNode bitEqual = OperatorNode.or( OperatorNode.and( new IdentifierNode( a.get(i) ) , new IdentifierNode( b.get(i) ) ) ,
+                    OperatorNode.and( OperatorNode.not( new IdentifierNode( a.get(i) ) ) , OperatorNode.not( new IdentifierNode( b.get(i) ) ) ) );
+            greater = OperatorNode.or( bitGreater , OperatorNode.and( bitEqual , greater ) );
+        }
+        return greater;
+    }
+
+    /**
+     * Creates variables <code>prefix0</code> to <code>prefix(count-1)</code>.
+     *
+     * @param prefix
+     * @param count
+     * @return
+     */
+    public static List<Identifier> createVariables(String prefix,int count)
+    {
+        final List<Identifier> variables = new ArrayList<Identifier>();
+        for ( int i = 0 ; i < count ; i++ ) {
+            variables.add( new Identifier( prefix+i ) );
+        }
+        return variables;
+    }
+
+    private ASTNode removeRandom(List<ASTNode> nodes)
+    {
+        final int index = r.nextInt( nodes.size() );
+        final ASTNode result = nodes.get( index );
+        nodes.set( index , nodes.get( nodes.size() - 1 ) );
+        nodes.remove( nodes.size() - 1 );
+        return result;
+    }
+}
@@ -0,0 +1,50 @@
+package de.codesourcery.booleanalgebra.aig;
+
+import java.util.List;
+
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+
+/**
+ * Measures building , rewriting and balancing AIGs of large random terms and adder carries.
+ */
+public class AIGBenchmark
+{
+    private static final int[] LEAF_COUNTS = { 10000 , 100000 , 1000000 };
+
+    public static void main(String[] args)
+    {
+        System.out.println( String.format("%12s %10s %12s %10s %8s %12s %10s %8s %12s" , "term" , "leaves" ,
+                "build [ms]" , "ANDs" , "depth" , "opt [ms]" , "ANDs" , "depth" , "rewrites" ) );
+        final TermGenerator generator = new TermGenerator( 0xbe7c4 );
+        for ( int leaves : LEAF_COUNTS )
+        {
+            final List<Identifier> variables = TermGenerator.createVariables( 64 );
+            run( "random" , leaves , generator.createLargeTerm( variables , leaves ) );
+        }
+        for ( int bits : new int[] { 64 , 256 , 1024 } )
+        {
+            final ASTNode carry = TermGenerator.createAdderCarry( TermGenerator.createVariables( "a" , bits ) ,
+                    TermGenerator.createVariables( "b" , bits ) );
+            run( "carry" , 2 * bits , carry );
+        }
+    }
+
+    private static void run(String name,int leaves,ASTNode term)
+    {
+        long start = System.nanoTime();
+        final AIG aig = new AIG();
+        aig.addOutput( aig.fromAST( term ) );
+        final double buildMillis = ( System.nanoTime() - start ) / 1000000.0;
+
+        start = System.nanoTime();
+        final AIGTransformations transformations = new AIGTransformations();
+        final AIG optimized = transformations.optimize( aig );
+        final double optimizeMillis = ( System.nanoTime() - start ) / 1000000.0;
+
+        System.out.println( String.format("%12s %10d %12.2f %10d %8d %12.2f %10d %8d %12d" , name , leaves , buildMillis ,
+                aig.getAndCount() , aig.getDepth() , optimizeMillis , optimized.getAndCount() , optimized.getDepth() ,
+                transformations.getRewriteCount() ) );
+    }
+}
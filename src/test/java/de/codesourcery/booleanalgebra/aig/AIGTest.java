@@ -0,0 +1,106 @@
+package de.codesourcery.booleanalgebra.aig;
+
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+import de.codesourcery.booleanalgebra.sat.SATChecker;
+
+public class AIGTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    private ASTNode parse(String expression) {
+        return parser.parse( expression , false );
+    }
+
+    public void testConstantsAndTrivialCases()
+    {
+        final AIG aig = new AIG();
+        final int a = aig.input( Identifier.id("a") );
+        assertEquals( AIG.FALSE , aig.and( a , AIG.not( a ) ) );
+        assertEquals( AIG.FALSE , aig.and( a , AIG.FALSE ) );
+        assertEquals( a , aig.and( a , AIG.TRUE ) );
+        assertEquals( a , aig.and( a , a ) );
+        assertEquals( AIG.TRUE , aig.or( a , AIG.not( a ) ) );
+        assertEquals( 2 , aig.getNodeCount() );
+        assertEquals( "true" , aig.toAST( AIG.TRUE ).toString() );
+        assertEquals( "false" , aig.toAST( AIG.FALSE ).toString() );
+    }
+
+    public void testStructuralHashing()
+    {
+        final AIG aig = new AIG();
+        final int f = aig.fromAST( parse( "(a and b) or (b and a) or not (not a or not b)" ) );
+        assertEquals( aig.fromAST( parse( "b and a" ) ) , f );
+        // constant , two inputs and one AND
+        assertEquals( 4 , aig.getNodeCount() );
+        assertEquals( -1 , aig.findAnd( f , aig.input( Identifier.id("a") ) ) );
+
+        final int g = aig.fromAST( parse( "a or b" ) );
+        assertTrue( AIG.isComplemented( g ) );
+        assertEquals( "a OR b" , aig.toAST( g ).toString() );
+    }
+
+    public void testContext()
+    {
+        final ExpressionContext context = new ExpressionContext();
+        context.set( Identifier.id("a") , new TrueNode() );
+        final AIG aig = new AIG();
+        assertEquals( aig.input( Identifier.id("b") ) , aig.fromAST( parse( "a and b" ) , context ) );
+        assertEquals( AIG.TRUE , aig.fromAST( parse( "a or b" ) , context ) );
+    }
+
+    public void testExpression()
+    {
+        final AIG aig = new AIG();
+        assertEquals( AIG.TRUE , aig.fromAST( parse( "a and b = b and a" ) ) );
+        final int f = aig.fromAST( parse( "a = b" ) );
+        assertTrue( new SATChecker().isEquivalent( aig.toAST( f ) , parse( "(a and b) or (not a and not b)" ) ) );
+    }
+
+    public void testRoundTrip()
+    {
+        final TermGenerator generator = new TermGenerator( 0xa16 );
+        final List<Identifier> variables = TermGenerator.createVariables( 20 );
+        for ( int i = 0 ; i < 50 ; i++ )
+        {
+            final ASTNode term = generator.createLargeTerm( variables , 200 );
+            final AIG aig = new AIG();
+            final ASTNode result = aig.toAST( aig.fromAST( term ) );
+            assertTrue( new SATChecker().isEquivalent( term , result ) );
+        }
+    }
+
+    public void testSimulation()
+    {
+        final AIG aig = new AIG();
+        final int f = aig.fromAST( parse( "(a and not b) or c" ) );
+        final Random random = new Random( 42 );
+        final long a = random.nextLong();
+        final long b = random.nextLong();
+        final long c = random.nextLong();
+        final long[] values = aig.simulate( new long[] { a , b , c } );
+        assertEquals( ( a & ~b ) | c , AIG.getValue( values , f ) );
+    }
+
+    public void testDeepTerm()
+    {
+        ASTNode term = parse( "a0" );
+        for ( int i = 1 ; i < 100000 ; i++ ) {
+            term = OperatorNode.not( OperatorNode.and( term , parse( "a"+( i % 1000 ) ) ) );
+        }
+        final AIG aig = new AIG();
+        final int f = aig.fromAST( term );
+        aig.addOutput( f );
+        assertEquals( 99999 , aig.getDepth() );
+        assertNotNull( aig.toAST( f ) );
+    }
+}
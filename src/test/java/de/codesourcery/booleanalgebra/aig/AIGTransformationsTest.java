@@ -0,0 +1,141 @@
+package de.codesourcery.booleanalgebra.aig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.ASTTransformations;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.sat.SATChecker;
+
+public class AIGTransformationsTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+    private final AIGTransformations transformations = new AIGTransformations();
+
+    private AIG createAIG(String... expressions)
+    {
+        final AIG aig = new AIG();
+        for ( String expression : expressions ) {
+            aig.addOutput( aig.fromAST( parser.parse( expression , false ) ) );
+        }
+        return aig;
+    }
+
+    private String rewrite(String expression)
+    {
+        final AIG result = transformations.rewrite( createAIG( expression ) );
+        return result.toAST( result.getOutput( 0 ) ).toString();
+    }
+
+    public void testTwoLevelRules()
+    {
+        assertEquals( "false" , rewrite( "(a and b) and not a" ) );
+        assertEquals( "a AND b" , rewrite( "(a and b) and a" ) );
+        assertEquals( "NOT a" , rewrite( "not (a and b) and not a" ) );
+        assertEquals( "a AND (NOT b)" , rewrite( "not (a and b) and a" ) );
+        assertEquals( "NOT a" , rewrite( "not (a and b) and not (a and not b)" ) );
+        assertEquals( "false" , rewrite( "(a and b) and (c and not a)" ) );
+        assertEquals( "a AND b" , rewrite( "(a and b) and not (c and not a)" ) );
+    }
+
+    public void testCleanup()
+    {
+        final AIG aig = createAIG( "a and b" );
+        aig.fromAST( parser.parse( "c or d" , false ) );
+        assertEquals( 7 , aig.getNodeCount() );
+        final AIG cleaned = transformations.cleanup( aig );
+        // inputs are kept , the unused AND is not
+        assertEquals( 6 , cleaned.getNodeCount() );
+        assertEquals( 1 , cleaned.getAndCount() );
+        assertEquals( aig.getInputs() , cleaned.getInputs() );
+    }
+
+    public void testBalanceChain()
+    {
+        // a0 and (a1 and (a2 and ...)) has depth 63 , balanced 6
+        final List<Identifier> variables = TermGenerator.createVariables( 64 );
+        ASTNode term = new IdentifierNode( variables.get( 0 ) );
+        for ( int i = 1 ; i < variables.size() ; i++ ) {
+            term = OperatorNode.and( new IdentifierNode( variables.get( i ) ) , term );
+        }
+        final AIG aig = new AIG();
+        aig.addOutput( aig.fromAST( term ) );
+        assertEquals( 63 , aig.getDepth() );
+
+        final AIG balanced = transformations.balance( aig );
+        assertEquals( 6 , balanced.getDepth() );
+        assertEquals( 63 , balanced.getAndCount() );
+        assertEquivalent( aig , balanced );
+    }
+
+    public void testBalanceFindsDuplicatesAcrossChains()
+    {
+        final AIG aig = createAIG( "a and (b and (c and (a and d)))" , "a and (b and (c and (not b and d)))" );
+        final AIG balanced = transformations.balance( aig );
+        assertEquals( 3 , balanced.getAndCount() );
+        assertEquals( AIG.FALSE , balanced.getOutput( 1 ) );
+    }
+
+    public void testRandomTerms()
+    {
+        final TermGenerator generator = new TermGenerator( 0xa167 );
+        final List<Identifier> variables = TermGenerator.createVariables( 16 );
+        int before = 0;
+        int after = 0;
+        for ( int i = 0 ; i < 100 ; i++ )
+        {
+            final AIG aig = new AIG();
+            for ( int j = 0 ; j < 3 ; j++ ) {
+                aig.addOutput( aig.fromAST( generator.createLargeTerm( variables , 100 ) ) );
+            }
+            final AIG optimized = transformations.optimize( aig );
+            assertTrue( optimized.getAndCount() <= aig.getAndCount() );
+            assertEquivalent( aig , optimized );
+            assertEquivalent( aig , transformations.balance( aig ) );
+            assertEquivalent( aig , transformations.rewrite( aig ) );
+            before += aig.getAndCount();
+            after += optimized.getAndCount();
+        }
+        assertTrue( after < before );
+    }
+
+    public void testSimplifyAIG()
+    {
+        final ASTTransformations transformer = new ASTTransformations();
+        final ASTNode term = parser.parse( "(a and b) and not (a and not b) and (c or not c)" , false );
+        assertEquals( "a AND b" , transformer.simplifyAIG( term , new ExpressionContext() ).toString() );
+
+        final ASTNode expr = parser.parse( "(a and (b and a)) = not (not a or not b)" , false );
+        assertEquals( "a AND b = a AND b" , transformer.simplifyAIG( expr , new ExpressionContext() ).toString() );
+    }
+
+    private static void assertEquivalent(AIG aig1,AIG aig2)
+    {
+        assertEquals( aig1.getInputs() , aig2.getInputs() );
+        assertEquals( aig1.getOutputCount() , aig2.getOutputCount() );
+
+        // random simulation first , then a proof
+        final Random random = new Random( 0xdead );
+        final long[] patterns = new long[ aig1.getInputs().size() ];
+        for ( int i = 0 ; i < patterns.length ; i++ ) {
+            patterns[i] = random.nextLong();
+        }
+        final long[] values1 = aig1.simulate( patterns );
+        final long[] values2 = aig2.simulate( patterns );
+        final List<ASTNode> terms = new ArrayList<>();
+        for ( int i = 0 ; i < aig1.getOutputCount() ; i++ )
+        {
+            assertEquals( AIG.getValue( values1 , aig1.getOutput( i ) ) , AIG.getValue( values2 , aig2.getOutput( i ) ) );
+            terms.add( aig1.toAST( aig1.getOutput( i ) ) );
+            assertTrue( new SATChecker().isEquivalent( terms.get( i ) , aig2.toAST( aig2.getOutput( i ) ) ) );
+        }
+    }
+}
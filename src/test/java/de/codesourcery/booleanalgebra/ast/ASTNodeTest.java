@@ -0,0 +1,147 @@
+package de.codesourcery.booleanalgebra.ast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+
+public class ASTNodeTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    public void testEqualTermsHaveEqualFingerprints()
+    {
+        final ASTNode term1 = parse( "(a and not b) or c" );
+        final ASTNode term2 = parse( "(a and not b) or c" );
+
+        assertTrue( term1.isEquals( term2 ) );
+        assertEquals( term1.getFingerprint() , term2.getFingerprint() );
+        assertEquals( term1.hashCode() , term2.hashCode() );
+        assertEquals( term1.getFingerprint() , term1.createCopy( true ).getFingerprint() );
+    }
+
+    public void testDifferentTermsHaveDifferentFingerprints()
+    {
+        final String[] terms = { "a" , "b" , "not a" , "a and b" , "b and a" , "a or b" ,
+                "true" , "false" , "a and (b or c)" , "(a and b) or c" , "Aa" , "BB" };
+        for ( int i = 0 ; i < terms.length ; i++ )
+        {
+            for ( int j = i + 1 ; j < terms.length ; j++ )
+            {
+                final ASTNode term1 = parse( terms[i] );
+                final ASTNode term2 = parse( terms[j] );
+                assertTrue( terms[i]+" <-> "+terms[j] , term1.getFingerprint() != term2.getFingerprint() );
+            }
+        }
+    }
+
+    public void testFingerprintIsUpdatedAfterMutation()
+    {
+        final ASTNode term = parse( "a and (b or c)" );
+        final ASTNode or = term.child(0).child(1).child(0);
+        final long oldHash = term.getFingerprint();
+
+        or.child(1).replaceWith( new IdentifierNode( new Identifier( "d" ) ) );
+        assertEquals( parse( "a and (b or d)" ).getFingerprint() , term.getFingerprint() );
+
+        or.removeChild( or.child(1) );
+        or.addChild( new IdentifierNode( new Identifier( "c" ) ) );
+        assertEquals( oldHash , term.getFingerprint() );
+    }
+
+    public void testTraversalOrder()
+    {
+        final ASTNode term = parser.parse( "a and not b" , false );
+
+        final List<String> visited = new ArrayList<>();
+        final INodeVisitor visitor = new INodeVisitor() {
+
+            @Override
+            public boolean visit(ASTNode node, int currentDepth)
+            {
+                final String label = node instanceof OperatorNode ? ((OperatorNode) node).getType().toString() : node.toString();
+                visited.add( label+"@"+currentDepth );
+                return true;
+            }
+        };
+        assertTrue( term.visitPreOrder( visitor ) );
+        assertEquals( Arrays.asList( "AND@0" , "a@1" , "NOT@1" , "b@2" ) , visited );
+
+        visited.clear();
+        assertTrue( term.visitInOrder( visitor ) );
+        assertEquals( Arrays.asList( "a@1" , "AND@0" , "b@2" , "NOT@1" ) , visited );
+
+        visited.clear();
+        assertTrue( term.visitPostOrder( visitor ) );
+        assertEquals( Arrays.asList( "a@1" , "b@2" , "NOT@1" , "AND@0" ) , visited );
+    }
+
+    public void testTraversalsAcrossRecursionLimit()
+    {
+        // a chain of binary operators , with a small subtree hanging off every node
+        ASTNode term = parser.parse( "a or not b" , false );
+        for ( int i = 0 ; i < 3 * ASTNode.MAX_RECURSION_DEPTH ; i++ ) {
+            term = i % 2 == 0 ? OperatorNode.and( term , parser.parse( "c or d" , false ) ) : OperatorNode.or( parser.parse( "not e" , false ) , term );
+        }
+        final ASTNode root = term;
+
+        final List<ASTNode> visited = new ArrayList<>();
+        final int[] maxDepth = new int[1];
+        final INodeVisitor visitor = new INodeVisitor() {
+
+            @Override
+            public boolean visit(ASTNode node, int currentDepth)
+            {
+                maxDepth[0] = Math.max( maxDepth[0] , currentDepth );
+                int depth = 0;
+                for ( ASTNode current = node ; current != root ; current = current.getParent() ) {
+                    depth++;
+                }
+                assertEquals( depth , currentDepth );
+                visited.add( node );
+                return true;
+            }
+        };
+        assertTrue( root.visitPreOrder( visitor ) );
+        final List<ASTNode> expected = new ArrayList<>();
+        for ( Iterator<ASTNode> it = root.createPreOrderIterator() ; it.hasNext() ; ) {
+            expected.add( it.next() );
+        }
+        assertEquals( expected , visited );
+        assertEquals( expected.size() , root.getNodeCount() );
+
+        visited.clear();
+        assertTrue( root.visitInOrder( visitor ) );
+        assertEquals( expected.size() , visited.size() );
+
+        visited.clear();
+        assertTrue( root.visitPostOrder( visitor ) );
+        assertEquals( expected.size() , visited.size() );
+        assertSame( root , visited.get( visited.size() - 1 ) );
+
+        assertTrue( maxDepth[0] > 3 * ASTNode.MAX_RECURSION_DEPTH );
+        assertEquals( maxDepth[0] , root.getTreeDepth() );
+
+        final ASTNode copy = root.createCopy( true );
+        assertTrue( root.isEquals( copy ) );
+        assertEquals( root.getFingerprint() , copy.getFingerprint() );
+        assertEquals( root.getCanonicalHash() , copy.getCanonicalHash() );
+        assertEquals( 0 , CanonicalOrder.INSTANCE.compare( root , copy ) );
+        assertEquals( root.toString() , copy.toString() );
+
+        ASTNode leaf = copy;
+        while ( leaf.hasChildren() ) {
+            leaf = leaf.child( leaf.getChildCount() - 1 );
+        }
+        leaf.replaceWith( new IdentifierNode( new Identifier( "f" ) ) );
+        assertFalse( root.isEquals( copy ) );
+        assertTrue( CanonicalOrder.INSTANCE.compare( root , copy ) != 0 );
+    }
+
+    private ASTNode parse(String s) {
+        return parser.parse( s , true );
+    }
+}
@@ -0,0 +1,97 @@
+package de.codesourcery.booleanalgebra.ast;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+
+public class CanonicalOrderTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    public void testEquivalentTermsCompareEqual()
+    {
+        final ASTNode term1 = parse( "(a and (b or c))" );
+        final ASTNode term2 = parse( "a and b or c" ).child(0);
+        final ASTNode term3 = parse( "((a) and ((b or c)))" );
+
+        assertEquals( 0 , CanonicalOrder.INSTANCE.compare( term1 , term3 ) );
+        assertEquals( term1.getCanonicalHash() , term3.getCanonicalHash() );
+        assertTrue( CanonicalOrder.INSTANCE.compare( term1 , term2 ) != 0 );
+    }
+
+    public void testOrderIsTotal()
+    {
+        final String[] terms = { "false" , "true" , "a" , "not a" , "b" , "a and b" , "a and not b" , "a or b" ,
+                "b or a" , "not (a or b)" , "a and (b or c)" , "(a and b) or c" , "c" };
+        final List<ASTNode> nodes = new ArrayList<>();
+        for ( String s : terms ) {
+            nodes.add( parse( s ) );
+        }
+        for ( ASTNode n1 : nodes )
+        {
+            assertEquals( 0 , CanonicalOrder.INSTANCE.compare( n1 , n1 ) );
+            for ( ASTNode n2 : nodes )
+            {
+                final int result = CanonicalOrder.INSTANCE.compare( n1 , n2 );
+                assertEquals( -Integer.signum( result ) , Integer.signum( CanonicalOrder.INSTANCE.compare( n2 , n1 ) ) );
+                for ( ASTNode n3 : nodes )
+                {
+                    if ( result < 0 && CanonicalOrder.INSTANCE.compare( n2 , n3 ) < 0 ) {
+                        assertTrue( CanonicalOrder.INSTANCE.compare( n1 , n3 ) < 0 );
+                    }
+                }
+            }
+        }
+    }
+
+    public void testSortingCommutativeTerms()
+    {
+        parser.setNaryOperators( true );
+        final ASTNode term1 = parse( "(b and a) or (not c) or d" );
+        final ASTNode term2 = parse( "d or (not c) or (a and b)" );
+        final ASTNode term3 = parse( "(not c) or d or (b and a)" );
+
+        term1.sortChildrenAscending( CanonicalOrder.INSTANCE );
+        term2.sortChildrenAscending( CanonicalOrder.INSTANCE );
+        term3.sortChildrenAscending( CanonicalOrder.INSTANCE );
+
+        assertEquals( term1.toString(false) , term2.toString(false) );
+        assertEquals( term1.toString(false) , term3.toString(false) );
+        assertEquals( term1.getCanonicalHash() , term2.getCanonicalHash() );
+    }
+
+    public void testComplementsAreAdjacent()
+    {
+        final List<ASTNode> nodes = new ArrayList<>();
+        nodes.add( parse( "not a" ) );
+        nodes.add( parse( "b" ) );
+        nodes.add( parse( "a and b" ) );
+        nodes.add( parse( "a" ) );
+        Collections.sort( nodes , CanonicalOrder.INSTANCE );
+
+        assertTrue( CanonicalOrder.isSorted( nodes ) );
+        assertTrue( CanonicalOrder.isComplement( nodes.get(0) , nodes.get(1) ) );
+        assertFalse( CanonicalOrder.isComplement( nodes.get(1) , nodes.get(2) ) );
+    }
+
+    public void testHashIsUpdatedAfterMutation()
+    {
+        final ASTNode term = parse( "a and (b or c)" );
+        final ASTNode expected = parse( "a and (b or d)" );
+        final ASTNode or = term.child(0).child(1).child(0);
+        final int oldHash = term.getCanonicalHash();
+
+        or.replaceChild( or.child(1) , new IdentifierNode( new Identifier( "d" ) ) );
+
+        assertTrue( oldHash != term.getCanonicalHash() );
+        assertEquals( expected.getCanonicalHash() , term.getCanonicalHash() );
+        assertEquals( 0 , CanonicalOrder.INSTANCE.compare( term , expected ) );
+    }
+
+    private ASTNode parse(String s) {
+        return parser.parse( s , true );
+    }
+}
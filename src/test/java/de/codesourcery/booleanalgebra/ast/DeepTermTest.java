@@ -0,0 +1,246 @@
+package de.codesourcery.booleanalgebra.ast;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.ASTTransformations;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.bdd.BDDFactory;
+import de.codesourcery.booleanalgebra.bdd.VariableOrdering;
+import de.codesourcery.booleanalgebra.minimize.Espresso;
+import de.codesourcery.booleanalgebra.sat.DimacsExporter;
+import de.codesourcery.booleanalgebra.sat.SATChecker;
+
+/**
+ * Terms that are far too deep to be processed recursively.
+ */
+public class DeepTermTest extends TestCase
+{
+    private static final int DEPTH = 1000000;
+
+    private static final int VARIABLES = 16;
+
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    private final ASTTransformations transformer = new ASTTransformations();
+
+    public void testChainedOperators()
+    {
+        // a or b or c ... gets parsed into a left-deep chain
+        final StringBuilder expression = new StringBuilder( "v0" );
+        for ( int i = 1 ; i <= DEPTH ; i++ ) {
+            expression.append( " or v" ).append( i % VARIABLES );
+        }
+        final ASTNode term = parser.parse( expression.toString() , false );
+        assertTrue( term.getTreeDepth() >= DEPTH );
+
+        assertSimplifiesAndEvaluates( term );
+    }
+
+    public void testNestedParentheses()
+    {
+        final ASTNode term = parseNestedParentheses( DEPTH );
+        assertTrue( term.getTreeDepth() >= 2 * DEPTH );
+
+        assertSimplifiesAndEvaluates( term );
+    }
+
+    public void testSimplifyShared()
+    {
+        final ASTNode term = parseNestedParentheses( DEPTH );
+        assertEvaluatesLikeOR( transformer.simplifyShared( term , new ExpressionContext() ) );
+        assertEvaluatesLikeOR( term );
+    }
+
+    public void testSimplifySaturated()
+    {
+        final ASTNode term = parseNestedParentheses( DEPTH );
+        assertEvaluatesLikeOR( transformer.simplifySaturated( term , new ExpressionContext() ) );
+        assertEvaluatesLikeOR( term );
+    }
+
+    public void testParanoidSimplify()
+    {
+        final ASTTransformations paranoid = new ASTTransformations();
+        paranoid.setParanoid( true );
+        final ASTNode simplified = paranoid.simplify( parseNestedParentheses( DEPTH ) , new ExpressionContext() );
+        final ASTNode or = simplified instanceof TermNode ? simplified.child(0) : simplified;
+        assertTrue( or.isOR() );
+        assertEquals( VARIABLES , or.getChildCount() );
+    }
+
+    public void testIsTrue()
+    {
+        // the expression holds two copies of the term , encoding it for the SAT solver does not fit into the default heap at full depth
+        final ASTNode term = parseNestedParentheses( DEPTH / 10 );
+        assertEquals( Boolean.TRUE , transformer.isTrue( new BooleanExpression( term , term.createCopy( true ) ) , new ExpressionContext() ) );
+        assertEquals( Boolean.FALSE , transformer.isTrue( new BooleanExpression( term , OperatorNode.not( term.createCopy( true ) ) ) , new ExpressionContext() ) );
+    }
+
+    public void testSATChecker()
+    {
+        final ASTNode term = parseNestedParentheses( DEPTH );
+        final SATChecker checker = new SATChecker();
+        assertTrue( checker.isEquivalent( term , term.createCopy( true ) ) );
+        assertTrue( checker.isSatisfiable( term ) );
+        assertFalse( checker.isTautology( term ) );
+    }
+
+    public void testDimacsExport() throws IOException
+    {
+        final DimacsExporter exporter = new DimacsExporter();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.export( parseNestedParentheses( DEPTH ) , Channels.newChannel( out ) );
+        assertEquals( VARIABLES , exporter.getVariables().size() );
+        assertTrue( exporter.getClauseCount() > DEPTH );
+    }
+
+    public void testMinimize()
+    {
+        final ASTNode term = parseNestedParentheses( DEPTH );
+        assertEvaluatesLikeOR( transformer.minimize( term , new ExpressionContext() , new Espresso() ) );
+        assertEvaluatesLikeOR( transformer.minimize( term , new ExpressionContext() ) );
+    }
+
+    public void testBDD()
+    {
+        final ASTNode term = parseNestedParentheses( DEPTH );
+        assertEquals( VARIABLES , VariableOrdering.force( term ).size() );
+
+        final BDDFactory factory = new BDDFactory();
+        final int f = factory.fromAST( term );
+        assertEquals( BigInteger.ONE.shiftLeft( VARIABLES ).subtract( BigInteger.ONE ) , factory.countModels( f ) );
+        assertEvaluatesLikeOR( factory.toAST( f ) );
+    }
+
+    public void testDeepBDD()
+    {
+        // v0 and not v1 and v2 ... , a BDD with a node on every level
+        final int variables = 20000;
+        final StringBuilder expression = new StringBuilder( "v0" );
+        for ( int i = 1 ; i < variables ; i++ ) {
+            expression.append( i % 2 == 0 ? " and v" : " and not v" ).append( i );
+        }
+        final ASTNode term = parser.parse( expression.toString() , false );
+
+        final BDDFactory factory = new BDDFactory( VariableOrdering.firstOccurrence( term ) );
+        final int f = factory.fromAST( term );
+        assertEquals( variables + 1 , factory.getNodeCount( f ) ); // including the terminal node
+        assertEquals( BigInteger.ONE , factory.countModels( f ) );
+        final ASTNode converted = factory.toAST( f );
+        assertTrue( converted.getTreeDepth() >= variables );
+        assertEquals( f , factory.fromAST( converted ) );
+    }
+
+    public void testTraversals()
+    {
+        final StringBuilder expression = new StringBuilder();
+        for ( int i = 0 ; i < DEPTH ; i++ ) {
+            expression.append( "not " );
+        }
+        expression.append( "a" );
+        final ASTNode term = parser.parse( expression.toString() , false );
+
+        final int[] count = new int[3];
+        term.visitPreOrder( counter( count , 0 ) );
+        term.visitInOrder( counter( count , 1 ) );
+        term.visitPostOrder( counter( count , 2 ) );
+        assertEquals( DEPTH + 1 , term.getNodeCount() );
+        assertEquals( DEPTH , term.getTreeDepth() );
+        assertEquals( term.getNodeCount() , count[0] );
+        assertEquals( term.getNodeCount() , count[1] );
+        assertEquals( term.getNodeCount() , count[2] );
+
+        final ASTNode copy = term.createCopy( true );
+        assertTrue( term.isEquals( copy ) );
+        assertEquals( term.hashCode() , copy.hashCode() );
+        assertEquals( 0 , CanonicalOrder.INSTANCE.compare( term , copy ) );
+
+        final StringBuilder expected = new StringBuilder();
+        for ( int i = 1 ; i < DEPTH ; i++ ) {
+            expected.append( "NOT (" );
+        }
+        expected.append( "NOT a" );
+        for ( int i = 1 ; i < DEPTH ; i++ ) {
+            expected.append( ')' );
+        }
+        assertEquals( expected.toString() , term.toString() );
+
+        final ExpressionContext context = new ExpressionContext();
+        context.define( Identifier.id("a") , true );
+        assertTrue( term.evaluate( context ) instanceof TrueNode );
+    }
+
+    private void assertSimplifiesAndEvaluates(ASTNode term)
+    {
+        assertTrue( term.isEquals( term.createCopy( true ) ) );
+
+        final ASTNode simplified = transformer.simplify( term , new ExpressionContext() );
+        final ASTNode or = simplified instanceof TermNode ? simplified.child(0) : simplified;
+        assertTrue( or.isOR() );
+        assertEquals( VARIABLES , or.getChildCount() );
+
+        final ExpressionContext context = allFalse();
+        assertTrue( transformer.eval( term , context ) instanceof FalseNode );
+        assertTrue( term.evaluate( context ) instanceof FalseNode );
+
+        context.define( Identifier.id( "v"+( VARIABLES - 1 ) ) , true );
+        assertTrue( transformer.eval( term , context ) instanceof TrueNode );
+        assertTrue( term.evaluate( context ) instanceof TrueNode );
+    }
+
+    /*
+     * Checks that a term is equivalent to v0 or v1 or ... 
+     * by evaluating it with all variables false and with only the last one true.
+     */
+    private static void assertEvaluatesLikeOR(ASTNode term)
+    {
+        final ExpressionContext context = allFalse();
+        assertTrue( term.evaluate( context ) instanceof FalseNode );
+
+        context.define( Identifier.id( "v"+( VARIABLES - 1 ) ) , true );
+        assertTrue( term.evaluate( context ) instanceof TrueNode );
+    }
+
+    private static ExpressionContext allFalse()
+    {
+        final ExpressionContext context = new ExpressionContext();
+        for ( int i = 0 ; i < VARIABLES ; i++ ) {
+            context.define( Identifier.id( "v"+i ) , false );
+        }
+        return context;
+    }
+
+    /*
+     * v0 or (v1 or (v2 or ... ))
+     */
+    private ASTNode parseNestedParentheses(int depth)
+    {
+        final StringBuilder expression = new StringBuilder();
+        for ( int i = 0 ; i < depth ; i++ ) {
+            expression.append( 'v' ).append( i % VARIABLES ).append( " or (" );
+        }
+        expression.append( "v0" );
+        for ( int i = 0 ; i < depth ; i++ ) {
+            expression.append( ')' );
+        }
+        return parser.parse( expression.toString() , false );
+    }
+
+    private static INodeVisitor counter(final int[] count,final int index)
+    {
+        return new INodeVisitor() {
+
+            @Override
+            public boolean visit(ASTNode node, int currentDepth)
+            {
+                count[index]++;
+                return true;
+            }
+        };
+    }
+}
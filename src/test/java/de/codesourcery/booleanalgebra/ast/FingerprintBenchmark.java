@@ -0,0 +1,133 @@
+package de.codesourcery.booleanalgebra.ast;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.codesourcery.booleanalgebra.ASTTransformations;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+
+/**
+ * Measures hashing all nodes of large terms , once with the cached {@link ASTNode#getFingerprint() fingerprints}
+ * and once with the former recursive hash that walked the whole subtree on every call , plus the cost of 
+ * re-hashing after a random leaf has been replaced and of {@link ASTTransformations#substituteCommonTerms(ASTNode, de.codesourcery.booleanalgebra.IExpressionContext)}.
+ */
+public class FingerprintBenchmark
+{
+    private static final int[] LEAF_COUNTS = { 1000 , 10000 , 40000 };
+
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 5;
+
+    private interface IBenchmark {
+        public void run();
+    }
+
+    public static void main(String[] args)
+    {
+        final TermGenerator generator = new TermGenerator( 0xcafebabe );
+        final List<Identifier> variables = TermGenerator.createVariables( 16 );
+        final ASTTransformations transformer = new ASTTransformations();
+        final Random random = new Random( 0xdeadbeef );
+
+        System.out.println( String.format("%10s %10s %15s %15s %15s %15s" , "leaves" , "nodes" , "recursive [ms]" , 
+                "cached [ms]" , "mutate [ms]" , "substitute [ms]" ) );
+        for ( int leafCount : LEAF_COUNTS )
+        {
+            final ASTNode term = generator.createLargeTerm( variables , leafCount );
+            final List<ASTNode> nodes = new ArrayList<>();
+            final List<ASTNode> leaves = new ArrayList<>();
+            term.visitPreOrder( new INodeVisitor() {
+
+                @Override
+                public boolean visit(ASTNode node, int currentDepth) {
+                    nodes.add( node );
+                    if ( node instanceof IdentifierNode ) {
+                        leaves.add( node );
+                    }
+                    return true;
+                }
+            });
+
+            final double recursive = measure( new IBenchmark() {
+
+                @Override
+                public void run() {
+                    long sum = 0;
+                    for ( ASTNode node : nodes ) {
+                        sum += recursiveHashCode( node );
+                    }
+                    consume( sum );
+                }
+            });
+            final double cached = measure( new IBenchmark() {
+
+                @Override
+                public void run() {
+                    long sum = 0;
+                    for ( ASTNode node : nodes ) {
+                        sum += node.getFingerprint();
+                    }
+                    consume( sum );
+                }
+            });
+            final double mutate = measure( new IBenchmark() {
+
+                @Override
+                public void run() 
+                {
+                    for ( int i = 0 ; i < 1000 ; i++ ) 
+                    {
+                        final int index = random.nextInt( leaves.size() );
+                        final ASTNode leaf = leaves.get( index );
+                        final ASTNode replacement = new IdentifierNode( variables.get( random.nextInt( variables.size() ) ) );
+                        leaf.replaceWith( replacement );
+                        leaves.set( index , replacement );
+                        consume( term.getFingerprint() );
+                    }
+                }
+            });
+            final double substitute = measure( new IBenchmark() {
+
+                @Override
+                public void run() {
+                    consume( transformer.substituteCommonTerms( term , new ExpressionContext() ).getFingerprint() );
+                }
+            });
+            System.out.println( String.format("%10d %10d %15.2f %15.2f %15.2f %15.2f" , leafCount , nodes.size() , 
+                    recursive , cached , mutate , substitute ) );
+        }
+    }
+
+    private static int recursiveHashCode(ASTNode node) 
+    {
+        int hash = 1;
+        hash = hash * 17 + node.thisHashCode();
+        for ( ASTNode child : node.children() ) {
+            hash = hash * 17 + recursiveHashCode( child );
+        }
+        return hash;
+    }
+
+    private static volatile long sink;
+
+    private static void consume(long value) {
+        sink += value;
+    }
+
+    /**
+     * @return milliseconds per call
+     */
+    private static double measure(IBenchmark benchmark)
+    {
+        for ( int i = 0 ; i < WARMUP ; i++ ) {
+            benchmark.run();
+        }
+        final long start = System.nanoTime();
+        for ( int i = 0 ; i < ITERATIONS ; i++ ) {
+            benchmark.run();
+        }
+        return ( System.nanoTime() - start ) / ( ITERATIONS * 1000000.0 );
+    }
+}
@@ -0,0 +1,60 @@
+package de.codesourcery.booleanalgebra.ast;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+
+public class SymbolTableTest extends TestCase
+{
+    public void testInterning()
+    {
+        final SymbolTable table = new SymbolTable();
+        final Identifier a = table.intern( "a" );
+        final Identifier b = table.intern( "b" );
+
+        assertSame( a , table.intern( "a" ) );
+        assertSame( a , table.intern( new Identifier( "a" ) ) );
+        assertEquals( new Identifier( "a" ) , a );
+        assertEquals( 0 , a.getIndex() );
+        assertEquals( 1 , b.getIndex() );
+        assertEquals( 1 , table.indexOf( new Identifier( "b" ) ) );
+        assertEquals( -1 , table.indexOf( new Identifier( "c" ) ) );
+        assertSame( b , table.get( 1 ) );
+        assertEquals( 2 , table.size() );
+    }
+
+    public void testIdentifiersFromOtherTables()
+    {
+        final SymbolTable table1 = new SymbolTable();
+        final SymbolTable table2 = new SymbolTable();
+        table2.intern( "x" );
+        final Identifier a2 = table2.intern( "a" );
+
+        assertEquals( -1 , table1.indexOf( a2 ) );
+        final Identifier a1 = table1.intern( a2 );
+        assertNotSame( a1 , a2 );
+        assertEquals( 0 , a1.getIndex() );
+        assertEquals( 0 , table1.indexOf( a2 ) );
+    }
+
+    public void testInvalidName()
+    {
+        try {
+            new SymbolTable().intern( "a b" );
+            fail("Should have failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testParserInternsIdentifiers()
+    {
+        final BooleanExpressionParser parser = new BooleanExpressionParser();
+        final ASTNode term1 = parser.parse( "a and not b" , false );
+        final ASTNode term2 = parser.parse( "b or a" , false );
+
+        final Identifier a1 = ((IdentifierNode) term1.child(0)).getIdentifier();
+        final Identifier a2 = ((IdentifierNode) term2.child(1)).getIdentifier();
+        assertSame( a1 , a2 );
+        assertEquals( 2 , parser.getSymbolTable().size() );
+    }
+}
@@ -0,0 +1,176 @@
+package de.codesourcery.booleanalgebra.ast;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.TermGenerator;
+
+/**
+ * Measures the traversals , copying , printing and parsing of terms of different sizes ,
+ * to make sure that using explicit stacks instead of recursion does not slow down small terms.
+ *
+ * <p>Visiting and copying are compared against recursive reference implementations. Every row processes
+ * roughly the same number of nodes , split into terms of the given size.</p>
+ */
+public class TraversalBenchmark
+{
+    private static final int[] LEAF_COUNTS = { 4 , 32 , 1000 , 20000 };
+
+    private static final int TOTAL_LEAVES = 200000;
+
+    private static final int WARMUP = 10;
+    private static final int ITERATIONS = 20;
+
+    private interface IBenchmark {
+        public void run();
+    }
+
+    public static void main(String[] args)
+    {
+        final TermGenerator generator = new TermGenerator( 0xcafebabe );
+        final List<Identifier> variables = TermGenerator.createVariables( 16 );
+        final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+        System.out.println( String.format("%8s %8s %12s %12s %12s %12s %12s %12s %12s" , "leaves" , "terms" ,
+                "visit [ms]" , "rec.visit" , "copy [ms]" , "rec.copy" , "equals [ms]" , "print [ms]" , "parse [ms]" ) );
+        for ( final int leafCount : LEAF_COUNTS )
+        {
+            final List<ASTNode> terms = new ArrayList<>();
+            final List<String> expressions = new ArrayList<>();
+            for ( int i = 0 ; i < TOTAL_LEAVES / leafCount ; i++ )
+            {
+                final ASTNode term = generator.createLargeTerm( variables , leafCount );
+                terms.add( term );
+                expressions.add( term.toString( false ) );
+            }
+            final List<ASTNode> copies = new ArrayList<>();
+            for ( ASTNode term : terms ) {
+                copies.add( term.createCopy( true ) );
+            }
+
+            final INodeVisitor visitor = new INodeVisitor() {
+
+                @Override
+                public boolean visit(ASTNode node, int currentDepth) {
+                    consume( currentDepth );
+                    return true;
+                }
+            };
+
+            final double visit = measure( new IBenchmark() {
+
+                @Override
+                public void run() {
+                    for ( ASTNode term : terms ) {
+                        term.visitPreOrder( visitor );
+                    }
+                }
+            });
+            final double recursiveVisit = measure( new IBenchmark() {
+
+                @Override
+                public void run() {
+                    for ( ASTNode term : terms ) {
+                        recursivePreOrder( term , visitor , 0 );
+                    }
+                }
+            });
+            final double copy = measure( new IBenchmark() {
+
+                @Override
+                public void run() {
+                    for ( ASTNode term : terms ) {
+                        consume( term.createCopy( true ).getChildCount() );
+                    }
+                }
+            });
+            final double recursiveCopy = measure( new IBenchmark() {
+
+                @Override
+                public void run() {
+                    for ( ASTNode term : terms ) {
+                        consume( recursiveCopy( term ).getChildCount() );
+                    }
+                }
+            });
+            final double equals = measure( new IBenchmark() {
+
+                @Override
+                public void run() {
+                    for ( int i = 0 ; i < terms.size() ; i++ ) {
+                        consume( terms.get( i ).isEquals( copies.get( i ) ) ? 1 : 0 );
+                    }
+                }
+            });
+            final double print = measure( new IBenchmark() {
+
+                @Override
+                public void run() {
+                    for ( ASTNode term : terms ) {
+                        consume( term.toString( false ).length() );
+                    }
+                }
+            });
+            final double parse = measure( new IBenchmark() {
+
+                @Override
+                public void run() {
+                    for ( String expression : expressions ) {
+                        consume( parser.parse( expression , false ).getChildCount() );
+                    }
+                }
+            });
+            System.out.println( String.format("%8d %8d %12.2f %12.2f %12.2f %12.2f %12.2f %12.2f %12.2f" , leafCount , terms.size() ,
+                    visit , recursiveVisit , copy , recursiveCopy , equals , print , parse ) );
+        }
+    }
+
+    private static boolean recursivePreOrder(ASTNode node,INodeVisitor visitor,int depth)
+    {
+        if ( ! visitor.visit( node , depth ) ) {
+            return false;
+        }
+        for ( ASTNode child : node.children() )
+        {
+            if ( ! recursivePreOrder( child , visitor , depth + 1 ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ASTNode recursiveCopy(ASTNode node)
+    {
+        final ASTNode result = node.copyThisNode();
+        for ( ASTNode child : node.children() ) {
+            result.addChild( recursiveCopy( child ) );
+        }
+        return result;
+    }
+
+    private static volatile long sink;
+
+    private static void consume(long value) {
+        sink += value;
+    }
+
+    /**
+     * @return fastest call in milliseconds , the minimum is far less sensitive to
+     * GC and other processes than the average
+     */
+    private static double measure(IBenchmark benchmark)
+    {
+        for ( int i = 0 ; i < WARMUP ; i++ ) {
+            benchmark.run();
+        }
+        long best = Long.MAX_VALUE;
+        for ( int i = 0 ; i < ITERATIONS ; i++ )
+        {
+            final long start = System.nanoTime();
+            benchmark.run();
+            best = Math.min( best , System.nanoTime() - start );
+        }
+        return best / 1000000.0;
+    }
+}
@@ -0,0 +1,194 @@
+package de.codesourcery.booleanalgebra.bdd;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.IExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+import de.codesourcery.booleanalgebra.eval.TruthTable;
+
+public class BDDFactoryTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    private int bdd(BDDFactory factory,String expression) {
+        return factory.fromAST( parser.parse( expression , false ) );
+    }
+
+    public void testConstants()
+    {
+        final BDDFactory factory = new BDDFactory();
+        assertEquals( BDDFactory.ONE , bdd( factory , "a or not a" ) );
+        assertEquals( BDDFactory.ZERO , bdd( factory , "a and not a" ) );
+        assertEquals( BDDFactory.ONE , bdd( factory , "true" ) );
+        assertEquals( BDDFactory.ZERO , factory.not( BDDFactory.ONE ) );
+    }
+
+    public void testEquivalenceIsIdentity()
+    {
+        final BDDFactory factory = new BDDFactory();
+        assertEquals( bdd( factory , "not (a and b)" ) , bdd( factory , "not a or not b" ) );
+        assertEquals( bdd( factory , "a and (b or c)" ) , bdd( factory , "(c and a) or (a and b)" ) );
+        assertTrue( bdd( factory , "a and b" ) != bdd( factory , "a or b" ) );
+
+        // complement edges make negation free
+        final int xor = bdd( factory , "(a or b) and not (a and b)" );
+        final int nodes = factory.getNodeCount();
+        assertEquals( factory.not( xor ) , bdd( factory , "(a and b) or (not a and not b)" ) );
+        assertEquals( nodes , factory.getNodeCount() );
+        assertEquals( 3 , factory.getNodeCount( xor ) );
+    }
+
+    public void testNaryOperators()
+    {
+        final BDDFactory factory = new BDDFactory();
+        final BooleanExpressionParser naryParser = new BooleanExpressionParser();
+        naryParser.setNaryOperators( true );
+        final String expression = "(a and b and not c) or d or (c and a and d and e)";
+        final ASTNode term = naryParser.parse( expression , false );
+        assertEquals( 3 , term.getChildCount() );
+        assertEquals( bdd( factory , expression ) , factory.fromAST( term ) );
+    }
+
+    public void testExpression()
+    {
+        final BDDFactory factory = new BDDFactory();
+        assertEquals( BDDFactory.ONE , bdd( factory , "not (a and b) = not a or not b" ) );
+        assertEquals( bdd( factory , "a" ) , bdd( factory , "a = true" ) );
+    }
+
+    public void testContext()
+    {
+        final BDDFactory factory = new BDDFactory();
+        final ExpressionContext context = new ExpressionContext();
+        context.set( Identifier.id("a") , new TrueNode() );
+        assertEquals( bdd( factory , "b" ) , factory.fromAST( parser.parse( "a and b" , false ) , context ) );
+    }
+
+    public void testRandomTerms()
+    {
+        final TermGenerator generator = new TermGenerator( 0x1234 );
+        for ( int i = 0 ; i < 300 ; i++ )
+        {
+            final ASTNode term = generator.createTerm( 6 , 1 + generator.getRandom().nextInt( 20 ) );
+            final BDDFactory factory = new BDDFactory();
+            final int f = factory.fromAST( term );
+
+            final List<Identifier> vars = factory.getVariables();
+            final TruthTable table = TruthTable.compute( term , vars );
+            assertEquals( term.toString() , BigInteger.valueOf( table.getTrueRowCount() ) , factory.countModels( f ) );
+            assertEquals( table.getTrueRowCount() > 0 , factory.isSatisfiable( f ) );
+
+            // round trip
+            final ASTNode converted = factory.toAST( f );
+            assertEquals( term+" -> "+converted , -1 , TruthTable.findDifference( term , converted , vars ) );
+            assertEquals( f , factory.fromAST( converted ) );
+
+            final IExpressionContext assignment = factory.getSatisfyingAssignment( f );
+            if ( assignment == null ) {
+                assertEquals( 0 , table.getTrueRowCount() );
+            } else {
+                assertTrue( term.evaluate( assignment ).getLiteralValue( assignment ) );
+            }
+        }
+    }
+
+    public void testCofactors()
+    {
+        final BDDFactory factory = new BDDFactory();
+        final int f = bdd( factory , "(a and b) or (not a and c)" );
+        assertEquals( bdd( factory , "b" ) , factory.restrict( f , Identifier.id("a") , true ) );
+        assertEquals( bdd( factory , "c" ) , factory.restrict( f , Identifier.id("a") , false ) );
+        assertEquals( bdd( factory , "b or c" ) , factory.exists( f , Identifier.id("a") ) );
+        assertEquals( bdd( factory , "b and c" ) , factory.forAll( f , Identifier.id("a") ) );
+        assertEquals( bdd( factory , "(a and b) or (not a and c)" ) , factory.ite( bdd( factory , "a" ) , bdd( factory , "b" ) , bdd( factory , "c" ) ) );
+    }
+
+    public void testManyVariables()
+    {
+        // x0 XOR x1 XOR ... XOR x99 , a linear BDD with 2^99 models
+        final List<Identifier> vars = TermGenerator.createVariables( 100 );
+        final BDDFactory factory = new BDDFactory();
+        int parity = BDDFactory.ZERO;
+        for ( Identifier id : vars ) {
+            parity = factory.xor( parity , factory.variable( id ) );
+        }
+        assertEquals( BigInteger.ONE.shiftLeft( 99 ) , factory.countModels( parity ) );
+        assertEquals( 101 , factory.getNodeCount( parity ) );
+    }
+
+    public void testReorderKeepsFunctions()
+    {
+        final TermGenerator generator = new TermGenerator( 0x4321 );
+        final BDDFactory factory = new BDDFactory();
+        final ASTNode[] terms = new ASTNode[ 20 ];
+        final int[] bdds = new int[ terms.length ];
+        final BigInteger[] counts = new BigInteger[ terms.length ];
+        for ( int i = 0 ; i < terms.length ; i++ )
+        {
+            terms[i] = generator.createLargeTerm( TermGenerator.createVariables( 10 ) , 30 );
+            bdds[i] = factory.ref( factory.fromAST( terms[i] ) );
+        }
+        for ( int i = 0 ; i < terms.length ; i++ ) {
+            counts[i] = factory.countModels( bdds[i] );
+        }
+        factory.collectGarbage();
+        final int before = factory.getNodeCount();
+        final List<Identifier> orderBefore = factory.getVariables();
+
+        assertTrue( factory.reorder() <= before );
+        assertFalse( orderBefore.equals( factory.getVariables() ) );
+        for ( int i = 0 ; i < terms.length ; i++ )
+        {
+            assertEquals( counts[i] , factory.countModels( bdds[i] ) );
+            // still canonical
+            assertEquals( bdds[i] , factory.fromAST( terms[i] ) );
+            final ASTNode converted = factory.toAST( bdds[i] );
+            assertEquals( -1 , TruthTable.findDifference( terms[i] , converted , factory.getVariables() ) );
+        }
+    }
+
+    public void testSiftingShrinksComparator()
+    {
+        final List<Identifier> a = TermGenerator.createVariables( "a" , 10 );
+        final List<Identifier> b = TermGenerator.createVariables( "b" , 10 );
+        final List<Identifier> separated = new ArrayList<>( a );
+        separated.addAll( b );
+
+        final BDDFactory factory = new BDDFactory( separated );
+        final int f = factory.ref( factory.fromAST( TermGenerator.createComparator( a , b ) ) );
+        final int before = factory.getNodeCount( f );
+        factory.reorder();
+        final int after = factory.getNodeCount( f );
+        assertTrue( before+" -> "+after , after * 10 < before );
+        assertTrue( before+" -> "+after , after <= 3 * 10 + 2 );
+        // a > b for half of the assignments where a != b
+        assertEquals( BigInteger.ONE.shiftLeft( 20 ).subtract( BigInteger.ONE.shiftLeft( 10 ) ).shiftRight( 1 ) , factory.countModels( f ) );
+    }
+
+    public void testAutoReorder()
+    {
+        final List<Identifier> a = TermGenerator.createVariables( "a" , 12 );
+        final List<Identifier> b = TermGenerator.createVariables( "b" , 12 );
+        final List<Identifier> separated = new ArrayList<>( a );
+        separated.addAll( b );
+
+        final BDDFactory factory = new BDDFactory( separated );
+        factory.setAutoReorder( true );
+        factory.setReorderThreshold( 500 );
+        final int f = factory.fromAST( TermGenerator.createAdderCarry( a , b ) );
+        assertTrue( factory.getReorderCount() > 0 );
+
+        final BDDFactory reference = new BDDFactory( VariableOrdering.firstOccurrence( TermGenerator.createAdderCarry( a , b ) ) );
+        final int g = reference.fromAST( TermGenerator.createAdderCarry( a , b ) );
+        assertEquals( reference.countModels( g ) , factory.countModels( f ) );
+        assertTrue( factory.getNodeCount( f ) < 4 * reference.getNodeCount( g ) );
+    }
+}
@@ -0,0 +1,91 @@
+package de.codesourcery.booleanalgebra.bdd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+
+/**
+ * Compares BDD sizes and construction times of adders and comparators for different variable orders.
+ *
+ * <p>Both families have linear size if the bits of both operands are interleaved and exponential size if
+ * all bits of one operand come first , which is what sorting the variables by name does.</p>
+ */
+public class BDDOrderingBenchmark
+{
+    private static final int[] BIT_COUNTS = { 8 , 12 , 16 };
+
+    private interface IOrdering {
+        public List<Identifier> getOrder(ASTNode term,List<Identifier> a,List<Identifier> b);
+    }
+
+    public static void main(String[] args)
+    {
+        final IOrdering sorted = new IOrdering() {
+
+            @Override
+            public List<Identifier> getOrder(ASTNode term,List<Identifier> a,List<Identifier> b)
+            {
+                final List<Identifier> result = new ArrayList<>( a );
+                result.addAll( b );
+                Collections.sort( result );
+                return result;
+            }
+        };
+        final IOrdering firstOccurrence = new IOrdering() {
+
+            @Override
+            public List<Identifier> getOrder(ASTNode term,List<Identifier> a,List<Identifier> b) {
+                return VariableOrdering.firstOccurrence( term );
+            }
+        };
+        final IOrdering force = new IOrdering() {
+
+            @Override
+            public List<Identifier> getOrder(ASTNode term,List<Identifier> a,List<Identifier> b) {
+                return VariableOrdering.force( term );
+            }
+        };
+
+        System.out.println( String.format("%12s %6s %12s %12s %12s %12s %12s %12s" , "family" , "bits" , "order" ,
+                "nodes" , "build [ms]" , "sifted" , "sift [ms]" , "auto nodes" ) );
+        for ( int bits : BIT_COUNTS )
+        {
+            final List<Identifier> a = TermGenerator.createVariables( "a" , bits );
+            final List<Identifier> b = TermGenerator.createVariables( "b" , bits );
+            run( "adder" , bits , TermGenerator.createAdderCarry( a , b ) , a , b , sorted , "sorted" );
+            run( "adder" , bits , TermGenerator.createAdderCarry( a , b ) , a , b , firstOccurrence , "dfs" );
+            run( "adder" , bits , TermGenerator.createAdderCarry( a , b ) , a , b , force , "force" );
+            run( "comparator" , bits , TermGenerator.createComparator( a , b ) , a , b , sorted , "sorted" );
+            run( "comparator" , bits , TermGenerator.createComparator( a , b ) , a , b , firstOccurrence , "dfs" );
+            run( "comparator" , bits , TermGenerator.createComparator( a , b ) , a , b , force , "force" );
+        }
+    }
+
+    private static void run(String family,int bits,ASTNode term,List<Identifier> a,List<Identifier> b,IOrdering ordering,String name)
+    {
+        final List<Identifier> order = ordering.getOrder( term , a , b );
+
+        long start = System.nanoTime();
+        final BDDFactory factory = new BDDFactory( order );
+        final int f = factory.ref( factory.fromAST( term ) );
+        final double buildMillis = ( System.nanoTime() - start ) / 1000000.0;
+        final int nodes = factory.getNodeCount( f );
+
+        start = System.nanoTime();
+        factory.reorder();
+        final double siftMillis = ( System.nanoTime() - start ) / 1000000.0;
+        final int sifted = factory.getNodeCount( f );
+
+        // building with automatic reordering
+        final BDDFactory auto = new BDDFactory( order );
+        auto.setAutoReorder( true );
+        final int g = auto.fromAST( term );
+
+        System.out.println( String.format("%12s %6d %12s %12d %12.2f %12d %12.2f %12d" , family , bits , name ,
+                nodes , buildMillis , sifted , siftMillis , auto.getNodeCount( g ) ) );
+    }
+}
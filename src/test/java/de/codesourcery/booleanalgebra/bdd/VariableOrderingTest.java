@@ -0,0 +1,50 @@
+package de.codesourcery.booleanalgebra.bdd;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+
+public class VariableOrderingTest extends TestCase
+{
+    public void testFirstOccurrence()
+    {
+        final ASTNode term = new BooleanExpressionParser().parse( "(b and (a or not c)) or (d and b)" , false );
+        assertEquals( Arrays.asList( Identifier.id("b") , Identifier.id("a") , Identifier.id("c") , Identifier.id("d") ) ,
+                VariableOrdering.firstOccurrence( term ) );
+    }
+
+    public void testForce()
+    {
+        // (a0 AND ... AND a9) OR (a0 = b0 AND ... AND a9 = b9) , the first occurrence puts all a's first
+        final List<Identifier> a = TermGenerator.createVariables( "a" , 10 );
+        final List<Identifier> b = TermGenerator.createVariables( "b" , 10 );
+        ASTNode all = null;
+        ASTNode equal = null;
+        for ( int i = 0 ; i < a.size() ; i++ )
+        {
+            final ASTNode ai = new IdentifierNode( a.get(i) );
+            final ASTNode bi = new IdentifierNode( b.get(i) );
+            final ASTNode same = OperatorNode.or( OperatorNode.and( ai , bi ) ,
+                    OperatorNode.and( OperatorNode.not( ai.createCopy( true ) ) , OperatorNode.not( bi.createCopy( true ) ) ) );
+            all = all == null ? new IdentifierNode( a.get(i) ) : OperatorNode.and( all , new IdentifierNode( a.get(i) ) );
+            equal = equal == null ? same : OperatorNode.and( equal , same );
+        }
+        final ASTNode term = OperatorNode.or( all , equal );
+
+        final List<Identifier> force = VariableOrdering.force( term );
+        assertEquals( 20 , force.size() );
+
+        final BDDFactory dfsFactory = new BDDFactory( VariableOrdering.firstOccurrence( term ) );
+        final int dfsSize = dfsFactory.getNodeCount( dfsFactory.fromAST( term ) );
+        final BDDFactory forceFactory = new BDDFactory( force );
+        final int forceSize = forceFactory.getNodeCount( forceFactory.fromAST( term ) );
+        assertTrue( dfsSize+" vs. "+forceSize , forceSize * 10 < dfsSize );
+    }
+}
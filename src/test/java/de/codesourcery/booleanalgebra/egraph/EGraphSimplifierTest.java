@@ -0,0 +1,140 @@
+package de.codesourcery.booleanalgebra.egraph;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.ASTTransformations;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.eval.TruthTable;
+import de.codesourcery.booleanalgebra.hashcons.HashConsedNode;
+import de.codesourcery.booleanalgebra.hashcons.HashConsedNode.Type;
+import de.codesourcery.booleanalgebra.hashcons.NodeFactory;
+
+public class EGraphSimplifierTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    private HashConsedNode simplify(String expression) {
+        return simplify( expression , new EGraphSimplifier() );
+    }
+
+    private HashConsedNode simplify(String expression,EGraphSimplifier simplifier)
+    {
+        final NodeFactory factory = new NodeFactory();
+        return simplifier.simplify( factory.fromAST( parser.parse( expression , true ) ) , factory );
+    }
+
+    public void testLaws()
+    {
+        assertEquals( "a" , simplify( "a and a" ).toString() );
+        assertEquals( "a" , simplify( "not not a" ).toString() );
+        assertEquals( "a" , simplify( "true and a" ).toString() );
+        assertEquals( "false" , simplify( "a and false" ).toString() );
+        assertEquals( "true" , simplify( "not a or a" ).toString() );
+        assertEquals( "a" , simplify( "(b and a) or a" ).toString() );
+        assertEquals( "false" , simplify( "not (a or true)" ).toString() );
+        assertEquals( "a" , simplify( "(a and b) or (a and not b)" ).toString() );
+    }
+
+    public void testLawsThatUndoEachOther()
+    {
+        // needs commutativity and factoring
+        assertEquals( 5 , simplify( "(a and b) or (c and a)" ).getNodeCount() );
+        // needs inverse De Morgan
+        assertEquals( 6 , simplify( "not a and not b and not c" ).getNodeCount() );
+        // needs De Morgan and absorption
+        assertEquals( "a" , simplify( "a and not (not a and b)" ).toString() );
+    }
+
+    public void testCongruence()
+    {
+        final EGraph graph = new EGraph();
+        final NodeFactory factory = new NodeFactory();
+        final HashConsedNode a = factory.variable( new Identifier("a") );
+        final HashConsedNode b = factory.variable( new Identifier("b") );
+        final int notA = graph.add( factory.not( a ) );
+        final int notB = graph.add( factory.not( b ) );
+        assertTrue( graph.find( notA ) != graph.find( notB ) );
+
+        graph.union( graph.add( a ) , graph.add( b ) );
+        graph.rebuild();
+        assertEquals( graph.find( notA ) , graph.find( notB ) );
+        assertEquals( 3 , graph.getNodeCount() );
+        assertEquals( 2 , graph.getClassCount() );
+    }
+
+    public void testCostFunctions()
+    {
+        final NodeFactory factory = new NodeFactory();
+        final EGraph graph = new EGraph();
+        // a and (b and (c and d)) = (a and b) and (c and d)
+        final HashConsedNode chain = factory.fromAST( parser.parse( "a and (b and (c and d))" , true ) );
+        final HashConsedNode balanced = factory.fromAST( parser.parse( "(a and b) and (c and d)" , true ) );
+        final int root = graph.add( chain );
+        graph.union( root , graph.add( balanced ) );
+        graph.rebuild();
+
+        assertSame( balanced , graph.extract( root , ICostFunction.DEPTH , factory ) );
+        assertEquals( 7 , graph.extract( root , ICostFunction.NODE_COUNT , factory ).getNodeCount() );
+
+        final ICostFunction noNegations = new ICostFunction() {
+
+            @Override
+            public long getCost(Type type, long leftCost, long rightCost) {
+                return ( type == Type.NOT ? 100 : 1 ) + leftCost + rightCost;
+            }
+        };
+        final EGraphSimplifier simplifier = new EGraphSimplifier();
+        simplifier.setCostFunction( noNegations );
+        assertEquals( "NOT (a OR b)" , simplify( "not a and not b" , simplifier ).toString() );
+    }
+
+    public void testBudgets()
+    {
+        final String expression = "(a or b) and (c or d) and (e or f) and (g or h) and (i or j)";
+
+        EGraphSimplifier simplifier = new EGraphSimplifier();
+        simplifier.setMaxNodeCount( 200 );
+        HashConsedNode result = simplify( expression , simplifier );
+        assertEquals( EGraphSimplifier.StopReason.NODE_LIMIT , simplifier.getStopReason() );
+        assertTrue( TruthTable.isEquivalent( parser.parse( expression , true ) , NodeFactory.toAST( result ) ) );
+
+        simplifier = new EGraphSimplifier();
+        simplifier.setMaxIterations( 1 );
+        simplify( expression , simplifier );
+        assertEquals( EGraphSimplifier.StopReason.ITERATION_LIMIT , simplifier.getStopReason() );
+
+        simplifier = new EGraphSimplifier();
+        simplifier.setTimeoutMillis( 0 );
+        simplifier.setMaxNodeCount( Integer.MAX_VALUE );
+        simplifier.setMaxIterations( Integer.MAX_VALUE );
+        simplify( expression , simplifier );
+        assertEquals( EGraphSimplifier.StopReason.TIME_LIMIT , simplifier.getStopReason() );
+
+        simplifier = new EGraphSimplifier();
+        simplify( "a and not b" , simplifier );
+        assertEquals( EGraphSimplifier.StopReason.SATURATED , simplifier.getStopReason() );
+    }
+
+    public void testSimplifySaturatedIsEquivalent()
+    {
+        final ASTTransformations transformer = new ASTTransformations();
+        final EGraphSimplifier simplifier = new EGraphSimplifier();
+        simplifier.setMaxNodeCount( 2000 );
+        final TermGenerator generator = new TermGenerator( 0x12345678 );
+        for ( int i = 0 ; i < 500 ; i++ )
+        {
+            final ASTNode term = generator.createTerm( 4 , 1 + generator.getRandom().nextInt( 8 ) );
+            final ASTNode simplified = transformer.simplifySaturated( term , new ExpressionContext() , simplifier );
+
+            final List<Identifier> vars = TruthTable.gatherVariables( term , simplified );
+            assertEquals( term+" -> "+simplified , -1 , TruthTable.findDifference( term , simplified , vars ) );
+            // the input term is always one of the candidates
+            assertTrue( term+" -> "+simplified , simplified.getNodeCount() <= new NodeFactory().fromAST( term ).getNodeCount() );
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.Random;
+
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+
+/**
+ * Measures rows/second of {@link BatchEvaluator} compared to evaluating
+ * a {@link CompiledExpression} row by row.
+ */
+public class BatchEvaluationBenchmark
+{
+    private static final int VARIABLES = 20;
+    private static final int LEAVES = 200;
+    private static final long ROWS = 1L << 24;
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args)
+    {
+        final Random random = new Random(0xcafebabe);
+        final ASTNode term = new TermGenerator( 0xcafebabe ).createLargeTerm( TermGenerator.createVariables( VARIABLES ) , LEAVES );
+        final CompiledExpression compiled = CompiledExpression.compile( term );
+
+        final BitColumn[] columns = new BitColumn[ compiled.getSlotCount() ];
+        for ( int slot = 0 ; slot < columns.length ; slot++ )
+        {
+            columns[slot] = new BitColumn( ROWS );
+            for ( int chunk = 0 ; chunk < columns[slot].getChunkCount() ; chunk++ )
+            {
+                final long[] words = columns[slot].getChunk( chunk );
+                for ( int i = 0 ; i < words.length ; i++ ) {
+                    words[i] = random.nextLong();
+                }
+            }
+        }
+
+        System.out.println("Expression with "+compiled.getSlotCount()+" variables, "+compiled.getProgramLength()+" instructions, "+ROWS+" rows");
+        for ( int blockWords : new int[] { 1 , 64 , 512 , 4096 } )
+        {
+            final BatchEvaluator evaluator = new BatchEvaluator( compiled , blockWords );
+            long best = Long.MAX_VALUE;
+            long trueRows = 0;
+            for ( int round = 0 ; round < ROUNDS ; round++ )
+            {
+                final long start = System.nanoTime();
+                trueRows = evaluator.evaluate( columns , ROWS ).getTrueRowCount();
+                best = Math.min( best , System.nanoTime() - start );
+            }
+            print( "batch, block size "+blockWords , ROWS , best , trueRows );
+        }
+
+        // row-by-row evaluation is a lot slower , use a fraction of the rows
+        final long rows = ROWS / 16;
+        long best = Long.MAX_VALUE;
+        long trueRows = 0;
+        for ( int round = 0 ; round < ROUNDS ; round++ )
+        {
+            final long start = System.nanoTime();
+            trueRows = 0;
+            for ( long row = 0 ; row < rows ; row++ )
+            {
+                long assignment = 0;
+                for ( int slot = 0 ; slot < columns.length ; slot++ ) {
+                    if ( columns[slot].get( row ) ) {
+                        assignment |= 1L << slot;
+                    }
+                }
+                if ( compiled.evaluate( assignment ) ) {
+                    trueRows++;
+                }
+            }
+            best = Math.min( best , System.nanoTime() - start );
+        }
+        print( "row by row" , rows , best , trueRows );
+    }
+
+    private static void print(String label,long rows,long nanos,long trueRows) {
+        System.out.println( String.format("%-25s %10.1f ms %15.0f rows/s (%d true)" , label , nanos / 1000000.0 , rows * 1e9 / nanos , trueRows ) );
+    }
+}
@@ -0,0 +1,139 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+
+public class BatchEvaluatorTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    private final TermGenerator generator = new TermGenerator(0xdeadbeef);
+
+    public void testBitColumn()
+    {
+        final BitColumn column = new BitColumn( 1000 , 3 );
+        assertEquals( 16 , column.getWordCount() );
+        assertEquals( 6 , column.getChunkCount() );
+        assertEquals( 1 , column.getChunk( 5 ).length );
+
+        column.set( 0 , true );
+        column.set( 191 , true );
+        column.set( 192 , true );
+        column.set( 999 , true );
+        column.set( 192 , false );
+        assertTrue( column.get( 0 ) );
+        assertTrue( column.get( 191 ) );
+        assertFalse( column.get( 192 ) );
+        assertTrue( column.get( 999 ) );
+        assertEquals( 3 , column.getTrueRowCount() );
+
+        try {
+            column.get( 1000 );
+            fail("Should've failed");
+        } catch(IndexOutOfBoundsException e) {
+            // ok
+        }
+    }
+
+    public void testWrapClearsUnusedBits()
+    {
+        final BitColumn column = BitColumn.wrap( new long[] { -1L , -1L } , 70 );
+        assertEquals( 70 , column.getTrueRowCount() );
+    }
+
+    public void testMatchesRowByRowEvaluation()
+    {
+        final Random random = generator.getRandom();
+        for ( int i = 0 ; i < 200 ; i++ )
+        {
+            final ASTNode term = generator.createLargeTerm( TermGenerator.createVariables( 1 + random.nextInt( 8 ) ) , 1 + random.nextInt( 40 ) );
+            final CompiledExpression compiled = CompiledExpression.compile( term );
+            final long rowCount = 1 + random.nextInt( 2000 );
+            final int chunkWords = 1 + random.nextInt( 10 );
+
+            final BitColumn[] columns = new BitColumn[ compiled.getSlotCount() ];
+            for ( int slot = 0 ; slot < columns.length ; slot++ ) {
+                columns[slot] = randomColumn( random , rowCount , chunkWords );
+            }
+
+            final BitColumn result = new BatchEvaluator( compiled , 1 + random.nextInt( 4 ) ).evaluate( columns , rowCount );
+            assertEquals( rowCount , result.getRowCount() );
+            long trueRows = 0;
+            for ( long row = 0 ; row < rowCount ; row++ )
+            {
+                long assignment = 0;
+                for ( int slot = 0 ; slot < columns.length ; slot++ ) {
+                    if ( columns[slot].get( row ) ) {
+                        assignment |= 1L << slot;
+                    }
+                }
+                final boolean expected = compiled.evaluate( assignment );
+                assertEquals( term.toString() , expected , result.get( row ) );
+                if ( expected ) {
+                    trueRows++;
+                }
+            }
+            assertEquals( trueRows , result.getTrueRowCount() );
+        }
+    }
+
+    public void testConstantExpression()
+    {
+        final BitColumn result = BatchEvaluator.create( parser.parse( "true or false" , true ) ).evaluate( new BitColumn[0] , 100 );
+        assertEquals( 100 , result.getTrueRowCount() );
+    }
+
+    public void testEvaluateByIdentifier()
+    {
+        final Map<Identifier,BitColumn> columns = new HashMap<>();
+        columns.put( new Identifier("a") , BitColumn.wrap( new long[] { 0b1100 } , 4 ) );
+        columns.put( new Identifier("b") , BitColumn.wrap( new long[] { 0b1010 } , 4 ) );
+        columns.put( new Identifier("unused") , BitColumn.wrap( new long[] { 0 } , 4 ) );
+
+        final BitColumn result = BatchEvaluator.create( parser.parse( "a and not b" , true ) ).evaluate( columns , 4 );
+        assertEquals( 0b0100 , result.getChunk( 0 )[0] );
+    }
+
+    public void testMissingColumn()
+    {
+        final Map<Identifier,BitColumn> columns = new HashMap<>();
+        columns.put( new Identifier("a") , new BitColumn( 10 ) );
+        try {
+            BatchEvaluator.create( parser.parse( "a and b" , true ) ).evaluate( columns , 10 );
+            fail("Should've failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testRowCountMismatch()
+    {
+        try {
+            BatchEvaluator.create( parser.parse( "a and b" , true ) ).evaluate( new BitColumn[] { new BitColumn( 10 ) , new BitColumn( 11 ) } , 10 );
+            fail("Should've failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    private static BitColumn randomColumn(Random random,long rowCount,int chunkWords)
+    {
+        final BitColumn result = new BitColumn( rowCount , chunkWords );
+        for ( int chunk = 0 ; chunk < result.getChunkCount() ; chunk++ )
+        {
+            final long[] words = result.getChunk( chunk );
+            for ( int i = 0 ; i < words.length ; i++ ) {
+                words[i] = random.nextLong();
+            }
+        }
+        result.clearUnusedBits();
+        return result;
+    }
+}
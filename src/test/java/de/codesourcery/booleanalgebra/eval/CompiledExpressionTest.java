@@ -0,0 +1,182 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.ASTTransformations;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.ILiteralExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.OperatorType;
+import de.codesourcery.booleanalgebra.ast.TermNode;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+
+public class CompiledExpressionTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    private final TermGenerator generator = new TermGenerator(0xdeadbeef);
+
+    public void testCompileSimpleTerm()
+    {
+        final CompiledExpression compiled = CompiledExpression.compile( parser.parse( "a and not (b or c)" , true ) );
+        assertEquals( 3 , compiled.getSlotCount() );
+        assertEquals( Identifier.id("a") , compiled.getIdentifier( 0 ) );
+        assertEquals( 1 , compiled.getSlot( Identifier.id("b") ) );
+        assertEquals( -1 , compiled.getSlot( Identifier.id("d") ) );
+
+        assertTrue( compiled.evaluate( 1L ) );
+        assertFalse( compiled.evaluate( 3L ) );
+        assertFalse( compiled.evaluate( new boolean[] { true , false , true } ) );
+    }
+
+    public void testCompileExpression()
+    {
+        final CompiledExpression compiled = CompiledExpression.compile( parser.parse( "a and b = b and a" , true ) );
+        for ( long assignment = 0 ; assignment < 4 ; assignment++ ) {
+            assertTrue( compiled.evaluate( assignment ) );
+        }
+    }
+
+    public void testFixedSlots()
+    {
+        final List<Identifier> slots = new ArrayList<>();
+        slots.add( Identifier.id("b") );
+        slots.add( Identifier.id("a") );
+
+        final CompiledExpression compiled = CompiledExpression.compile( parser.parse( "a and not b" , true ) , slots );
+        assertEquals( 0 , compiled.getSlot( Identifier.id("b") ) );
+        assertTrue( compiled.evaluate( 2L ) );
+        assertFalse( compiled.evaluate( 1L ) );
+
+        try {
+            CompiledExpression.compile( parser.parse( "a and c" , true ) , slots );
+            fail("Should've failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testDeepChainNeedsConstantStack()
+    {
+        ASTNode chain = new IdentifierNode( Identifier.id("v0") );
+        for ( int i = 1 ; i < 10000 ; i++ ) {
+            chain = OperatorNode.or( chain , new IdentifierNode( Identifier.id("v"+(i % 50 ) ) ) );
+        }
+        final CompiledExpression compiled = CompiledExpression.compile( chain );
+        assertEquals( 2 , compiled.getMaxStackDepth() );
+        assertFalse( compiled.evaluate( 0L ) );
+        assertTrue( compiled.evaluate( 1L << 49 ) );
+    }
+
+    public void testNaryOperators()
+    {
+        final BooleanExpressionParser naryParser = new BooleanExpressionParser();
+        naryParser.setNaryOperators( true );
+        final ASTNode term = naryParser.parse( "a or (b and c and not d) or e or (a and d and e and b)" , false );
+        assertEquals( 4 , term.getChildCount() );
+
+        final CompiledExpression compiled = CompiledExpression.compile( term );
+        assertEquals( 3 , compiled.getMaxStackDepth() );
+        final ExpressionContext context = new ExpressionContext();
+        for ( long assignment = 0 ; assignment < ( 1L << compiled.getSlotCount() ) ; assignment++ )
+        {
+            for ( int slot = 0 ; slot < compiled.getSlotCount() ; slot++ ) {
+                context.define( compiled.getIdentifier( slot ) , ( assignment & ( 1L << slot ) ) != 0 );
+            }
+            assertEquals( term+" with "+context , term.evaluate( context ).getLiteralValue( context ) , compiled.evaluate( assignment ) );
+        }
+    }
+
+    public void testEvalUsesFastPath()
+    {
+        final ExpressionContext context = new ExpressionContext();
+        context.define( Identifier.id("a") , true );
+        context.define( Identifier.id("b") , false );
+
+        final ASTNode result = new ASTTransformations().eval( parser.parse( "a and not b" , true ) , context );
+        assertTrue( result instanceof TrueNode );
+    }
+
+    public void testTryEvaluate()
+    {
+        final CompiledExpression compiled = CompiledExpression.compile( parser.parse( "a or b" , true ) );
+        final ExpressionContext context = new ExpressionContext();
+        context.define( Identifier.id("a") , false );
+        assertEquals( ILiteralExpressionContext.NO_LITERAL , compiled.tryEvaluate( context ) );
+        context.define( Identifier.id("b") , true );
+        assertEquals( ILiteralExpressionContext.LITERAL_TRUE , compiled.tryEvaluate( context ) );
+        context.set( Identifier.id("b") , parser.parse( "c" , true ) );
+        assertEquals( ILiteralExpressionContext.NO_LITERAL , compiled.tryEvaluate( context ) );
+    }
+
+    public void testEvalRecompilesModifiedTerms()
+    {
+        final ExpressionContext context = new ExpressionContext();
+        context.define( Identifier.id("a") , true );
+        context.define( Identifier.id("b") , false );
+        context.define( Identifier.id("c") , true );
+
+        final ASTTransformations transformations = new ASTTransformations();
+        final ASTNode term = OperatorNode.and( new IdentifierNode( Identifier.id("a") ) , new IdentifierNode( Identifier.id("b") ) );
+        assertTrue( transformations.eval( term , context ) instanceof FalseNode );
+        assertTrue( transformations.eval( term , context ) instanceof FalseNode );
+
+        term.child(1).replaceWith( new IdentifierNode( Identifier.id("c") ) );
+        assertTrue( transformations.eval( term , context ) instanceof TrueNode );
+    }
+
+    public void testEvalFallsBackForTermsThatCannotBeCompiled()
+    {
+        final ExpressionContext context = new ExpressionContext();
+        context.define( Identifier.id("a") , true );
+        final ASTTransformations transformations = new ASTTransformations();
+
+        final ASTNode empty = OperatorNode.and( new IdentifierNode( Identifier.id("a") ) , new TermNode() );
+        final ASTNode incomplete = OperatorNode.or( new IdentifierNode( Identifier.id("a") ) , new OperatorNode( OperatorType.NOT ) );
+        for ( ASTNode term : new ASTNode[] { empty , incomplete } )
+        {
+            try {
+                CompiledExpression.compile( term );
+                fail("Should've failed");
+            } catch(IllegalArgumentException e) {
+                // ok
+            }
+            assertEquals( ConstantFolder.fold( term.createCopy( true ) , context ).toString() , 
+                    transformations.eval( term , context ).toString() );
+        }
+    }
+
+    public void testEquivalentToASTEvaluation()
+    {
+        for ( int i = 0 ; i < 2000 ; i++ )
+        {
+            final ASTNode term = generator.createTerm( 1 + generator.getRandom().nextInt( 6 ) , 1 + generator.getRandom().nextInt( 12 ) );
+            final CompiledExpression compiled = CompiledExpression.compile( term );
+            final int slotCount = compiled.getSlotCount();
+
+            final ExpressionContext context = new ExpressionContext();
+            final boolean[] values = new boolean[ slotCount ];
+            for ( long assignment = 0 ; assignment < ( 1L << slotCount ) ; assignment++ )
+            {
+                for ( int slot = 0 ; slot < slotCount ; slot++ ) {
+                    values[slot] = ( assignment & ( 1L << slot ) ) != 0;
+                    context.define( compiled.getIdentifier( slot ) , values[slot] );
+                }
+                final boolean expected = term.evaluate( context ).getLiteralValue( context );
+                assertEquals( term+" with "+context , expected , compiled.evaluate( assignment ) );
+                assertEquals( term+" with "+context , expected , compiled.evaluate( values ) );
+                assertEquals( term+" with "+context , expected , compiled.evaluate( context ) );
+                assertEquals( term+" with "+context , expected ? ILiteralExpressionContext.LITERAL_TRUE : ILiteralExpressionContext.LITERAL_FALSE ,
+                        compiled.tryEvaluate( context ) );
+            }
+        }
+    }
+}
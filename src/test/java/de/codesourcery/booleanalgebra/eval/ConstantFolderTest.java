@@ -0,0 +1,136 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.ASTTransformations;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.BooleanExpression;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+
+public class ConstantFolderTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    private final TermGenerator generator = new TermGenerator(0xdeadbeef);
+
+    public void testNothingToFold()
+    {
+        final ASTNode term = parse( "a and (b or not c)" );
+        final ASTNode result = ConstantFolder.fold( term , new ExpressionContext() );
+        assertNotSame( term , result );
+        assertTrue( term.isEquals( result ) );
+    }
+
+    public void testFoldLiterals()
+    {
+        assertFolded( "true" , "not (a and false)" );
+        assertFolded( "false" , "(a or true) and false" );
+        assertFolded( "a" , "a and (true or b)" );
+        assertFolded( "(a OR b)" , "a or (b and true) or false" );
+        assertFolded( "(NOT a)" , "not (a and not false)" );
+    }
+
+    public void testFoldKnownVariables()
+    {
+        final ExpressionContext context = new ExpressionContext();
+        context.define( Identifier.id("b") , true );
+        context.define( Identifier.id("c") , false );
+
+        final ASTNode term = parse( "(a and b) or (c and d) or (b and not c)" );
+        final String before = term.toString(false);
+
+        assertTrue( ConstantFolder.fold( term , context ) instanceof TrueNode );
+        assertEquals( "a" , ConstantFolder.fold( parse( "(a and b) or (c and d)" ) , context ).toString(false) );
+        assertEquals( "a OR d" , ConstantFolder.fold( parse( "(a and b) or (c or d)" ).child(0) , context ).toString(false) );
+        assertEquals( before , term.toString(false) );
+    }
+
+    public void testFoldExpression()
+    {
+        final ExpressionContext context = new ExpressionContext();
+        context.define( Identifier.id("b") , false );
+
+        final ASTNode result = ConstantFolder.fold( parse( "a or b = b or a" ) , context );
+        assertTrue( result instanceof BooleanExpression );
+        assertEquals( "a = a" , result.toString(false) );
+    }
+
+    public void testNaryOperators()
+    {
+        final ExpressionContext context = new ExpressionContext();
+        context.define( Identifier.id("b") , true );
+
+        parser.setNaryOperators( true );
+        final ASTNode result = ConstantFolder.fold( parse( "a and b and c and d" ) , context );
+        assertEquals( "(a AND c AND d)" , result.toString(false) );
+        assertEquals( 3 , result.child(0).getChildCount() );
+    }
+
+    public void testEquivalentToEvaluation()
+    {
+        for ( int i = 0 ; i < 2000 ; i++ )
+        {
+            final ASTNode term = generator.createTerm( 1 + generator.getRandom().nextInt( 6 ) , 1 + generator.getRandom().nextInt( 12 ) );
+            final List<Identifier> vars = TruthTable.gatherVariables( term );
+
+            // bind some of the variables
+            final ExpressionContext context = new ExpressionContext();
+            for ( Identifier id : vars ) {
+                if ( generator.getRandom().nextBoolean() ) {
+                    context.define( id , generator.getRandom().nextBoolean() );
+                }
+            }
+            final ASTNode folded = ConstantFolder.fold( term , context );
+            for ( Identifier id : TruthTable.gatherVariables( folded ) ) {
+                assertNull( context.tryLookup( id ) );
+            }
+
+            final CompiledExpression compiledTerm = CompiledExpression.compile( term );
+            final CompiledExpression compiledFolded = CompiledExpression.compile( folded );
+            for ( int assignment = 0 ; assignment < ( 1 << vars.size() ) ; assignment++ )
+            {
+                final ExpressionContext row = (ExpressionContext) context.createCopy();
+                for ( int j = 0 ; j < vars.size() ; j++ ) {
+                    if ( row.tryLookup( vars.get(j) ) == null ) {
+                        row.define( vars.get(j) , ( assignment & ( 1 << j ) ) != 0 );
+                    }
+                }
+                assertEquals( term+" <-> "+folded , compiledTerm.evaluate( row ) , compiledFolded.evaluate( row ) );
+            }
+        }
+    }
+
+    public void testFoldDeepTerm()
+    {
+        final Identifier a = Identifier.id("a");
+        ASTNode term = new IdentifierNode( a );
+        for ( int i = 0 ; i < 2000 ; i++ ) {
+            term = i % 2 == 0 ? OperatorNode.and( term , new IdentifierNode( Identifier.id("b") ) ) : OperatorNode.not( term );
+        }
+        final ExpressionContext context = new ExpressionContext();
+        context.define( a , false );
+        context.define( Identifier.id("b") , true );
+
+        assertTrue( ConstantFolder.fold( term , context ) instanceof FalseNode );
+        assertTrue( new ASTTransformations().reduce( term , context ) instanceof FalseNode );
+        assertTrue( term.evaluate( context ) instanceof FalseNode );
+    }
+
+    private void assertFolded(String expected,String term)
+    {
+        final ASTNode result = ConstantFolder.fold( parse( term ) , new ExpressionContext() );
+        assertEquals( expected , result.toString(false) );
+    }
+
+    private ASTNode parse(String s) {
+        return parser.parse( s , true );
+    }
+}
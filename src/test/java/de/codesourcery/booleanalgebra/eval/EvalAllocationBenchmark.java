@@ -0,0 +1,99 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+import de.codesourcery.booleanalgebra.ASTTransformations;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+
+/**
+ * Compares the number of bytes allocated per call of {@link ASTTransformations#eval(ASTNode, de.codesourcery.booleanalgebra.IExpressionContext)}
+ * and {@link ASTNode#evaluate(de.codesourcery.booleanalgebra.IExpressionContext)} on terms of growing size.
+ *
+ * <p><code>eval()</code> reuses the program it compiled on the first call , so it allocates
+ * the same (small) amount per call no matter how many operators the term has.</p>
+ *
+ * <p>Needs a JVM that supports <code>com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)</code>.</p>
+ */
+public class EvalAllocationBenchmark
+{
+    private static final int[] LEAF_COUNTS = { 10 , 100 , 1000 , 10000 };
+
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 1000;
+
+    private interface IEvaluator {
+        public ASTNode evaluate(ASTNode term);
+    }
+
+    public static void main(String[] args)
+    {
+        final List<Identifier> variables = TermGenerator.createVariables( 16 );
+        final ExpressionContext context = new ExpressionContext();
+        for ( int i = 0 ; i < variables.size() ; i++ ) {
+            context.define( variables.get( i ) , ( i & 1 ) != 0 );
+        }
+
+        final ASTTransformations transformer = new ASTTransformations();
+        final IEvaluator eval = new IEvaluator() {
+
+            @Override
+            public ASTNode evaluate(ASTNode term) {
+                return transformer.eval( term , context );
+            }
+        };
+        final IEvaluator evaluate = new IEvaluator() {
+
+            @Override
+            public ASTNode evaluate(ASTNode term) {
+                return term.evaluate( context );
+            }
+        };
+
+        final TermGenerator generator = new TermGenerator( 0xdeadbeef );
+        System.out.println( String.format("%10s %10s %15s %15s %15s %15s" , "leaves" , "nodes" , "eval [B]" , "evaluate [B]" , "eval [us]" , "evaluate [us]" ) );
+        for ( int leafCount : LEAF_COUNTS )
+        {
+            final ASTNode term = generator.createLargeTerm( variables , leafCount );
+            final long[] evalResult = measure( eval , term );
+            final long[] evaluateResult = measure( evaluate , term );
+            System.out.println( String.format("%10d %10d %15d %15d %15.1f %15.1f" , leafCount , term.getNodeCount() ,
+                    evalResult[0] , evaluateResult[0] , evalResult[1] / 1000.0 , evaluateResult[1] / 1000.0 ) );
+        }
+    }
+
+    /**
+     * @return bytes allocated per call , nanoseconds per call
+     */
+    private static long[] measure(IEvaluator evaluator,ASTNode term)
+    {
+        final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+
+        for ( int i = 0 ; i < WARMUP ; i++ ) {
+            evaluator.evaluate( term );
+        }
+
+        final long bytesBefore = bean.getThreadAllocatedBytes( threadId );
+        final long start = System.nanoTime();
+        for ( int i = 0 ; i < ITERATIONS ; i++ ) {
+            evaluator.evaluate( term );
+        }
+        final long elapsed = System.nanoTime() - start;
+        final long bytes = bean.getThreadAllocatedBytes( threadId ) - bytesBefore;
+        return new long[] { bytes / ITERATIONS , elapsed / ITERATIONS };
+    }
+
+    private static ThreadMXBean getThreadMXBean()
+    {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if ( ! ( bean instanceof com.sun.management.ThreadMXBean ) ) {
+            throw new UnsupportedOperationException("This JVM does not support measuring allocated bytes per thread");
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,156 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+
+public class IncrementalEvaluatorTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    private final TermGenerator generator = new TermGenerator(0xfeedface);
+
+    private static final class RecordingListener implements IValueChangeListener
+    {
+        public final List<String> events = new ArrayList<>();
+
+        @Override
+        public void valueChanged(int expressionId, boolean newValue) {
+            events.add( expressionId+"="+newValue );
+        }
+    }
+
+    public void testInitialValues()
+    {
+        final IncrementalEvaluator evaluator = new IncrementalEvaluator();
+        final int e1 = evaluator.addExpression( parser.parse( "a or not b" , true ) );
+        final int e2 = evaluator.addExpression( parser.parse( "a and true" , true ) );
+        assertTrue( evaluator.getValue( e1 ) );
+        assertFalse( evaluator.getValue( e2 ) );
+
+        evaluator.set( new Identifier("c") , true );
+        final int e3 = evaluator.addExpression( parser.parse( "c = a" , true ) );
+        assertFalse( evaluator.getValue( e3 ) );
+        assertTrue( evaluator.getValue( new Identifier("c") ) );
+        assertFalse( evaluator.getValue( new Identifier("unknown") ) );
+    }
+
+    public void testListeners()
+    {
+        final IncrementalEvaluator evaluator = new IncrementalEvaluator();
+        final int e1 = evaluator.addExpression( parser.parse( "a and b" , true ) );
+        final int e2 = evaluator.addExpression( parser.parse( "b and a" , true ) );
+        final int e3 = evaluator.addExpression( parser.parse( "c" , true ) );
+
+        final RecordingListener listener = new RecordingListener();
+        evaluator.addListener( e1 , listener );
+        evaluator.addListener( e2 , listener );
+        evaluator.addListener( e3 , listener );
+
+        evaluator.set( new Identifier("a") , true );
+        assertTrue( listener.events.isEmpty() );
+
+        evaluator.set( new Identifier("b") , true );
+        assertEquals( 2 , listener.events.size() );
+        assertTrue( listener.events.contains( e1+"=true" ) );
+        assertTrue( listener.events.contains( e2+"=true" ) );
+
+        listener.events.clear();
+        evaluator.set( new Identifier("c") , true );
+        assertEquals( "["+e3+"=true]" , listener.events.toString() );
+
+        listener.events.clear();
+        evaluator.removeListener( e3 , listener );
+        evaluator.set( new Identifier("c") , false );
+        assertTrue( listener.events.isEmpty() );
+        assertFalse( evaluator.getValue( e3 ) );
+    }
+
+    public void testPropagationStopsEarly()
+    {
+        final IncrementalEvaluator evaluator = new IncrementalEvaluator();
+        evaluator.addExpression( parser.parse( "(a and b) or (c and d) or (e and f) or (g and h)" , true ) );
+
+        // b is false , so a does not change (a and b)
+        evaluator.set( new Identifier("a") , true );
+        assertEquals( 1 , evaluator.getRecomputedNodeCount() );
+
+        // setting a variable to its current value does nothing
+        evaluator.set( new Identifier("a") , true );
+        assertEquals( 0 , evaluator.getRecomputedNodeCount() );
+
+        // g does not influence the other terms
+        evaluator.set( new Identifier("h") , true );
+        evaluator.set( new Identifier("g") , true );
+        assertEquals( 2 , evaluator.getRecomputedNodeCount() );
+    }
+
+    public void testSetSeveralVariables()
+    {
+        final IncrementalEvaluator evaluator = new IncrementalEvaluator();
+        final int e1 = evaluator.addExpression( parser.parse( "a = b" , true ) );
+        final RecordingListener listener = new RecordingListener();
+        evaluator.addListener( e1 , listener );
+
+        final Map<Identifier,Boolean> values = new HashMap<>();
+        values.put( new Identifier("a") , true );
+        values.put( new Identifier("b") , true );
+        evaluator.set( values );
+
+        // value of a = b is the same as before
+        assertTrue( listener.events.isEmpty() );
+        assertTrue( evaluator.getValue( e1 ) );
+        assertEquals( 1 , evaluator.getRecomputedNodeCount() );
+    }
+
+    public void testMatchesFullEvaluation()
+    {
+        final Random random = generator.getRandom();
+        final List<Identifier> variables = TermGenerator.createVariables( 16 );
+        final IncrementalEvaluator evaluator = new IncrementalEvaluator();
+        final List<CompiledExpression> compiled = new ArrayList<>();
+        for ( int i = 0 ; i < 200 ; i++ )
+        {
+            final int id = evaluator.addExpression( generator.createLargeTerm( variables , 1 + random.nextInt( 30 ) ) );
+            assertEquals( compiled.size() , id );
+            compiled.add( CompiledExpression.compile( evaluator.getExpression( id ) , variables ) );
+        }
+
+        final boolean[] changed = new boolean[ compiled.size() ];
+        final IValueChangeListener listener = new IValueChangeListener() {
+
+            @Override
+            public void valueChanged(int expressionId, boolean newValue) {
+                assertFalse( changed[expressionId] );
+                changed[expressionId] = true;
+            }
+        };
+        for ( int i = 0 ; i < compiled.size() ; i++ ) {
+            evaluator.addListener( i , listener );
+        }
+
+        long assignment = 0;
+        for ( int round = 0 ; round < 1000 ; round++ )
+        {
+            final int variable = random.nextInt( variables.size() );
+            final long newAssignment = assignment ^ ( 1L << variable );
+            evaluator.set( variables.get( variable ) , ( newAssignment & ( 1L << variable ) ) != 0 );
+
+            for ( int i = 0 ; i < compiled.size() ; i++ )
+            {
+                final boolean expected = compiled.get(i).evaluate( newAssignment );
+                assertEquals( expected , evaluator.getValue( i ) );
+                assertEquals( expected != compiled.get(i).evaluate( assignment ) , changed[i] );
+                changed[i] = false;
+            }
+            assignment = newAssignment;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.codesourcery.booleanalgebra.ASTTransformations;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+
+/**
+ * Evaluates a large term for requests that share the values of most variables ("configuration")
+ * and only differ in a few ("inputs") , comparing {@link ASTTransformations#eval(ASTNode, de.codesourcery.booleanalgebra.IExpressionContext)} ,
+ * a {@link CompiledExpression} of the whole term and a {@link PreparedExpression}.
+ */
+public class PreparedExpressionBenchmark
+{
+    private static final int CONFIG_VARIABLES = 32;
+    private static final int INPUT_VARIABLES = 8;
+    private static final int CONFIGURATIONS = 16;
+
+    private static final int[] LEAF_COUNTS = { 100 , 1000 , 10000 };
+
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 100000;
+
+    private interface IEvaluator {
+        public boolean evaluate(ExpressionContext config,ExpressionContext request);
+    }
+
+    public static void main(String[] args)
+    {
+        final TermGenerator generator = new TermGenerator( 0xcafebabe );
+        final List<Identifier> configVariables = TermGenerator.createVariables( "c" , CONFIG_VARIABLES );
+        final List<Identifier> inputVariables = TermGenerator.createVariables( "i" , INPUT_VARIABLES );
+        final List<Identifier> variables = new ArrayList<>( configVariables );
+        variables.addAll( inputVariables );
+
+        final Random random = new Random( 0xdeadbeef );
+        final List<ExpressionContext> configs = new ArrayList<>();
+        for ( int i = 0 ; i < CONFIGURATIONS ; i++ )
+        {
+            final ExpressionContext config = new ExpressionContext();
+            for ( Identifier id : configVariables ) {
+                config.define( id , random.nextBoolean() );
+            }
+            configs.add( config );
+        }
+        // every request carries the full set of values
+        final List<ExpressionContext> requests = new ArrayList<>();
+        for ( int i = 0 ; i < 1024 ; i++ )
+        {
+            final ExpressionContext request = (ExpressionContext) configs.get( i % CONFIGURATIONS ).createCopy();
+            for ( Identifier id : inputVariables ) {
+                request.define( id , random.nextBoolean() );
+            }
+            requests.add( request );
+        }
+
+        final ASTTransformations transformer = new ASTTransformations();
+        System.out.println( String.format("%10s %10s %15s %15s %15s %15s" , "leaves" , "free vars" , "eval [ns]" , "compiled [ns]" , "prepared [ns]" , "hits/misses" ) );
+        for ( int leafCount : LEAF_COUNTS )
+        {
+            final ASTNode term = generator.createLargeTerm( variables , leafCount );
+            final CompiledExpression compiled = CompiledExpression.compile( term );
+            final PreparedExpression prepared = new PreparedExpression( term );
+
+            final double eval = measure( new IEvaluator() {
+
+                @Override
+                public boolean evaluate(ExpressionContext config, ExpressionContext request) {
+                    return transformer.eval( term , request ).getLiteralValue( request );
+                }
+            } , configs , requests , Math.max( 1 , leafCount / 100 ) );
+            final double compiledTime = measure( new IEvaluator() {
+
+                @Override
+                public boolean evaluate(ExpressionContext config, ExpressionContext request) {
+                    return compiled.evaluate( request );
+                }
+            } , configs , requests , 1 );
+            final double preparedTime = measure( new IEvaluator() {
+
+                @Override
+                public boolean evaluate(ExpressionContext config, ExpressionContext request) {
+                    return prepared.evaluate( config , request );
+                }
+            } , configs , requests , 1 );
+
+            int freeVariables = 0;
+            for ( ExpressionContext config : configs ) {
+                freeVariables = Math.max( freeVariables , prepared.specialize( config ).getFreeVariables().size() );
+            }
+            System.out.println( String.format("%10d %10d %15.1f %15.1f %15.1f %15s" , leafCount , freeVariables , eval , compiledTime , 
+                    preparedTime , prepared.getCacheHits()+"/"+prepared.getCacheMisses() ) );
+        }
+    }
+
+    /**
+     * @return nanoseconds per request
+     */
+    private static double measure(IEvaluator evaluator,List<ExpressionContext> configs,List<ExpressionContext> requests,int divisor)
+    {
+        final int warmup = WARMUP / divisor;
+        final int iterations = ITERATIONS / divisor;
+        int trueCount = 0;
+        for ( int i = 0 ; i < warmup ; i++ ) {
+            if ( evaluator.evaluate( configs.get( i % configs.size() ) , requests.get( i % requests.size() ) ) ) {
+                trueCount++;
+            }
+        }
+        final long start = System.nanoTime();
+        for ( int i = 0 ; i < iterations ; i++ ) {
+            if ( evaluator.evaluate( configs.get( i % configs.size() ) , requests.get( i % requests.size() ) ) ) {
+                trueCount++;
+            }
+        }
+        final double result = ( System.nanoTime() - start ) / (double) iterations;
+        if ( trueCount < 0 ) {
+            System.out.println( trueCount );
+        }
+        return result;
+    }
+}
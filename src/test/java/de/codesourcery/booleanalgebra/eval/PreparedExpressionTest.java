@@ -0,0 +1,131 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.PackedExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+
+public class PreparedExpressionTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    private final TermGenerator generator = new TermGenerator(0xdeadbeef);
+
+    private static final Identifier A = Identifier.id("a");
+    private static final Identifier B = Identifier.id("b");
+    private static final Identifier C = Identifier.id("c");
+    private static final Identifier D = Identifier.id("d");
+
+    public void testSpecialize()
+    {
+        final PreparedExpression prepared = new PreparedExpression( parse( "(a and b) or (c and not d)" ) );
+        assertEquals( 4 , prepared.getVariables().size() );
+
+        final ExpressionContext context = new ExpressionContext();
+        context.define( B , true );
+        context.define( C , false );
+
+        final SpecializedExpression specialized = prepared.specialize( context );
+        assertEquals( "a" , specialized.getResidual().toString(false) );
+        assertEquals( 1 , specialized.getFreeVariables().size() );
+        assertEquals( 0 , specialized.getSlot( A ) );
+        assertEquals( -1 , specialized.getSlot( D ) );
+        assertFalse( specialized.isConstant() );
+        assertTrue( specialized.test( 1L ) );
+        assertFalse( specialized.test( 0L ) );
+
+        // bound variables are ignored when evaluating
+        final ExpressionContext request = new ExpressionContext();
+        request.define( A , true );
+        assertTrue( specialized.evaluate( request ) );
+        assertTrue( prepared.evaluate( context , request ) );
+    }
+
+    public void testConstantSpecialization()
+    {
+        final PreparedExpression prepared = new PreparedExpression( parse( "(a and b) or c" ) );
+        final ExpressionContext context = new ExpressionContext();
+        context.define( C , true );
+
+        final SpecializedExpression specialized = prepared.specialize( context );
+        assertTrue( specialized.isConstant() );
+        assertTrue( specialized.evaluate( new ExpressionContext() ) );
+    }
+
+    public void testCache()
+    {
+        final PreparedExpression prepared = new PreparedExpression( parse( "(a and b) or (c and d)" ) , 2 , BytecodeCompiler.getDefault() , 0 );
+
+        final ExpressionContext context1 = new ExpressionContext();
+        context1.define( A , true );
+        context1.define( B , false );
+        final SpecializedExpression specialized = prepared.specialize( context1 );
+        assertEquals( 1 , prepared.getCacheMisses() );
+
+        // values of unbound variables and bindings to other terms do not matter
+        final PackedExpressionContext context2 = new PackedExpressionContext();
+        context2.define( A , true );
+        context2.define( B , false );
+        context2.set( C , parse( "x or y" ) );
+        assertSame( specialized , prepared.specialize( context2 ) );
+        assertEquals( 1 , prepared.getCacheHits() );
+
+        final ExpressionContext context3 = new ExpressionContext();
+        context3.define( A , true );
+        context3.define( B , true );
+        final SpecializedExpression specialized3 = prepared.specialize( context3 );
+        assertNotSame( specialized , specialized3 );
+        assertSame( specialized , prepared.specialize( context1 ) );
+
+        // context3's specialization is the least recently used one
+        final ExpressionContext context4 = new ExpressionContext();
+        context4.define( C , true );
+        prepared.specialize( context4 );
+        assertEquals( 3 , prepared.getCacheMisses() );
+        assertEquals( 2 , prepared.getCacheHits() );
+        assertEquals( 1 , prepared.getEvictionCount() );
+        assertEquals( 2 , prepared.getCachedSpecializationCount() );
+
+        assertSame( specialized , prepared.specialize( context1 ) );
+        assertNotSame( specialized3 , prepared.specialize( context3 ) );
+        assertEquals( 4 , prepared.getCacheMisses() );
+
+        prepared.clearCache();
+        assertEquals( 0 , prepared.getCachedSpecializationCount() );
+    }
+
+    public void testEquivalentToEvaluation()
+    {
+        for ( int i = 0 ; i < 500 ; i++ )
+        {
+            final ASTNode term = generator.createTerm( 1 + generator.getRandom().nextInt( 6 ) , 1 + generator.getRandom().nextInt( 12 ) );
+            final PreparedExpression prepared = new PreparedExpression( term , 4 , BytecodeCompiler.getDefault() , 2 );
+            final List<Identifier> vars = prepared.getVariables();
+            final CompiledExpression compiled = CompiledExpression.compile( term );
+
+            for ( int assignment = 0 ; assignment < ( 1 << vars.size() ) ; assignment++ )
+            {
+                final ExpressionContext bound = new ExpressionContext();
+                final ExpressionContext all = new ExpressionContext();
+                for ( int j = 0 ; j < vars.size() ; j++ )
+                {
+                    final boolean value = ( assignment & ( 1 << j ) ) != 0;
+                    if ( ( j & 1 ) == 0 ) {
+                        bound.define( vars.get(j) , value );
+                    }
+                    all.define( vars.get(j) , value );
+                }
+                assertEquals( term.toString() , compiled.evaluate( all ) , prepared.evaluate( bound , all ) );
+            }
+        }
+    }
+
+    private ASTNode parse(String s) {
+        return parser.parse( s , true );
+    }
+}
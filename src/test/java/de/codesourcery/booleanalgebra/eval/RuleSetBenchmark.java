@@ -0,0 +1,98 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+
+/**
+ * Compares evaluating many rules with common subterms through a {@link RuleSet}
+ * against evaluating each rule's {@link CompiledExpression} on its own.
+ */
+public class RuleSetBenchmark
+{
+    private static final int VARIABLES = 64;
+    private static final int SUBTERMS = 300;
+    private static final int RULES = 5000;
+    private static final int SUBTERMS_PER_RULE = 4;
+
+    private static final int ASSIGNMENTS = 5000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args)
+    {
+        final TermGenerator generator = new TermGenerator( 0xcafebabe );
+        final Random random = generator.getRandom();
+        final List<Identifier> variables = TermGenerator.createVariables( VARIABLES );
+
+        final List<ASTNode> subterms = new ArrayList<>();
+        for ( int i = 0 ; i < SUBTERMS ; i++ ) {
+            subterms.add( generator.createLargeTerm( variables , 4 ) );
+        }
+
+        final RuleSet ruleSet = new RuleSet();
+        for ( Identifier id : variables ) {
+            ruleSet.getSymbolTable().intern( id );
+        }
+        final CompiledExpression[] compiled = new CompiledExpression[ RULES ];
+        int treeNodes = 0;
+        for ( int i = 0 ; i < RULES ; i++ )
+        {
+            ASTNode rule = subterms.get( random.nextInt( SUBTERMS ) ).createCopy( true );
+            for ( int j = 1 ; j < SUBTERMS_PER_RULE ; j++ ) {
+                final ASTNode other = subterms.get( random.nextInt( SUBTERMS ) ).createCopy( true );
+                rule = random.nextBoolean() ? OperatorNode.and( rule , other ) : OperatorNode.or( rule , other );
+            }
+            ruleSet.addRule( rule );
+            compiled[i] = CompiledExpression.compile( rule , variables );
+            treeNodes += compiled[i].getProgramLength();
+        }
+        System.out.println( RULES+" rules, "+treeNodes+" nodes in total, "+ruleSet.getLiveNodeCount()+" distinct" );
+
+        final long[] assignments = new long[ ASSIGNMENTS ];
+        for ( int i = 0 ; i < ASSIGNMENTS ; i++ ) {
+            assignments[i] = random.nextLong();
+        }
+
+        long best = Long.MAX_VALUE;
+        long fired = 0;
+        for ( int round = 0 ; round < ROUNDS ; round++ )
+        {
+            fired = 0;
+            final long start = System.nanoTime();
+            for ( long assignment : assignments )
+            {
+                for ( long word : ruleSet.evaluate( new long[] { assignment } ) ) {
+                    fired += Long.bitCount( word );
+                }
+            }
+            best = Math.min( best , System.nanoTime() - start );
+        }
+        print( "rule set" , best , fired );
+
+        best = Long.MAX_VALUE;
+        for ( int round = 0 ; round < ROUNDS ; round++ )
+        {
+            fired = 0;
+            final long start = System.nanoTime();
+            for ( long assignment : assignments )
+            {
+                for ( CompiledExpression rule : compiled ) {
+                    if ( rule.evaluate( assignment ) ) {
+                        fired++;
+                    }
+                }
+            }
+            best = Math.min( best , System.nanoTime() - start );
+        }
+        print( "independent" , best , fired );
+    }
+
+    private static void print(String label,long nanos,long fired) {
+        System.out.println( String.format("%-15s %10.1f ms %10.0f assignments/s (%d rules fired)" , label , nanos / 1000000.0 , ASSIGNMENTS * 1e9 / nanos , fired ) );
+    }
+}
@@ -0,0 +1,151 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+
+public class RuleSetTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    private final TermGenerator generator = new TermGenerator(0x12345678);
+
+    public void testSharedSubterms()
+    {
+        final RuleSet rules = new RuleSet();
+        rules.addRule( parser.parse( "(a and b) or c" , true ) );
+        assertEquals( 5 , rules.getLiveNodeCount() );
+
+        // (b and a) is the same as (a and b) , only the OR and d are new
+        rules.addRule( parser.parse( "(b and a) or d" , true ) );
+        assertEquals( 7 , rules.getLiveNodeCount() );
+
+        rules.addRule( parser.parse( "not (a and b) = c" , true ) );
+        assertEquals( 9 , rules.getLiveNodeCount() );
+    }
+
+    public void testEvaluate()
+    {
+        final RuleSet rules = new RuleSet();
+        final int r0 = rules.addRule( parser.parse( "a and b" , true ) );
+        final int r1 = rules.addRule( parser.parse( "a or b" , true ) );
+        final int r2 = rules.addRule( parser.parse( "a = b" , true ) );
+        final int r3 = rules.addRule( parser.parse( "not a" , true ) );
+
+        final int a = rules.getSymbolTable().indexOf( new Identifier("a") );
+        final long[] result = rules.evaluate( new long[] { 1L << a } );
+        assertEquals( ( 1L << r1 ) , result[0] & ( 1L << r0 | 1L << r1 | 1L << r2 | 1L << r3 ) );
+
+        final ExpressionContext context = new ExpressionContext();
+        context.set( new Identifier("a") , new FalseNode() );
+        context.set( new Identifier("b") , new FalseNode() );
+        assertEquals( ( 1L << r2 ) | ( 1L << r3 ) , rules.evaluate( context )[0] );
+
+        context.set( new Identifier("a") , new TrueNode() );
+        context.set( new Identifier("b") , new TrueNode() );
+        assertEquals( ( 1L << r0 ) | ( 1L << r1 ) | ( 1L << r2 ) , rules.evaluate( context )[0] );
+    }
+
+    public void testMissingVariable()
+    {
+        final RuleSet rules = new RuleSet();
+        rules.addRule( parser.parse( "a and b" , true ) );
+        try {
+            rules.evaluate( new ExpressionContext() );
+            fail("Should've failed");
+        } catch(RuntimeException e) {
+            // ok
+        }
+    }
+
+    public void testRemoveRule()
+    {
+        final RuleSet rules = new RuleSet();
+        final int r0 = rules.addRule( parser.parse( "(a and b) or c" , true ) );
+        final int r1 = rules.addRule( parser.parse( "(a and b) or d" , true ) );
+        rules.removeRule( r0 );
+
+        assertFalse( rules.containsRule( r0 ) );
+        assertEquals( 1 , rules.getRuleCount() );
+        assertEquals( 5 , rules.getLiveNodeCount() );
+        assertEquals( 1L << r1 , rules.evaluate( new long[] { ~0L } )[0] );
+
+        // IDs get reused
+        assertEquals( r0 , rules.addRule( parser.parse( "c" , true ) ) );
+        assertEquals( 6 , rules.getLiveNodeCount() );
+
+        try {
+            rules.removeRule( 42 );
+            fail("Should've failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testManyUpdates()
+    {
+        final List<Identifier> variables = TermGenerator.createVariables( 30 );
+        final RuleSet rules = new RuleSet();
+        final List<Integer> ids = new ArrayList<>();
+        ids.add( rules.addRule( generator.createLargeTerm( variables , 50 ) ) );
+        for ( int i = 0 ; i < 2000 ; i++ ) {
+            rules.removeRule( rules.addRule( generator.createLargeTerm( variables , 50 ) ) );
+        }
+        checkRules( rules , ids , generator.getRandom() );
+    }
+
+    public void testMatchesIndependentEvaluation()
+    {
+        final Random random = generator.getRandom();
+        final List<Identifier> variables = TermGenerator.createVariables( 20 );
+        final RuleSet rules = new RuleSet();
+        final List<Integer> ids = new ArrayList<>();
+
+        for ( int round = 0 ; round < 3000 ; round++ )
+        {
+            // mostly add , sometimes remove so that garbage gets collected
+            if ( ids.isEmpty() || random.nextInt( 5 ) < 3 ) {
+                ids.add( rules.addRule( generator.createLargeTerm( variables.subList( 0 , 2 + random.nextInt( 18 ) ) , 1 + random.nextInt( 20 ) ) ) );
+            } else {
+                rules.removeRule( ids.remove( random.nextInt( ids.size() ) ) );
+            }
+            if ( round % 100 == 0 ) {
+                checkRules( rules , ids , random );
+            }
+        }
+        checkRules( rules , ids , random );
+    }
+
+    private void checkRules(RuleSet rules,List<Integer> ids,Random random)
+    {
+        assertEquals( ids.size() , rules.getRuleCount() );
+        for ( int i = 0 ; i < 10 ; i++ )
+        {
+            final long[] assignment = { random.nextLong() };
+            final long[] result = rules.evaluate( assignment );
+            for ( int ruleId : ids )
+            {
+                final CompiledExpression compiled = CompiledExpression.compile( rules.getRule( ruleId ) );
+                long slots = 0;
+                for ( int slot = 0 ; slot < compiled.getSlotCount() ; slot++ )
+                {
+                    final int index = rules.getSymbolTable().indexOf( compiled.getIdentifier( slot ) );
+                    if ( ( assignment[0] & ( 1L << index ) ) != 0 ) {
+                        slots |= 1L << slot;
+                    }
+                }
+                final boolean fired = ( result[ ruleId >>> 6 ] & ( 1L << ruleId ) ) != 0;
+                assertEquals( compiled.evaluate( slots ) , fired );
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+
+public class TieredExpressionTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    private final TermGenerator generator = new TermGenerator(0xcafebabe);
+
+    public void testTierUpAfterThreshold()
+    {
+        final BytecodeCompiler compiler = new BytecodeCompiler( 16 );
+        final CompiledExpression compiled = CompiledExpression.compile( parser.parse( "a and not (b or c) = d" , true ) );
+        final TieredExpression tiered = new TieredExpression( compiled , compiler , 100 );
+
+        for ( int i = 0 ; i < 99 ; i++ ) {
+            assertEquals( compiled.evaluate( i & 15 ) , tiered.test( i & 15 ) );
+        }
+        assertFalse( tiered.isCompiled() );
+        tiered.test( 0L );
+        assertTrue( tiered.isCompiled() );
+        assertEquals( 1 , compiler.getCachedClassCount() );
+
+        for ( long assignment = 0 ; assignment < 16 ; assignment++ ) {
+            assertEquals( compiled.evaluate( assignment ) , tiered.test( assignment ) );
+        }
+    }
+
+    public void testStructurallyEqualExpressionsShareClass()
+    {
+        final BytecodeCompiler compiler = new BytecodeCompiler( 16 );
+        final IBooleanFunction f1 = compiler.compile( CompiledExpression.compile( parser.parse( "a and not b" , true ) ) );
+        final IBooleanFunction f2 = compiler.compile( CompiledExpression.compile( parser.parse( "x and not y" , true ) ) );
+        final IBooleanFunction f3 = compiler.compile( CompiledExpression.compile( parser.parse( "x or not y" , true ) ) );
+
+        assertSame( f1 , f2 );
+        assertNotSame( f1 , f3 );
+        assertEquals( 2 , compiler.getCachedClassCount() );
+        assertEquals( 1 , compiler.getCacheHits() );
+        assertEquals( 2 , compiler.getCacheMisses() );
+    }
+
+    public void testCacheEviction()
+    {
+        final BytecodeCompiler compiler = new BytecodeCompiler( 2 );
+        compiler.compile( CompiledExpression.compile( parser.parse( "a and b" , true ) ) );
+        compiler.compile( CompiledExpression.compile( parser.parse( "a or b" , true ) ) );
+        compiler.compile( CompiledExpression.compile( parser.parse( "a = b" , true ) ) );
+        assertEquals( 2 , compiler.getCachedClassCount() );
+    }
+
+    public void testGeneratedCodeMatchesInterpreter()
+    {
+        final BytecodeCompiler compiler = new BytecodeCompiler( 4096 );
+        for ( int i = 0 ; i < 500 ; i++ )
+        {
+            final ASTNode term = generator.createTerm( 1 + generator.getRandom().nextInt( 8 ) , 1 + generator.getRandom().nextInt( 14 ) );
+            final CompiledExpression compiled = CompiledExpression.compile( term );
+            final IBooleanFunction generated = compiler.compile( compiled );
+
+            final int slotCount = compiled.getSlotCount();
+            final boolean[] values = new boolean[ slotCount ];
+            for ( long assignment = 0 ; assignment < ( 1L << slotCount ) ; assignment++ )
+            {
+                for ( int slot = 0 ; slot < slotCount ; slot++ ) {
+                    values[slot] = ( assignment & ( 1L << slot ) ) != 0;
+                }
+                final boolean expected = compiled.evaluate( assignment );
+                assertEquals( term.toString() , expected , generated.test( assignment ) );
+                assertEquals( term.toString() , expected , generated.test( values ) );
+            }
+        }
+    }
+
+    public void testLargeExpressionStaysInterpreted()
+    {
+        final ASTNode term = generator.createLargeTerm( TermGenerator.createVariables( 40 ) , 5000 );
+        final CompiledExpression compiled = CompiledExpression.compile( term );
+        final TieredExpression tiered = new TieredExpression( compiled , new BytecodeCompiler( 16 ) , 0 );
+
+        assertFalse( tiered.isCompiled() );
+        assertEquals( compiled.evaluate( 0x123456789L ) , tiered.test( 0x123456789L ) );
+    }
+
+    public void testManyVariables()
+    {
+        final ASTNode term = generator.createLargeTerm( TermGenerator.createVariables( 64 ) , 200 );
+        final CompiledExpression compiled = CompiledExpression.compile( term );
+        final IBooleanFunction generated = new BytecodeCompiler( 16 ).compile( compiled );
+        for ( int i = 0 ; i < 1000 ; i++ )
+        {
+            final long assignment = generator.getRandom().nextLong();
+            assertEquals( compiled.evaluate( assignment ) , generated.test( assignment ) );
+        }
+    }
+
+    public void testTooManyVariables()
+    {
+        // slot 64 must not alias slot 0
+        final List<Identifier> variables = TermGenerator.createVariables( 65 );
+        ASTNode term = new IdentifierNode( variables.get( 0 ) );
+        for ( int i = 1 ; i < variables.size() ; i++ )
+        {
+            final ASTNode variable = new IdentifierNode( variables.get( i ) );
+            term = i % 2 == 0 ? OperatorNode.or( term , variable ) : OperatorNode.and( term , OperatorNode.not( variable ) );
+        }
+        final CompiledExpression compiled = CompiledExpression.compile( term );
+        assertEquals( 65 , compiled.getSlotCount() );
+
+        final BytecodeCompiler compiler = new BytecodeCompiler( 16 );
+        assertFalse( compiler.canCompile( compiled ) );
+        try {
+            compiler.compile( compiled );
+            fail("Should've failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+
+        final TieredExpression tiered = new TieredExpression( compiled , compiler , 0 );
+        assertFalse( tiered.isCompiled() );
+        final boolean[] values = new boolean[ 65 ];
+        for ( int i = 0 ; i < 1000 ; i++ )
+        {
+            for ( int slot = 0 ; slot < values.length ; slot++ ) {
+                values[slot] = generator.getRandom().nextBoolean();
+            }
+            assertEquals( compiled.evaluate( values ) , tiered.test( values ) );
+        }
+    }
+}
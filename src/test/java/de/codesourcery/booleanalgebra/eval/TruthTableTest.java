@@ -0,0 +1,85 @@
+package de.codesourcery.booleanalgebra.eval;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+
+public class TruthTableTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    public void testRowOrder()
+    {
+        final TruthTable table = TruthTable.compute( parser.parse( "a and not b" , true ) );
+        assertEquals( 4 , table.getRowCount() );
+        assertEquals( Identifier.id("a") , table.getVariables().get(0) );
+
+        // rows: a=0/b=0 , a=0/b=1 , a=1/b=0 , a=1/b=1
+        assertFalse( table.getValue( 0 ) );
+        assertFalse( table.getValue( 1 ) );
+        assertTrue( table.getValue( 2 ) );
+        assertFalse( table.getValue( 3 ) );
+        assertEquals( 1 , table.getTrueRowCount() );
+        assertEquals( 4L , table.toLongArray()[0] );
+    }
+
+    public void testTableWithoutVariables()
+    {
+        final TruthTable table = TruthTable.compute( parser.parse( "true and not false" , true ) );
+        assertEquals( 1 , table.getRowCount() );
+        assertTrue( table.getValue( 0 ) );
+        assertEquals( 1 , table.getTrueRowCount() );
+    }
+
+    public void testMatchesRowByRowEvaluation()
+    {
+        final ASTNode term = parser.parse( "(a or not h) and (b or (c and not d)) or (e and f and not g) or (a and h)" , true );
+        final TruthTable table = TruthTable.compute( term );
+        final List<Identifier> vars = table.getVariables();
+        assertEquals( 8 , vars.size() );
+
+        final ExpressionContext context = new ExpressionContext();
+        for ( long row = 0 ; row < table.getRowCount() ; row++ )
+        {
+            table.assignRow( row , context );
+            assertEquals( "row "+row , term.evaluate( context ).getLiteralValue( context ) , table.getValue( row ) );
+        }
+    }
+
+    public void testEquivalence()
+    {
+        final ASTNode term1 = parser.parse( "not (a and b) or c" , true );
+        final ASTNode term2 = parser.parse( "not a or not b or c" , true );
+        final ASTNode term3 = parser.parse( "not a or b or c" , true );
+
+        assertTrue( TruthTable.isEquivalent( term1 , term2 ) );
+        assertFalse( TruthTable.isEquivalent( term1 , term3 ) );
+
+        final List<Identifier> vars = TruthTable.gatherVariables( term1 , term3 );
+        final long row = TruthTable.findDifference( term1 , term3 , vars );
+        assertEquals( 4 , row ); // a=1 , b=0 , c=0
+
+        assertTrue( TruthTable.compute( term1 , vars ).isEquivalent( TruthTable.compute( term2 , vars ) ) );
+    }
+
+    public void testEquivalenceWithThirtyVariables()
+    {
+        ASTNode and = null;
+        ASTNode or = null;
+        for ( int i = 0 ; i < 30 ; i++ )
+        {
+            final IdentifierNode var = new IdentifierNode( Identifier.id("v"+i) );
+            final ASTNode notVar = OperatorNode.not( new IdentifierNode( Identifier.id("v"+i) ) );
+            and = and == null ? var : OperatorNode.and( and , var );
+            or = or == null ? notVar : OperatorNode.or( or , notVar );
+        }
+        assertTrue( TruthTable.isEquivalent( OperatorNode.not( and ) , or ) );
+        assertFalse( TruthTable.isEquivalent( and , or ) );
+    }
+}
@@ -0,0 +1,124 @@
+package de.codesourcery.booleanalgebra.hashcons;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.ASTTransformations;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.eval.CompiledExpression;
+import de.codesourcery.booleanalgebra.eval.TruthTable;
+
+public class HashConsedTransformationsTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    private HashConsedNode simplify(String expression)
+    {
+        final HashConsedTransformations transformations = new HashConsedTransformations( new NodeFactory() );
+        return transformations.simplify( transformations.getFactory().fromAST( parser.parse( expression , true ) ) );
+    }
+
+    public void testLaws()
+    {
+        assertEquals( "a" , simplify( "a and a" ).toString() );
+        assertEquals( "a" , simplify( "not not a" ).toString() );
+        assertEquals( "a" , simplify( "true and a" ).toString() );
+        assertEquals( "false" , simplify( "a and false" ).toString() );
+        assertEquals( "true" , simplify( "not a or a" ).toString() );
+        assertEquals( "a" , simplify( "(b and a) or a" ).toString() );
+        assertEquals( "(NOT a) OR (NOT b)" , simplify( "not (a and b)" ).toString() );
+        assertEquals( "a AND (b AND c)" , simplify( "(a and b) and c" ).toString() );
+    }
+
+    public void testSharedSubtermsAreSimplifiedOnce()
+    {
+        final HashConsedTransformations transformations = new HashConsedTransformations( new NodeFactory() );
+        final NodeFactory factory = transformations.getFactory();
+        final HashConsedNode sub = factory.fromAST( parser.parse( "not not (a and a)" , true ) );
+
+        HashConsedNode term = sub;
+        for ( int i = 0 ; i < 1000 ; i++ ) {
+            term = factory.or( factory.not( term ) , sub );
+        }
+        final HashConsedNode result = transformations.simplify( term );
+        assertTrue( transformations.getRewriteCount() < 10000 );
+        assertEquals( -1 , TruthTable.findDifference( NodeFactory.toAST( term ) , NodeFactory.toAST( result ) ,
+                TruthTable.gatherVariables( NodeFactory.toAST( term ) ) ) );
+    }
+
+    public void testRewriteLimit()
+    {
+        final HashConsedTransformations transformations = new HashConsedTransformations( new NodeFactory() );
+        transformations.setMaxRewrites( 1 );
+        final HashConsedNode term = transformations.getFactory().fromAST( parser.parse( "not (not (a and a))" , true ) );
+        assertEquals( "NOT (NOT a)" , transformations.simplify( term ).toString() );
+        assertTrue( transformations.isRewriteLimitReached() );
+    }
+
+    public void testSimplifySharedIsEquivalent()
+    {
+        final ASTTransformations transformer = new ASTTransformations();
+        final TermGenerator generator = new TermGenerator( 0x12345678 );
+        for ( int i = 0 ; i < 2000 ; i++ )
+        {
+            final ASTNode term = generator.createTerm( 4 , 1 + generator.getRandom().nextInt( 10 ) );
+            final ASTNode simplified = transformer.simplifyShared( term , new ExpressionContext() );
+
+            final List<Identifier> vars = TruthTable.gatherVariables( term , simplified );
+            assertEquals( term+" -> "+simplified , -1 , TruthTable.findDifference( term , simplified , vars ) );
+            // pushing NOTs down using De Morgan at most doubles the size
+            assertTrue( term+" -> "+simplified , simplified.getNodeCount() <= 2 * term.getNodeCount() );
+        }
+    }
+
+    public void testDistributiveLaw()
+    {
+        final TermGenerator generator = new TermGenerator( 0x87654321 );
+        for ( int i = 0 ; i < 200 ; i++ )
+        {
+            final ASTNode term = generator.createTerm( 4 , 1 + generator.getRandom().nextInt( 6 ) );
+
+            final HashConsedTransformations transformations = new HashConsedTransformations( new NodeFactory() );
+            transformations.setApplyDistributiveLaw( true );
+            transformations.setMaxDistributedNodeCount( 100 );
+            final ASTNode simplified = NodeFactory.toAST( transformations.simplify( transformations.getFactory().fromAST( term ) ) );
+
+            final List<Identifier> vars = TruthTable.gatherVariables( term , simplified );
+            assertEquals( term+" -> "+simplified , -1 , TruthTable.findDifference( term , simplified , vars ) );
+        }
+    }
+
+    public void testDeepTerms()
+    {
+        // far too deep to be normalized recursively
+        final int depth = 200000;
+        final HashConsedTransformations transformations = new HashConsedTransformations( new NodeFactory() );
+        transformations.setMaxRewrites( Integer.MAX_VALUE );
+        final NodeFactory factory = transformations.getFactory();
+
+        final HashConsedNode a = factory.variable( Identifier.id("a") );
+        HashConsedNode negated = a;
+        for ( int i = 0 ; i < depth ; i++ ) {
+            negated = factory.not( negated );
+        }
+        assertSame( a , transformations.simplify( negated ) );
+
+        // v0 and v1 and ... or v15 , left-deep
+        HashConsedNode chain = factory.variable( Identifier.id( "v0" ) );
+        for ( int i = 1 ; i < depth ; i++ )
+        {
+            final HashConsedNode variable = factory.variable( Identifier.id( "v"+( i % 16 ) ) );
+            chain = i % 16 == 15 ? factory.or( chain , variable ) : factory.and( chain , variable );
+        }
+        final HashConsedNode simplified = transformations.simplify( chain );
+        final CompiledExpression expected = CompiledExpression.compile( NodeFactory.toAST( chain ) );
+        final CompiledExpression actual = CompiledExpression.compile( NodeFactory.toAST( simplified ) , expected.getIdentifiers() );
+        for ( long assignment = 0 ; assignment < 1000 ; assignment++ ) {
+            assertEquals( expected.evaluate( assignment * 0x9e3779b9L ) , actual.evaluate( assignment * 0x9e3779b9L ) );
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package de.codesourcery.booleanalgebra.hashcons;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.TermNode;
+import de.codesourcery.booleanalgebra.eval.CompiledExpression;
+import de.codesourcery.booleanalgebra.eval.TruthTable;
+
+public class NodeFactoryTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    public void testStructurallyEqualTermsAreSame()
+    {
+        final NodeFactory factory = new NodeFactory();
+        final HashConsedNode t1 = factory.fromAST( parser.parse( "(a and b) or not (a and b)" , true ) );
+        final HashConsedNode t2 = factory.fromAST( parser.parse( "((a and b)) or not (a and b)" , true ) );
+
+        assertSame( t1 , t2 );
+        assertSame( t1.leftChild() , t1.rightChild().leftChild() );
+        // false, true, a, b, AND, NOT, OR
+        assertEquals( 7 , factory.getNodeCount() );
+        assertEquals( 8 , t1.getNodeCount() );
+    }
+
+    public void testOperandOrderMatters()
+    {
+        final NodeFactory factory = new NodeFactory();
+        final HashConsedNode a = factory.variable( Identifier.id("a") );
+        final HashConsedNode b = factory.variable( Identifier.id("b") );
+
+        assertNotSame( factory.and( a , b ) , factory.and( b , a ) );
+        assertNotSame( factory.and( a , b ) , factory.or( a , b ) );
+        assertSame( factory.not( factory.and( a , b ) ) , factory.not( factory.and( a , b ) ) );
+    }
+
+    public void testRejectsForeignNodes()
+    {
+        final HashConsedNode foreign = new NodeFactory().variable( Identifier.id("a") );
+        try {
+            new NodeFactory().not( foreign );
+            fail("Should have failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testLiteralVariablesAreReplaced()
+    {
+        final ExpressionContext context = new ExpressionContext();
+        context.define( Identifier.id("b") , true );
+
+        final NodeFactory factory = new NodeFactory();
+        final HashConsedNode term = factory.fromAST( parser.parse( "a and b" , true ) , context );
+        assertSame( factory.getTrue() , term.rightChild() );
+    }
+
+    public void testUniqueTableGrows()
+    {
+        final TermGenerator generator = new TermGenerator( 0xdeadbeef );
+        final NodeFactory factory = new NodeFactory();
+        for ( int i = 0 ; i < 100 ; i++ )
+        {
+            final ASTNode term = generator.createLargeTerm( TermGenerator.createVariables( 20 ) , 100 );
+            final HashConsedNode node = factory.fromAST( term );
+            assertSame( node , factory.fromAST( term.createCopy( true ) ) );
+
+            final ASTNode converted = NodeFactory.toAST( node );
+            assertEquals( -1 , TruthTable.findDifference( term , converted , TruthTable.gatherVariables( term ) ) );
+        }
+    }
+
+    public void testDeepTerms()
+    {
+        // far too deep to be converted recursively
+        final int depth = 200000;
+        ASTNode term = new IdentifierNode( Identifier.id( "v0" ) );
+        for ( int i = 1 ; i <= depth ; i++ )
+        {
+            final ASTNode variable = new IdentifierNode( Identifier.id( "v"+( i % 16 ) ) );
+            term = i % 3 == 0 ? OperatorNode.not( new TermNode( OperatorNode.or( term , variable ) ) ) : OperatorNode.and( term , variable );
+        }
+
+        final NodeFactory factory = new NodeFactory();
+        final HashConsedNode node = factory.fromAST( term );
+        assertSame( node , factory.fromAST( term.createCopy( true ) ) );
+
+        final ASTNode converted = NodeFactory.toAST( node );
+        assertSame( node , factory.fromAST( converted ) );
+        final CompiledExpression expected = CompiledExpression.compile( term );
+        final CompiledExpression actual = CompiledExpression.compile( converted , expected.getIdentifiers() );
+        for ( long assignment = 0 ; assignment < 1000 ; assignment++ ) {
+            assertEquals( expected.evaluate( assignment * 0x9e3779b9L ) , actual.evaluate( assignment * 0x9e3779b9L ) );
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package de.codesourcery.booleanalgebra.hashcons;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import de.codesourcery.booleanalgebra.ASTTransformations;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+
+/**
+ * Compares the number of bytes allocated per call of {@link ASTTransformations#simplify(ASTNode, de.codesourcery.booleanalgebra.IExpressionContext)}
+ * and {@link ASTTransformations#simplifyShared(ASTNode, de.codesourcery.booleanalgebra.IExpressionContext)}.
+ *
+ * <p>Needs a JVM that supports <code>com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)</code>.</p>
+ */
+public class SimplifyAllocationBenchmark
+{
+    private static final String[] EXPRESSIONS = {
+        "not( (a or b) and (c or d) )",
+        "(a and b) or not (a and b) or c",
+        "not not (a and (b or not b)) and (c or false)",
+        "(a or (a and b)) and not (not c or d) and (e or not e)",
+        "not (a and not (b or not (c and not (d or e))))",
+        "not (a or b) and not c",
+        "(a or b) and (a or b) and c",
+    };
+
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 1000;
+
+    private interface ISimplifier {
+        public ASTNode simplify(ASTNode term);
+    }
+
+    public static void main(String[] args)
+    {
+        final BooleanExpressionParser parser = new BooleanExpressionParser();
+        final ASTTransformations transformer = new ASTTransformations();
+
+        final ISimplifier classic = new ISimplifier() {
+
+            @Override
+            public ASTNode simplify(ASTNode term) {
+                return transformer.simplify( term , new ExpressionContext() );
+            }
+        };
+        final ISimplifier shared = new ISimplifier() {
+
+            @Override
+            public ASTNode simplify(ASTNode term) {
+                return transformer.simplifyShared( term , new ExpressionContext() );
+            }
+        };
+
+        System.out.println( String.format("%-70s %15s %15s %15s %15s" , "expression" , "simplify [B]" , "shared [B]" , "simplify [us]" , "shared [us]" ) );
+        for ( String expression : EXPRESSIONS )
+        {
+            final ASTNode term = parser.parse( expression , true );
+            final long[] classicResult = measure( classic , term );
+            final long[] sharedResult = measure( shared , term );
+            System.out.println( String.format("%-70s %15d %15d %15.1f %15.1f" , expression ,
+                    classicResult[0] , sharedResult[0] , classicResult[1] / 1000.0 , sharedResult[1] / 1000.0 ) );
+        }
+    }
+
+    /**
+     * @return bytes allocated per call , nanoseconds per call
+     */
+    private static long[] measure(ISimplifier simplifier,ASTNode term)
+    {
+        final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+
+        for ( int i = 0 ; i < WARMUP ; i++ ) {
+            simplifier.simplify( term );
+        }
+
+        final long bytesBefore = bean.getThreadAllocatedBytes( threadId );
+        final long start = System.nanoTime();
+        for ( int i = 0 ; i < ITERATIONS ; i++ ) {
+            simplifier.simplify( term );
+        }
+        final long elapsed = System.nanoTime() - start;
+        final long bytes = bean.getThreadAllocatedBytes( threadId ) - bytesBefore;
+        return new long[] { bytes / ITERATIONS , elapsed / ITERATIONS };
+    }
+
+    private static ThreadMXBean getThreadMXBean()
+    {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if ( ! ( bean instanceof com.sun.management.ThreadMXBean ) ) {
+            throw new UnsupportedOperationException("This JVM does not support measuring allocated bytes per thread");
+        }
+        return bean;
+    }
+}
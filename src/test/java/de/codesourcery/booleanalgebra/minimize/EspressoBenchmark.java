@@ -0,0 +1,120 @@
+package de.codesourcery.booleanalgebra.minimize;
+
+import java.util.List;
+import java.util.Random;
+
+import de.codesourcery.booleanalgebra.ASTTransformations;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+
+/**
+ * Compares the {@link Espresso} minimizer with {@link ASTTransformations#simplify(ASTNode, de.codesourcery.booleanalgebra.IExpressionContext)}
+ * on generated rules with 40 to 80 inputs.
+ *
+ * <p>A rule is a sum of random products , some products contain a factored-out sum and
+ * some are repeated in a redundant form (ANDed with another literal).</p>
+ */
+public class EspressoBenchmark
+{
+    private static final int[] VARIABLE_COUNTS = { 40 , 60 , 80 };
+    private static final int[] PRODUCT_COUNTS = { 20 , 40 , 80 };
+
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 5;
+
+    private interface ISimplifier {
+        public ASTNode simplify(ASTNode term);
+    }
+
+    public static void main(String[] args)
+    {
+        final ASTTransformations transformer = new ASTTransformations();
+        final ISimplifier simplify = new ISimplifier() {
+
+            @Override
+            public ASTNode simplify(ASTNode term) {
+                return transformer.simplify( term , new ExpressionContext() );
+            }
+        };
+        final ISimplifier espresso = new ISimplifier() {
+
+            @Override
+            public ASTNode simplify(ASTNode term) {
+                return new Espresso().minimize( term );
+            }
+        };
+
+        final Random random = new Random( 0xcafebabe );
+        System.out.println( String.format("%10s %10s %10s %15s %15s %15s %15s %15s" , "variables" , "products" , "nodes" ,
+                "simplify [ms]" , "espresso [ms]" , "simplify size" , "espresso size" , "espresso prods" ) );
+        for ( int variableCount : VARIABLE_COUNTS )
+        {
+            final List<Identifier> variables = TermGenerator.createVariables( variableCount );
+            for ( int productCount : PRODUCT_COUNTS )
+            {
+                final ASTNode term = createRule( variables , productCount , random );
+
+                final double simplifyMillis = measure( simplify , term );
+                final int simplifySize = simplify.simplify( term ).getNodeCount();
+
+                final double espressoMillis = measure( espresso , term );
+                final Espresso minimizer = new Espresso();
+                final int espressoSize = minimizer.minimize( term ).getNodeCount();
+
+                System.out.println( String.format("%10d %10d %10d %15.2f %15.2f %15d %15d %15d" , variableCount , productCount ,
+                        term.getNodeCount() , simplifyMillis , espressoMillis , simplifySize , espressoSize , minimizer.getProductCount() ) );
+            }
+        }
+    }
+
+    private static ASTNode createRule(List<Identifier> variables,int productCount,Random random)
+    {
+        ASTNode result = null;
+        for ( int i = 0 ; i < productCount ; i++ )
+        {
+            ASTNode product = createProduct( variables , 2 + random.nextInt( 4 ) , random );
+            if ( random.nextInt( 3 ) == 0 ) {
+                product = OperatorNode.and( product , OperatorNode.or( createLiteral( variables , random ) , createLiteral( variables , random ) ) );
+            }
+            if ( random.nextInt( 4 ) == 0 ) {
+                product = OperatorNode.or( product , OperatorNode.and( product.createCopy( true ) , createLiteral( variables , random ) ) );
+            }
+            result = result == null ? product : OperatorNode.or( result , product );
+        }
+        return result;
+    }
+
+    private static ASTNode createProduct(List<Identifier> variables,int literalCount,Random random)
+    {
+        ASTNode result = createLiteral( variables , random );
+        for ( int i = 1 ; i < literalCount ; i++ ) {
+            result = OperatorNode.and( result , createLiteral( variables , random ) );
+        }
+        return result;
+    }
+
+    private static ASTNode createLiteral(List<Identifier> variables,Random random)
+    {
+        final ASTNode result = new IdentifierNode( variables.get( random.nextInt( variables.size() ) ) );
+        return random.nextBoolean() ? OperatorNode.not( result ) : result;
+    }
+
+    /**
+     * @return milliseconds per call
+     */
+    private static double measure(ISimplifier simplifier,ASTNode term)
+    {
+        for ( int i = 0 ; i < WARMUP ; i++ ) {
+            simplifier.simplify( term );
+        }
+        final long start = System.nanoTime();
+        for ( int i = 0 ; i < ITERATIONS ; i++ ) {
+            simplifier.simplify( term );
+        }
+        return ( System.nanoTime() - start ) / ( ITERATIONS * 1000000.0 );
+    }
+}
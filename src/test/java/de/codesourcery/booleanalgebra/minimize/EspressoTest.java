@@ -0,0 +1,133 @@
+package de.codesourcery.booleanalgebra.minimize;
+
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+import de.codesourcery.booleanalgebra.eval.CompiledExpression;
+import de.codesourcery.booleanalgebra.eval.TruthTable;
+
+public class EspressoTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    private ASTNode minimize(Espresso minimizer,String expression)
+    {
+        final ASTNode term = parser.parse( expression , false );
+        final ASTNode result = minimizer.minimize( term );
+        assertEquivalent( term , result );
+        return result;
+    }
+
+    private static void assertEquivalent(ASTNode term,ASTNode result)
+    {
+        final List<Identifier> vars = TruthTable.gatherVariables( term , result );
+        assertEquals( term+" -> "+result , -1 , TruthTable.findDifference( term , result , vars ) );
+    }
+
+    public void testConstants()
+    {
+        final Espresso minimizer = new Espresso();
+        assertTrue( minimize( minimizer , "a or not a" ) instanceof TrueNode );
+        assertTrue( minimize( minimizer , "a and not a" ) instanceof FalseNode );
+        assertTrue( minimize( minimizer , "not (a or (b or not (a or b)))" ) instanceof FalseNode );
+    }
+
+    public void testSimpleTerms()
+    {
+        final Espresso minimizer = new Espresso();
+        assertEquals( "a" , minimize( minimizer , "(a and b) or (a and not b)" ).toString() );
+        assertEquals( "a OR b" , minimize( minimizer , "a or (not a and b)" ).toString() );
+        assertEquals( "(a AND (NOT b)) OR ((NOT a) AND b)" , minimize( minimizer , "(a or b) and not (a and b)" ).toString() );
+        minimize( minimizer , "(a and b) or (b and c) or (a and c) or (a and b and c)" );
+        assertEquals( 3 , minimizer.getProductCount() );
+        assertEquals( 6 , minimizer.getLiteralCount() );
+    }
+
+    public void testCyclicCover()
+    {
+        final Espresso minimizer = new Espresso();
+        minimize( minimizer , "(not a and not b and not c) or (not a and not b and c) or (not a and b and not c) or "+
+                "(a and not b and c) or (a and b and not c) or (a and b and c)" );
+        assertEquals( 3 , minimizer.getProductCount() );
+        assertEquals( 6 , minimizer.getLiteralCount() );
+    }
+
+    public void testCloseToExactResult()
+    {
+        final Espresso espresso = new Espresso();
+        final QuineMcCluskey exact = new QuineMcCluskey();
+        final TermGenerator generator = new TermGenerator( 0x12345678 );
+        int espressoProducts = 0;
+        int exactProducts = 0;
+        for ( int i = 0 ; i < 300 ; i++ )
+        {
+            final ASTNode term = generator.createTerm( 6 , 1 + generator.getRandom().nextInt( 8 ) );
+            assertEquivalent( term , espresso.minimize( term ) );
+            exact.minimize( term );
+            assertTrue( espresso.getProductCount() >= exact.getProductCount() );
+            espressoProducts += espresso.getProductCount();
+            exactProducts += exact.getProductCount();
+        }
+        assertTrue( espressoProducts+" <-> "+exactProducts , espressoProducts <= exactProducts * 1.05 );
+    }
+
+    public void testManyVariables()
+    {
+        final List<Identifier> vars = TermGenerator.createVariables( 64 );
+        final Random random = new Random( 0xdeadbeef );
+        for ( int run = 0 ; run < 5 ; run++ )
+        {
+            // random sum of products , each product is ANDed with a redundant variation of itself
+            ASTNode term = null;
+            for ( int i = 0 ; i < 30 ; i++ )
+            {
+                ASTNode product = null;
+                final int literals = 2 + random.nextInt( 5 );
+                for ( int j = 0 ; j < literals ; j++ )
+                {
+                    ASTNode literal = new IdentifierNode( vars.get( random.nextInt( vars.size() ) ) );
+                    if ( random.nextBoolean() ) {
+                        literal = OperatorNode.not( literal );
+                    }
+                    product = product == null ? literal : OperatorNode.and( product , literal );
+                }
+                final ASTNode extra = new IdentifierNode( vars.get( random.nextInt( vars.size() ) ) );
+                product = OperatorNode.or( product , OperatorNode.and( product.createCopy( true ) , extra ) );
+                term = term == null ? product : OperatorNode.or( term , product );
+            }
+
+            final Espresso minimizer = new Espresso();
+            final ASTNode result = minimizer.minimize( term );
+            assertTrue( minimizer.getProductCount() <= 30 );
+            // too many rows to compare , check random assignments
+            final CompiledExpression compiledTerm = CompiledExpression.compile( term , vars );
+            final CompiledExpression compiledResult = CompiledExpression.compile( result , vars );
+            for ( int i = 0 ; i < 10000 ; i++ )
+            {
+                final long row = random.nextLong();
+                assertEquals( compiledTerm.evaluate( row ) , compiledResult.evaluate( row ) );
+            }
+        }
+    }
+
+    public void testTooLarge()
+    {
+        final Espresso minimizer = new Espresso();
+        minimizer.setMaxCubes( 10 );
+        try {
+            minimize( minimizer , "(a or b) and (c or d) and (e or f) and (g or h)" );
+            fail("Should've failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+    }
+}
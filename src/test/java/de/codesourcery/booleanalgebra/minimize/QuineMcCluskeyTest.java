@@ -0,0 +1,139 @@
+package de.codesourcery.booleanalgebra.minimize;
+
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.ASTTransformations;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+import de.codesourcery.booleanalgebra.eval.TruthTable;
+
+public class QuineMcCluskeyTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    private ASTNode minimize(QuineMcCluskey minimizer,String expression)
+    {
+        final ASTNode term = parser.parse( expression , false );
+        final ASTNode result = minimizer.minimize( term );
+        assertEquivalent( term , result );
+        return result;
+    }
+
+    private static void assertEquivalent(ASTNode term,ASTNode result)
+    {
+        final List<Identifier> vars = TruthTable.gatherVariables( term , result );
+        assertEquals( term+" -> "+result , -1 , TruthTable.findDifference( term , result , vars ) );
+    }
+
+    public void testConstants()
+    {
+        final QuineMcCluskey minimizer = new QuineMcCluskey();
+        assertTrue( minimize( minimizer , "a or not a" ) instanceof TrueNode );
+        assertTrue( minimize( minimizer , "a and not a" ) instanceof FalseNode );
+        assertTrue( minimize( minimizer , "true" ) instanceof TrueNode );
+    }
+
+    public void testSimpleTerms()
+    {
+        final QuineMcCluskey minimizer = new QuineMcCluskey();
+        assertEquals( "a" , minimize( minimizer , "(a and b) or (a and not b)" ).toString() );
+        assertEquals( "a" , minimize( minimizer , "a or (a and b)" ).toString() );
+        assertEquals( "NOT a" , minimize( minimizer , "not (a or (b and a))" ).toString() );
+        // majority
+        minimize( minimizer , "(a and b) or (b and c) or (a and c) or (a and b and c)" );
+        assertEquals( 3 , minimizer.getProductCount() );
+        assertEquals( 6 , minimizer.getLiteralCount() );
+        assertEquals( 3 , minimizer.getPrimeImplicantCount() );
+    }
+
+    public void testCyclicCover()
+    {
+        // minterms 0,1,2,5,6,7 , six primes and none of them is essential
+        final QuineMcCluskey minimizer = new QuineMcCluskey();
+        minimize( minimizer , "(not a and not b and not c) or (not a and not b and c) or (not a and b and not c) or "+
+                "(a and not b and c) or (a and b and not c) or (a and b and c)" );
+        assertEquals( 6 , minimizer.getPrimeImplicantCount() );
+        assertEquals( 3 , minimizer.getProductCount() );
+        assertEquals( 6 , minimizer.getLiteralCount() );
+        assertTrue( minimizer.isMinimal() );
+    }
+
+    public void testXor()
+    {
+        final QuineMcCluskey minimizer = new QuineMcCluskey();
+        final ASTNode result = minimize( minimizer , "(a or b) and not (a and b)" );
+        assertEquals( "(a AND (NOT b)) OR ((NOT a) AND b)" , result.toString() );
+    }
+
+    public void testRandomTerms()
+    {
+        final QuineMcCluskey minimizer = new QuineMcCluskey();
+        final ASTTransformations transformer = new ASTTransformations();
+        final TermGenerator generator = new TermGenerator( 0x12345678 );
+        for ( int i = 0 ; i < 300 ; i++ )
+        {
+            final ASTNode term = generator.createTerm( 5 , 1 + generator.getRandom().nextInt( 8 ) );
+            final ASTNode result = minimizer.minimize( term );
+            assertEquivalent( term , result );
+            assertTrue( minimizer.isMinimal() );
+
+            // minimizing the result again must not change its size
+            final int products = minimizer.getProductCount();
+            final int literals = minimizer.getLiteralCount();
+            assertEquivalent( term , transformer.minimize( result , new ExpressionContext() , minimizer ) );
+            assertEquals( products , minimizer.getProductCount() );
+            assertEquals( literals , minimizer.getLiteralCount() );
+        }
+    }
+
+    public void testSixteenVariables()
+    {
+        final List<Identifier> vars = TermGenerator.createVariables( 16 );
+        final Random random = new Random( 0xdeadbeef );
+        for ( int run = 0 ; run < 5 ; run++ )
+        {
+            // random sum of 20 products with 3-6 literals each
+            ASTNode term = null;
+            for ( int i = 0 ; i < 20 ; i++ )
+            {
+                ASTNode product = null;
+                final int literals = 3 + random.nextInt( 4 );
+                for ( int j = 0 ; j < literals ; j++ )
+                {
+                    ASTNode literal = new IdentifierNode( vars.get( random.nextInt( vars.size() ) ) );
+                    if ( random.nextBoolean() ) {
+                        literal = OperatorNode.not( literal );
+                    }
+                    product = product == null ? literal : OperatorNode.and( product , literal );
+                }
+                term = term == null ? product : OperatorNode.or( term , product );
+            }
+
+            final QuineMcCluskey minimizer = new QuineMcCluskey();
+            final long start = System.currentTimeMillis();
+            final ASTNode result = minimizer.minimize( term );
+            final long time = System.currentTimeMillis() - start;
+            assertEquivalent( term , result );
+            assertTrue( minimizer.getProductCount() <= 20 );
+            assertTrue( "Took "+time+" ms" , time < 1000 );
+        }
+    }
+
+    public void testBranchLimit()
+    {
+        final QuineMcCluskey minimizer = new QuineMcCluskey();
+        minimizer.setMaxBranches( 1 );
+        minimize( minimizer , "(not a and not b and not c) or (not a and not b and c) or (not a and b and not c) or "+
+                "(a and not b and c) or (a and b and not c) or (a and b and c)" );
+        assertFalse( minimizer.isMinimal() );
+    }
+}
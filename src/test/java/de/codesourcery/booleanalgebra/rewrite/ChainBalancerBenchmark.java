@@ -0,0 +1,205 @@
+package de.codesourcery.booleanalgebra.rewrite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.TermNode;
+import de.codesourcery.booleanalgebra.eval.CompiledExpression;
+
+/**
+ * Evaluates long chains of <code>(x and not y) or (z and not w) or ...</code> as parsed (left-deep) ,
+ * fully parenthesized (right-deep) and after {@link ChainBalancer balancing}.
+ *
+ * <p>Terms are evaluated with {@link ASTNode#evaluate(de.codesourcery.booleanalgebra.IExpressionContext)} ,
+ * a plain recursive evaluator and as a {@link CompiledExpression}. Unlike the others , the recursive evaluator stops at the
+ * first operand that decides the result , so it mostly measures how deep the first operands are.
+ * Every measurement is the fastest of several rounds.</p>
+ */
+public class ChainBalancerBenchmark
+{
+    private static final int VARIABLES = 16;
+
+    private static final int[] OPERAND_COUNTS = { 100 , 1000 , 10000 };
+
+    private static final int WARMUP = 2000;
+    private static final int ITERATIONS = 5000;
+    private static final int ROUNDS = 5;
+
+    private interface IEvaluator {
+        public boolean evaluate(int index);
+    }
+
+    public static void main(String[] args)
+    {
+        final List<Identifier> variables = TermGenerator.createVariables( VARIABLES );
+        final Random random = new Random( 0xdeadbeef );
+
+        final List<ExpressionContext> contexts = new ArrayList<>();
+        for ( int i = 0 ; i < 64 ; i++ )
+        {
+            final ExpressionContext context = new ExpressionContext();
+            for ( Identifier variable : variables ) {
+                context.define( variable , random.nextBoolean() );
+            }
+            contexts.add( context );
+        }
+
+        final BooleanExpressionParser parser = new BooleanExpressionParser();
+        System.out.println( String.format("%10s %15s %8s %15s %15s %15s %15s" , "operands" , "shape" , "depth" , "balance [ms]" ,
+                "evaluate [us]" , "recursive [us]" , "compiled [us]" ) );
+        for ( int operandCount : OPERAND_COUNTS )
+        {
+            final StringBuilder leftDeep = new StringBuilder();
+            final StringBuilder rightDeep = new StringBuilder();
+            for ( int i = 0 ; i < operandCount ; i++ )
+            {
+                final String operand = "("+variables.get( random.nextInt( VARIABLES ) )+" and not "+variables.get( random.nextInt( VARIABLES ) )+")";
+                if ( i > 0 ) {
+                    leftDeep.append( " or " );
+                    rightDeep.append( " or (" );
+                }
+                leftDeep.append( operand );
+                rightDeep.append( operand );
+            }
+            for ( int i = 1 ; i < operandCount ; i++ ) {
+                rightDeep.append( ')' );
+            }
+
+            final ASTNode left = parser.parse( leftDeep.toString() , false );
+            final ASTNode right = parser.parse( rightDeep.toString() , false );
+            run( operandCount , "left-deep" , left , null , contexts );
+            run( operandCount , "right-deep" , right , null , contexts );
+            run( operandCount , "balanced" , left , ChainBalancer.DEFAULT , contexts );
+            run( operandCount , "balanced/cost" , left , ChainBalancer.ORDER_BY_COST , contexts );
+        }
+    }
+
+    private static void run(int operandCount,String shape,ASTNode input,ChainBalancer balancer,final List<ExpressionContext> contexts)
+    {
+        double balanceTime = 0;
+        ASTNode result = input;
+        if ( balancer != null )
+        {
+            final long start = System.nanoTime();
+            for ( int i = 0 ; i < 10 ; i++ ) {
+                result = balancer.balance( input.createCopy( true ) );
+            }
+            balanceTime = ( System.nanoTime() - start ) / ( 10 * 1000000.0 );
+        }
+        final ASTNode term = result;
+        final int scale = Math.max( 1 , 1000 / operandCount );
+
+        final double evaluate = measure( new IEvaluator() {
+
+            @Override
+            public boolean evaluate(int index) {
+                final ExpressionContext context = contexts.get( index % contexts.size() );
+                return term.evaluate( context ).getLiteralValue( context );
+            }
+        } , scale );
+
+        String recursive;
+        try
+        {
+            recursive = String.format( "%15.2f" , measure( new IEvaluator() {
+
+                @Override
+                public boolean evaluate(int index) {
+                    return evaluateRecursively( term , contexts.get( index % contexts.size() ) );
+                }
+            } , scale ) );
+        }
+        catch(StackOverflowError e) {
+            recursive = String.format( "%15s" , "stack overflow" );
+        }
+
+        final CompiledExpression compiled = CompiledExpression.compile( term );
+        final long[] assignments = new long[ contexts.size() ];
+        for ( int i = 0 ; i < assignments.length ; i++ )
+        {
+            for ( int slot = 0 ; slot < compiled.getSlotCount() ; slot++ )
+            {
+                final ASTNode value = contexts.get( i ).tryLookup( compiled.getIdentifier( slot ) );
+                if ( value.getLiteralValue( contexts.get( i ) ) ) {
+                    assignments[i] |= 1L << slot;
+                }
+            }
+        }
+        final double compiledTime = measure( new IEvaluator() {
+
+            @Override
+            public boolean evaluate(int index) {
+                return compiled.evaluate( assignments[ index % assignments.length ] );
+            }
+        } , 10 );
+
+        System.out.println( String.format("%10d %15s %8d %15s %15.2f %s %15.2f" , operandCount , shape , term.getTreeDepth() ,
+                balancer != null ? String.format( "%.2f" , balanceTime ) : "-" , evaluate , recursive , compiledTime ) );
+    }
+
+    private static boolean evaluateRecursively(ASTNode node,ExpressionContext context)
+    {
+        if ( node instanceof TermNode ) {
+            return evaluateRecursively( node.child(0) , context );
+        }
+        if ( node instanceof OperatorNode )
+        {
+            switch( ((OperatorNode) node).getType() )
+            {
+                case NOT:
+                    return ! evaluateRecursively( node.child(0) , context );
+                case AND:
+                    for ( ASTNode child : node.children() )
+                    {
+                        if ( ! evaluateRecursively( child , context ) ) {
+                            return false;
+                        }
+                    }
+                    return true;
+                case OR:
+                    for ( ASTNode child : node.children() )
+                    {
+                        if ( evaluateRecursively( child , context ) ) {
+                            return true;
+                        }
+                    }
+                    return false;
+                default:
+                    throw new RuntimeException("Unhandled type: "+((OperatorNode) node).getType());
+            }
+        }
+        return node.evaluate( context ).getLiteralValue( context );
+    }
+
+    /**
+     * @return microseconds per evaluation
+     */
+    private static double measure(IEvaluator evaluator,int scale)
+    {
+        int trueCount = 0;
+        for ( int i = 0 ; i < WARMUP * scale / 10 ; i++ ) {
+            trueCount += evaluator.evaluate( i ) ? 1 : 0;
+        }
+        final int iterations = ITERATIONS * scale / 10;
+        long best = Long.MAX_VALUE;
+        for ( int round = 0 ; round < ROUNDS ; round++ )
+        {
+            final long start = System.nanoTime();
+            for ( int i = 0 ; i < iterations ; i++ ) {
+                trueCount += evaluator.evaluate( i ) ? 1 : 0;
+            }
+            best = Math.min( best , System.nanoTime() - start );
+        }
+        sink += trueCount;
+        return best / ( iterations * 1000.0 );
+    }
+
+    private static volatile long sink;
+}
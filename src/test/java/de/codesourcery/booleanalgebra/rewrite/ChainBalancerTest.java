@@ -0,0 +1,115 @@
+package de.codesourcery.booleanalgebra.rewrite;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.ASTTransformations;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+import de.codesourcery.booleanalgebra.eval.TruthTable;
+
+public class ChainBalancerTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    private String balance(String expression) {
+        return balance( ChainBalancer.DEFAULT , expression );
+    }
+
+    private String balance(ChainBalancer balancer,String expression)
+    {
+        final ASTNode term = parser.parse( expression , false );
+        final ASTNode balanced = balancer.balance( term.createCopy( true ) );
+        assertNull( balanced.getParent() );
+        assertTrue( TruthTable.isEquivalent( term , balanced ) );
+        return balanced.toString();
+    }
+
+    public void testLeftDeepChain()
+    {
+        assertEquals( "((a OR b) OR (c OR d)) OR ((e OR f) OR (g OR h))" , balance( "a or b or c or d or e or f or g or h" ) );
+        assertEquals( "(a AND b) AND c" , balance( "a and b and c" ) );
+    }
+
+    public void testRightDeepChain() {
+        assertEquals( "(a AND b) AND (c AND d)" , balance( "a and (b and (c and d))" ) );
+    }
+
+    public void testChainsWithDifferentOperators()
+    {
+        assertEquals( "((a OR b) OR ((c AND d) AND (e AND f))) OR g" , balance( "a or b or (c and d and e and f) or g" ) );
+        // higher operands end up closer to the root
+        assertEquals( "((a OR b) OR c) OR (NOT (NOT (NOT d)))" , balance( "a or b or c or not not not d" ) );
+        assertEquals( "(NOT (a OR b)) AND (c OR d)" , balance( "not (a or b) and (c or d)" ) );
+    }
+
+    public void testShortChainsAreUnchanged()
+    {
+        final ASTNode term = parser.parse( "(a or b) and not c" , false );
+        assertSame( term , ChainBalancer.DEFAULT.balance( term ) );
+    }
+
+    public void testNaryNodesKeepArity()
+    {
+        final BooleanExpressionParser naryParser = new BooleanExpressionParser();
+        naryParser.setNaryOperators( true );
+        final ASTNode term = naryParser.parse( "a or b or c or d" , false );
+        assertSame( term , ChainBalancer.DEFAULT.balance( term ) );
+    }
+
+    public void testOrderByCost()
+    {
+        assertEquals( "((d OR f) OR (NOT e)) OR ((a AND b) AND c)" ,
+                balance( ChainBalancer.ORDER_BY_COST , "(a and b and c) or d or (not e) or f" ) );
+        // equal costs keep their order
+        assertEquals( "(b OR c) OR (a AND b)" , balance( ChainBalancer.ORDER_BY_COST , "(a and b) or b or c" ) );
+    }
+
+    public void testRandomTerms()
+    {
+        final TermGenerator generator = new TermGenerator( 0xdeadbeef );
+        for ( int i = 0 ; i < 1000 ; i++ )
+        {
+            final ASTNode term = generator.createTerm( 4 , 1 + i % 12 );
+            for ( ChainBalancer balancer : new ChainBalancer[] { ChainBalancer.DEFAULT , ChainBalancer.ORDER_BY_COST } )
+            {
+                final ASTNode balanced = balancer.balance( term.createCopy( true ) );
+                assertTrue( term+" -> "+balanced , TruthTable.isEquivalent( term , balanced ) );
+                if ( ! balancer.isOrderByCost() ) {
+                    assertTrue( term+" -> "+balanced , balanced.getTreeDepth() <= term.getTreeDepth() );
+                }
+            }
+        }
+    }
+
+    public void testLongChain()
+    {
+        final StringBuilder expression = new StringBuilder( "v0" );
+        for ( int i = 1 ; i < 100000 ; i++ ) {
+            expression.append( " or v" ).append( i % 16 );
+        }
+        parser.setChainBalancer( ChainBalancer.DEFAULT );
+        final ASTNode term = parser.parse( expression.toString() , false );
+        assertEquals( 17 , term.getTreeDepth() );
+
+        final ExpressionContext context = new ExpressionContext();
+        for ( int i = 0 ; i < 16 ; i++ ) {
+            context.define( Identifier.id( "v"+i ) , false );
+        }
+        assertTrue( term.evaluate( context ) instanceof FalseNode );
+        context.define( Identifier.id( "v15" ) , true );
+        assertTrue( term.evaluate( context ) instanceof TrueNode );
+    }
+
+    public void testSimplify()
+    {
+        final ASTTransformations transformations = new ASTTransformations();
+        transformations.setChainBalancer( ChainBalancer.ORDER_BY_COST );
+        transformations.setParanoid( true );
+        final ASTNode term = parser.parse( "(a and b and c) or d or (d and e)" , false );
+        assertEquals( "d OR (a AND b AND c)" , transformations.simplify( term , new ExpressionContext() ).toString() );
+    }
+}
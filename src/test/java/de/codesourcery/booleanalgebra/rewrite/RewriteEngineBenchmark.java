@@ -0,0 +1,90 @@
+package de.codesourcery.booleanalgebra.rewrite;
+
+import java.util.List;
+
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+
+/**
+ * Compares the worklist-driven {@link RewriteEngine} used by {@link de.codesourcery.booleanalgebra.ASTTransformations#simplify(ASTNode, de.codesourcery.booleanalgebra.IExpressionContext)}
+ * with the former fixed-point loop on large random terms.
+ *
+ * <p>The fixed-point loop is skipped for terms with more than <code>MAX_FIXED_POINT_LEAVES</code> leaves
+ * and for terms it does not converge on (see {@link RewriteEngineTest.FixedPointTransformations}).</p>
+ */
+public class RewriteEngineBenchmark
+{
+    private static final int[] LEAF_COUNTS = { 100 , 300 , 1000 , 3000 , 10000 , 30000 };
+
+    private static final int MAX_FIXED_POINT_LEAVES = 3000;
+
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 5;
+
+    private interface ISimplifier {
+        public ASTNode simplify(ASTNode term);
+    }
+
+    public static void main(String[] args)
+    {
+        final RewriteEngineTest.FixedPointTransformations transformer = new RewriteEngineTest.FixedPointTransformations();
+        final ISimplifier worklist = new ISimplifier() {
+
+            @Override
+            public ASTNode simplify(ASTNode term) {
+                return transformer.simplify( term , new ExpressionContext() );
+            }
+        };
+        final ISimplifier fixedPoint = new ISimplifier() {
+
+            @Override
+            public ASTNode simplify(ASTNode term) {
+                return transformer.simplifyFixedPoint( term , new ExpressionContext() );
+            }
+        };
+
+        final TermGenerator generator = new TermGenerator( 0xcafebabe );
+        final List<Identifier> variables = TermGenerator.createVariables( 16 );
+
+        System.out.println( String.format("%10s %10s %15s %15s %15s %15s" , "leaves" , "nodes" , "worklist [ms]" , "fixed [ms]" , "worklist size" , "fixed size" ) );
+        for ( int leafCount : LEAF_COUNTS )
+        {
+            final ASTNode term = generator.createLargeTerm( variables , leafCount );
+
+            final double worklistMillis = measure( worklist , term );
+            final int worklistSize = worklist.simplify( term ).getNodeCount();
+
+            String fixedMillis = "-";
+            String fixedSize = "-";
+            if ( leafCount <= MAX_FIXED_POINT_LEAVES )
+            {
+                final ASTNode result = fixedPoint.simplify( term );
+                if ( result != null ) {
+                    fixedMillis = String.format( "%.2f" , measure( fixedPoint , term ) );
+                    fixedSize = Integer.toString( result.getNodeCount() );
+                } else {
+                    fixedMillis = "diverged";
+                }
+            }
+            System.out.println( String.format("%10d %10d %15.2f %15s %15d %15s" , leafCount , term.getNodeCount() ,
+                    worklistMillis , fixedMillis , worklistSize , fixedSize ) );
+        }
+    }
+
+    /**
+     * @return milliseconds per call
+     */
+    private static double measure(ISimplifier simplifier,ASTNode term)
+    {
+        for ( int i = 0 ; i < WARMUP ; i++ ) {
+            simplifier.simplify( term );
+        }
+        final long start = System.nanoTime();
+        for ( int i = 0 ; i < ITERATIONS ; i++ ) {
+            simplifier.simplify( term );
+        }
+        return ( System.nanoTime() - start ) / ( ITERATIONS * 1000000.0 );
+    }
+}
@@ -0,0 +1,244 @@
+package de.codesourcery.booleanalgebra.rewrite;
+
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.ASTTransformations;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.IExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.CanonicalOrder;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.OperatorType;
+import de.codesourcery.booleanalgebra.ast.TermNode;
+import de.codesourcery.booleanalgebra.eval.TruthTable;
+
+public class RewriteEngineTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    /*
+     * Gives access to the fixed-point simplifier.
+     *
+     * Together with the other laws , the distributive law keeps expanding some terms back and forth
+     * so the fixed-point loop never terminates. Every application of the distributive law goes through
+     * maybeWrapInTerm() , which gives up once the number of steps or the size of the distributed terms
+     * get out of proportion to the size of the input.
+     */
+    protected static final class FixedPointTransformations extends ASTTransformations
+    {
+        private int distributions;
+        private int maxDistributions;
+        private int maxNodeCount;
+
+        /**
+         * @return the simplified term or <code>null</code> if the fixed-point loop did not converge
+         */
+        public ASTNode simplifyFixedPoint(ASTNode term,IExpressionContext context)
+        {
+            distributions = 0;
+            maxDistributions = 1000 + 10 * term.getNodeCount();
+            maxNodeCount = 200 + 2 * term.getNodeCount();
+            try {
+                return simplifyTermFixedPoint( term , context );
+            } catch(DivergedException e) {
+                return null;
+            }
+        }
+
+        @Override
+        protected ASTNode maybeWrapInTerm(ASTNode node)
+        {
+            if ( ++distributions > maxDistributions || node.getNodeCount() > maxNodeCount ) {
+                throw new DivergedException();
+            }
+            return super.maybeWrapInTerm( node );
+        }
+    }
+
+    private static final class DivergedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private String simplify(String expression)
+    {
+        return new ASTTransformations().simplify( parser.parse( expression , false ) , new ExpressionContext() ).toString();
+    }
+
+    public void testLaws()
+    {
+        assertEquals( "a" , simplify( "a and a" ) );
+        assertEquals( "a" , simplify( "not not a" ) );
+        assertEquals( "a" , simplify( "true and a" ) );
+        assertEquals( "false" , simplify( "a and false" ) );
+        assertEquals( "true" , simplify( "a or not a" ) );
+        assertEquals( "a" , simplify( "a or (a and b)" ) );
+        assertEquals( "(NOT a) OR (NOT b)" , simplify( "not (a and b)" ) );
+        assertEquals( "false" , simplify( "not (a or true)" ) );
+    }
+
+    /*
+     * Unlike the fixed-point loop , simplify() only applies the distributive law when asked to.
+     */
+    public void testDistributiveLawIsOptIn()
+    {
+        final FixedPointTransformations transformations = new FixedPointTransformations();
+        final ASTNode term = parser.parse( "(a and (b or c))" , false );
+        assertEquals( "(a AND (b OR c))" , transformations.simplify( term , new ExpressionContext() ).toString() );
+        assertEquals( "((a AND c) OR (a AND b))" , transformations.simplifyFixedPoint( term , new ExpressionContext() ).toString() );
+
+        transformations.setApplyDistributiveLaw( true );
+        assertEquals( "((a AND b) OR (a AND c))" , transformations.simplify( term , new ExpressionContext() ).toString() );
+    }
+
+    public void testAssociativity()
+    {
+        final RewriteEngine engine = new RewriteEngine( Collections.singletonList( BooleanLaws.associativity() ) );
+        final ASTNode term = OperatorNode.and( new TermNode( parser.parse( "a and b" , false ) ) , parser.parse( "c" , false ) );
+        assertEquals( "a AND (b AND c)" , engine.rewrite( term , new ExpressionContext() ).toString() );
+    }
+
+    public void testFlattening()
+    {
+        final RewriteEngine engine = new RewriteEngine( BooleanLaws.createDefaultRules() );
+        final ASTNode term = OperatorNode.and( new TermNode( parser.parse( "c and b" , false ) ) , parser.parse( "a" , false ) );
+        final ASTNode result = engine.rewrite( term , new ExpressionContext() );
+        assertEquals( "a AND b AND c" , result.toString() );
+        assertEquals( 3 , result.getChildCount() );
+    }
+
+    public void testNaryLaws()
+    {
+        assertEquals( "a OR b OR c" , simplify( "c or a or b or a or c" ) );
+        assertEquals( "false" , simplify( "a and b and c and d and not b" ) );
+        assertEquals( "true" , simplify( "(not c) or a or b or c" ) );
+        assertEquals( "a OR b" , simplify( "b or (c and d and b) or a or (a and c)" ) );
+        assertEquals( "a AND b" , simplify( "(c or b) and a and b and (a or d)" ) );
+        assertEquals( "(NOT a) OR (NOT b) OR (NOT c)" , simplify( "not (a and b and c)" ) );
+        assertEquals( "b AND c" , simplify( "b and true and c and true" ) );
+    }
+
+    public void testLongChain()
+    {
+        final StringBuilder expression = new StringBuilder("x999");
+        for ( int i = 998 ; i >= 0 ; i-- ) {
+            expression.append(" or x").append( i );
+        }
+        final BooleanExpressionParser naryParser = new BooleanExpressionParser();
+        naryParser.setNaryOperators( true );
+        final ASTNode term = naryParser.parse( expression.toString() , false );
+        assertEquals( 1000 , term.getChildCount() );
+
+        final ASTNode result = new ASTTransformations().simplify( term , new ExpressionContext() );
+        assertEquals( 1000 , result.getChildCount() );
+        final List<Identifier> variables = TermGenerator.createVariables( "x" , 1000 );
+        for ( int i = 1 ; i < 1000 ; i++ ) {
+            assertTrue( CanonicalOrder.INSTANCE.compare( result.child( i - 1 ) , result.child( i ) ) < 0 );
+        }
+        assertEquals( 1000 , TruthTable.gatherVariables( result ).size() );
+        assertTrue( TruthTable.gatherVariables( result ).containsAll( variables ) );
+    }
+
+    public void testRewritesRoot()
+    {
+        final RewriteEngine engine = new RewriteEngine( BooleanLaws.createDefaultRules() );
+        final ASTNode term = OperatorNode.not( OperatorNode.not( parser.parse( "a" , false ) ) );
+        final ASTNode result = engine.rewrite( term , new ExpressionContext() );
+        assertEquals( "a" , result.toString() );
+        assertFalse( result.hasParent() );
+        assertEquals( 1 , engine.getRewriteCount() );
+    }
+
+    public void testRulesAreIndexedByType()
+    {
+        final int[] invocations = new int[1];
+        final RewriteEngine engine = new RewriteEngine();
+        engine.addRule( new IRewriteRule() {
+
+            @Override
+            public String getName() {
+                return "COUNT";
+            }
+
+            @Override
+            public java.util.Set<OperatorType> getRootTypes() {
+                return java.util.EnumSet.of( OperatorType.NOT );
+            }
+
+            @Override
+            public ASTNode rewrite(OperatorNode node, IExpressionContext context) {
+                invocations[0]++;
+                return null;
+            }
+        });
+        engine.rewrite( parser.parse( "(not a and b) or (c and not d)" , true ) , new ExpressionContext() );
+        assertEquals( 2 , invocations[0] );
+    }
+
+    public void testOnlyChangedPartsAreRevisited()
+    {
+        final RewriteEngine engine = new RewriteEngine( BooleanLaws.createDefaultRules() );
+        final TermGenerator generator = new TermGenerator( 0xdeadbeef );
+        final List<Identifier> variables = TermGenerator.createVariables( 16 );
+        final ASTNode term = generator.createLargeTerm( variables , 2000 );
+        final ASTNode result = engine.rewrite( new ASTTransformations().reduce( term , new ExpressionContext() ) , new ExpressionContext() );
+
+        final List<Identifier> vars = TruthTable.gatherVariables( term , result );
+        assertEquals( -1 , TruthTable.findDifference( term , result , vars ) );
+
+        // running again finds nothing to rewrite
+        engine.rewrite( result , new ExpressionContext() );
+        assertEquals( 0 , engine.getRewriteCount() );
+    }
+
+    public void testRewriteLimit()
+    {
+        final RewriteEngine engine = new RewriteEngine( BooleanLaws.createDefaultRules() );
+        engine.setMaxRewrites( 1 );
+        final ASTNode result = engine.rewrite( parser.parse( "not (not (a and a))" , true ) , new ExpressionContext() );
+        assertEquals( 1 , engine.getRewriteCount() );
+        assertEquals( -1 , TruthTable.findDifference( parser.parse( "a" , true ) , result , TruthTable.gatherVariables( result ) ) );
+    }
+
+    public void testMatchesFixedPointSimplifier()
+    {
+        final FixedPointTransformations transformer = new FixedPointTransformations();
+        final TermGenerator generator = new TermGenerator( 0x12345678 );
+        int larger = 0;
+        int diverged = 0;
+        for ( int i = 0 ; i < 1000 ; i++ )
+        {
+            final ASTNode term = generator.createTerm( 4 , 1 + generator.getRandom().nextInt( 8 ) );
+            final ASTNode simplified = transformer.simplify( term , new ExpressionContext() );
+            final ASTNode reference = transformer.simplifyFixedPoint( term , new ExpressionContext() );
+
+            final List<Identifier> vars = TruthTable.gatherVariables( term , simplified );
+            assertEquals( term+" -> "+simplified , -1 , TruthTable.findDifference( term , simplified , vars ) );
+            if ( reference == null ) {
+                diverged++;
+            } else if ( countLeaves( simplified ) > countLeaves( reference ) ) {
+                System.out.println( term+" -> "+simplified+" , fixed-point: "+reference );
+                larger++;
+            }
+        }
+        System.out.println( "Fixed-point simplifier did not converge for "+diverged+" terms" );
+        assertEquals( 0 , larger );
+    }
+
+    private static int countLeaves(ASTNode node)
+    {
+        if ( node.isLeafNode() ) {
+            return 1;
+        }
+        int result = 0;
+        for ( ASTNode child : node.children() ) {
+            result += countLeaves( child );
+        }
+        return result;
+    }
+}
@@ -0,0 +1,161 @@
+package de.codesourcery.booleanalgebra.sat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+
+public class DimacsExporterTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    private ASTNode parse(String expression) {
+        return parser.parse( expression , false );
+    }
+
+    private static String export(ASTNode term,DimacsExporter exporter) throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.export( term , Channels.newChannel( out ) );
+        return out.toString( "UTF-8" );
+    }
+
+    /*
+     * Loads DIMACS clauses into a new solver , checking the header.
+     */
+    private static SATSolver load(String dimacs)
+    {
+        final SATSolver solver = new SATSolver();
+        int clauses = -1;
+        int clauseCount = 0;
+        final List<Integer> clause = new ArrayList<>();
+        for ( String line : dimacs.split("\n") )
+        {
+            if ( line.startsWith("c ") ) {
+                continue;
+            }
+            final String[] parts = line.trim().split(" +");
+            if ( parts[0].equals("p") )
+            {
+                assertEquals( "cnf" , parts[1] );
+                for ( int i = Integer.parseInt( parts[2] ) ; i > 0 ; i-- ) {
+                    solver.newVariable();
+                }
+                clauses = Integer.parseInt( parts[3] );
+                continue;
+            }
+            for ( String part : parts )
+            {
+                final int literal = Integer.parseInt( part );
+                if ( literal != 0 ) {
+                    clause.add( literal );
+                    continue;
+                }
+                final int[] literals = new int[ clause.size() ];
+                for ( int i = 0 ; i < literals.length ; i++ ) {
+                    literals[i] = clause.get(i);
+                }
+                solver.addClause( literals );
+                clause.clear();
+                clauseCount++;
+            }
+        }
+        assertTrue( clause.isEmpty() );
+        assertEquals( clauses , clauseCount );
+        return solver;
+    }
+
+    public void testSimple() throws IOException
+    {
+        final DimacsExporter exporter = new DimacsExporter();
+        final String dimacs = export( parse( "a and not b" ) , exporter );
+        assertEquals( "c 1 a\nc 2 b\np cnf 3 4\n-3 -2 0\n-3 1 0\n3 2 -1 0\n3 0\n" , dimacs );
+        assertEquals( 3 , exporter.getVariableCount() );
+        assertEquals( 4 , exporter.getClauseCount() );
+    }
+
+    public void testSharing() throws IOException
+    {
+        final DimacsExporter exporter = new DimacsExporter();
+        export( parse( "(a and b) or (b and a) or not (not a or not b)" ) , exporter );
+        assertEquals( 1 , exporter.getGateCount() );
+        assertEquals( 3 , exporter.getVariableCount() );
+    }
+
+    public void testConstantsAndExpressions() throws IOException
+    {
+        final DimacsExporter exporter = new DimacsExporter();
+        assertTrue( load( export( parse( "a or true" ) , exporter ) ).solve() );
+        assertFalse( load( export( parse( "a and false" ) , exporter ) ).solve() );
+        assertFalse( load( export( parse( "a and not a" ) , exporter ) ).solve() );
+        assertTrue( load( export( parse( "a = b" ) , exporter ) ).solve() );
+        assertFalse( load( export( parse( "a = not a" ) , exporter ) ).solve() );
+    }
+
+    public void testRandomTerms() throws IOException
+    {
+        final TermGenerator generator = new TermGenerator( 0xd1ac5 );
+        final List<Identifier> variables = TermGenerator.createVariables( 12 );
+        final DimacsExporter exporter = new DimacsExporter();
+        final DimacsExporter pg = new DimacsExporter();
+        pg.setPlaistedGreenbaum( true );
+        for ( int i = 0 ; i < 100 ; i++ )
+        {
+            ASTNode term = generator.createLargeTerm( variables , 40 );
+            if ( i % 2 == 0 ) {
+                // miter of a term with itself is unsatisfiable
+                term = OperatorNode.and( term , OperatorNode.not( term.createCopy( true ) ) );
+            }
+            final boolean expected = new SATChecker().isSatisfiable( term );
+            assertEquals( expected , load( export( term , exporter ) ).solve() );
+            assertEquals( expected , load( export( term , pg ) ).solve() );
+            assertTrue( pg.getClauseCount() < exporter.getClauseCount() );
+        }
+    }
+
+    public void testDeepTerm() throws IOException
+    {
+        final int depth = 200000;
+        ASTNode term = parse( "a" );
+        for ( int i = 0 ; i < depth ; i++ ) {
+            term = OperatorNode.not( OperatorNode.or( term , parse( "b"+( i % 50 ) ) ) );
+        }
+
+        final long[] written = new long[1];
+        final WritableByteChannel sink = new WritableByteChannel() {
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public int write(ByteBuffer src)
+            {
+                final int result = src.remaining();
+                written[0] += result;
+                src.position( src.limit() );
+                return result;
+            }
+        };
+        final DimacsExporter exporter = new DimacsExporter();
+        exporter.export( term , sink );
+        assertEquals( depth , exporter.getGateCount() );
+        assertEquals( 3L * depth + 1 , exporter.getClauseCount() );
+        assertTrue( written[0] > 3L * depth * 8 );
+    }
+}
@@ -0,0 +1,104 @@
+package de.codesourcery.booleanalgebra.sat;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.ASTTransformations;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+
+public class IncrementalEquivalenceCheckerTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    private ASTNode parse(String expression) {
+        return parser.parse( expression , false );
+    }
+
+    public void testCandidates()
+    {
+        final IncrementalEquivalenceChecker checker = new IncrementalEquivalenceChecker( parse( "a and (b or c)" ) );
+        assertTrue( checker.isEquivalent( parse( "a and (b or c)" ) ) );
+        assertTrue( checker.isEquivalent( parse( "(a and b) or (a and c)" ) ) );
+        assertTrue( checker.isEquivalent( parse( "not (not a or (not b and not c))" ) ) );
+        assertNotNull( checker.findCounterExample( parse( "(a and b) or c" ) ) );
+        assertNotNull( checker.findCounterExample( parse( "a" ) ) );
+        // failed queries do not affect later ones
+        assertTrue( checker.isEquivalent( parse( "(c or b) and a" ) ) );
+        assertEquals( 6 , checker.getQueryCount() );
+    }
+
+    public void testExpressions()
+    {
+        final IncrementalEquivalenceChecker checker = new IncrementalEquivalenceChecker( parse( "a or b = b" ) );
+        assertTrue( checker.isEquivalent( parse( "a and not b = false" ) ) );
+        assertFalse( checker.isEquivalent( parse( "a = b" ) ) );
+        try {
+            checker.isEquivalent( parse( "a" ) );
+            fail( "Should've failed" );
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testContext()
+    {
+        final ExpressionContext context = new ExpressionContext();
+        context.set( Identifier.id("a") , new TrueNode() );
+        assertTrue( new IncrementalEquivalenceChecker( parse( "a and b" ) , context ).isEquivalent( parse( "b" ) ) );
+    }
+
+    public void testRepeatedQueries()
+    {
+        // many small changes of a large term , like a simplifier would make
+        final TermGenerator generator = new TermGenerator( 0x1ce );
+        final List<Identifier> variables = TermGenerator.createVariables( 60 );
+        final ASTNode base = generator.createLargeTerm( variables , 1000 );
+        final IncrementalEquivalenceChecker checker = new IncrementalEquivalenceChecker( base );
+
+        ASTNode candidate = base.createCopy( true );
+        for ( int i = 0 ; i < 50 ; i++ )
+        {
+            // wrap a random subterm in a double negation
+            final ASTNode node = randomNode( candidate , generator );
+            if ( node != candidate ) {
+                node.replaceWith( OperatorNode.not( OperatorNode.not( node.createCopy( true ) ) ) );
+            }
+            assertTrue( checker.isEquivalent( candidate ) );
+        }
+        final int clauses = checker.getSolver().getClauseCount();
+        candidate = base.createCopy( true );
+        final ASTNode node = randomNode( candidate , generator );
+        node.replaceWith( OperatorNode.not( node.createCopy( true ) ) );
+        checker.isEquivalent( candidate );
+        // only the changed path got encoded
+        assertTrue( checker.getSolver().getClauseCount() - clauses < 200 );
+    }
+
+    private static ASTNode randomNode(ASTNode term,TermGenerator generator)
+    {
+        ASTNode result = term;
+        while ( result.hasChildren() && generator.getRandom().nextInt( 8 ) != 0 ) {
+            result = result.child( generator.getRandom().nextInt( result.getChildCount() ) );
+        }
+        return result;
+    }
+
+    public void testParanoidSimplify()
+    {
+        final ASTTransformations transformer = new ASTTransformations();
+        transformer.setParanoid( true );
+        final TermGenerator generator = new TermGenerator( 0xbad );
+        final List<Identifier> variables = TermGenerator.createVariables( 6 );
+        for ( int i = 0 ; i < 200 ; i++ ) {
+            final ASTNode term = generator.createLargeTerm( variables , 20 );
+            final ASTNode simplified = transformer.simplify( term , new ExpressionContext() );
+            assertTrue( new SATChecker().isEquivalent( term , simplified ) );
+        }
+    }
+}
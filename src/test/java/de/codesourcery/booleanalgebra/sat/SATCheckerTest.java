@@ -0,0 +1,151 @@
+package de.codesourcery.booleanalgebra.sat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import de.codesourcery.booleanalgebra.ASTTransformations;
+import de.codesourcery.booleanalgebra.BooleanExpressionParser;
+import de.codesourcery.booleanalgebra.ExpressionContext;
+import de.codesourcery.booleanalgebra.IExpressionContext;
+import de.codesourcery.booleanalgebra.TermGenerator;
+import de.codesourcery.booleanalgebra.ast.ASTNode;
+import de.codesourcery.booleanalgebra.ast.BooleanExpression;
+import de.codesourcery.booleanalgebra.ast.FalseNode;
+import de.codesourcery.booleanalgebra.ast.Identifier;
+import de.codesourcery.booleanalgebra.ast.IdentifierNode;
+import de.codesourcery.booleanalgebra.ast.OperatorNode;
+import de.codesourcery.booleanalgebra.ast.TermNode;
+import de.codesourcery.booleanalgebra.ast.TrueNode;
+
+public class SATCheckerTest extends TestCase
+{
+    private final BooleanExpressionParser parser = new BooleanExpressionParser();
+
+    private ASTNode parse(String expression) {
+        return parser.parse( expression , false );
+    }
+
+    public void testQueries()
+    {
+        final SATChecker checker = new SATChecker();
+        assertTrue( checker.isTautology( parse( "a or not a" ) ) );
+        assertTrue( checker.isContradiction( parse( "a and not a" ) ) );
+        assertTrue( checker.isSatisfiable( parse( "a and not b" ) ) );
+        assertFalse( checker.isTautology( parse( "a or b" ) ) );
+        assertTrue( checker.isEquivalent( parse( "not (a and b)" ) , parse( "not a or not b" ) ) );
+        assertTrue( checker.isTautology( parse( "not (a or b) = not a and not b" ) ) );
+        assertTrue( checker.isContradiction( parse( "a = not a" ) ) );
+        assertTrue( checker.isTautology( parse( "true" ) ) );
+        assertTrue( checker.isContradiction( parse( "false" ) ) );
+    }
+
+    public void testContext()
+    {
+        final ExpressionContext context = new ExpressionContext();
+        context.set( Identifier.id("a") , new TrueNode() );
+        assertTrue( new SATChecker( context ).isEquivalent( parse( "a and b" ) , parse( "b" ) ) );
+        assertFalse( new SATChecker().isEquivalent( parse( "a and b" ) , parse( "b" ) ) );
+    }
+
+    public void testCounterExample()
+    {
+        final ASTNode term1 = parse( "a and (b or c)" );
+        final ASTNode term2 = parse( "(a and b) or c" );
+        final ExpressionContext counterExample = new SATChecker().findCounterExample( term1 , term2 );
+        assertNotNull( counterExample );
+        assertTrue( evaluate( term1 , counterExample ) != evaluate( term2 , counterExample ) );
+    }
+
+    public void testIsTrue()
+    {
+        final ASTTransformations transformer = new ASTTransformations();
+        final ExpressionContext context = new ExpressionContext();
+        assertEquals( Boolean.TRUE , transformer.isTrue( (BooleanExpression) parse( "a and (b or a) = a" ) , context ) );
+        assertEquals( Boolean.FALSE , transformer.isTrue( (BooleanExpression) parse( "a = not a" ) , context ) );
+        assertNull( transformer.isTrue( (BooleanExpression) parse( "a = b" ) , context ) );
+    }
+
+    public void testManyVariables()
+    {
+        final TermGenerator generator = new TermGenerator( 0x5a7 );
+        final List<Identifier> variables = TermGenerator.createVariables( 150 );
+        for ( int run = 0 ; run < 5 ; run++ )
+        {
+            final ASTNode term = generator.createLargeTerm( variables , 3000 );
+            final ASTNode dual = OperatorNode.not( negate( term ) );
+            final SATChecker checker = new SATChecker();
+            assertNull( checker.findCounterExample( term , dual ) );
+
+            // negating a leaf usually changes the function
+            final List<ASTNode> leaves = new ArrayList<>();
+            gatherLeaves( dual , leaves );
+            final ASTNode leaf = leaves.get( generator.getRandom().nextInt( leaves.size() ) );
+            leaf.replaceWith( OperatorNode.not( leaf.createCopy( true ) ) );
+            final ExpressionContext counterExample = checker.findCounterExample( term , dual );
+            if ( counterExample != null ) {
+                assertTrue( evaluate( term , counterExample ) != evaluate( dual , counterExample ) );
+            }
+        }
+    }
+
+    /*
+     * Returns a term equivalent to NOT term , pushing the negation down to the variables.
+     */
+    private static ASTNode negate(ASTNode term)
+    {
+        if ( term instanceof TermNode ) {
+            return negate( term.child(0) );
+        }
+        if ( term instanceof IdentifierNode ) {
+            return OperatorNode.not( term.createCopy( true ) );
+        }
+        final OperatorNode op = (OperatorNode) term;
+        switch( op.getType() )
+        {
+            case NOT:
+                return term.child(0).createCopy( true );
+            case AND:
+                return OperatorNode.or( negate( term.child(0) ) , negate( term.child(1) ) );
+            case OR:
+                return OperatorNode.and( negate( term.child(0) ) , negate( term.child(1) ) );
+            default:
+                throw new RuntimeException("Unreachable code reached");
+        }
+    }
+
+    private static void gatherLeaves(ASTNode term,List<ASTNode> leaves)
+    {
+        if ( term instanceof IdentifierNode ) {
+            leaves.add( term );
+        }
+        for ( int i = 0 ; i < term.getChildCount() ; i++ ) {
+            gatherLeaves( term.child(i) , leaves );
+        }
+    }
+
+    private static boolean evaluate(ASTNode term,IExpressionContext context)
+    {
+        if ( term instanceof TermNode ) {
+            return evaluate( term.child(0) , context );
+        }
+        if ( term instanceof IdentifierNode ) {
+            return context.lookup( ((IdentifierNode) term).getIdentifier() ) instanceof TrueNode;
+        }
+        if ( term instanceof TrueNode || term instanceof FalseNode ) {
+            return term instanceof TrueNode;
+        }
+        final OperatorNode op = (OperatorNode) term;
+        switch( op.getType() )
+        {
+            case NOT:
+                return ! evaluate( term.child(0) , context );
+            case AND:
+                return evaluate( term.child(0) , context ) && evaluate( term.child(1) , context );
+            case OR:
+                return evaluate( term.child(0) , context ) || evaluate( term.child(1) , context );
+            default:
+                throw new RuntimeException("Unreachable code reached");
+        }
+    }
+}
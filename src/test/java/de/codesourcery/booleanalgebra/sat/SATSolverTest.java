@@ -0,0 +1,197 @@
+package de.codesourcery.booleanalgebra.sat;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class SATSolverTest extends TestCase
+{
+    public void testSimple()
+    {
+        final SATSolver solver = new SATSolver();
+        final int x = solver.newVariable();
+        final int y = solver.newVariable();
+        assertTrue( solver.addClause( x , y ) );
+        assertTrue( solver.addClause( -x ) );
+        assertTrue( solver.solve() );
+        assertFalse( solver.getModelValue( x ) );
+        assertTrue( solver.getModelValue( y ) );
+
+        assertFalse( solver.addClause( -y ) );
+        assertFalse( solver.solve() );
+    }
+
+    public void testEmptyAndTautologicalClauses()
+    {
+        final SATSolver solver = new SATSolver();
+        final int x = solver.newVariable();
+        assertTrue( solver.addClause( x , -x ) );
+        assertEquals( 0 , solver.getClauseCount() );
+        assertTrue( solver.solve() );
+        assertFalse( solver.addClause() );
+        assertFalse( solver.solve() );
+    }
+
+    public void testAssumptions()
+    {
+        final SATSolver solver = new SATSolver();
+        final int x = solver.newVariable();
+        final int y = solver.newVariable();
+        final int z = solver.newVariable();
+        final int w = solver.newVariable();
+        assertTrue( solver.addClause( -x , y ) );
+        assertTrue( solver.addClause( -y , z ) );
+
+        assertTrue( solver.solve( x ) );
+        assertTrue( solver.getModelValue( z ) );
+
+        // x implies z , the unrelated assumption w is not blamed
+        assertFalse( solver.solve( w , x , -z ) );
+        final int[] failed = solver.getFailedAssumptions();
+        assertEquals( 2 , failed.length );
+        assertTrue( contains( failed , x ) && contains( failed , -z ) );
+
+        // assumptions do not stick
+        assertTrue( solver.solve( -z ) );
+        assertFalse( solver.getModelValue( x ) );
+        assertTrue( solver.solve() );
+        assertEquals( 0 , solver.getFailedAssumptions().length );
+
+        assertFalse( solver.solve( x , -x ) );
+        assertTrue( solver.solve( x ) );
+
+        // without assumptions , unsatisfiability is final
+        assertFalse( solver.addClause( -z ) && solver.addClause( x ) && solver.solve() );
+        assertEquals( 0 , solver.getFailedAssumptions().length );
+        assertFalse( solver.solve() );
+    }
+
+    public void testIncrementalPigeonHole()
+    {
+        // the same clauses with a growing number of holes, each hole enabled by an assumption
+        final int pigeons = 7;
+        final SATSolver solver = new SATSolver();
+        final int[] enabled = new int[ pigeons ];
+        final int[][] in = new int[pigeons][pigeons];
+        for ( int h = 0 ; h < pigeons ; h++ ) {
+            enabled[h] = solver.newVariable();
+            for ( int p = 0 ; p < pigeons ; p++ ) {
+                in[p][h] = solver.newVariable();
+                solver.addClause( -in[p][h] , enabled[h] );
+            }
+        }
+        for ( int p = 0 ; p < pigeons ; p++ ) {
+            solver.addClause( in[p] );
+        }
+        for ( int h = 0 ; h < pigeons ; h++ ) {
+            for ( int p1 = 0 ; p1 < pigeons ; p1++ ) {
+                for ( int p2 = p1 + 1 ; p2 < pigeons ; p2++ ) {
+                    solver.addClause( -in[p1][h] , -in[p2][h] );
+                }
+            }
+        }
+        for ( int holes = pigeons ; holes >= 1 ; holes-- )
+        {
+            final int[] assumptions = new int[ pigeons - holes ];
+            for ( int i = 0 ; i < assumptions.length ; i++ ) {
+                assumptions[i] = -enabled[ holes + i ];
+            }
+            assertEquals( "holes: "+holes , holes == pigeons , solver.solve( assumptions ) );
+        }
+        assertTrue( solver.solve() );
+    }
+
+    private static boolean contains(int[] array,int value)
+    {
+        for ( int element : array ) {
+            if ( element == value ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void testPigeonHole()
+    {
+        // 8 pigeons do not fit into 7 holes
+        final int pigeons = 8;
+        final int holes = 7;
+        final SATSolver solver = new SATSolver();
+        final int[][] in = new int[pigeons][holes];
+        for ( int p = 0 ; p < pigeons ; p++ ) {
+            for ( int h = 0 ; h < holes ; h++ ) {
+                in[p][h] = solver.newVariable();
+            }
+            solver.addClause( in[p] );
+        }
+        for ( int h = 0 ; h < holes ; h++ ) {
+            for ( int p1 = 0 ; p1 < pigeons ; p1++ ) {
+                for ( int p2 = p1 + 1 ; p2 < pigeons ; p2++ ) {
+                    solver.addClause( -in[p1][h] , -in[p2][h] );
+                }
+            }
+        }
+        assertFalse( solver.solve() );
+        assertTrue( solver.getConflictCount() > 0 );
+    }
+
+    public void testRandom3SAT()
+    {
+        final Random random = new Random( 0xabcdef );
+        final int variables = 14;
+        int satisfiable = 0;
+        for ( int run = 0 ; run < 200 ; run++ )
+        {
+            // close to the phase transition at 4.26 clauses per variable
+            final int[][] clauses = new int[ 60 ][];
+            final SATSolver solver = new SATSolver();
+            for ( int i = 0 ; i < variables ; i++ ) {
+                solver.newVariable();
+            }
+            for ( int i = 0 ; i < clauses.length ; i++ )
+            {
+                clauses[i] = new int[3];
+                for ( int j = 0 ; j < 3 ; j++ ) {
+                    clauses[i][j] = ( 1 + random.nextInt( variables ) ) * ( random.nextBoolean() ? 1 : -1 );
+                }
+                solver.addClause( clauses[i] );
+            }
+
+            final boolean expected = bruteForce( clauses , variables );
+            assertEquals( "Run "+run , expected , solver.solve() );
+            if ( expected )
+            {
+                satisfiable++;
+                for ( int[] clause : clauses ) {
+                    boolean value = false;
+                    for ( int literal : clause ) {
+                        value |= solver.getModelValue( Math.abs( literal ) ) == ( literal > 0 );
+                    }
+                    assertTrue( value );
+                }
+            }
+        }
+        // make sure both outcomes were tested
+        assertTrue( satisfiable > 20 && satisfiable < 180 );
+    }
+
+    private static boolean bruteForce(int[][] clauses,int variables)
+    {
+        outer:
+        for ( int assignment = 0 ; assignment < ( 1 << variables ) ; assignment++ )
+        {
+            for ( int[] clause : clauses )
+            {
+                boolean value = false;
+                for ( int literal : clause ) {
+                    value |= ( ( assignment >>> ( Math.abs( literal ) - 1 ) ) & 1 ) == ( literal > 0 ? 1 : 0 );
+                }
+                if ( ! value ) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}